@@ -0,0 +1,209 @@
+/**
+* XPlaneDataPacketDecoderBenchmark.java
+*
+* Decode-store-notify benchmarks: packets go through XPlaneDataPacketDecoder
+* into an XPlaneSimDataRepository, which notifies its observers on every ADCD.
+* This is the work done by the packet dispatcher thread for every packet.
+*
+* Build and run with
+*   mvn -Pbenchmarks package
+*   java -jar target/benchmarks.jar XPlaneDataPacketDecoderBenchmark -prof gc
+* and add -p recording=<file> to replay a flight session recorded with
+* XHSI --record instead of the made up packets of XPlanePacketSamples.
+* The gc profiler reports the allocation rate (gc.alloc.rate.norm is per packet).
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.xhsi.model.Aircraft;
+import net.sourceforge.xhsi.model.ModelFactory;
+import net.sourceforge.xhsi.model.Observer;
+import net.sourceforge.xhsi.model.SimDataRepository;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XPlaneDataPacketDecoderBenchmark {
+
+    /** a flight session recording, or "" for made up packets */
+    @Param({ "" })
+    public String recording;
+
+    private XPlaneSimDataRepository repository;
+    private XPlaneDataPacketDecoder decoder;
+    private TickObserver tick_observer;
+
+    private ByteBuffer[] adcd;
+    private ByteBuffer[] avio;
+    private ByteBuffer[] engi;
+    private ByteBuffer[] fmc;
+    private ByteBuffer[] mpac;
+    private ByteBuffer[] qpam;
+    private ByteBuffer[] xrad;
+    private ByteBuffer[] all;
+    private int next = 0;
+
+
+    /**
+     * Counts the calls of tick_updates(), like a display would repaint
+     */
+    public static class TickObserver implements Observer {
+        public long updates = 0;
+        public void update() {
+            this.updates++;
+        }
+    }
+
+
+    @Setup
+    public void setup() throws Exception {
+        // the decoder logs every packet type it sees for the first time
+        Logger.getLogger("net.sourceforge.xhsi").setLevel(Level.WARNING);
+
+        this.repository = new XPlaneSimDataRepository();
+        ModelFactory model_factory = new ModelFactory() {
+            public Aircraft get_aircraft_instance() {
+                return null;
+            }
+            public SimDataRepository get_repository_instance() {
+                return XPlaneDataPacketDecoderBenchmark.this.repository;
+            }
+        };
+        this.decoder = new XPlaneDataPacketDecoder(model_factory);
+        this.tick_observer = new TickObserver();
+        this.repository.add_observer(this.tick_observer);
+
+        XPlanePacketSamples samples = new XPlanePacketSamples(this.recording);
+        this.all = samples.get_all();
+        // a recording may not have all of them
+        this.adcd = samples.get("ADCD");
+        this.avio = samples.get("AVIO");
+        this.engi = samples.get("ENGI");
+        this.fmc = samples.get("FMC0");
+        this.mpac = samples.get("MPAC");
+        this.qpam = samples.get("QPAM");
+        this.xrad = samples.get("xRAD");
+
+        // the first packet of each type takes the slow path
+        for (int i=0; i<this.all.length; i++) {
+            decode(this.all[i]);
+        }
+    }
+
+
+    private ByteBuffer next(ByteBuffer[] packets) {
+        if ( packets.length == 0 ) {
+            throw new IllegalStateException("No packets of this type in " + this.recording);
+        }
+        ByteBuffer packet = packets[this.next % packets.length];
+        this.next++;
+        return packet;
+    }
+
+
+    private void decode(ByteBuffer packet) throws Exception {
+        packet.position(0);
+        this.decoder.new_sim_data(packet);
+    }
+
+
+    @Benchmark
+    public long adcd() throws Exception {
+        decode(next(this.adcd));
+        return this.tick_observer.updates;
+    }
+
+
+    @Benchmark
+    public void avio() throws Exception {
+        decode(next(this.avio));
+    }
+
+
+    @Benchmark
+    public void engi() throws Exception {
+        decode(next(this.engi));
+    }
+
+
+    @Benchmark
+    public void fmc() throws Exception {
+        decode(next(this.fmc));
+    }
+
+
+    @Benchmark
+    public void mpac() throws Exception {
+        decode(next(this.mpac));
+    }
+
+
+    @Benchmark
+    public void qpam() throws Exception {
+        decode(next(this.qpam));
+    }
+
+
+    @Benchmark
+    public void xrad() throws Exception {
+        decode(next(this.xrad));
+    }
+
+
+    /**
+     * All packet types, in the order of the samples
+     */
+    @Benchmark
+    public void mix() throws Exception {
+        decode(next(this.all));
+    }
+
+
+    /**
+     * The same as adcd(), sampled to get the percentiles of the time per ADCD.
+     * tick_updates() notifies the observers at the end of decoding, so this is
+     * the time for the whole call, observers included, not the latency to them.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long adcd_sampled() throws Exception {
+        decode(next(this.adcd));
+        return this.tick_observer.updates;
+    }
+
+}
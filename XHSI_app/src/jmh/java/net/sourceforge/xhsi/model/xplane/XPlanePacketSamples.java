@@ -0,0 +1,235 @@
+/**
+* XPlanePacketSamples.java
+*
+* Packets for the decoder benchmarks, either read from a flight session
+* recording (XHSI --record), or made up with the same layout and about the
+* same size as the packets sent by XHSI_plugin. Each packet type has a few
+* variants with changing values, so that the repository sees changes like
+* it does in flight.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import net.sourceforge.xhsi.model.TCAS;
+
+
+public class XPlanePacketSamples {
+
+    public static final int VARIANTS = 32;
+
+    // made up ADCD, AVIO and ENGI packets use blocks of data point ids, a few of them 4-byte strings
+    private static final int SIM_DATA_POINTS = 170;
+    private static final int SIM_STRINGS = 10;
+
+    private HashMap<String, ArrayList<ByteBuffer>> packets = new HashMap<String, ArrayList<ByteBuffer>>();
+    private ArrayList<ByteBuffer> all_packets = new ArrayList<ByteBuffer>();
+
+
+    /**
+     * @param recording    - a flight session recording, or "" for made up packets
+     */
+    public XPlanePacketSamples(String recording) throws IOException {
+        if ( recording.length() > 0 ) {
+            read_recording(recording);
+        } else {
+            for (int v=0; v<VARIANTS; v++) {
+                add(sim_data_packet("ADCD", 0, 10140, v));
+                add(sim_data_packet("AVIO", 200, 10150, v));
+                add(sim_data_packet("ENGI", 400, 10160, v));
+                add(fms_packet(v));
+                add(mpac_packet(v));
+                add(qpam_packet(v));
+                add(xrad_packet(v));
+            }
+        }
+    }
+
+
+    private void read_recording(String recording) throws IOException {
+        XPlaneFlightSessionReader reader = new XPlaneFlightSessionReader(recording);
+        try {
+            while ( reader.next_packet() ) {
+                ByteBuffer sim_data = reader.get_packet();
+                if ( sim_data.limit() >= 4 ) {
+                    ByteBuffer packet = ByteBuffer.allocateDirect(sim_data.limit());
+                    sim_data.position(0);
+                    packet.put(sim_data);
+                    packet.flip();
+                    add(packet);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+
+    private void add(ByteBuffer packet) {
+        String type = XPlanePacketStatistics.packet_type(packet.getInt(0));
+        ArrayList<ByteBuffer> list = this.packets.get(type);
+        if ( list == null ) {
+            list = new ArrayList<ByteBuffer>();
+            this.packets.put(type, list);
+        }
+        list.add(packet);
+        this.all_packets.add(packet);
+    }
+
+
+    /**
+     * @return    - the packets of one type, in order of arrival; none if there are no packets of that type
+     */
+    public ByteBuffer[] get(String type) {
+        ArrayList<ByteBuffer> list = this.packets.get(type);
+        if ( list == null ) {
+            return new ByteBuffer[0];
+        }
+        return list.toArray(new ByteBuffer[list.size()]);
+    }
+
+
+    /**
+     * @return    - all packets, in order of arrival
+     */
+    public ByteBuffer[] get_all() {
+        return this.all_packets.toArray(new ByteBuffer[this.all_packets.size()]);
+    }
+
+
+    private static ByteBuffer packet(String type, int size) {
+        ByteBuffer packet = ByteBuffer.allocateDirect(size);
+        for (int i=0; i<4; i++) {
+            packet.put((byte) type.charAt(i));
+        }
+        return packet;
+    }
+
+
+    private static void put_string(ByteBuffer packet, String value, int length) {
+        for (int i=0; i<length; i++) {
+            packet.put( (byte) ((i < value.length()) ? value.charAt(i) : 0) );
+        }
+    }
+
+
+    /**
+     * One value in four changes from one variant to the next
+     */
+    private static ByteBuffer sim_data_packet(String type, int first_id, int first_string_id, int variant) {
+        ByteBuffer packet = packet(type, 8 + (SIM_DATA_POINTS + SIM_STRINGS + 1) * 8);
+        packet.putInt(SIM_DATA_POINTS + SIM_STRINGS + 1);
+        // the first ADCD is checked for the plugin version
+        packet.putInt(XPlaneSimDataRepository.PLUGIN_VERSION_ID);
+        packet.putFloat(XPlanePluginEmulator.PLUGIN_VERSION_NUMBER);
+        for (int i=0; i<SIM_DATA_POINTS; i++) {
+            packet.putInt(first_id + i);
+            packet.putFloat( ( (i % 4) == 0 ) ? i + variant * 0.1f : i );
+        }
+        for (int i=0; i<SIM_STRINGS; i++) {
+            packet.putInt(first_string_id + i);
+            put_string(packet, ( (i % 4) == 0 ) ? "ID" + variant : "ABCD", 4);
+        }
+        packet.flip();
+        return packet;
+    }
+
+
+    /**
+     * FMC0 with 50 waypoints, the active one moving along the route
+     */
+    private static ByteBuffer fms_packet(int variant) {
+        int entries = 50;
+        ByteBuffer packet = packet("FMC0", 24 + entries * 24);
+        packet.putFloat(12.0f - variant * 0.1f); // ete for active, min
+        packet.putFloat(120.0f); // groundspeed, m/s
+        packet.putInt(entries);
+        packet.putInt(variant % entries); // displayed
+        packet.putInt(variant % entries); // active
+        for (int i=0; i<entries; i++) {
+            packet.putInt(( i == 0 || i == entries - 1 ) ? 1 : 512); // airport, fix
+            put_string(packet, "WPT" + i, 8);
+            packet.putInt(5000 + i * 500);
+            packet.putFloat(50.0f + i * 0.1f);
+            packet.putFloat(4.0f + i * 0.15f);
+        }
+        packet.flip();
+        return packet;
+    }
+
+
+    /**
+     * MPAC with our own aircraft and as many others as TCAS can show
+     */
+    private static ByteBuffer mpac_packet(int variant) {
+        ByteBuffer packet = packet("MPAC", 28 + (TCAS.MAX_ENTRIES - 1) * 12);
+        packet.putInt(TCAS.MAX_ENTRIES);
+        packet.putInt(TCAS.MAX_ENTRIES);
+        packet.putFloat(3000.0f);
+        packet.putFloat(50.9f + variant * 0.001f);
+        packet.putFloat(4.48f);
+        packet.putFloat(3048.0f);
+        for (int i=1; i<TCAS.MAX_ENTRIES; i++) {
+            packet.putFloat(50.9f + i * 0.01f - variant * 0.0005f);
+            packet.putFloat(4.48f + i * 0.01f);
+            packet.putFloat(3048.0f + i * 30.0f);
+        }
+        packet.flip();
+        return packet;
+    }
+
+
+    /**
+     * QPAM with the 14 lines of an MCDU page
+     */
+    private static ByteBuffer qpam_packet(int variant) {
+        int lines = 14;
+        ByteBuffer packet = packet("QPAM", 16 + lines * 88);
+        packet.putInt(lines);
+        packet.putInt(0); // side
+        packet.putInt(1); // status
+        for (int i=0; i<lines; i++) {
+            String line = "LINE " + i + " " + variant + " FL" + (100 + variant);
+            packet.putInt(i);
+            packet.putInt(line.length());
+            put_string(packet, line, 80);
+        }
+        packet.flip();
+        return packet;
+    }
+
+
+    /**
+     * xRAD with one 61 cells slice; X-Plane sends these little-endian
+     */
+    private static ByteBuffer xrad_packet(int variant) {
+        ByteBuffer packet = packet("xRAD", 81);
+        packet.put((byte) 'M');
+        packet.put((byte) 4).put((byte) 0).put((byte) 0).put((byte) 0); // lon
+        packet.put((byte) 50).put((byte) 0).put((byte) 0).put((byte) 0); // lat
+        packet.put((byte) (variant % 61)).put((byte) 0).put((byte) 0).put((byte) 0); // lat offset
+        for (int i=0; i<61; i++) {
+            packet.put((byte) ((i + variant) % 10));
+        }
+        packet.flip();
+        return packet;
+    }
+
+}
@@ -43,12 +43,14 @@ import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.swing.ButtonGroup;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JRadioButtonMenuItem;
 
 import net.sourceforge.xhsi.model.ModelFactory;
 
@@ -56,15 +58,20 @@ import net.sourceforge.xhsi.model.aptnavdata.AptNavXP900DatNavigationObjectBuild
 import net.sourceforge.xhsi.model.elevationdata.GlobeElevationBuilder;
 
 import net.sourceforge.xhsi.model.xplane.XPlaneDataPacketDecoder;
+import net.sourceforge.xhsi.model.xplane.XPlaneDataPacketObserver;
 import net.sourceforge.xhsi.model.xplane.XPlaneFlightSessionPlayer;
 import net.sourceforge.xhsi.model.xplane.XPlaneFlightSessionRecorder;
 import net.sourceforge.xhsi.model.xplane.XPlaneModelFactory;
 import net.sourceforge.xhsi.model.xplane.XPlaneNearestAirport;
+import net.sourceforge.xhsi.model.xplane.XPlanePacketDispatcher;
+import net.sourceforge.xhsi.model.xplane.XPlanePacketStatistics;
 import net.sourceforge.xhsi.model.xplane.XPlaneSimDataRepository;
+import net.sourceforge.xhsi.model.xplane.XPlaneTerrainAwareness;
+import net.sourceforge.xhsi.model.xplane.XPlaneUDPChannelReceiver;
 import net.sourceforge.xhsi.model.xplane.XPlaneUDPReceiver;
 import net.sourceforge.xhsi.model.xplane.XPlaneWeatherReceiver;
 
-import net.sourceforge.xhsi.flightdeck.UIHeartbeat;
+import net.sourceforge.xhsi.flightdeck.RepaintScheduler;
 
 import net.sourceforge.xhsi.conwin.ConWinComponent;
 import net.sourceforge.xhsi.flightdeck.annunciators.AnnunComponent;
@@ -86,6 +93,9 @@ public class XHSI implements ActionListener {
     public static final String RELEASE = "2.0 Beta 12 Alpha 10";
     public static final int EXPECTED_PLUGIN = 20012;
 
+    // the control window only shows the connection status
+    private static final int CONWIN_FPS = 5;
+
 
     public enum Mode { REPLAY, LIVE, RECORD }
 
@@ -97,14 +107,22 @@ public class XHSI implements ActionListener {
     public static final String ACTION_PREFERENCES = "Preferences ...";
     public static final String ACTION_ONTOP = "Windows on top";
     public static final String ACTION_ABOUT = "About XHSI ...";
+    public static final String ACTION_REPLAY_PAUSE = "Pause";
+    public static final String ACTION_REPLAY_BACK = "Back 1 minute";
+    public static final String ACTION_REPLAY_FORWARD = "Forward 1 minute";
+    public static final String ACTION_REPLAY_GOTO = "Go to ...";
+    public static final String ACTION_REPLAY_SPEED = "Speed x";
+    private static final float[] REPLAY_SPEEDS = { 0.25f, 0.5f, 1.0f, 2.0f, 4.0f, 8.0f, 16.0f };
 
     ModelFactory model_instance;
 
     private XHSIPreferences preferences;
     private ArrayList<Object> running_threads;
+    private RepaintScheduler repaint_scheduler;
 
     private ConWinComponent xhsi_ui;
     private JFrame xhsi_frame;
+    private XPlaneFlightSessionPlayer player;
 
     private ArrayList<XHSIInstrument> instruments;
 
@@ -149,8 +167,14 @@ public class XHSI implements ActionListener {
             if (args.length == 3)
                 recording_rate = Integer.parseInt(args[2]);
             new XHSI(Mode.RECORD, args[1], recording_rate);
-        } else if ((args.length == 2) && (args[0].equals("--replay"))) {
-            new XHSI(Mode.REPLAY, args[1]);
+        } else if ((args.length >= 2) && (args.length <= 4) && (args[0].equals("--replay"))) {
+            float replay_speed = 1.0f;
+            int replay_start = 0;
+            if (args.length >= 3)
+                replay_speed = Float.parseFloat(args[2]);
+            if (args.length == 4)
+                replay_start = parse_replay_time(args[3]);
+            new XHSI(Mode.REPLAY, args[1], replay_speed, replay_start);
         } else if ((args.length == 1) && (args[0].equals("--help"))) {
             display_usage_info();
         } else if ((args.length == 1) && (args[0].equals("--version"))) {
@@ -176,8 +200,11 @@ public class XHSI implements ActionListener {
         "                                      <filename>. If <frame_rate>\n" +
         "                                      is given, records every <frame_rate>'th\n" +
         "                                      received data frame to save space.\n" +
-        "   --replay <filename>                to replay the recording stored\n" +
-        "                                      in <filename>\n" +
+        "   --replay <filename> [<speed> [<start>]]\n" +
+        "                                      to replay the recording stored\n" +
+        "                                      in <filename>. <speed> is 0.25 to 16\n" +
+        "                                      times real time, <start> is the time\n" +
+        "                                      into the recording, as [[h:]m:]s\n" +
         "   --version                          to display the version of XHSI\n" +
         "   --help                             to display this help\n"
         );
@@ -192,12 +219,8 @@ public class XHSI implements ActionListener {
 
             logger.info("recording flight session to '" + rec_file + "' ...");
 
-            XPlaneFlightSessionRecorder recorder = new XPlaneFlightSessionRecorder(rec_file, rec_rate);
-            // XPlaneUDPReceiver udp_receiver = new XPlaneUDPReceiver( Integer.parseInt(preferences.get_preference(XHSIPreferences.PREF_PORT)) );
-            XPlaneUDPReceiver udp_receiver = new XPlaneUDPReceiver( Integer.parseInt(preferences.get_preference(XHSIPreferences.PREF_PORT)), 
-            		preferences.get_preference(XHSIPreferences.PREF_MULTICAST).equals("true"),
-            		preferences.get_preference(XHSIPreferences.PREF_GROUP) );
-            udp_receiver.add_reception_observer(recorder);
+            XPlaneFlightSessionRecorder recorder = new XPlaneFlightSessionRecorder(rec_file, rec_rate, this.preferences.get_recording_compressed());
+            StoppableThread udp_receiver = create_udp_receiver(recorder);
             this.running_threads.add(recorder);
             recorder.start();
             this.running_threads.add(udp_receiver);
@@ -208,7 +231,7 @@ public class XHSI implements ActionListener {
     }
 
 
-    public XHSI(Mode mode, String filename) throws Exception {
+    public XHSI(Mode mode, String filename, float speed, int start) throws Exception {
 
         init();
 
@@ -217,6 +240,13 @@ public class XHSI implements ActionListener {
             logger.info("playing flight session recording from '" + filename + "' ...");
 
             XPlaneFlightSessionPlayer player = new XPlaneFlightSessionPlayer(filename, Long.parseLong(this.preferences.get_preference(XHSIPreferences.PREF_REPLAY_DELAY_PER_FRAME)));
+            player.set_speed(speed);
+            player.seek(start);
+            this.player = player;
+            if ( this.xhsi_frame.getJMenuBar() != null ) {
+                this.xhsi_frame.getJMenuBar().add(create_replay_menu(speed));
+                this.xhsi_frame.getJMenuBar().revalidate();
+            }
             XPlaneDataPacketDecoder decoder = new XPlaneDataPacketDecoder(model_instance);
             player.add_sim_data_observer(decoder);
             this.running_threads.add(player);
@@ -228,6 +258,10 @@ public class XHSI implements ActionListener {
             this.running_threads.add(find_nrst_arpt);
             find_nrst_arpt.start();
 
+            XPlaneTerrainAwareness terrain_awareness = new XPlaneTerrainAwareness( this.model_instance.get_aircraft_instance() );
+            this.running_threads.add(terrain_awareness);
+            terrain_awareness.start();
+
             // thanks for your patience...
             for (int i=0; i<instruments.size(); i++) {
                 XHSIInstrument duf = instruments.get(i);
@@ -251,11 +285,8 @@ public class XHSI implements ActionListener {
                 // Communicating with X-Plane/XHSI_plugin
                 // XPlaneUDPSender udp_sender = new XPlaneUDPSender();
                 // XPlaneUDPReceiver udp_receiver = new XPlaneUDPReceiver( Integer.parseInt(preferences.get_preference(XHSIPreferences.PREF_PORT)) );
-                XPlaneUDPReceiver udp_receiver = new XPlaneUDPReceiver( Integer.parseInt(preferences.get_preference(XHSIPreferences.PREF_PORT)),
-                		preferences.get_preference(XHSIPreferences.PREF_MULTICAST).equals("true"),
-                		preferences.get_preference(XHSIPreferences.PREF_GROUP) );
                 XPlaneDataPacketDecoder decoder = new XPlaneDataPacketDecoder(model_instance);
-                udp_receiver.add_reception_observer(decoder);
+                StoppableThread udp_receiver = create_udp_receiver(decoder);
                 XPlaneSimDataRepository.replaying = false;
                 this.running_threads.add(udp_receiver);
                 XHSIStatus.status = XHSIStatus.STATUS_RECEIVING;
@@ -264,6 +295,10 @@ public class XHSI implements ActionListener {
                 XPlaneNearestAirport find_nrst_arpt = new XPlaneNearestAirport( this.model_instance.get_aircraft_instance() );
                 this.running_threads.add(find_nrst_arpt);
                 find_nrst_arpt.start();
+
+                XPlaneTerrainAwareness terrain_awareness = new XPlaneTerrainAwareness( this.model_instance.get_aircraft_instance() );
+                this.running_threads.add(terrain_awareness);
+                terrain_awareness.start();
                 
                 // Receiving weather data
                 XPlaneWeatherReceiver weather_receiver = new XPlaneWeatherReceiver( 
@@ -301,6 +336,46 @@ public class XHSI implements ActionListener {
     }
 
 
+    private StoppableThread create_udp_receiver(XPlaneDataPacketObserver observer) throws Exception {
+
+        int port = Integer.parseInt(preferences.get_preference(XHSIPreferences.PREF_PORT));
+        boolean multicast = preferences.get_preference(XHSIPreferences.PREF_MULTICAST).equals("true");
+        String group = preferences.get_preference(XHSIPreferences.PREF_GROUP);
+
+        int queue_size = preferences.get_decode_queue_size();
+        if ( queue_size > 0 ) {
+            // decode on a separate thread, so that a slow observer does not delay the next socket read
+            XPlanePacketDispatcher.DropPolicy drop_policy;
+            if ( preferences.get_drop_policy().equalsIgnoreCase(XHSIPreferences.DROP_NONE) ) {
+                drop_policy = XPlanePacketDispatcher.DropPolicy.NONE;
+            } else if ( preferences.get_drop_policy().equalsIgnoreCase(XHSIPreferences.DROP_NEWEST) ) {
+                drop_policy = XPlanePacketDispatcher.DropPolicy.NEWEST;
+            } else {
+                // DROP_COALESCE, or DROP_OLDEST from an older preferences file
+                drop_policy = XPlanePacketDispatcher.DropPolicy.COALESCE;
+            }
+            XPlanePacketDispatcher dispatcher = new XPlanePacketDispatcher(queue_size, XPlaneUDPChannelReceiver.PACKET_BUFFER_SIZE, drop_policy);
+            dispatcher.add_packet_observer(observer);
+            XPlanePacketStatistics.get_instance().set_dispatcher(dispatcher);
+            this.running_threads.add(dispatcher);
+            dispatcher.start();
+            observer = dispatcher;
+        }
+
+        if ( preferences.get_nio_receiver() ) {
+            logger.config("Using NIO UDP receiver");
+            XPlaneUDPChannelReceiver channel_receiver = new XPlaneUDPChannelReceiver(port, multicast, group);
+            channel_receiver.add_reception_observer(observer);
+            return channel_receiver;
+        } else {
+            XPlaneUDPReceiver udp_receiver = new XPlaneUDPReceiver(port, multicast, group);
+            udp_receiver.add_reception_observer(observer);
+            return udp_receiver;
+        }
+
+    }
+
+
     private void init() throws Exception {
 
         this.running_threads = new ArrayList<Object>();
@@ -326,6 +401,9 @@ public class XHSI implements ActionListener {
         // create a sim model with Aircraft, Avionics, SimDataRepository, etc...
         model_instance = new XPlaneModelFactory();
 
+        // paces the updates of all windows
+        this.repaint_scheduler = new RepaintScheduler();
+
         // create user interface
         create_UI();
 
@@ -476,11 +554,10 @@ public class XHSI implements ActionListener {
 //AptNavXP900DatTaxiChartBuilder taxi = new AptNavXP900DatTaxiChartBuilder(this.preferences.get_preference(XHSIPreferences.PREF_APTNAV_DIR));
 //taxi.get_chart("YMML");
         
-        // add components update watchdog
-        logger.info("Starting UI heartbeat");
-        UIHeartbeat ui_heartbeat = new UIHeartbeat(this.xhsi_ui, pfd_ui, nd_ui, eicas_ui, mfd_ui, cdu_ui, 1000);
-        ui_heartbeat.start();
-        this.running_threads.add(ui_heartbeat);
+        // start updating the windows, this also takes care of their heartbeat
+        logger.info("Starting repaint scheduler");
+        this.repaint_scheduler.start();
+        this.running_threads.add(this.repaint_scheduler);
 
     }
 
@@ -594,7 +671,7 @@ public class XHSI implements ActionListener {
         }
 
         this.xhsi_ui = new ConWinComponent( model_instance );
-        model_instance.get_repository_instance().add_observer(this.xhsi_ui);
+        model_instance.get_repository_instance().add_observer(this.repaint_scheduler.add_display(this.xhsi_ui, CONWIN_FPS));
         
         this.xhsi_frame.getContentPane().add(this.xhsi_ui);
         this.xhsi_frame.pack();
@@ -646,48 +723,48 @@ public class XHSI implements ActionListener {
             switch (instrument_window.get_index()) {
                 case XHSIInstrument.EMPTY_ID :
                     instrument_window.components = new EmptyComponent(model_instance, instrument_window.du);
-                    model_instance.get_repository_instance().add_observer( (EmptyComponent)instrument_window.components );
+                    model_instance.get_repository_instance().add_observer( this.repaint_scheduler.add_display((EmptyComponent)instrument_window.components, this.preferences.get_panel_fps(du_num)) );
                     min_size = true;
                     break;
                 case XHSIInstrument.PFD_ID :
                     instrument_window.components = new PFDComponent(model_instance, instrument_window.du);
-                    model_instance.get_repository_instance().add_observer( (PFDComponent)instrument_window.components );
+                    model_instance.get_repository_instance().add_observer( this.repaint_scheduler.add_display((PFDComponent)instrument_window.components, this.preferences.get_panel_fps(du_num)) );
                     min_size = true;
                     break;
                 case XHSIInstrument.ND_ID :
                     instrument_window.components = new NDComponent(model_instance, instrument_window.du);
-                    model_instance.get_repository_instance().add_observer( (NDComponent)instrument_window.components );
+                    model_instance.get_repository_instance().add_observer( this.repaint_scheduler.add_display((NDComponent)instrument_window.components, this.preferences.get_panel_fps(du_num)) );
                     min_size = true;
                     break;
                 case XHSIInstrument.EICAS_ID :
                     instrument_window.components = new EICASComponent(model_instance, instrument_window.du);
-                    model_instance.get_repository_instance().add_observer( (EICASComponent)instrument_window.components );
+                    model_instance.get_repository_instance().add_observer( this.repaint_scheduler.add_display((EICASComponent)instrument_window.components, this.preferences.get_panel_fps(du_num)), EICASComponent.SUBSCRIBED_IDS );
                     min_size = true;
                     break;
                 case XHSIInstrument.MFD_ID :
                     // instrument_window.components = new MFDComponent(model_instance, du_num);
                 	instrument_window.components = new MFDComponent(model_instance, instrument_window.du);
-                    model_instance.get_repository_instance().add_observer( (MFDComponent)instrument_window.components );
+                    model_instance.get_repository_instance().add_observer( this.repaint_scheduler.add_display((MFDComponent)instrument_window.components, this.preferences.get_panel_fps(du_num)) );
                     min_size = true;
                     break;
                 case XHSIInstrument.MFDCP_ID :
                     instrument_window.components = new MFDCPComponent(model_instance, instrument_window.du);
-                    model_instance.get_repository_instance().add_observer( (MFDCPComponent)instrument_window.components );
+                    model_instance.get_repository_instance().add_observer( this.repaint_scheduler.add_display((MFDCPComponent)instrument_window.components, this.preferences.get_panel_fps(du_num)) );
                     min_size = true;
                     break;
                 case XHSIInstrument.ANNUN_ID :
                     instrument_window.components = new AnnunComponent(model_instance, instrument_window.du);
-                    model_instance.get_repository_instance().add_observer( (AnnunComponent)instrument_window.components );
+                    model_instance.get_repository_instance().add_observer( this.repaint_scheduler.add_display((AnnunComponent)instrument_window.components, this.preferences.get_panel_fps(du_num)) );
                     min_size = true;
                     break;
                 case XHSIInstrument.CLOCK_ID :
                     instrument_window.components = new ClockComponent(model_instance, instrument_window.du);
-                    model_instance.get_repository_instance().add_observer( (ClockComponent)instrument_window.components );
+                    model_instance.get_repository_instance().add_observer( this.repaint_scheduler.add_display((ClockComponent)instrument_window.components, this.preferences.get_panel_fps(du_num)), ClockComponent.SUBSCRIBED_IDS );
                     min_size = true;
                     break;
                 case XHSIInstrument.CDU_ID :
                     instrument_window.components = new CDUComponent(model_instance, instrument_window.du);
-                    model_instance.get_repository_instance().add_observer( (CDUComponent)instrument_window.components );
+                    model_instance.get_repository_instance().add_observer( this.repaint_scheduler.add_display((CDUComponent)instrument_window.components, this.preferences.get_panel_fps(du_num)) );
                     min_size = true;
                     break;
             }
@@ -836,6 +913,72 @@ public class XHSI implements ActionListener {
     }
 
 
+    private JMenu create_replay_menu(float speed) {
+
+        JMenuItem menu_item;
+
+        JMenu replay_menu = new JMenu("Replay");
+        replay_menu.setMnemonic(KeyEvent.VK_R);
+
+        menu_item = new JCheckBoxMenuItem(XHSI.ACTION_REPLAY_PAUSE);
+        menu_item.setToolTipText("Pause or resume the replay");
+        menu_item.addActionListener(this);
+        menu_item.setMnemonic(KeyEvent.VK_P);
+        replay_menu.add(menu_item);
+
+        replay_menu.addSeparator();
+
+        menu_item = new JMenuItem(XHSI.ACTION_REPLAY_BACK);
+        menu_item.addActionListener(this);
+        menu_item.setMnemonic(KeyEvent.VK_B);
+        replay_menu.add(menu_item);
+
+        menu_item = new JMenuItem(XHSI.ACTION_REPLAY_FORWARD);
+        menu_item.addActionListener(this);
+        menu_item.setMnemonic(KeyEvent.VK_F);
+        replay_menu.add(menu_item);
+
+        menu_item = new JMenuItem(XHSI.ACTION_REPLAY_GOTO);
+        menu_item.setToolTipText("Continue the replay at any time of the recording");
+        menu_item.addActionListener(this);
+        menu_item.setMnemonic(KeyEvent.VK_G);
+        replay_menu.add(menu_item);
+
+        replay_menu.addSeparator();
+
+        ButtonGroup speed_group = new ButtonGroup();
+        for (int i=0; i<REPLAY_SPEEDS.length; i++) {
+            menu_item = new JRadioButtonMenuItem(XHSI.ACTION_REPLAY_SPEED + REPLAY_SPEEDS[i]);
+            menu_item.addActionListener(this);
+            menu_item.setSelected(REPLAY_SPEEDS[i] == speed);
+            speed_group.add(menu_item);
+            replay_menu.add(menu_item);
+        }
+
+        return replay_menu;
+    }
+
+
+    /**
+     * @param time    - [[h:]m:]s
+     * @return        - ms
+     */
+    private static int parse_replay_time(String time) {
+        String[] fields = time.trim().split(":");
+        int seconds = 0;
+        for (int i=0; i<fields.length; i++) {
+            seconds = seconds * 60 + Integer.parseInt(fields[i].trim());
+        }
+        return seconds * 1000;
+    }
+
+
+    private static String format_replay_time(int time) {
+        int seconds = time / 1000;
+        return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+
     public void actionPerformed(ActionEvent event) {
 
         String command = event.getActionCommand();
@@ -855,6 +998,29 @@ public class XHSI implements ActionListener {
             for (int i=0; i<instruments.size(); i++) {
                 instruments.get(i).frame.setAlwaysOnTop( ! instruments.get(i).frame.isAlwaysOnTop() );
             }
+        } else if (command.equals(ACTION_REPLAY_PAUSE)) {
+            this.player.set_paused( ((JCheckBoxMenuItem)event.getSource()).isSelected() );
+        } else if (command.equals(ACTION_REPLAY_BACK)) {
+            this.player.seek(this.player.get_position() - 60000);
+        } else if (command.equals(ACTION_REPLAY_FORWARD)) {
+            this.player.seek(this.player.get_position() + 60000);
+        } else if (command.startsWith(ACTION_REPLAY_SPEED)) {
+            this.player.set_speed(Float.parseFloat(command.substring(ACTION_REPLAY_SPEED.length())));
+        } else if (command.equals(ACTION_REPLAY_GOTO)) {
+            if ( ! this.player.is_seekable() ) {
+                JOptionPane.showMessageDialog(this.xhsi_frame, "This recording has no packet times", "Replay", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            String time = (String) JOptionPane.showInputDialog(this.xhsi_frame,
+                    "Time into the recording, up to " + format_replay_time(this.player.get_duration()) + " :",
+                    "Replay", JOptionPane.QUESTION_MESSAGE, null, null, format_replay_time(this.player.get_position()));
+            if ( time != null ) {
+                try {
+                    this.player.seek(parse_replay_time(time));
+                } catch (NumberFormatException nfe) {
+                    logger.warning("Not a replay time : " + time);
+                }
+            }
         } else if (command.equals(ACTION_ABOUT)) {
             JOptionPane.showMessageDialog(this.xhsi_frame,
                     "XHSI " + XHSI.RELEASE + "\n" +
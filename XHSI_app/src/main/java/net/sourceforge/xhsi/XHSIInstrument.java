@@ -30,28 +30,30 @@ public class XHSIInstrument {
 
     public static enum DU {
 
-        Empty (EMPTY_ID, "Empty", 160, 160),
-        PFD (PFD_ID, "PFD", 320, 320),
-        ND (ND_ID, "ND", 320, 320),
-        EICAS (EICAS_ID, "EICAS", 320, 320),
-        MFD (MFD_ID, "MFD", 320, 320),
-        MFDCP(MFDCP_ID, "MFD Control Panel", 160, 160),
-        CDU (CDU_ID, "CDU", 240, 320),
-        Annunciators (ANNUN_ID, "Annunciators", 160, 160),
-        Clock (CLOCK_ID, "Clock", 160, 160);
+        Empty (EMPTY_ID, "Empty", 160, 160, 2),
+        PFD (PFD_ID, "PFD", 320, 320, 30),
+        ND (ND_ID, "ND", 320, 320, 20),
+        EICAS (EICAS_ID, "EICAS", 320, 320, 15),
+        MFD (MFD_ID, "MFD", 320, 320, 15),
+        MFDCP(MFDCP_ID, "MFD Control Panel", 160, 160, 10),
+        CDU (CDU_ID, "CDU", 240, 320, 10),
+        Annunciators (ANNUN_ID, "Annunciators", 160, 160, 10),
+        Clock (CLOCK_ID, "Clock", 160, 160, 5);
 
         private boolean active;
         private final int id;
         private final String name;
         private final int min_width;
         private final int min_height;
+        private final int default_fps;
 
-        DU(int id, String name, int min_width, int min_height) {
+        DU(int id, String name, int min_width, int min_height, int default_fps) {
             this.active = true;
             this.id = id;
             this.name = name;
             this.min_width = min_width;
             this.min_height = min_height;
+            this.default_fps = default_fps;
         }
 
         public void activate(boolean show) {
@@ -78,6 +80,10 @@ public class XHSIInstrument {
             return this.min_height;
         }
 
+        public int get_default_fps() {
+            return this.default_fps;
+        }
+
     }
 
 
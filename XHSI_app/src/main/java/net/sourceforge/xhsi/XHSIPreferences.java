@@ -47,10 +47,15 @@ public class XHSIPreferences {
     public static final String PREF_APTNAV_DIR = "aptnav.dir";
     public static final String PREF_EGPWS_DB_DIR = "egpws_database.dir";
     public static final String PREF_REPLAY_DELAY_PER_FRAME = "replay.steps.delay";
+    public static final String PREF_RECORDING_COMPRESSION = "recording.compression";
     public static final String PREF_PORT = "port";
     public static final String PREF_WEATHER_PORT = "weather.port";
     public static final String PREF_GROUP = "multicast.group";
     public static final String PREF_MULTICAST = "multicast.enable";
+    public static final String PREF_NIO_RECEIVER = "udp.nio_receiver";
+    public static final String PREF_DECODE_QUEUE = "udp.decode_queue";
+    public static final String PREF_DROP_POLICY = "udp.drop_policy";
+    public static final String PREF_DELTA_PACKETS = "udp.delta_packets";
     public static final String PREF_LOGLEVEL = "loglevel";
     public static final String PREF_INSTRUMENT_POSITION = "instrument.position";
     public static final String PREF_DISPLAY_STATUSBAR = "display.statusbar";
@@ -73,6 +78,7 @@ public class XHSIPreferences {
     public static final String PREF_DU_BORDER = ".border";
     public static final String PREF_DU_SQUARE = ".square";
     public static final String PREF_DU_ORIENTATION = ".orientation";
+    public static final String PREF_DU_FPS = ".fps";
     public static final String PREF_CONWIN_MINIMIZED = "conwin.minimized";
 
     // GRAPHICS
@@ -173,6 +179,17 @@ public class XHSIPreferences {
     public static final String XHSI_PLUGIN = "XHSI_plugin";
     // public static final String SCS = "Cross-Simulator_SCS"; if ever ...
 
+    // for PREF_DROP_POLICY
+    public static final String DROP_COALESCE = "coalesce";
+    // older name of DROP_COALESCE, still accepted
+    public static final String DROP_OLDEST = "oldest";
+    public static final String DROP_NEWEST = "newest";
+    public static final String DROP_NONE = "none";
+
+    // for PREF_RECORDING_COMPRESSION
+    public static final String RECORDING_DEFLATE = "deflate";
+    public static final String RECORDING_UNCOMPRESSED = "none";
+
     // for PREF_INSTRUMENT_POSITION
     public static final String PILOT = "pilot";
     public static final String COPILOT = "copilot";
@@ -415,6 +432,49 @@ public class XHSIPreferences {
     	return get_preference(PREF_ALLOW_SHUTDOWN).equalsIgnoreCase("true");
     }
     
+    /**
+     * @return            - receive UDP packets with XPlaneUDPChannelReceiver (java.nio)
+     *                      instead of XPlaneUDPReceiver
+     */
+    public boolean get_nio_receiver() {
+        return get_preference(PREF_NIO_RECEIVER).equalsIgnoreCase("true");
+    }
+    
+    /**
+     * @return            - number of packets that can be queued between the UDP receiver
+     *                      and the decoder, 0 to decode on the receiver thread
+     */
+    public int get_decode_queue_size() {
+        try {
+            return Math.max(0, Integer.parseInt(get_preference(PREF_DECODE_QUEUE)));
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return            - which sim data packets to drop when the decoder falls behind:
+     *                      DROP_COALESCE, DROP_NEWEST or DROP_NONE
+     */
+    public String get_drop_policy() {
+        return get_preference(PREF_DROP_POLICY);
+    }
+
+    /**
+     * @return            - ask the plugin for delta packets, if it supports them
+     *                      (every XHSI on the network must support them as well)
+     */
+    public boolean get_delta_packets() {
+        return get_preference(PREF_DELTA_PACKETS).equalsIgnoreCase("true");
+    }
+
+    /**
+     * @return            - compress flight session recordings with deflate
+     */
+    public boolean get_recording_compressed() {
+        return ! get_preference(PREF_RECORDING_COMPRESSION).equalsIgnoreCase(RECORDING_UNCOMPRESSED);
+    }
+    
     // WINDOWS
 
     public boolean get_start_ontop() {
@@ -517,6 +577,15 @@ public class XHSIPreferences {
     }
 
 
+    /**
+     * @return            - the target frame rate of the panel
+     *
+     */
+    public int get_panel_fps(int i) {
+        return Integer.parseInt(get_preference(PREF_DU_PREPEND + i + PREF_DU_FPS));
+    }
+
+
     public boolean get_conwin_minimized() {
         return get_preference(PREF_CONWIN_MINIMIZED).equalsIgnoreCase("true");
     }
@@ -1178,6 +1247,26 @@ public class XHSIPreferences {
             this.unsaved_changes = true;
         }
         
+        if ( ! this.preferences.containsKey(PREF_NIO_RECEIVER) ) {
+            this.preferences.setProperty(PREF_NIO_RECEIVER, "false");
+            this.unsaved_changes = true;
+        }
+        
+        if ( ! this.preferences.containsKey(PREF_DECODE_QUEUE) ) {
+            this.preferences.setProperty(PREF_DECODE_QUEUE, "64");
+            this.unsaved_changes = true;
+        }
+        
+        if ( ! this.preferences.containsKey(PREF_DROP_POLICY) ) {
+            this.preferences.setProperty(PREF_DROP_POLICY, DROP_COALESCE);
+            this.unsaved_changes = true;
+        }
+        
+        if ( ! this.preferences.containsKey(PREF_DELTA_PACKETS) ) {
+            this.preferences.setProperty(PREF_DELTA_PACKETS, "false");
+            this.unsaved_changes = true;
+        }
+        
         if ( ! this.preferences.containsKey(PREF_APTNAV_DIR) ) {
             this.preferences.setProperty(PREF_APTNAV_DIR, ".");
             this.unsaved_changes = true;
@@ -1193,6 +1282,11 @@ public class XHSIPreferences {
             this.unsaved_changes = true;
         }
 
+        if ( ! this.preferences.containsKey(PREF_RECORDING_COMPRESSION) ) {
+            this.preferences.setProperty(PREF_RECORDING_COMPRESSION, RECORDING_DEFLATE);
+            this.unsaved_changes = true;
+        }
+
         if ( ! this.preferences.containsKey(PREF_DISPLAY_STATUSBAR) ) {
             this.preferences.setProperty(PREF_DISPLAY_STATUSBAR, "true");
             this.unsaved_changes = true;
@@ -1286,6 +1380,11 @@ public class XHSIPreferences {
                 this.unsaved_changes = true;
             }
 
+            if ( ! this.preferences.containsKey(PREF_DU_PREPEND + i + PREF_DU_FPS) ) {
+                this.preferences.setProperty(PREF_DU_PREPEND + i + PREF_DU_FPS, "" + du.get_default_fps());
+                this.unsaved_changes = true;
+            }
+
         }
 
         if ( ! this.preferences.containsKey(PREF_CONWIN_MINIMIZED) ) {
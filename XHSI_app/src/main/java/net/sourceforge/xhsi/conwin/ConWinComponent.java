@@ -6,8 +6,8 @@
 * which is used by all HSI elements to determine positions and sizes.
 * 
 * This component is notified when new data packets from the flightsimulator
-* have been received and performs a repaint. This component is also triggered
-* by UIHeartbeat to detect situations without reception.
+* have been received and performs a repaint, paced by RepaintScheduler. The
+* scheduler also calls its heartbeat to detect situations without reception.
 * 
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
@@ -42,12 +42,12 @@ import net.sourceforge.xhsi.XHSIStatus;
 import net.sourceforge.xhsi.model.Aircraft;
 import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.ModelFactory;
-import net.sourceforge.xhsi.model.Observer;
+import net.sourceforge.xhsi.flightdeck.HeartbeatObserver;
 import net.sourceforge.xhsi.model.WeatherRepository;
 
 
 
-public class ConWinComponent extends Component implements Observer, PreferencesObserver {
+public class ConWinComponent extends Component implements HeartbeatObserver, PreferencesObserver {
 
     private static final long serialVersionUID = 1L;
     public static boolean COLLECT_PROFILING_INFORMATION = false;
@@ -92,6 +92,7 @@ public class ConWinComponent extends Component implements Observer, PreferencesO
 
     public void paint(Graphics g) {
 
+        this.model_factory.get_repository_instance().pin_frame();
         g2 = (Graphics2D)g;
         g2.setRenderingHints(conwin_gc.rendering_hints);
         g2.setStroke(new BasicStroke(2.0f));
@@ -32,6 +32,8 @@ import net.sourceforge.xhsi.XHSIStatus;
 
 import net.sourceforge.xhsi.model.ModelFactory;
 import net.sourceforge.xhsi.model.SimDataRepository;
+import net.sourceforge.xhsi.model.xplane.XPlanePacketStatistics;
+import net.sourceforge.xhsi.model.xplane.XPlanePacketTypeStatistics;
 import net.sourceforge.xhsi.util.RunningAverager;
 
 
@@ -68,6 +70,20 @@ public class StatusBar extends ConWinSubcomponent {
     int utc_y;
     int utc_text_width = 0;
 
+    int udp_x;
+    int udp_y;
+    int udp_text_width = 0;
+
+    XPlanePacketStatistics packet_statistics = XPlanePacketStatistics.get_instance();
+    long udp_last_update = 0;
+    long udp_last_packets = 0;
+    long udp_last_bytes = 0;
+    long udp_last_lost = 0;
+    long udp_last_expected = 0;
+    String udp_rate_text = "";
+    String udp_quality_text = "";
+    Color udp_quality_color = Color.BLACK;
+
 
     public StatusBar(ModelFactory model_factory, ConWinGraphicsConfig hsi_gc, Component parent_component) {
 
@@ -147,12 +163,21 @@ public class StatusBar extends ConWinSubcomponent {
             utc_x = gc.panel_size.width - gc.border_right - nav_db_text_width - egpws_db_text_width - 65 - utc_text_width;
             utc_y = ConWinGraphicsConfig.STATUS_BAR_HEIGHT - 25;
 
+            // compute UDP statistics width only once
+            if (udp_text_width == 0) {
+                udp_text_width = this.gc.get_text_width(g2, this.gc.font_statusbar, "LOSS 00.0% JIT 000ms");
+            }
+
+            udp_x = fps_x + 130;
+            udp_y = ConWinGraphicsConfig.STATUS_BAR_HEIGHT - 27;
+
             draw_data_source(g2);
             draw_weather_source(g2);
             draw_frame_rate(g2);
             draw_nav_db_status(g2);
             draw_egpws_db_status(g2);
             draw_utc_clock(g2);
+            draw_udp_statistics(g2);
     }
 
 
@@ -272,6 +297,61 @@ public class StatusBar extends ConWinSubcomponent {
     }
 
 
+    private void update_udp_statistics() {
+
+        long now = System.currentTimeMillis();
+        if ( now - this.udp_last_update < 1000 ) return;
+
+        long packets = 0;
+        long bytes = 0;
+        long lost = 0;
+        long expected = 0;
+        double jitter = 0.0;
+        XPlanePacketTypeStatistics[] types = this.packet_statistics.get_packet_types();
+        for (int i=0; i<types.length; i++) {
+            packets += types[i].getReceivedPackets();
+            bytes += types[i].getReceivedBytes();
+            lost += types[i].getLostPackets();
+            expected += types[i].getLostPackets() + types[i].getSequencedPackets();
+            jitter = Math.max(jitter, types[i].getJitterMillis());
+        }
+
+        float seconds = (now - this.udp_last_update) / 1000.0f;
+        float loss = ( expected > this.udp_last_expected ) ? 100.0f * (lost - this.udp_last_lost) / (expected - this.udp_last_expected) : 0.0f;
+        this.udp_rate_text = Math.round((packets - this.udp_last_packets) / seconds) + "/s " + Math.round((bytes - this.udp_last_bytes) / seconds / 1000.0f) + "kB/s";
+        this.udp_quality_text = "LOSS " + Math.round(loss * 10.0f) / 10.0f + "% JIT " + Math.round(jitter) + "ms";
+        if ( loss >= 1.0f ) {
+            this.udp_quality_color = Color.RED;
+        } else if ( (loss > 0.0f) || (jitter > 20.0) ) {
+            this.udp_quality_color = Color.ORANGE;
+        } else {
+            this.udp_quality_color = Color.BLACK;
+        }
+
+        this.udp_last_update = now;
+        this.udp_last_packets = packets;
+        this.udp_last_bytes = bytes;
+        this.udp_last_lost = lost;
+        this.udp_last_expected = expected;
+
+    }
+
+
+    public void draw_udp_statistics(Graphics2D g2) {
+
+        // only when there is room left of the UTC clock
+        if ( XHSIStatus.status.equals(XHSIStatus.STATUS_RECEIVING) && ( udp_x + udp_text_width < utc_x ) ) {
+            update_udp_statistics();
+            g2.setFont(gc.font_statusbar);
+            g2.setColor(Color.BLACK);
+            g2.drawString(this.udp_rate_text, udp_x, udp_y + 11);
+            g2.setColor(this.udp_quality_color);
+            g2.drawString(this.udp_quality_text, udp_x, udp_y + 23);
+        }
+
+    }
+
+
     public void draw_frame_rate(Graphics2D g2) {
 
         if (( XHSIStatus.status.equals(XHSIStatus.STATUS_RECEIVING) ) || ( XHSIStatus.status.equals(XHSIStatus.STATUS_PLAYING_RECORDING) )) {
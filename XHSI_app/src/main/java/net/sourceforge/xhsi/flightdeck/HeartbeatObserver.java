@@ -0,0 +1,28 @@
+/**
+* HeartbeatObserver.java
+*
+* An Observer of the sim data that also has to be called about once per
+* second, whether new data arrived or not. Implemented by the components
+* of the display units and the control window.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.flightdeck;
+
+import net.sourceforge.xhsi.model.Observer;
+
+public interface HeartbeatObserver extends Observer {
+    void heartbeat();
+}
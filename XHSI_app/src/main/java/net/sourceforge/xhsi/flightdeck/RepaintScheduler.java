@@ -0,0 +1,176 @@
+/**
+* RepaintScheduler.java
+*
+* Paces the updates of the display units. Instead of being updated by
+* SimDataRepository.tick_updates() on every data packet, each display unit
+* is registered here with a target frame rate. A tick only marks the display
+* as changed; this thread then updates a changed display at most once per
+* frame, and skips the frame when nothing changed. It also calls the
+* heartbeat of every display once per second, which used to be done by
+* UIHeartbeat.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.flightdeck;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import net.sourceforge.xhsi.StoppableThread;
+import net.sourceforge.xhsi.model.Observer;
+
+
+public class RepaintScheduler extends StoppableThread {
+
+    public static final int MIN_FPS = 1;
+    public static final int MAX_FPS = 60;
+
+    private static final long HEARTBEAT_INTERVAL = 1000000000L;
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+
+    /**
+     * The Observer that is added to the SimDataRepository in place of the display
+     */
+    public static class ScheduledDisplay implements Observer {
+
+        private HeartbeatObserver display;
+        private long frame_interval;
+        private long next_frame;
+        private volatile boolean changed = true;
+
+        private volatile long painted_frames = 0;
+        private volatile long skipped_frames = 0;
+
+        private ScheduledDisplay(HeartbeatObserver display, int fps) {
+            this.display = display;
+            this.frame_interval = 1000000000L / Math.max(MIN_FPS, Math.min(MAX_FPS, fps));
+        }
+
+        // decoder thread
+        public void update() {
+            this.changed = true;
+        }
+
+        public int get_fps() {
+            return (int) (1000000000L / this.frame_interval);
+        }
+
+        public long get_painted_frames() {
+            return this.painted_frames;
+        }
+
+        /**
+         * @return    - frames that were not updated because nothing changed
+         */
+        public long get_skipped_frames() {
+            return this.skipped_frames;
+        }
+
+    }
+
+
+    private CopyOnWriteArrayList<ScheduledDisplay> displays;
+
+
+    public RepaintScheduler() {
+        super();
+        this.displays = new CopyOnWriteArrayList<ScheduledDisplay>();
+        this.keep_running = true;
+        this.setName("XHSI repaint scheduler");
+    }
+
+
+    /**
+     * @return    - the Observer to add to the SimDataRepository instead of the display itself
+     */
+    public ScheduledDisplay add_display(HeartbeatObserver display, int fps) {
+        ScheduledDisplay scheduled = new ScheduledDisplay(display, fps);
+        this.displays.add(scheduled);
+        logger.config("Scheduling " + display.getClass().getSimpleName() + " at " + scheduled.get_fps() + " fps");
+        return scheduled;
+    }
+
+
+    public void run() {
+        long now = System.nanoTime();
+        long next_heartbeat = now + HEARTBEAT_INTERVAL;
+        for (ScheduledDisplay scheduled : this.displays) {
+            scheduled.next_frame = now;
+        }
+
+        while (this.keep_running) {
+            now = System.nanoTime();
+            long next_wakeup = next_heartbeat;
+
+            for (ScheduledDisplay scheduled : this.displays) {
+                if ( now - scheduled.next_frame >= 0 ) {
+                    if ( scheduled.changed ) {
+                        scheduled.changed = false;
+                        update(scheduled);
+                        scheduled.painted_frames++;
+                    } else {
+                        scheduled.skipped_frames++;
+                    }
+                    scheduled.next_frame += scheduled.frame_interval;
+                    if ( now - scheduled.next_frame >= 0 ) {
+                        // we fell behind, don't try to catch up
+                        scheduled.next_frame = now + scheduled.frame_interval;
+                    }
+                }
+                if ( scheduled.next_frame - next_wakeup < 0 ) {
+                    next_wakeup = scheduled.next_frame;
+                }
+            }
+
+            if ( now - next_heartbeat >= 0 ) {
+                for (ScheduledDisplay scheduled : this.displays) {
+                    heartbeat(scheduled);
+                }
+                next_heartbeat += HEARTBEAT_INTERVAL;
+                if ( now - next_heartbeat >= 0 ) {
+                    next_heartbeat = now + HEARTBEAT_INTERVAL;
+                }
+            }
+
+            long wait = next_wakeup - System.nanoTime();
+            if ( wait > 0 ) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+        logger.fine("Repaint scheduler stopped");
+    }
+
+
+    private void update(ScheduledDisplay scheduled) {
+        try {
+            scheduled.display.update();
+        } catch (Exception e) {
+            logger.warning("Caught exception while updating " + scheduled.display.getClass().getSimpleName() + " (" + e.toString() + ")");
+        }
+    }
+
+
+    private void heartbeat(ScheduledDisplay scheduled) {
+        try {
+            scheduled.display.heartbeat();
+        } catch (Exception e) {
+            logger.warning("Caught exception in heartbeat of " + scheduled.display.getClass().getSimpleName() + " (" + e.toString() + ")");
+        }
+    }
+
+}
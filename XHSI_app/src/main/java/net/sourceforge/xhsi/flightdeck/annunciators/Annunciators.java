@@ -31,6 +31,7 @@ import java.util.logging.Logger;
 
 
 import net.sourceforge.xhsi.model.ModelFactory;
+import net.sourceforge.xhsi.model.Avionics.EPGWSAlertLevel;
 
 
 public class Annunciators extends AnnunSubcomponent {
@@ -66,7 +67,7 @@ public class Annunciators extends AnnunSubcomponent {
 
         draw1Annun(g2, 0, 0, "STALL", ( this.aircraft.stall_warning() && this.aircraft.battery() ) ? annun_gc.warning_color : off_color);
 
-        draw1Annun(g2, 0, 1, "TERRAIN", ( this.aircraft.terrain_warning() && this.aircraft.battery() ) ? annun_gc.warning_color : off_color);
+        draw1Annun(g2, 0, 1, "TERRAIN", ( ( this.aircraft.terrain_warning() || ( this.aircraft.get_terrain_alert() == EPGWSAlertLevel.WARNING ) ) && this.aircraft.battery() ) ? annun_gc.warning_color : off_color);
 
         draw1Annun(g2, 1, 0, "AP DISCON", ( this.aircraft.ap_disconnect() && this.aircraft.battery() ) ? annun_gc.warning_color : off_color);
 
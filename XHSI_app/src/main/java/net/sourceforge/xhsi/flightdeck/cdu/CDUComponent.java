@@ -6,8 +6,8 @@
 * which is used by all CDU XHSI elements to determine positions and sizes.
 * 
 * This component is notified when new data packets from the flightsimulator
-* have been received and performs a repaint. This component is also triggered
-* by UIHeartbeat to detect situations without reception.
+* have been received and performs a repaint, paced by RepaintScheduler. The
+* scheduler also calls its heartbeat to detect situations without reception.
 * 
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
@@ -48,12 +48,12 @@ import net.sourceforge.xhsi.XHSIInstrument.DU;
 import net.sourceforge.xhsi.model.Aircraft;
 import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.ModelFactory;
-import net.sourceforge.xhsi.model.Observer;
+import net.sourceforge.xhsi.flightdeck.HeartbeatObserver;
 import net.sourceforge.xhsi.model.QpacMcduData;
 import net.sourceforge.xhsi.model.XfmcData;
 
 
-public class CDUComponent extends Component implements Observer, PreferencesObserver, MouseInputListener, KeyListener {
+public class CDUComponent extends Component implements HeartbeatObserver, PreferencesObserver, MouseInputListener, KeyListener {
 
     private static final long serialVersionUID = 1L;
     public static boolean COLLECT_PROFILING_INFORMATION = false;
@@ -121,6 +121,7 @@ public class CDUComponent extends Component implements Observer, PreferencesObse
 
 
     public void paint(Graphics g) {
+        this.model_factory.get_repository_instance().pin_frame();
     	cdu_gc.current_time_millis=System.currentTimeMillis();
         drawAll(g);
     }
@@ -6,8 +6,8 @@
 * which is used by all Clokc elements to determine positions and sizes.
 * 
 * This component is notified when new data packets from the flight simulator
-* have been received and performs a repaint. This component is also triggered
-* by UIHeartbeat to detect situations without reception.
+* have been received and performs a repaint, paced by RepaintScheduler. The
+* scheduler also calls its heartbeat to detect situations without reception.
 * 
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
@@ -40,6 +40,7 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.logging.Logger;
 
 import javax.swing.event.MouseInputListener;
@@ -52,16 +53,38 @@ import net.sourceforge.xhsi.XHSIInstrument.DU;
 import net.sourceforge.xhsi.model.Aircraft;
 import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.ModelFactory;
-import net.sourceforge.xhsi.model.Observer;
+import net.sourceforge.xhsi.flightdeck.HeartbeatObserver;
+import net.sourceforge.xhsi.model.xplane.XPlaneSimDataRepository;
 
 
-public class ClockComponent extends Component implements Observer, PreferencesObserver, MouseInputListener {
+public class ClockComponent extends Component implements HeartbeatObserver, PreferencesObserver, MouseInputListener {
 
     private static final long serialVersionUID = 1L;
     public static boolean COLLECT_PROFILING_INFORMATION = false;
     public static long NB_OF_PAINTS_BETWEEN_PROFILING_INFO_OUTPUT = 100;
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
+    // the sim data that the clock shows; changes of other data do not repaint the clock.
+    // The time values change in every packet, they are left to the one second heartbeat.
+    public static final BitSet SUBSCRIBED_IDS = new BitSet();
+    static {
+        // power
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_BATTERY_ON);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.X737_STATUS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.X737_PFD_PWR);
+        // clock mode and chrono control
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_CLOCK_TIMER_MODE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_CHR_CONTROL);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_TIME_ET_RUNNING);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_TIME_UTC_SOURCE);
+        // date
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_TIME_SHOW_DATE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_TIME_DATE);
+        // cockpit light and display unit brightness
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_GRAPHICS_MISC_COCKPIT_LIGHT_LEVEL_RGB);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_DU_BRIGHT_CLOCK);
+    }
+
 
     // subcomponents --------------------------------------------------------
     ArrayList<ClockSubcomponent> subcomponents = new ArrayList<ClockSubcomponent>();
@@ -109,6 +132,7 @@ public class ClockComponent extends Component implements Observer, PreferencesOb
 
 
     public void paint(Graphics g) {
+        this.model_factory.get_repository_instance().pin_frame();
     	clock_gc.current_time_millis=System.currentTimeMillis();
         drawAll(g);
     }
@@ -192,6 +216,11 @@ public class ClockComponent extends Component implements Observer, PreferencesOb
     }
 
 
+    public void heartbeat() {
+        repaint();
+    }
+
+
     public void componentResized() {
     }
 
@@ -6,8 +6,8 @@
 * which is used by all HSI elements to determine positions and sizes.
 * 
 * This component is notified when new data packets from the flightsimulator
-* have been received and performs a repaint. This component is also triggered
-* by UIHeartbeat to detect situations without reception.
+* have been received and performs a repaint, paced by RepaintScheduler. The
+* scheduler also calls its heartbeat to detect situations without reception.
 * 
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
@@ -34,6 +34,7 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.logging.Logger;
 
 import net.sourceforge.xhsi.PreferencesObserver;
@@ -43,18 +44,135 @@ import net.sourceforge.xhsi.XHSIInstrument.DU;
 import net.sourceforge.xhsi.model.Aircraft;
 import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.ModelFactory;
-import net.sourceforge.xhsi.model.Observer;
+import net.sourceforge.xhsi.flightdeck.HeartbeatObserver;
+import net.sourceforge.xhsi.model.xplane.XPlaneSimDataRepository;
 
 //import net.sourceforge.xhsi.flightdeck.GraphicsConfig;
 
 
-public class EICASComponent extends Component implements Observer, PreferencesObserver {
+public class EICASComponent extends Component implements HeartbeatObserver, PreferencesObserver {
 
     private static final long serialVersionUID = 1L;
     public static boolean COLLECT_PROFILING_INFORMATION = false;
     public static long NB_OF_PAINTS_BETWEEN_PROFILING_INFO_OUTPUT = 100;
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
+    // the sim data that the EICAS shows; changes of other data, like the position,
+    // the attitude or the radios, do not repaint the EICAS
+    public static final BitSet SUBSCRIBED_IDS = new BitSet();
+    static {
+        // power, style and display unit brightness
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_BATTERY_ON);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_AVIONICS_ON);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.AUX_GEN_STATUS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_STYLE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_DU_BRIGHT_EICAS);
+        // aircraft configuration
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_ENGINE_ACF_NUM_ENGINES);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_ENGINE_TYPE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_ENGINE_MAX_EGT);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_CONTROLS_ACF_RSC_REDLINE_PRP);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_CONTROLS_ACF_TRQ_MAX_ENG);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_EICAS_OVERRIDE_TRQ_MAX);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_EICAS_TRQ_SCALE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_CONTROLS_ACF_FLAP_DETENTS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_GEAR_ACF_GEAR_RETRACT);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_AIRCRAFT_GEAR_COUNT);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_PARTS_ACF_SBRKEQ);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_OVERFLOW_ACF_NUM_TANKS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_WEIGHT_ACF_M_FUEL_TOT);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_FUEL_UNITS);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_AIRCRAFT_OVERFLOW_ACF_TANK_RATIO_ + i);
+        // engines
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_N1_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_N2_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_EGT_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_EGT_C_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_ITT_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_ITT_C_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_EPR_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_MPR_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_TRQ_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_FF_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_OIL_PRESS_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_OIL_TEMP_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_ENGINE_ENGN_PROPMODE_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_ENGINE_INDICATORS_OIL_QUANTITY_RATIO_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_ENGINE_INDICATORS_PROP_SPEED_RPM_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_ENGINE_ACTUATORS_THROTTLE_RATIO_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL2_ENGINES_THRUST_REVERSER_DEPLOY_RATIO_ + i);
+        for (int i=0; i<8; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_FLIGHTMODEL_ENGINE_VIB_ + i);
+        // engine alerts and thrust reference
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_ANNUNCIATORS_FUEL_PRESSURE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_ANNUNCIATORS_FUEL_QUANTITY);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_ANNUNCIATORS_OIL_PRESSURE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_ANNUNCIATORS_OIL_TEMPERATURE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_ANNUNCIATORS_REVERSER_DEPLOYED);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.X737_N1_PHASE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.X737_N1_LIMIT_ENG1);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.X737_N1_LIMIT_ENG2);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.UFMC_N1_1);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.UFMC_N1_2);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.UFMC_N1_3);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.UFMC_N1_4);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.CL30_CARETS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.CL30_TO_N1);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_THR_RATING_TYPE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_THR_RATING_N1);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_THR_RATING_EPR);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_FLEX_TEMP);
+        // fuel
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_WEIGHT_M_FUEL_TOTAL);
+        for (int i=0; i<9; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_FUEL_QUANTITY_ + i);
+        // flight controls, gear and brakes
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_CONTROLS_FLAP_RATIO);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_CONTROLS_FLAP_HANDLE_DEPLOY_RATIO);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_CONTROLS_SLATRAT);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_CONTROLS_SPEEDBRAKE_RATIO);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL2_CONTROLS_SPEEDBRAKE_RATIO);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_CONTROLS_ELEVATOR_TRIM);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_CONTROLS_AILERON_TRIM);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_CONTROLS_RUDDER_TRIM);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_CONTROLS_PARKING_BRAKE_RATIO);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_SWITCHES_AUTO_BRAKE_LEVEL);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_AUTO_BRAKE_LEVEL);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.JAR_A320NEO_AUTO_BRAKE_LEVEL);
+        for (int i=0; i<10; i++) SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL2_GEAR_DEPLOY_RATIO_ + i);
+        // hydraulics
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_HYDRAULICS_INDICATORS_HYDRAULIC_FLUID_RATIO_1);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_HYDRAULICS_INDICATORS_HYDRAULIC_FLUID_RATIO_2);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_OPERATION_FAILURES_HYDRAULIC_PRESSURE_RATIO1);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_OPERATION_FAILURES_HYDRAULIC_PRESSURE_RATIO2);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_HYD_B_PRESS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_HYD_G_PRESS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_HYD_Y_PRESS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.JAR_A320NEO_HYD_B_PRESS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.JAR_A320NEO_HYD_G_PRESS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.JAR_A320NEO_HYD_Y_PRESS);
+        // memos: lights, signs, transponder, flight phase
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT_LIGHTS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_TRANSPONDER_MODE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_FAILURES_ONGROUND_ANY);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_Y_AGL);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_INDICATORS_ALTITUDE_FT_PILOT);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_INDICATORS_ALTITUDE_FT_COPILOT);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.XHSI_FWC_PHASE);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_FCU_BARO);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.JAR_A320NEO_FCU_BARO);
+        // air data for the thrust and temperature references
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_WEATHER_TEMPERATURE_AMBIENT_C);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_WEATHER_TEMPERATURE_SEALEVEL_C);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_WEATHER_SPEED_SOUND_MS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_TRUE_AIRSPEED);
+        // aircraft detection
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.X737_STATUS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.X737_PFD_PWR);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.UFMC_STATUS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.CL30_STATUS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.QPAC_STATUS);
+        SUBSCRIBED_IDS.set(XPlaneSimDataRepository.JAR_A320NEO_STATUS);
+    }
+
 
     // subcomponents --------------------------------------------------------
     ArrayList<EICASSubcomponent> subcomponents = new ArrayList<EICASSubcomponent>();
@@ -110,6 +228,7 @@ public class EICASComponent extends Component implements Observer, PreferencesOb
 
 
     public void paint(Graphics g) {
+        this.model_factory.get_repository_instance().pin_frame();
     	eicas_gc.current_time_millis=System.currentTimeMillis();
         drawAll(g);
     }
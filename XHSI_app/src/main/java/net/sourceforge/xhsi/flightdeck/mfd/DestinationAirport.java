@@ -55,7 +55,7 @@ import net.sourceforge.xhsi.model.NavigationObjectRepository;
 import net.sourceforge.xhsi.model.Runway;
 import net.sourceforge.xhsi.model.TaxiChart;
 
-import net.sourceforge.xhsi.model.aptnavdata.AptNavXP900DatTaxiChartBuilder;
+import net.sourceforge.xhsi.model.aptnavdata.TaxiChartCache;
 
 
 
@@ -65,8 +65,6 @@ public class DestinationAirport extends MFDSubcomponent {
 
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
-    private static TaxiChart taxi = new TaxiChart();
-
 
     //private String surfaces[] = {"None0", "Asphalt", "Concrete", "Grass", "Dirt", "Gravel", "None6", "None7", "None8", "None9", "None10", "None11", "Dry lakebed", "Water", "Snow", "Transparent"};
     public static final int RWY_ASPHALT = 1;
@@ -190,6 +188,13 @@ public class DestinationAirport extends MFDSubcomponent {
     }
 
 
+    private void fill_taxi_shape(Graphics2D g2, Shape shape, Color color) {
+        g2.setColor(color);
+        g2.fill(shape);
+        g2.draw(shape);
+    }
+
+
     private void drawDestination(Graphics2D g2, String dest_arpt_str) {
 
         if ( ! dest_arpt_str.equals("") ) {
@@ -303,22 +308,10 @@ public class DestinationAirport extends MFDSubcomponent {
                 g2.drawLine(chart_x, chart_y, chart_x, chart_y + chart_h);
 
 
-                if ( taxi.ready && ! taxi.icao.equals(dest_arpt_str) /*&& (XHSIStatus.nav_db_status.equals(XHSIStatus.STATUS_NAV_DB_LOADED))*/ ) {
+                // the nearest airport and the FMS origin and destination are usually already prefetched
+                TaxiChart taxi = TaxiChartCache.get_instance().get_chart(dest_arpt_str);
 
-                    // we need to load another airport chart
-
-    //logger.warning("I have "+taxi.icao);
-    //logger.warning("I request "+dest_arpt_str+" ("+dest_arpt_str.length()+" char)");
-                    // redundant: taxi.ready = false;
-                    try {
-                        AptNavXP900DatTaxiChartBuilder cb = new AptNavXP900DatTaxiChartBuilder(taxi);
-                        logger.config("MFD Requests "+dest_arpt_str);
-                        cb.get_chart(dest_arpt_str);
-                    } catch (Exception e) {
-                        logger.warning("Exception encountered when requesting TaxiChartBuilder "+dest_arpt_str);
-                    }
-
-                } else if ( taxi.ready && (taxi.airport!=null) && taxi.airport.icao_code.equals(dest_arpt_str) ) {
+                if ( (taxi != null) && (taxi.airport!=null) && taxi.airport.icao_code.equals(dest_arpt_str) ) {
 
                     float arpt_lon_width = ( taxi.east_lon - taxi.west_lon ) * 1.1f;
                     float arpt_lat_height = ( taxi.north_lat - taxi.south_lat ) * 1.1f;
@@ -372,107 +365,40 @@ public class DestinationAirport extends MFDSubcomponent {
                     float acf_lat = this.aircraft.lat();
                     float acf_lon = this.aircraft.lon();
 
-                    if ( taxi.border != null ) {
+                    // the shapes of the chart are in metres, so we only need to transform them
+                    g2.transform( taxi.get_transform(arpt_center_lat, arpt_center_lon, map_c.x, map_c.y, chart_lat_scale) );
+                    AffineTransform chart_at = g2.getTransform();
+                    Stroke original_stroke = g2.getStroke();
+                    // outlines of 1 pixel
+                    g2.setStroke(new BasicStroke(1.0f / chart_metric_scale));
 
-                        int poly_x[] = new int[taxi.border.nodes.size()];
-                        int poly_y[] = new int[taxi.border.nodes.size()];
-
-                            for (int h=0; h<taxi.border.nodes.size(); h++) {
-                                TaxiChart.Node node1 = taxi.border.nodes.get(h);
-                                poly_x[h] = map_c.x + (int)((node1.lon - arpt_center_lon)*chart_lon_scale);
-                                poly_y[h] = map_c.y - (int)((node1.lat - arpt_center_lat)*chart_lat_scale);
-                            }
-                            g2.setColor(field);
-                            g2.fillPolygon(poly_x, poly_y, taxi.border.nodes.size());
-                            g2.drawPolygon(poly_x, poly_y, taxi.border.nodes.size());
-
-                            if ( ! taxi.border.holes.isEmpty() ) {
-
-                                for (int k=0; k<taxi.border.holes.size(); k++) {
-
-                                    TaxiChart.Pavement hole1 = taxi.border.holes.get(k);
-                                    poly_x = new int[hole1.nodes.size()];
-                                    poly_y = new int[hole1.nodes.size()];
-                                    for (int l=0; l<hole1.nodes.size(); l++) {
-                                        TaxiChart.Node node1 = hole1.nodes.get(l);
-                                        poly_x[l] = map_c.x + (int)((node1.lon - arpt_center_lon)*chart_lon_scale);
-                                        poly_y[l] = map_c.y - (int)((node1.lat - arpt_center_lat)*chart_lat_scale);
-                                    }
-                                    g2.setColor(paper);
-                                    g2.fillPolygon(poly_x, poly_y, hole1.nodes.size());
-                                    g2.drawPolygon(poly_x, poly_y, hole1.nodes.size());
-
-                                } // list of holes
+                    if ( taxi.border != null ) {
 
-                            } // ! empty list of holes
+                        fill_taxi_shape(g2, taxi.border.polygon, field);
+                        for (int k=0; k<taxi.border.holes.size(); k++) {
+                            fill_taxi_shape(g2, taxi.border.holes.get(k).polygon, paper);
+                        }
 
                     } // ! null border
 
 
-                    if ( ! taxi.pavements.isEmpty() ) {
-
-                        for (int i=0; i<taxi.pavements.size(); i++) {
-
-                            TaxiChart.Pavement ramp1 = taxi.pavements.get(i);
-                            int poly_x[] = new int[ramp1.nodes.size()];
-                            int poly_y[] = new int[ramp1.nodes.size()];
-                            for (int j=0; j<ramp1.nodes.size(); j++) {
-                                TaxiChart.Node node1 = ramp1.nodes.get(j);
-                                poly_x[j] = map_c.x + (int)((node1.lon - arpt_center_lon)*chart_lon_scale);
-                                poly_y[j] = map_c.y - (int)((node1.lat - arpt_center_lat)*chart_lat_scale);
-                            }
-                            g2.setColor(taxi_ramp);
-                            g2.fillPolygon(poly_x, poly_y, ramp1.nodes.size());
-                            g2.drawPolygon(poly_x, poly_y, ramp1.nodes.size());
-
-                            if ( ! ramp1.holes.isEmpty() ) {
-
-                                for (int k=0; k<ramp1.holes.size(); k++) {
-
-                                    TaxiChart.Pavement hole1 = ramp1.holes.get(k);
-                                    poly_x = new int[hole1.nodes.size()];
-                                    poly_y = new int[hole1.nodes.size()];
-                                    for (int l=0; l<hole1.nodes.size(); l++) {
-                                        TaxiChart.Node node1 = hole1.nodes.get(l);
-                                        poly_x[l] = map_c.x + (int)((node1.lon - arpt_center_lon)*chart_lon_scale);
-                                        poly_y[l] = map_c.y - (int)((node1.lat - arpt_center_lat)*chart_lat_scale);
-                                    }
-                                    if ( taxi.border == null ) {
-                                        g2.setColor(paper);
-                                    } else {
-                                        g2.setColor(field);
-                                    }
-                                    g2.fillPolygon(poly_x, poly_y, hole1.nodes.size());
-                                    g2.drawPolygon(poly_x, poly_y, hole1.nodes.size());
-
-                                } // list of holes
+                    for (int i=0; i<taxi.pavements.size(); i++) {
 
-                            } // ! empty list of holes
-
-                        } // list of pavements
+                        TaxiChart.Pavement ramp1 = taxi.pavements.get(i);
+                        fill_taxi_shape(g2, ramp1.polygon, taxi_ramp);
+                        for (int k=0; k<ramp1.holes.size(); k++) {
+                            fill_taxi_shape(g2, ramp1.holes.get(k).polygon, ( taxi.border == null ) ? paper : field);
+                        }
 
-                    } // ! empty list of pavements
+                    } // list of pavements
 
 
                     // APT810-style segments
-                    if ( taxi.airport != null ) {
-                        AffineTransform current_at = g2.getTransform();
-                        Stroke original_stroke = g2.getStroke();
-                        g2.setColor(taxi_ramp);
-                        for (int s=0; s<taxi.segments.size(); s++) {
-                            TaxiChart.Segment seg0 = taxi.segments.get(s);
-                            int s_x = map_c.x + (int)((seg0.lon - arpt_center_lon)*chart_lon_scale);
-                            int s_y = map_c.y - (int)((seg0.lat - arpt_center_lat)*chart_lat_scale);
-                            int s_l = (int)(seg0.length*chart_metric_scale/2.0f);
-                            int s_y1 = s_y - s_l - 1;
-                            int s_y2 = s_y + s_l + 1;
-                            g2.setStroke(new BasicStroke(seg0.width * chart_metric_scale, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
-                            g2.rotate( Math.toRadians( seg0.orientation ), s_x, s_y );
-                            g2.drawLine( s_x, s_y1, s_x, s_y2 );
-                            g2.setTransform(current_at);
-                        }
-                        g2.setStroke(original_stroke);
-                    }
+                    g2.setColor(taxi_ramp);
+                    g2.fill(taxi.segments_shape);
+
+                    g2.setStroke(original_stroke);
+                    g2.setTransform(original_at);
 
 
                     // runways
@@ -494,14 +420,13 @@ public class DestinationAirport extends MFDSubcomponent {
                                 else
                                     rwy_color = mfd_gc.hard_color.darker();
                                 g2.setColor(rwy_color);
-                                Stroke original_stroke = g2.getStroke();
-                                g2.setStroke(new BasicStroke(rwy0.width * chart_metric_scale, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
+                                g2.setTransform(chart_at);
+                                g2.fill(taxi.runway_shapes.get(i));
+                                g2.setTransform(original_at);
                                 int x1 = map_c.x + (int)((rwy0.lon1 - arpt_center_lon)*chart_lon_scale);
                                 int y1 = map_c.y - (int)((rwy0.lat1 - arpt_center_lat)*chart_lat_scale);
                                 int x2 = map_c.x + (int)((rwy0.lon2 - arpt_center_lon)*chart_lon_scale);
                                 int y2 = map_c.y - (int)((rwy0.lat2 - arpt_center_lat)*chart_lat_scale);
-                                g2.drawLine( x1, y1, x2, y2);
-                                g2.setStroke(original_stroke);
                                 //if ( avionics.efis_shows_arpt() ) {
                                 g2.setFont(mfd_gc.font_xs);
                                 //AffineTransform current_at = g2.getTransform();
@@ -535,14 +460,13 @@ public class DestinationAirport extends MFDSubcomponent {
                             Runway rwy0 = taxi.airport.runways.get(i);
                             if ( (rwy0.surface==Runway.RWY_ASPHALT) || (rwy0.surface==Runway.RWY_CONCRETE) ) {
                                 g2.setColor(hard_rwy);
-                                Stroke original_stroke = g2.getStroke();
-                                g2.setStroke(new BasicStroke(rwy0.width * chart_metric_scale, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
+                                g2.setTransform(chart_at);
+                                g2.fill(taxi.runway_shapes.get(i));
+                                g2.setTransform(original_at);
                                 int x1 = map_c.x + (int)((rwy0.lon1 - arpt_center_lon)*chart_lon_scale);
                                 int y1 = map_c.y - (int)((rwy0.lat1 - arpt_center_lat)*chart_lat_scale);
                                 int x2 = map_c.x + (int)((rwy0.lon2 - arpt_center_lon)*chart_lon_scale);
                                 int y2 = map_c.y - (int)((rwy0.lat2 - arpt_center_lat)*chart_lat_scale);
-                                g2.drawLine( x1, y1, x2, y2);
-                                g2.setStroke(original_stroke);
                                 //if ( avionics.efis_shows_arpt() ) {
                                 g2.setFont(mfd_gc.font_xs);
                                 //AffineTransform current_at = g2.getTransform();
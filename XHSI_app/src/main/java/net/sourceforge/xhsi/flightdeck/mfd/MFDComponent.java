@@ -6,8 +6,8 @@
 * which is used by all HSI elements to determine positions and sizes.
 * 
 * This component is notified when new data packets from the flightsimulator
-* have been received and performs a repaint. This component is also triggered
-* by UIHeartbeat to detect situations without reception.
+* have been received and performs a repaint, paced by RepaintScheduler. The
+* scheduler also calls its heartbeat to detect situations without reception.
 * 
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
@@ -44,9 +44,9 @@ import net.sourceforge.xhsi.XHSIPreferences;
 import net.sourceforge.xhsi.model.Aircraft;
 import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.ModelFactory;
-import net.sourceforge.xhsi.model.Observer;
+import net.sourceforge.xhsi.flightdeck.HeartbeatObserver;
 
-public class MFDComponent extends Component implements Observer, PreferencesObserver {
+public class MFDComponent extends Component implements HeartbeatObserver, PreferencesObserver {
 
     private static final long serialVersionUID = 1L;
     public static boolean COLLECT_PROFILING_INFORMATION = false;
@@ -112,6 +112,7 @@ public class MFDComponent extends Component implements Observer, PreferencesObse
 
 
     public void paint(Graphics g) {
+        this.model_factory.get_repository_instance().pin_frame();
     	mfd_gc.current_time_millis=System.currentTimeMillis();
         drawAll(g);
     }
@@ -7,8 +7,8 @@
  * which is used by all HSI elements to determine positions and sizes.
  *
  * This component is notified when new data packets from the flightsimulator
- * have been received and performs a repaint. This component is also triggered
- * by UIHeartbeat to detect situations without reception.
+ * have been received and performs a repaint, paced by RepaintScheduler. The
+ * scheduler also calls its heartbeat to detect situations without reception.
  *
  * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
  * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
@@ -50,11 +50,11 @@ import net.sourceforge.xhsi.XHSIInstrument.DU;
 import net.sourceforge.xhsi.model.Aircraft;
 import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.ModelFactory;
-import net.sourceforge.xhsi.model.Observer;
+import net.sourceforge.xhsi.flightdeck.HeartbeatObserver;
 import net.sourceforge.xhsi.util.ColorUtilities;
 
 
-public class MFDCPComponent extends Component implements Observer, PreferencesObserver, MouseInputListener {
+public class MFDCPComponent extends Component implements HeartbeatObserver, PreferencesObserver, MouseInputListener {
 
     private static final long serialVersionUID = 1L;
     public static boolean COLLECT_PROFILING_INFORMATION = false;
@@ -100,6 +100,7 @@ public class MFDCPComponent extends Component implements Observer, PreferencesOb
     }
 
     public void paint(Graphics g) {
+        this.model_factory.get_repository_instance().pin_frame();
         mfdcp_gc.current_time_millis = System.currentTimeMillis();
         drawAll(g);
 
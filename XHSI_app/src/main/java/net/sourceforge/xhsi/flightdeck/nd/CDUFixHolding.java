@@ -55,10 +55,7 @@ public class CDUFixHolding extends NDSubcomponent {
     float pixels_per_deg_lon;
     float pixels_per_deg_lat;
     float pixels_per_nm;
-    float lat_max;
-    float lat_min;
-    float lon_max;
-    float lon_min;
+    float search_distance;
 
     private XHSISettings xhsi_settings;
 
@@ -91,14 +88,11 @@ public class CDUFixHolding extends NDSubcomponent {
 
             this.pixels_per_nm = (float)nd_gc.rose_radius / nd_gc.max_range; // float for better precision
 
-            // determine max and min lat/lon in viewport to only draw those
-            // elements that can be displayed
             float delta_lat = nd_gc.max_range * CoordinateSystem.deg_lat_per_nm();
             float delta_lon = nd_gc.max_range * CoordinateSystem.deg_lon_per_nm(this.center_lat);
-            lat_max = this.center_lat + delta_lat;
-            lat_min = this.center_lat - delta_lat;
-            lon_max = this.center_lon + delta_lon;
-            lon_min = this.center_lon - delta_lon;
+
+            // look for the fixes as far as the corners of the map, but at least in the lat/lon cell around us
+            search_distance = Math.max(NavigationObjectRepository.IDENT_SEARCH_DISTANCE, nd_gc.max_range * 1.415f);
 
             // pixels per degree
             this.pixels_per_deg_lat = nd_gc.rose_radius / delta_lat;
@@ -147,18 +141,8 @@ public class CDUFixHolding extends NDSubcomponent {
         g2.transform(rotate_to_heading);
 
 
-        // search for the holding fix in the current lat/lon cell first
-        holding_fix = this.nor.get_navobj(xhsi_settings.holding_fix, this.center_lat, this.center_lon);
-        // if not found in the current cell, search the cells that are in the map range
-        if ( holding_fix == null ) {
-            for (int lat=(int)lat_min; lat<=(int)lat_max; lat++) {
-                for (int lon=(int)lon_min; lon<=(int)lon_max; lon++) {
-                    if (xhsi_settings.draw_holding && ( holding_fix == null) ) {
-                        holding_fix = this.nor.get_navobj(xhsi_settings.holding_fix, (float)lat, (float)lon);
-                    }
-                }
-            }
-        }
+        // search for the holding fix nearest to the map center
+        holding_fix = this.nor.get_navobj(xhsi_settings.holding_fix, this.center_lat, this.center_lon, search_distance);
 
         // draw the holding pattern
         if ( holding_fix != null ) {
@@ -260,18 +244,8 @@ public class CDUFixHolding extends NDSubcomponent {
         g2.transform(rotate_to_heading);
 
 
-        // search for the cdu fix in the current lat/lon cell first
-        cdu_fix = this.nor.get_navobj(xhsi_settings.cdu_fix, this.center_lat, this.center_lon);
-        // if not found in the current cell, search the cells that are in the map map_range
-        if ( cdu_fix == null ) {
-            for (int lat=(int)lat_min; lat<=(int) lat_max; lat++) {
-                for (int lon=(int)lon_min; lon<=(int)lon_max; lon++) {
-                    if (xhsi_settings.draw_cdu_fix && ( cdu_fix == null) ) {
-                        cdu_fix = this.nor.get_navobj(xhsi_settings.cdu_fix, (float)lat, (float)lon);
-                    }
-                }
-            }
-        }
+        // search for the cdu fix nearest to the map center
+        cdu_fix = this.nor.get_navobj(xhsi_settings.cdu_fix, this.center_lat, this.center_lon, search_distance);
 
         // draw the cdu fix
         if ( cdu_fix != null ) {
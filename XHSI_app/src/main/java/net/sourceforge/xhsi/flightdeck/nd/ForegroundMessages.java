@@ -72,14 +72,14 @@ public class ForegroundMessages extends NDSubcomponent {
                 } else if (nd_gc.display_range_change_msg()) {
                     displayGlobalMessage(g2,"RANGE CHANGED",nd_gc.normal_color);
                 } else {
-                	displayEGPWSMessage(g2);   
+                	displayTerrainAlertOrEGPWSMessage(g2);
                 	drawTerrainInfoBox(g2);
                 	drawWeatherInfoBox(g2);
                 	if (! this.avionics.hdg_valid() && ! nd_gc.mode_plan) 
                 		displayGlobalMessage(g2,"MAP NOT AVAIL",nd_gc.warning_color);
                 }
             } else 
-            	displayEGPWSMessage(g2);
+            	displayTerrainAlertOrEGPWSMessage(g2);
         }
 
     }
@@ -327,6 +327,33 @@ public class ForegroundMessages extends NDSubcomponent {
         // g2.drawRect(box_x, box_y, box_width, box_height);    	
     }
     
+    private void displayTerrainAlertOrEGPWSMessage(Graphics2D g2){
+    	EPGWSAlertLevel terrain_alert = aircraft.get_terrain_alert();
+    	if ( (terrain_alert == EPGWSAlertLevel.CAUTION) || (terrain_alert == EPGWSAlertLevel.WARNING) ) {
+    		displayTerrainAlert(g2, terrain_alert);
+    	} else {
+    		displayEGPWSMessage(g2);
+    	}
+    }
+
+    private void displayTerrainAlert(Graphics2D g2, EPGWSAlertLevel terrain_alert){
+    	String message;
+    	if (terrain_alert == EPGWSAlertLevel.WARNING) {
+    		g2.setColor(nd_gc.airbus_style ? nd_gc.ecam_warning_color : nd_gc.warning_color);
+    		message = nd_gc.airbus_style ? "TERRAIN AHEAD PULL UP" : "PULL UP";
+    	} else {
+    		g2.setColor(nd_gc.airbus_style ? nd_gc.ecam_caution_color : nd_gc.caution_color);
+    		message = nd_gc.airbus_style ? "TERRAIN AHEAD" : "TERRAIN";
+    	}
+        g2.setFont(nd_gc.font_xxxl);
+        int message_width = g2.getFontMetrics(nd_gc.font_xxxl).stringWidth(message);
+
+        int message_x = nd_gc.map_center_x - message_width / 2;
+        int message_y = nd_gc.range_mode_message_y + nd_gc.line_height_xxxl / 2;
+
+        g2.drawString(message, message_x, message_y);
+    }
+
     private void displayEGPWSMessage(Graphics2D g2){
     	if (avionics.egpws_alert_level()==EPGWSAlertLevel.NORMAL) {
     		g2.setColor(nd_gc.normal_color);
@@ -345,14 +372,14 @@ public class ForegroundMessages extends NDSubcomponent {
     }
  
     private void drawTerrainInfoBox(Graphics2D g2){
-    	if (  (!( nd_gc.mode_app || nd_gc.mode_vor || nd_gc.mode_plan)) && avionics.efis_shows_terrain()) {
+    	if (  (!( nd_gc.mode_app || nd_gc.mode_vor || nd_gc.mode_plan)) && nd_shows_terrain()) {
     		g2.drawImage(nd_gc.terr_info_img, nd_gc.terr_info_x, nd_gc.terr_info_y, null);
     	}	
     }
     
     private void drawWeatherInfoBox(Graphics2D g2){
     	if (    ( !( nd_gc.mode_app || nd_gc.mode_vor )) &&         		
-        		(!avionics.efis_shows_terrain()) && 
+        		(!nd_shows_terrain()) && 
         		(!nd_gc.display_inhibit()) &&
         		// No weather radar in map_zoomin or plan mode
         		(!nd_gc.map_zoomin) &&
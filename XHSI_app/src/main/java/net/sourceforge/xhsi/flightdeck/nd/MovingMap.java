@@ -31,11 +31,11 @@ import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 
 import java.awt.geom.Area;
-import java.awt.geom.Path2D;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
@@ -61,7 +61,7 @@ import net.sourceforge.xhsi.model.Runway;
 import net.sourceforge.xhsi.model.TaxiChart;
 import net.sourceforge.xhsi.model.TCAS;
 
-import net.sourceforge.xhsi.model.aptnavdata.AptNavXP900DatTaxiChartBuilder;
+import net.sourceforge.xhsi.model.aptnavdata.TaxiChartCache;
 import net.sourceforge.xhsi.util.AzimuthalEquidistantProjection;
 import net.sourceforge.xhsi.util.Projection;
 
@@ -73,6 +73,7 @@ public class MovingMap extends NDSubcomponent {
 
     private static final long serialVersionUID = 1L;
     private static final boolean DRAW_LAT_LON_GRID = false;
+    private static final float NAV_OBJECT_QUERY_MARGIN = 1.1f;
 
     public static DecimalFormat vor_freq_formatter;
     public static DecimalFormat ndb_freq_formatter;
@@ -81,6 +82,7 @@ public class MovingMap extends NDSubcomponent {
 //    int tfc_size = 7;
 
     NavigationObjectRepository nor;
+    private ArrayList<NavigationObject> nav_object_candidates = new ArrayList<NavigationObject>();
 
     String active_chart_str;
     
@@ -98,8 +100,6 @@ public class MovingMap extends NDSubcomponent {
     
     Area panel = null;
 
-    private static TaxiChart taxi = new TaxiChart();
-
     private Projection map_projection = new AzimuthalEquidistantProjection();    
     
     public MovingMap(ModelFactory model_factory, NDGraphicsConfig hsi_gc, Component parent_component) {
@@ -222,19 +222,15 @@ public class MovingMap extends NDSubcomponent {
 
         if (nearest_arpt_str.length() >= 3) {
 
-            if ( taxi.ready && ! taxi.icao.equals(nearest_arpt_str) /*&& (XHSIStatus.nav_db_status.equals(XHSIStatus.STATUS_NAV_DB_LOADED))*/ ) {
+            // usually already prefetched
+            TaxiChart taxi = TaxiChartCache.get_instance().get_chart(nearest_arpt_str);
+
+            if ( (taxi == null) || (taxi.airport == null) || ! taxi.airport.icao_code.equals(nearest_arpt_str) ) {
 
-                // we need to load another airport chart
+                // the chart is still being read, or there is none
                 this.active_chart_str = null;
-                try {
-                    AptNavXP900DatTaxiChartBuilder cb = new AptNavXP900DatTaxiChartBuilder(this.taxi);
-                    logger.config("ND Requests "+nearest_arpt_str);
-                    cb.get_chart(nearest_arpt_str);
-                } catch (Exception e) {
-                    logger.warning("Problem requesting TaxiChartBuilder "+nearest_arpt_str);
-                }
 
-            } else if ( taxi.ready && (taxi.airport!=null) && taxi.airport.icao_code.equals(nearest_arpt_str) ) {
+            } else {
 
                 this.active_chart_str = nearest_arpt_str;
 
@@ -278,350 +274,45 @@ public class MovingMap extends NDSubcomponent {
                 float acf_lat = this.aircraft.lat();
                 float acf_lon = this.aircraft.lon();
 
+                // the shapes of the chart are in metres, so we only need to transform them
+                AffineTransform rotated_at = g2.getTransform();
+                g2.transform( taxi.get_transform(acf_lat, acf_lon, map_c.x, map_c.y, chart_lat_scale) );
+                AffineTransform chart_at = g2.getTransform();
+                Stroke original_stroke = g2.getStroke();
+                // outlines of 1 pixel
+                g2.setStroke(new BasicStroke(1.0f / chart_metric_scale));
+                boolean bezier = this.preferences.get_draw_bezier_pavements();
 
-                if ( taxi.border != null ) {
-
-                    if ( ! this.preferences.get_draw_bezier_pavements() ) {
-
-                        int poly_x[] = new int[taxi.border.nodes.size()];
-                        int poly_y[] = new int[taxi.border.nodes.size()];
-
-                        for (int h=0; h<taxi.border.nodes.size(); h++) {
-                            TaxiChart.Node node1 = taxi.border.nodes.get(h);
-                            poly_x[h] = map_c.x + (int)((node1.lon - acf_lon)*chart_lon_scale);
-                            poly_y[h] = map_c.y - (int)((node1.lat - acf_lat)*chart_lat_scale);
-                        }
-                        g2.setColor(field);
-                        g2.fillPolygon(poly_x, poly_y, taxi.border.nodes.size());
-                        g2.drawPolygon(poly_x, poly_y, taxi.border.nodes.size());
-
-                    } else {
-
-                        // Bezier
-
-                        Path2D taxishape = new Path2D.Float();
-                        TaxiChart.Node last_node = null;
-                        for (int h=0; h<taxi.border.nodes.size(); h++) {
-                            TaxiChart.Node node1 = taxi.border.nodes.get(h);
-                            if ( h == 0 ) {
-                                taxishape.moveTo(
-                                        map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                        map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                    );
-                                last_node = node1;
-                            } else {
-
-                                if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
-
-                                    // this node is different from the previous, so we can draw ... something
-
-                                    if ( node1.cubic_bezier ) {
-                                        taxishape.curveTo(
-                                                map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                map_c.x + ((node1.cubic_lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.cubic_lat - acf_lat)*chart_lat_scale),
-                                                map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                            );
-                                    } else if ( node1.quad_bezier ) {
-                                        taxishape.quadTo(
-                                                map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                            );
-                                    } else {
-                                        taxishape.lineTo(
-                                                map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                            );
-                                    }
-
-                                    last_node = node1;
-
-                                }
 
-                            }
-                        }
-                        taxishape.closePath();
-                        g2.setColor(field);
-                        g2.fill(taxishape);
-                        g2.draw(taxishape);
+                if ( taxi.border != null ) {
 
+                    fill_taxi_shape(g2, bezier ? taxi.border.shape : taxi.border.polygon, field);
+                    for (int k=0; k<taxi.border.holes.size(); k++) {
+                        TaxiChart.Pavement hole1 = taxi.border.holes.get(k);
+                        fill_taxi_shape(g2, bezier ? hole1.shape : hole1.polygon, paper);
                     }
 
-                    if ( ! taxi.border.holes.isEmpty() ) {
-
-                        for (int k=0; k<taxi.border.holes.size(); k++) {
-
-                            TaxiChart.Pavement hole1 = taxi.border.holes.get(k);
-                            if ( ! this.preferences.get_draw_bezier_pavements() ) {
-
-                                int poly_x[] = new int[hole1.nodes.size()];
-                                int poly_y[] = new int[hole1.nodes.size()];
-                                for (int l=0; l<hole1.nodes.size(); l++) {
-                                    TaxiChart.Node node1 = hole1.nodes.get(l);
-                                    poly_x[l] = map_c.x + (int)((node1.lon - acf_lon)*chart_lon_scale);
-                                    poly_y[l] = map_c.y - (int)((node1.lat - acf_lat)*chart_lat_scale);
-                                }
-                                g2.setColor(paper);
-                                g2.fillPolygon(poly_x, poly_y, hole1.nodes.size());
-                                g2.drawPolygon(poly_x, poly_y, hole1.nodes.size());
-
-                            } else {
-
-                                // Bezier
-                                
-                                Path2D taxishape = new Path2D.Float();
-                                TaxiChart.Node last_node = null;
-                                for (int h=0; h<hole1.nodes.size(); h++) {
-
-                                    TaxiChart.Node node1 = hole1.nodes.get(h);
-                                    if ( h == 0 ) {
-                                        taxishape.moveTo(
-                                                map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                            );
-                                        last_node = node1;
-                                    } else {
-
-                                        if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
-
-                                            // this node is different from the previous, so we can draw ... something
-
-                                            if ( node1.cubic_bezier ) {
-                                                taxishape.curveTo(
-                                                        map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                        map_c.x + ((node1.cubic_lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.cubic_lat - acf_lat)*chart_lat_scale),
-                                                        map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                    );
-                                            } else if ( node1.quad_bezier ) {
-                                                taxishape.quadTo(
-                                                        map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                        map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                    );
-                                            } else {
-                                                taxishape.lineTo(
-                                                        map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                        map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                    );
-                                            }
-
-                                            last_node = node1;
-
-                                        }
-
-                                    }
-                                }
-                                taxishape.closePath();
-                                g2.setColor(paper);
-                                g2.fill(taxishape);
-                                g2.draw(taxishape);
-
-                            }
-                        } // list of holes
-
-                    } // ! empty list of holes
-
                 } // ! null border
 
 
-                if ( ! taxi.pavements.isEmpty() ) {
-
-                    for (int i=0; i<taxi.pavements.size(); i++) {
-
-                        TaxiChart.Pavement ramp1 = taxi.pavements.get(i);
-
-                        if ( ! this.preferences.get_draw_bezier_pavements() ) {
-
-                            int poly_x[] = new int[ramp1.nodes.size()];
-                            int poly_y[] = new int[ramp1.nodes.size()];
-                            for (int j=0; j<ramp1.nodes.size(); j++) {
-                                TaxiChart.Node node1 = ramp1.nodes.get(j);
-                                poly_x[j] = map_c.x + (int)((node1.lon - acf_lon)*chart_lon_scale);
-                                poly_y[j] = map_c.y - (int)((node1.lat - acf_lat)*chart_lat_scale);
-                            }
-                            g2.setColor(taxi_ramp);
-                            g2.fillPolygon(poly_x, poly_y, ramp1.nodes.size());
-                            g2.drawPolygon(poly_x, poly_y, ramp1.nodes.size());
-
-                        } else {
-
-                            // Bezier
-                            
-                            Path2D taxishape = new Path2D.Float();
-                            TaxiChart.Node last_node = null;
-                            for (int h=0; h<ramp1.nodes.size(); h++) {
-
-                                TaxiChart.Node node1 = ramp1.nodes.get(h);
-                                if ( h == 0 ) {
-                                    taxishape.moveTo(
-                                            map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                            map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                        );
-                                    last_node = node1;
-                                } else {
-
-                                    if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
-
-                                        // this node is different from the previous, so we can draw ... something
-
-                                        if ( node1.cubic_bezier ) {
-                                            taxishape.curveTo(
-                                                    map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                    map_c.x + ((node1.cubic_lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.cubic_lat - acf_lat)*chart_lat_scale),
-                                                    map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                );
-                                        } else if ( node1.quad_bezier ) {
-                                            taxishape.quadTo(
-                                                    map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                    map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                );
-                                        } else {
-                                            taxishape.lineTo(
-                                                    map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                );
-                                        }
-
-                                        // remember this node
-                                        last_node = node1;
-
-                                    }
-
-                                }
-
-                            }
-                            taxishape.closePath();
-                            g2.setColor(taxi_ramp);
-                            g2.fill(taxishape);
-                            g2.draw(taxishape);
+                for (int i=0; i<taxi.pavements.size(); i++) {
 
-                        }
+                    TaxiChart.Pavement ramp1 = taxi.pavements.get(i);
+                    fill_taxi_shape(g2, bezier ? ramp1.shape : ramp1.polygon, taxi_ramp);
+                    for (int k=0; k<ramp1.holes.size(); k++) {
+                        TaxiChart.Pavement hole1 = ramp1.holes.get(k);
+                        fill_taxi_shape(g2, bezier ? hole1.shape : hole1.polygon, ( taxi.border == null ) ? paper : field);
+                    }
 
-                        if ( ! ramp1.holes.isEmpty() ) {
-
-                            for (int k=0; k<ramp1.holes.size(); k++) {
-
-                                TaxiChart.Pavement hole1 = ramp1.holes.get(k);
-
-                                if ( ! this.preferences.get_draw_bezier_pavements() ) {
-
-                                    int poly_x[] = new int[hole1.nodes.size()];
-                                    int poly_y[] = new int[hole1.nodes.size()];
-                                    for (int l=0; l<hole1.nodes.size(); l++) {
-                                        TaxiChart.Node node1 = hole1.nodes.get(l);
-                                        poly_x[l] = map_c.x + (int)((node1.lon - acf_lon)*chart_lon_scale);
-                                        poly_y[l] = map_c.y - (int)((node1.lat - acf_lat)*chart_lat_scale);
-                                    }
-                                    if ( taxi.border == null ) {
-                                        g2.setColor(paper);
-                                    } else {
-                                        g2.setColor(field);
-                                    }
-                                    g2.fillPolygon(poly_x, poly_y, hole1.nodes.size());
-                                    g2.drawPolygon(poly_x, poly_y, hole1.nodes.size());
-
-                                } else {
-
-                                    // Bezier
-                                    
-                                    Path2D taxishape = new Path2D.Float();
-                                    TaxiChart.Node last_node = null;
-                                    for (int h=0; h<hole1.nodes.size(); h++) {
-
-                                        TaxiChart.Node node1 = hole1.nodes.get(h);
-                                        if ( h == 0 ) {
-                                            taxishape.moveTo(
-                                                    map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                    map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                );
-                                            last_node = node1;
-                                        } else {
-
-                                            if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
-
-                                                // this node is different from the previous, so we can draw ... something
-
-                                                if ( node1.cubic_bezier ) {
-                                                    taxishape.curveTo(
-                                                            map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                            map_c.x + ((node1.cubic_lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.cubic_lat - acf_lat)*chart_lat_scale),
-                                                            map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                        );
-                                                } else if ( node1.quad_bezier ) {
-                                                    taxishape.quadTo(
-                                                            map_c.x + ((node1.quad_lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.quad_lat - acf_lat)*chart_lat_scale),
-                                                            map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                        );
-                                                } else {
-                                                    taxishape.lineTo(
-                                                            map_c.x + ((node1.lon - acf_lon)*chart_lon_scale),
-                                                            map_c.y - ((node1.lat - acf_lat)*chart_lat_scale)
-                                                        );
-                                                }
-
-                                                last_node = node1;
-
-                                            }
-
-                                        }
-                                    }
-                                    taxishape.closePath();
-                                    if ( taxi.border == null ) {
-                                        g2.setColor(paper);
-                                    } else {
-                                        g2.setColor(field);
-                                    }
-                                    g2.fill(taxishape);
-                                    g2.draw(taxishape);
-
-                                }
-
-                            } // list of holes
-
-                        } // ! empty list of holes
-
-                    } // list of pavements
-
-                } // ! empty list of pavements
+                } // list of pavements
 
 
                 // APT810-style segments
-                if ( taxi.airport != null ) {
-                    AffineTransform current_at = g2.getTransform();
-                    Stroke original_stroke = g2.getStroke();
-                    g2.setColor(taxi_ramp);
-                    for (int s=0; s<taxi.segments.size(); s++) {
-                        TaxiChart.Segment seg0 = taxi.segments.get(s);
-                        int s_x = map_c.x + (int)((seg0.lon - acf_lon)*chart_lon_scale);
-                        int s_y = map_c.y - (int)((seg0.lat - acf_lat)*chart_lat_scale);
-                        int s_l = (int)(seg0.length*chart_metric_scale/2.0f);
-                        int s_y1 = s_y - s_l - 1;
-                        int s_y2 = s_y + s_l + 1;
-                        g2.setStroke(new BasicStroke(seg0.width * chart_metric_scale, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
-                        g2.rotate( Math.toRadians( seg0.orientation ), s_x, s_y );
-                        g2.drawLine( s_x, s_y1, s_x, s_y2 );
-                        g2.setTransform(current_at);
-                    }
-                    g2.setStroke(original_stroke);
-                }
+                g2.setColor(taxi_ramp);
+                g2.fill(taxi.segments_shape);
+
+                g2.setStroke(original_stroke);
+                g2.setTransform(rotated_at);
 
 
                 // runways
@@ -641,14 +332,13 @@ public class MovingMap extends NDSubcomponent {
                                 g2.setColor(nd_gc.snow_color);
                             else
                                 g2.setColor(nd_gc.hard_color.darker());
-                            Stroke original_stroke = g2.getStroke();
-                            g2.setStroke(new BasicStroke(rwy0.width * chart_metric_scale, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
+                            g2.setTransform(chart_at);
+                            g2.fill(taxi.runway_shapes.get(i));
+                            g2.setTransform(rotated_at);
                             int x1 = map_c.x + (int)((rwy0.lon1 - acf_lon)*chart_lon_scale);
                             int y1 = map_c.y - (int)((rwy0.lat1 - acf_lat)*chart_lat_scale);
                             int x2 = map_c.x + (int)((rwy0.lon2 - acf_lon)*chart_lon_scale);
                             int y2 = map_c.y - (int)((rwy0.lat2 - acf_lat)*chart_lat_scale);
-                            g2.drawLine( x1, y1, x2, y2);
-                            g2.setStroke(original_stroke);
                             if ( avionics.efis_shows_arpt() ) {
                                 g2.setFont(nd_gc.font_small);
                                 AffineTransform current_at = g2.getTransform();
@@ -678,14 +368,13 @@ public class MovingMap extends NDSubcomponent {
                         Runway rwy0 = taxi.airport.runways.get(i);
                         if ( (rwy0.surface==Runway.RWY_ASPHALT) || (rwy0.surface==Runway.RWY_CONCRETE) ) {
                             g2.setColor(hard_rwy);
-                            Stroke original_stroke = g2.getStroke();
-                            g2.setStroke(new BasicStroke(rwy0.width * chart_metric_scale, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER));
+                            g2.setTransform(chart_at);
+                            g2.fill(taxi.runway_shapes.get(i));
+                            g2.setTransform(rotated_at);
                             int x1 = map_c.x + (int)((rwy0.lon1 - acf_lon)*chart_lon_scale);
                             int y1 = map_c.y - (int)((rwy0.lat1 - acf_lat)*chart_lat_scale);
                             int x2 = map_c.x + (int)((rwy0.lon2 - acf_lon)*chart_lon_scale);
                             int y2 = map_c.y - (int)((rwy0.lat2 - acf_lat)*chart_lat_scale);
-                            g2.drawLine( x1, y1, x2, y2);
-                            g2.setStroke(original_stroke);
                             if ( avionics.efis_shows_arpt() ) {
                                 g2.setFont(nd_gc.font_small);
                                 AffineTransform current_at = g2.getTransform();
@@ -721,6 +410,13 @@ public class MovingMap extends NDSubcomponent {
     }
 
 
+    private void fill_taxi_shape(Graphics2D g2, Shape shape, Color color) {
+        g2.setColor(color);
+        g2.fill(shape);
+        g2.draw(shape);
+    }
+
+
     private void drawMap(Graphics2D g2, float radius_scale) {
 
         this.center_lat = this.aircraft.lat();
@@ -746,16 +442,8 @@ public class MovingMap extends NDSubcomponent {
         this.map_projection.setCenter(nd_gc.map_center_x,nd_gc.map_center_y);
         this.map_projection.setAcf(this.center_lat, this.center_lon);
         
-        // determine max and min lat/lon in viewport to only draw those
-        // elements that can be displayed
         float delta_lat = radius_scale * CoordinateSystem.deg_lat_per_nm();
         float delta_lon = radius_scale * CoordinateSystem.deg_lon_per_nm(this.center_lat);
-        float range_multiply = this.preferences.get_draw_only_inside_rose() ? 1.0f : 1.5f;
-        // multiply by 1.5f to draw symbols outside the rose
-        float lat_max = this.center_lat + delta_lat * range_multiply;
-        float lat_min = this.center_lat - delta_lat * range_multiply;
-        float lon_max = this.center_lon + delta_lon * range_multiply;
-        float lon_min = this.center_lon - delta_lon * range_multiply;
 
         // pixels per degree
         this.pixels_per_deg_lat = nd_gc.rose_radius / delta_lat;
@@ -805,66 +493,65 @@ public class MovingMap extends NDSubcomponent {
 
         if ( nd_gc.mode_fullmap ) {
 
-            for (int lat=(int)lat_min; lat<=(int) lat_max; lat++) {
-                for (int lon=(int)lon_min; lon<=(int)lon_max; lon++) {
+            // everything that draw_nav_objects() can draw, up to nav_object_max_dist() from the center;
+            // the index measures distances a bit roughly, draw_nav_objects() has the last word
+            float query_radius = nav_object_max_dist() / nd_gc.rose_radius
+                    * ( nd_gc.map_zoomin ? radius_scale / 100.0f : radius_scale ) * NAV_OBJECT_QUERY_MARGIN;
+
+            if ( avionics.efis_shows_arpt() && ( ( (nd_gc.map_range <= 20) && this.preferences.get_draw_runways() ) || nd_gc.map_zoomin ) ) {
+                draw_nav_objects(
+                        g2,
+                        NavigationObject.NO_TYPE_RUNWAY,
+                        query_nav_objects(NavigationObject.NO_TYPE_RUNWAY, query_radius)
+                    );
+            }
 
-                    if ( avionics.efis_shows_arpt() && ( ( (nd_gc.map_range <= 20) && this.preferences.get_draw_runways() ) || nd_gc.map_zoomin ) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_RUNWAY,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_RUNWAY, lat, lon)
-                            );
-                    }
+            if ( avionics.efis_shows_wpt() && ((nd_gc.map_range <= 40)||nd_gc.map_zoomin) ) {
+                draw_nav_objects(
+                        g2,
+                        NavigationObject.NO_TYPE_FIX,
+                        query_nav_objects(NavigationObject.NO_TYPE_FIX, query_radius)
+                    );
+            }
 
-                    if ( avionics.efis_shows_wpt() && ((nd_gc.map_range <= 40)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_FIX,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_FIX, lat, lon)
-                            );
-                    }
+            if ( avionics.efis_shows_ndb() && ((nd_gc.map_range <= 80)||nd_gc.map_zoomin) ) {
+                draw_nav_objects(
+                        g2,
+                        NavigationObject.NO_TYPE_NDB,
+                        query_nav_objects(NavigationObject.NO_TYPE_NDB, query_radius)
+                    );
+            }
 
-                    if ( avionics.efis_shows_ndb() && ((nd_gc.map_range <= 80)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_NDB,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_NDB, lat, lon)
-                            );
-                    }
+            if ( avionics.efis_shows_vor() && ((nd_gc.map_range <= 80)||nd_gc.map_zoomin) ) {
+                draw_nav_objects(
+                        g2,
+                        NavigationObject.NO_TYPE_VOR,
+                        query_nav_objects(NavigationObject.NO_TYPE_VOR, query_radius)
+                    );
+            }
 
-                    if ( avionics.efis_shows_vor() && ((nd_gc.map_range <= 80)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_VOR,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_VOR, lat, lon)
-                            );
-                    }
+            if ( avionics.efis_shows_arpt() && ((nd_gc.map_range <= 160)||nd_gc.map_zoomin) ) {
+                draw_nav_objects(
+                        g2,
+                        NavigationObject.NO_TYPE_AIRPORT,
+                        query_nav_objects(NavigationObject.NO_TYPE_AIRPORT, query_radius)
+                    );
+            }
 
-                    if ( avionics.efis_shows_arpt() && ((nd_gc.map_range <= 160)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_AIRPORT,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_AIRPORT, lat, lon)
-                            );
-                    }
-                    
-                    if ( avionics.efis_shows_arpt() && ((nd_gc.map_range <= 80)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_HELIPORT,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_HELIPORT, lat, lon)
-                            );
-                    }
-                    
-                    if ( avionics.efis_shows_arpt() && ((nd_gc.map_range <= 80)||nd_gc.map_zoomin) ) {
-                        draw_nav_objects(
-                                g2,
-                                NavigationObject.NO_TYPE_HELIPAD,
-                                nor.get_nav_objects(NavigationObject.NO_TYPE_HELIPAD, lat, lon)
-                            );
-                    }
+            if ( avionics.efis_shows_arpt() && ((nd_gc.map_range <= 80)||nd_gc.map_zoomin) ) {
+                draw_nav_objects(
+                        g2,
+                        NavigationObject.NO_TYPE_HELIPORT,
+                        query_nav_objects(NavigationObject.NO_TYPE_HELIPORT, query_radius)
+                    );
+            }
 
-                }
+            if ( avionics.efis_shows_arpt() && ((nd_gc.map_range <= 80)||nd_gc.map_zoomin) ) {
+                draw_nav_objects(
+                        g2,
+                        NavigationObject.NO_TYPE_HELIPAD,
+                        query_nav_objects(NavigationObject.NO_TYPE_HELIPAD, query_radius)
+                    );
             }
 
         }
@@ -1259,7 +946,31 @@ public class MovingMap extends NDSubcomponent {
     */
 
 
-    private void draw_nav_objects(Graphics2D g2, int type, ArrayList nav_objects) {
+    /**
+     * @return    - how far from the map center symbols are drawn, in pixels : the rose, or up to the panel corners
+     */
+    private float nav_object_max_dist() {
+        if ( this.preferences.get_draw_only_inside_rose() ) {
+            return nd_gc.rose_radius;
+        } else {
+            // at least 1.5 times the rose, and all of the panel up to its farthest corner
+            float corner_x = Math.max(nd_gc.map_center_x, nd_gc.frame_size.width - nd_gc.map_center_x);
+            float corner_y = Math.max(nd_gc.map_center_y, nd_gc.frame_size.height - nd_gc.map_center_y);
+            return Math.max(nd_gc.rose_radius * 1.5f, (float) Math.hypot(corner_x, corner_y));
+        }
+    }
+
+
+    /**
+     * @return    - the objects of one type around the center of the map, in a list that is reused for the next type
+     */
+    private ArrayList<NavigationObject> query_nav_objects(int type, float radius) {
+        nor.get_nav_objects(this.center_lat, this.center_lon, radius, 1 << type, this.aircraft.get_min_rwy_length(), this.nav_object_candidates);
+        return this.nav_object_candidates;
+    }
+
+
+    private void draw_nav_objects(Graphics2D g2, int type, ArrayList<NavigationObject> nav_objects) {
 
         NavigationObject navobj = null;
         RadioNavBeacon rnb;
@@ -1268,12 +979,12 @@ public class MovingMap extends NDSubcomponent {
         
         for (int i=0; i<nav_objects.size(); i++) {
 
-            navobj = (NavigationObject)nav_objects.get(i);
+            navobj = nav_objects.get(i);
             map_projection.setPoint(navobj.lat, navobj.lon);
             int x = map_projection.getX();
             int y = map_projection.getY();
             double dist = Math.hypot( x - nd_gc.map_center_x, y - nd_gc.map_center_y );
-            float max_dist = this.preferences.get_draw_only_inside_rose() ? nd_gc.rose_radius : nd_gc.rose_radius * 1.5f;
+            float max_dist = nav_object_max_dist();
             if ( dist < max_dist ) {
                 
                 if (type == NavigationObject.NO_TYPE_NDB) {
@@ -1769,7 +1480,7 @@ public class MovingMap extends NDSubcomponent {
         }
 
         double dist = Math.hypot( x-nd_gc.map_center_x, y-nd_gc.map_center_y );
-        float max_dist = this.preferences.get_draw_only_inside_rose() ? nd_gc.rose_radius : nd_gc.rose_radius * 1.5f;
+        float max_dist = nav_object_max_dist();
         if ( dist < max_dist ) {
 
             int s3 = Math.round(2.0f*nd_gc.scaling_factor);
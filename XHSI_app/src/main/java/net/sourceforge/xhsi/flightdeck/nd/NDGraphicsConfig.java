@@ -377,6 +377,8 @@ public class NDGraphicsConfig extends GraphicsConfig implements ComponentListene
     public TexturePaint terrain_tp_ld_green;
     public TexturePaint terrain_tp_blue;
     public TexturePaint terrain_tp_black;
+    // the same textures over the background, per TerrainRaster band
+    public int terrain_patterns[][];
     public int terr_box_x;
     public int terr_value_x;
     public int terr_max_box_y;
@@ -393,8 +395,6 @@ public class NDGraphicsConfig extends GraphicsConfig implements ComponentListene
     public int terr_info_x;
     public int terr_info_y;
     public BufferedImage terr_info_img;
-    public BufferedImage terr_img_1;
-    public BufferedImage terr_img_2;   
     public float terr_sweep_step;
     public float terr_range_multiply;
     public int terr_nb_tile_x;
@@ -414,8 +414,6 @@ public class NDGraphicsConfig extends GraphicsConfig implements ComponentListene
     public int wxr_label1_y;
     public int wxr_label2_y;
 	public BufferedImage wxr_info_img;
-    public BufferedImage wxr_img_1;
-    public BufferedImage wxr_img_2;
     public float wxr_sweep_step;
     public float wxr_range_multiply;
     public int wxr_nb_tile_x;
@@ -1014,8 +1012,6 @@ public class NDGraphicsConfig extends GraphicsConfig implements ComponentListene
             /*
              * EGPWS - Terrain
              */
-            terr_img_1 = new BufferedImage(panel_rect.width,panel_rect.height,BufferedImage.TYPE_INT_ARGB);
-            terr_img_2 = new BufferedImage(panel_rect.width,panel_rect.height,BufferedImage.TYPE_INT_ARGB);
             terr_sweep_step = 75.0f/(preferences.get_nd_terrain_sweep_duration()*1000); 
             switch (preferences.get_terrain_resolution()) {
             case 0: // Fine - up to pixel
@@ -1091,8 +1087,6 @@ public class NDGraphicsConfig extends GraphicsConfig implements ComponentListene
              */
             // wxr_radius limits the weather radar range to 100nm
             wxr_radius = Math.min(rose_radius, (int)(pixels_per_nm*100));
-            wxr_img_1 = new BufferedImage(panel_rect.width,panel_rect.height,BufferedImage.TYPE_INT_ARGB);
-            wxr_img_2 = new BufferedImage(panel_rect.width,panel_rect.height,BufferedImage.TYPE_INT_ARGB);
             wxr_sweep_step = 120.0f/(preferences.get_nd_wxr_sweep_duration()*1000); 
             switch (preferences.get_nd_wxr_resolution()) {
             case 0: // Fine - up to pixel with interpolation - CPU expensive
@@ -1219,7 +1213,7 @@ public class NDGraphicsConfig extends GraphicsConfig implements ComponentListene
         /*
          * Terrain textures hd = high density, md = medium density, ld = low density
          */
-        int terr_text_size=16;
+        int terr_text_size=TerrainRaster.PATTERN_SIZE;
         terrain_tp_hd_red = create_regular_terrain_texture(terrain_red_color,terr_text_size,0);
         terrain_tp_hd_yellow = create_regular_terrain_texture(terrain_bright_yellow_color,terr_text_size,0);
         terrain_tp_md_yellow = create_regular_terrain_texture(terrain_yellow_color,terr_text_size,1);
@@ -1230,6 +1224,32 @@ public class NDGraphicsConfig extends GraphicsConfig implements ComponentListene
         terrain_tp_ld_green = create_regular_terrain_texture(terrain_dark_green_color,terr_text_size,2);
         terrain_tp_blue = create_regular_terrain_texture(terrain_blue_color,terr_text_size,1);
         terrain_tp_black = create_solid_terrain_texture(terrain_black_color,terr_text_size);
+        terrain_patterns = new int[TerrainRaster.NB_BANDS][];
+        terrain_patterns[TerrainRaster.BAND_RED] = create_terrain_pattern(terrain_tp_hd_red);
+        terrain_patterns[TerrainRaster.BAND_BRIGHT_YELLOW] = create_terrain_pattern(terrain_tp_hd_yellow);
+        terrain_patterns[TerrainRaster.BAND_YELLOW] = create_terrain_pattern(terrain_tp_md_yellow);
+        terrain_patterns[TerrainRaster.BAND_GREEN] = create_terrain_pattern(terrain_tp_hd_green);
+        terrain_patterns[TerrainRaster.BAND_DARK_GREEN] = create_terrain_pattern(terrain_tp_ld_green);
+        terrain_patterns[TerrainRaster.BAND_WATER] = create_terrain_pattern(terrain_tp_blue);
+        terrain_patterns[TerrainRaster.BAND_BLACK] = create_terrain_pattern(terrain_tp_black);
+    }
+
+    /**
+     * The pixels of a terrain texture over the background, for TerrainRaster
+     * @param texture : TexturePaint of TerrainRaster.PATTERN_SIZE pixels
+     * @return : ARGB pixels, row by row
+     */
+    private int[] create_terrain_pattern(TexturePaint texture) {
+    	BufferedImage texture_image = texture.getImage();
+    	int size = TerrainRaster.PATTERN_SIZE;
+    	int pattern[] = new int[size*size];
+    	for (int y=0; y<size; y++) {
+    		for (int x=0; x<size; x++) {
+    			int argb = texture_image.getRGB(x % texture_image.getWidth(), y % texture_image.getHeight());
+    			pattern[y*size + x] = (argb >>> 24) == 0 ? background_color.getRGB() : argb;
+    		}
+    	}
+    	return pattern;
     }
     
     /**
@@ -0,0 +1,143 @@
+/**
+* NDRasterCache.java
+*
+* The terrain and weather radar images of the NDs, shared by all NDs.
+*
+* An ND that starts a sweep asks for the image with the key of what it is
+* going to draw: the size and center of the map, the range, the orientation,
+* the reference altitude band, ... When another ND has made an image with
+* the same key less than a sweep ago, that image is used again instead of
+* making a new one; it is as old as the image that ND is still showing itself.
+* Images that are in the cache are not changed anymore.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.flightdeck.nd;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+public class NDRasterCache {
+
+	// enough for a few NDs with terrain and weather radar
+	private static final int MAX_RASTERS = 8;
+
+	private static NDRasterCache single_instance;
+
+
+	/**
+	 * What an image shows, compared value by value
+	 */
+	public static class Key {
+
+		private String kind;
+		private double values[];
+
+		public Key(String kind, double values[]) {
+			this.kind = kind;
+			this.values = values;
+		}
+
+		public boolean equals(Object other) {
+			if ( ! ( other instanceof Key ) ) {
+				return false;
+			}
+			Key other_key = (Key) other;
+			return this.kind.equals(other_key.kind) && Arrays.equals(this.values, other_key.values);
+		}
+
+		public int hashCode() {
+			return this.kind.hashCode() * 31 + Arrays.hashCode(this.values);
+		}
+
+	}
+
+
+	/**
+	 * An image with what was found while making it
+	 */
+	public static class Raster {
+
+		public final BufferedImage image;
+		public final float peak_min;
+		public final float peak_max;
+
+		private final Key key;
+		private final long time;
+
+		private Raster(Key key, long time, BufferedImage image, float peak_min, float peak_max) {
+			this.key = key;
+			this.time = time;
+			this.image = image;
+			this.peak_min = peak_min;
+			this.peak_max = peak_max;
+		}
+
+	}
+
+
+	// most recent first
+	private LinkedList<Raster> rasters = new LinkedList<Raster>();
+
+
+	public static synchronized NDRasterCache get_instance() {
+		if (NDRasterCache.single_instance == null) {
+			NDRasterCache.single_instance = new NDRasterCache();
+		}
+		return NDRasterCache.single_instance;
+	}
+
+
+	private NDRasterCache() {
+	}
+
+
+	/**
+	 * @param now        - in ms
+	 * @param max_age    - in ms, usually the duration of a sweep
+	 * @return the most recent image for the key that is not older than max_age, or null
+	 */
+	public synchronized Raster get_raster(Key key, long now, long max_age) {
+		Iterator<Raster> iterator = this.rasters.iterator();
+		while ( iterator.hasNext() ) {
+			Raster raster = iterator.next();
+			if ( ( now - raster.time ) > max_age ) {
+				// all the others are older
+				break;
+			}
+			if ( raster.key.equals(key) ) {
+				return raster;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Adds an image that will not be changed anymore
+	 */
+	public synchronized Raster put_raster(Key key, long now, BufferedImage image, float peak_min, float peak_max) {
+		Raster raster = new Raster(key, now, image, peak_min, peak_max);
+		this.rasters.addFirst(raster);
+		while ( this.rasters.size() > MAX_RASTERS ) {
+			this.rasters.removeLast();
+		}
+		return raster;
+	}
+
+
+}
@@ -27,6 +27,7 @@ import java.awt.Graphics2D;
 
 import net.sourceforge.xhsi.XHSIPreferences;
 import net.sourceforge.xhsi.model.ModelFactory;
+import net.sourceforge.xhsi.model.Avionics.EPGWSAlertLevel;
 import net.sourceforge.xhsi.flightdeck.Subcomponent;
 
 
@@ -60,4 +61,13 @@ public abstract class NDSubcomponent extends Subcomponent {
 
     public abstract void paint(Graphics2D g2);
 
+
+    /**
+     * @return true when the terrain is selected, or pops up for a terrain alert
+     */
+    protected boolean nd_shows_terrain() {
+        return this.avionics.efis_shows_terrain() || ( this.aircraft.get_terrain_alert() == EPGWSAlertLevel.CAUTION )
+                || ( this.aircraft.get_terrain_alert() == EPGWSAlertLevel.WARNING );
+    }
+
 }
@@ -27,33 +27,29 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Graphics2D;
-import java.awt.Paint;
 import java.awt.Shape;
-import java.awt.TexturePaint;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
 import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import net.sourceforge.xhsi.model.CoordinateSystem;
-import net.sourceforge.xhsi.model.ElevationRepository;
 import net.sourceforge.xhsi.model.FMSEntry;
 import net.sourceforge.xhsi.model.ModelFactory;
-import net.sourceforge.xhsi.util.AzimuthalEquidistantProjection;
-import net.sourceforge.xhsi.util.Projection;
 
 public class Terrain extends NDSubcomponent {
 
     private static final long serialVersionUID = 1L;
     
 	private static final Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+	
+	// NDs share their terrain when the reference altitude is in the same band of this many feet
+	private static final float REF_ALTITUDE_BAND = 100.0f;
 
-    private AffineTransform original_at;
-    
-    private Paint original_paint;
-    
     private float map_up;
     private float center_lon;
     private float center_lat;
@@ -72,9 +68,14 @@ public class Terrain extends NDSubcomponent {
 	private Area terr_clip_1 = null;
 	private Area terr_clip_2 = null;
     
+	// shared with the other NDs, not to be changed
+	private BufferedImage terr_img_1;
+	private BufferedImage terr_img_2;
 	private boolean terr_img_1_valid;
 	private boolean terr_img_2_valid;
 	private int current_image;
+	// the tiles of this ND, kept from one image to the next as long as the view moves little
+	private TerrainRaster terrain_raster = new TerrainRaster();
       
     private float sweep_angle;
     private float sweep_max = 60.0f;
@@ -83,19 +84,13 @@ public class Terrain extends NDSubcomponent {
 	
 	private float gear_altitude;
     
-	private ElevationRepository elevRepository;
-    
 	private DecimalFormat coordinates_formatter;
 	private DecimalFormat fl_formatter;
-  
-    private Projection map_projection;
- 
+
     
 	public Terrain(ModelFactory model_factory, NDGraphicsConfig nd_gc,
 			Component parent_component) {
 		super(model_factory, nd_gc, parent_component);
-		map_projection = new AzimuthalEquidistantProjection();
-        this.elevRepository = ElevationRepository.get_instance();
         this.coordinates_formatter = new DecimalFormat("00.0");
         this.fl_formatter = new DecimalFormat("000");
         DecimalFormatSymbols symbols = coordinates_formatter.getDecimalFormatSymbols();
@@ -112,7 +107,7 @@ public class Terrain extends NDSubcomponent {
 	}
 
 	public void paint(Graphics2D g2) {
-        if ( nd_gc.powered && (!( nd_gc.mode_app || nd_gc.mode_vor )) && avionics.efis_shows_terrain()) {
+        if ( nd_gc.powered && (!( nd_gc.mode_app || nd_gc.mode_vor )) && nd_shows_terrain()) {
     		if (!terrain_on) {
     			prepareInfoBox();
     			terrain_on=true;
@@ -133,23 +128,13 @@ public class Terrain extends NDSubcomponent {
 
         		if ( (! terr_img_1_valid) && (current_image==1) ) {
         			// logger.info("Building terrain in buffer 1");
-        			Graphics2D g_terr = nd_gc.terr_img_1.createGraphics();
-        			g_terr.setRenderingHints(nd_gc.rendering_hints);
-        			g_terr.setStroke(new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
-        			g_terr.setColor(nd_gc.background_color);
-        			g_terr.fillRect(0, 0, nd_gc.panel_rect.width,nd_gc.panel_rect.height);
-        			drawTerrain(g_terr,nd_gc.max_range);  
+        			terr_img_1 = drawTerrain(nd_gc.max_range);  
         			terr_img_1_valid=true;
         			prepareInfoBox();
         		}
         		if ( (! terr_img_2_valid) && (current_image==2) ) {
         			// logger.info("Building terrain in buffer 2");
-        			Graphics2D g_terr = nd_gc.terr_img_2.createGraphics();
-        			g_terr.setRenderingHints(nd_gc.rendering_hints);
-        			g_terr.setStroke(new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
-        			g_terr.setColor(nd_gc.background_color);
-        			g_terr.fillRect(0, 0, nd_gc.panel_rect.width,nd_gc.panel_rect.height);
-        			drawTerrain(g_terr,nd_gc.max_range);  
+        			terr_img_2 = drawTerrain(nd_gc.max_range);  
         			terr_img_2_valid=true;
         			prepareInfoBox();
         		}
@@ -243,7 +228,7 @@ public class Terrain extends NDSubcomponent {
 							nd_gc.rose_radius*2, nd_gc.rose_radius*2, 90+sweep_max, sweep_angle-sweep_max, Arc2D.PIE)));
 				}
 				g2.setClip(terr_clip_1);
-				g2.drawImage(nd_gc.terr_img_1, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
+				g2.drawImage(terr_img_1, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
 			}
 			
 			if (terr_img_2_valid) {
@@ -258,13 +243,13 @@ public class Terrain extends NDSubcomponent {
 							nd_gc.rose_radius*2, nd_gc.rose_radius*2, 90+sweep_max, sweep_angle-sweep_max, Arc2D.PIE)));
 				}		
 				g2.setClip(terr_clip_2);
-				g2.drawImage( nd_gc.terr_img_2, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
+				g2.drawImage( terr_img_2, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
 			}
 			
 		} else {
 			g2.setClip(nd_gc.terr_clip);
-			if (terr_img_1_valid && current_image==1) g2.drawImage( nd_gc.terr_img_1, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
-			if (terr_img_2_valid && current_image==2) g2.drawImage( nd_gc.terr_img_2, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
+			if (terr_img_1_valid && current_image==1) g2.drawImage( terr_img_1, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
+			if (terr_img_2_valid && current_image==2) g2.drawImage( terr_img_2, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
 		}
 		g2.setClip(original_clip);
 	}
@@ -273,14 +258,13 @@ public class Terrain extends NDSubcomponent {
 	 * Draw the terrain buffer image based on reference altitude
 	 * Airbus documentation : FCOM 1.31.45 (Indications on ND)
 	 * 
-	 * @param g2
+	 * The image is made once for all NDs that show the same (see NDRasterCache)
+	 * 
 	 * @param radius_scale
+	 * @return the terrain image
 	 */
-	private void drawTerrain(Graphics2D g2, float radius_scale) {
+	private BufferedImage drawTerrain(float radius_scale) {
 		
-		peak_min = 8500;
-		peak_max = 0;
-			
         this.center_lat = this.aircraft.lat();
         this.center_lon = this.aircraft.lon();
 
@@ -308,11 +292,6 @@ public class Terrain extends NDSubcomponent {
         if ( nd_gc.map_zoomin ) this.pixels_per_nm *= 100.0f;
         */
 
-        this.map_projection.setScale(nd_gc.pixels_per_nm);
-        // this.map_projection.setCenter(nd_gc.map_center_x,nd_gc.map_center_y);
-        this.map_projection.setCenter(nd_gc.map_center_x+nd_gc.border_left,nd_gc.map_center_y+nd_gc.border_bottom);
-        this.map_projection.setAcf(this.center_lat, this.center_lon);
-        
         // determine max and min lat/lon in viewport to only draw those
         // elements that can be displayed
         float delta_lat = radius_scale * CoordinateSystem.deg_lat_per_nm();
@@ -327,7 +306,6 @@ public class Terrain extends NDSubcomponent {
         float lon_step = (lon_max - lon_min) / nd_gc.terr_nb_tile_x;
         
         // rotate to TRUE! aircraft heading or track, or North
-        AffineTransform original_at = g2.getTransform();
         if ( nd_gc.hdg_up ) {
             // HDG UP
             this.map_up = this.aircraft.heading() - this.aircraft.magnetic_variation();
@@ -338,30 +316,35 @@ public class Terrain extends NDSubcomponent {
             // North UP
             this.map_up = 0.0f;
         }
-        g2.transform( AffineTransform.getRotateInstance(
+        AffineTransform rotation = AffineTransform.getRotateInstance(
                 Math.toRadians(-1.0f * this.map_up),
                 nd_gc.map_center_x,
-                nd_gc.map_center_y)
-        );
+                nd_gc.map_center_y);
         
         float ref_alt = ref_altitude();
-        original_paint = g2.getPaint();
-        for (float lat=lat_min; lat<= lat_max; lat+=lat_step) {
-            for (float lon=lon_min; lon<=lon_max; lon+=lon_step) {
-            	float elevation = elevRepository.get_elevation(lat, lon)*3.2808f;
-            	peak_min = Math.min(peak_min, elevation);
-            	peak_max = Math.max(peak_max, elevation);
-
-            	// g2.setColor(terrain_color(ref_alt, elevation));
-            	g2.setPaint(terrain_texture(ref_alt, elevation));
-            	map_projection.setPoint(lat, lon);
-            	int x = map_projection.getX();
-            	int y = map_projection.getY();
-            	g2.fillRect(x, y, nd_gc.terr_tile_width, nd_gc.terr_tile_height);
-            }
+        NDRasterCache.Key key = new NDRasterCache.Key("terrain", new double[] {
+                nd_gc.panel_rect.width, nd_gc.panel_rect.height,
+                nd_gc.map_center_x, nd_gc.map_center_y, nd_gc.border_left, nd_gc.border_bottom,
+                nd_gc.pixels_per_nm, radius_scale, nd_gc.terr_range_multiply, nd_gc.terr_nb_tile_x, nd_gc.terr_nb_tile_y,
+                Math.round(this.map_up), Math.floor(ref_alt / REF_ALTITUDE_BAND), gear_altitude,
+                nd_gc.background_color.getRGB(), Arrays.deepHashCode(nd_gc.terrain_patterns) });
+        NDRasterCache raster_cache = NDRasterCache.get_instance();
+        NDRasterCache.Raster raster = raster_cache.get_raster(key, nd_gc.current_time_millis, this.preferences.get_nd_terrain_sweep_duration()*1000L);
+        if ( raster == null ) {
+            // the tiles start at lat_max and lon_min; one more row and column, like from lat_min to lat_max and lon_min to lon_max inclusive
+            BufferedImage terr_img = new BufferedImage(nd_gc.panel_rect.width, nd_gc.panel_rect.height, BufferedImage.TYPE_INT_ARGB);
+            // the tiles that are still in view from the last time are kept
+            this.terrain_raster.sample(lat_max, lon_min, lat_step, lon_step, nd_gc.terr_nb_tile_x + 1, nd_gc.terr_nb_tile_y + 1);
+            this.terrain_raster.render(terr_img, nd_gc.terrain_patterns, nd_gc.background_color.getRGB(),
+                    ref_alt, gear_altitude,
+                    this.center_lat, this.center_lon,
+                    nd_gc.map_center_x+nd_gc.border_left, nd_gc.map_center_y+nd_gc.border_bottom, nd_gc.pixels_per_nm,
+                    rotation);
+            raster = raster_cache.put_raster(key, nd_gc.current_time_millis, terr_img,
+                    this.terrain_raster.get_peak_min(8500), this.terrain_raster.get_peak_max());
         }
-        g2.setPaint(original_paint);
-        g2.setTransform(original_at);
+        peak_min = raster.peak_min;
+        peak_max = raster.peak_max;
         
         if (peak_min<0) peak_min=0; 
 
@@ -375,6 +358,8 @@ public class Terrain extends NDSubcomponent {
         	middle_band = peak_min + (peak_max-peak_min)/2; 
         	low_band = peak_min + (peak_max-peak_min)/4;
         } else peaks_mode_on = false;
+        
+        return raster.image;
 	}
 	
 	/**
@@ -397,45 +382,6 @@ public class Terrain extends NDSubcomponent {
 		} else return nd_gc.terrain_black_color;
 	}
 
-	/**
-	 * altitude and elevation in feet
-	 */
-	public TexturePaint terrain_texture(float ref_altitude, float elevation) {
-		if (peaks_mode_on) {
-			// Peak mode on - Textured style
-			if (elevation > ref_altitude+2000) {
-				return nd_gc.terrain_tp_hd_red;
-			} else if (elevation > ref_altitude+1000) {
-				return nd_gc.terrain_tp_hd_yellow;
-			} else if (elevation > ref_altitude-gear_altitude) {
-				return nd_gc.terrain_tp_md_yellow;
-			} else if (elevation > ref_altitude-1000) {
-				return nd_gc.terrain_tp_hd_green;
-			} else if (elevation > ref_altitude-2000) {
-				return nd_gc.terrain_tp_ld_green;
-			} else if (elevation <= 0) {
-				return nd_gc.terrain_tp_blue;
-			} else return nd_gc.terrain_tp_black;			
-		} else {
-			// Peak mode off - Textured style
-			if (elevation > ref_altitude+2000) {
-				return nd_gc.terrain_tp_hd_red;
-			} else if (elevation > ref_altitude+1000) {
-				return nd_gc.terrain_tp_hd_yellow;
-			} else if (elevation > ref_altitude-gear_altitude) {
-				return nd_gc.terrain_tp_md_yellow;
-			} else if (elevation > ref_altitude-1000) {
-				return nd_gc.terrain_tp_hd_green;
-			} else if (elevation > ref_altitude-2000) {
-				return nd_gc.terrain_tp_ld_green;
-			} else if (elevation <= 0) {
-				return nd_gc.terrain_tp_blue;
-			} else return nd_gc.terrain_tp_black;
-		}
-	}
-
-	
-	
 	/**
 	 * Result in feet
 	 * Predicted altitude after 1 mn
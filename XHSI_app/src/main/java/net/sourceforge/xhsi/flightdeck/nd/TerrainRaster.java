@@ -0,0 +1,414 @@
+/**
+* TerrainRaster.java
+*
+* Renders the EGPWS terrain of the ND straight into the pixels of an image.
+*
+* The terrain is sampled in tiles of lat_step by lon_step degrees, like the
+* tiles that were drawn one by one before; every tile gets the colour band of
+* the highest terrain under it. Then every pixel of the image looks up the
+* tile it shows and takes its colour from the pattern of that band, so the
+* tiles are drawn in their projected shape, without overlapping.
+* Finding the position of each pixel is done exactly every NODE_SPACING
+* pixels, and interpolated in between.
+*
+* The tiles are on a fixed north-up grid of lat_step by lon_step degrees
+* from 90N 180W. When the aircraft has moved, the tiles that are still in
+* view are kept, and only the newly exposed rows and columns are sampled.
+* The colour bands are only computed again when the reference altitude
+* has changed. The kept lon_step may be wider than asked, but never
+* narrower, or the columns would not reach the east edge of the map. A new
+* grid gets a lon_step LON_STEP_TOLERANCE/2 wider than asked, so that it can
+* be kept while the aircraft flies north or south. The grid is started again
+* when the range changes, when the asked lon_step gets wider than the kept
+* one or more than LON_STEP_TOLERANCE narrower, or when the elevation data
+* changes.
+*
+* Both steps are split in bands of rows, which are done on all cores.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.flightdeck.nd;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.sourceforge.xhsi.model.ElevationRepository;
+
+public class TerrainRaster {
+
+	// the colour bands, in the order of NDGraphicsConfig.terrain_patterns
+	public static final int BAND_RED = 0;
+	public static final int BAND_BRIGHT_YELLOW = 1;
+	public static final int BAND_YELLOW = 2;
+	public static final int BAND_GREEN = 3;
+	public static final int BAND_DARK_GREEN = 4;
+	public static final int BAND_WATER = 5;
+	public static final int BAND_BLACK = 6;
+	public static final int NB_BANDS = 7;
+
+	// the patterns are PATTERN_SIZE x PATTERN_SIZE pixels, a power of 2
+	public static final int PATTERN_SIZE = 16;
+
+	// pixels between the points whose position is computed exactly
+	private static final int NODE_SPACING = 8;
+	// rows of tiles or pixels that are done in one go
+	private static final int ROWS_PER_TASK = 16;
+
+	private static final float METERS_TO_FEET = 3.2808f;
+
+	private static final float LON_STEP_TOLERANCE = 0.05f;
+
+	// the tile band is not known yet
+	private static final byte NO_BAND = -1;
+
+	private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	private ElevationRepository elev_repository;
+
+	// the tiles, row by row from the north-west corner; in feet
+	// the first one is tile top_row, left_column of the grid
+	private int tiles_x = 0;
+	private int tiles_y = 0;
+	private int top_row;
+	private int left_column;
+	private float lat_top;
+	private float lon_left;
+	private float lat_step = 0.0f;
+	private float lon_step = 0.0f;
+	private int generation;
+	private float tile_max[] = new float[0];
+	private float tile_min[] = new float[0];
+	private byte tile_band[] = new byte[0];
+	// the same, for shifting
+	private float next_max[] = new float[0];
+	private float next_min[] = new float[0];
+	private byte next_band[] = new byte[0];
+
+	// the tiles that were kept by the last shift, and need not be sampled
+	private int kept_first_row;
+	private int kept_last_row;
+	private int kept_first_column;
+	private int kept_last_column;
+
+	// what the bands were computed for
+	private float band_ref_altitude;
+	private float band_gear_altitude;
+
+	// tile coordinates of the nodes, (width/NODE_SPACING+2) by (height/NODE_SPACING+2)
+	private int nodes_x;
+	private float node_col[] = new float[0];
+	private float node_row[] = new float[0];
+
+	private int pixels[] = new int[0];
+
+	public TerrainRaster() {
+		this.elev_repository = ElevationRepository.get_instance();
+	}
+
+	/**
+	 * altitude and elevation in feet
+	 * The bands are the same with and without peaks mode
+	 */
+	public static int terrain_band(float ref_altitude, float gear_altitude, float elevation) {
+		if (elevation > ref_altitude+2000) {
+			return BAND_RED;
+		} else if (elevation > ref_altitude+1000) {
+			return BAND_BRIGHT_YELLOW;
+		} else if (elevation > ref_altitude-gear_altitude) {
+			return BAND_YELLOW;
+		} else if (elevation > ref_altitude-1000) {
+			return BAND_GREEN;
+		} else if (elevation > ref_altitude-2000) {
+			return BAND_DARK_GREEN;
+		} else if (elevation <= 0) {
+			return BAND_WATER;
+		} else return BAND_BLACK;
+	}
+
+	/**
+	 * Reads the highest and lowest elevation of at least tiles_x by tiles_y tiles,
+	 * starting at lat_max going down and at lon_min going east.
+	 * The tiles are lat_step high and at least lon_step wide.
+	 * Tiles that were read before for the same grid are not read again.
+	 */
+	public void sample(float lat_max, float lon_min, float lat_step, float lon_step, int tiles_x, int tiles_y) {
+
+		int generation = elev_repository.get_generation();
+		boolean same_grid = ( lat_step == this.lat_step )
+				&& ( lon_step <= this.lon_step ) && ( lon_step >= this.lon_step * (1.0f - LON_STEP_TOLERANCE) )
+				&& ( tiles_x == this.tiles_x ) && ( tiles_y == this.tiles_y )
+				&& ( generation == this.generation );
+		if ( same_grid ) {
+			lon_step = this.lon_step;
+		} else {
+			lon_step = lon_step * (1.0f + LON_STEP_TOLERANCE / 2.0f);
+		}
+		int top_row = (int) Math.floor((90.0 - lat_max) / lat_step);
+		int left_column = (int) Math.floor((lon_min + 180.0) / lon_step);
+
+		if (next_max.length != tiles_x*tiles_y) {
+			tile_max = new float[tiles_x*tiles_y];
+			tile_min = new float[tiles_x*tiles_y];
+			tile_band = new byte[tiles_x*tiles_y];
+			next_max = new float[tiles_x*tiles_y];
+			next_min = new float[tiles_x*tiles_y];
+			next_band = new byte[tiles_x*tiles_y];
+		}
+
+		// the tiles that stay in view, in the new rows and columns
+		int shift_rows = top_row - this.top_row;
+		int shift_columns = left_column - this.left_column;
+		kept_first_row = 0;
+		kept_last_row = 0;
+		kept_first_column = 0;
+		kept_last_column = 0;
+		if ( same_grid ) {
+			kept_first_row = Math.max(0, -shift_rows);
+			kept_last_row = Math.min(tiles_y, tiles_y - shift_rows);
+			kept_first_column = Math.max(0, -shift_columns);
+			kept_last_column = Math.min(tiles_x, tiles_x - shift_columns);
+			if ( kept_first_row >= kept_last_row || kept_first_column >= kept_last_column ) {
+				kept_first_row = 0;
+				kept_last_row = 0;
+				kept_first_column = 0;
+				kept_last_column = 0;
+			}
+		}
+		if ( shift_rows != 0 || shift_columns != 0 || ! same_grid ) {
+			int kept_columns = kept_last_column - kept_first_column;
+			for (int row=kept_first_row; row<kept_last_row; row++) {
+				int from = (row + shift_rows) * tiles_x + kept_first_column + shift_columns;
+				int to = row * tiles_x + kept_first_column;
+				System.arraycopy(tile_max, from, next_max, to, kept_columns);
+				System.arraycopy(tile_min, from, next_min, to, kept_columns);
+				System.arraycopy(tile_band, from, next_band, to, kept_columns);
+			}
+			float swap_float[] = tile_max; tile_max = next_max; next_max = swap_float;
+			swap_float = tile_min; tile_min = next_min; next_min = swap_float;
+			byte swap_byte[] = tile_band; tile_band = next_band; next_band = swap_byte;
+		}
+
+		this.top_row = top_row;
+		this.left_column = left_column;
+		this.lat_top = (float) (90.0 - top_row * (double) lat_step);
+		this.lon_left = (float) (left_column * (double) lon_step - 180.0);
+		this.lat_step = lat_step;
+		this.lon_step = lon_step;
+		this.tiles_x = tiles_x;
+		this.tiles_y = tiles_y;
+		this.generation = generation;
+		if ( kept_last_row - kept_first_row < tiles_y || kept_last_column - kept_first_column < tiles_x ) {
+			pool.invoke(new SampleTask(0, tiles_y));
+		}
+
+	}
+
+	/**
+	 * @return the highest elevation of all tiles, in feet
+	 */
+	public float get_peak_max() {
+		float peak = 0;
+		for (int i=0; i<tile_max.length; i++) peak = Math.max(peak, tile_max[i]);
+		return peak;
+	}
+
+	/**
+	 * @return the lowest elevation of all tiles, in feet, at most max_value
+	 */
+	public float get_peak_min(float max_value) {
+		float peak = max_value;
+		for (int i=0; i<tile_min.length; i++) peak = Math.min(peak, tile_min[i]);
+		return peak;
+	}
+
+	/**
+	 * Draws the sampled tiles into the whole image
+	 *
+	 * @param image         - TYPE_INT_ARGB
+	 * @param patterns      - per band, PATTERN_SIZE x PATTERN_SIZE ARGB pixels
+	 * @param background    - ARGB of the pixels outside the tiles
+	 * @param center_lat    - the center of the projection
+	 * @param center_lon
+	 * @param center_x      - where the center of the projection is drawn, before rotating
+	 * @param center_y
+	 * @param pixels_per_nm
+	 * @param rotation      - the transform that turns the map, from map to image pixels
+	 */
+	public void render(BufferedImage image, int patterns[][], int background,
+			float ref_altitude, float gear_altitude,
+			float center_lat, float center_lon, int center_x, int center_y, float pixels_per_nm,
+			AffineTransform rotation) {
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		// the colour band of each new tile, or of all tiles when the reference altitude has changed
+		boolean new_bands = ( ref_altitude != band_ref_altitude ) || ( gear_altitude != band_gear_altitude );
+		for (int i=0; i<tile_max.length; i++) {
+			if ( new_bands || tile_band[i] == NO_BAND ) {
+				tile_band[i] = (byte) terrain_band(ref_altitude, gear_altitude, tile_max[i]);
+			}
+		}
+		band_ref_altitude = ref_altitude;
+		band_gear_altitude = gear_altitude;
+
+		// where the nodes are in the tiles
+		nodes_x = width / NODE_SPACING + 2;
+		int nodes_y = height / NODE_SPACING + 2;
+		if (node_col.length != nodes_x*nodes_y) {
+			node_col = new float[nodes_x*nodes_y];
+			node_row = new float[nodes_x*nodes_y];
+		}
+		double phi1 = Math.toRadians(center_lat);
+		double sin_phi1 = Math.sin(phi1);
+		double cos_phi1 = Math.cos(phi1);
+		// pixels per radian of arc
+		double scale = 180.0 / Math.PI * 60.0 * pixels_per_nm;
+		double map_point[] = new double[2];
+		AffineTransform inverse;
+		try {
+			inverse = rotation.createInverse();
+		} catch (Exception e) {
+			inverse = new AffineTransform();
+		}
+		for (int ny=0; ny<nodes_y; ny++) {
+			for (int nx=0; nx<nodes_x; nx++) {
+				map_point[0] = nx * NODE_SPACING + 0.5;
+				map_point[1] = ny * NODE_SPACING + 0.5;
+				inverse.transform(map_point, 0, map_point, 0, 1);
+				// the inverse of AzimuthalEquidistantProjection, in radians
+				double east = (map_point[0] - center_x) / scale;
+				double north = (center_y - map_point[1]) / scale;
+				double rho = Math.sqrt(east*east + north*north);
+				double lat = phi1;
+				double d_lon = 0.0;
+				if (rho > 0.0) {
+					double sin_rho = Math.sin(rho);
+					double cos_rho = Math.cos(rho);
+					lat = Math.asin(cos_rho * sin_phi1 + north * sin_rho * cos_phi1 / rho);
+					d_lon = Math.atan2(east * sin_rho, rho * cos_phi1 * cos_rho - north * sin_phi1 * sin_rho);
+				}
+				node_col[ny*nodes_x + nx] = (float) ((center_lon + Math.toDegrees(d_lon) - lon_left) / lon_step);
+				node_row[ny*nodes_x + nx] = (float) ((lat_top - Math.toDegrees(lat)) / lat_step);
+			}
+		}
+
+		if (pixels.length != width*height) {
+			pixels = new int[width*height];
+		}
+		pool.invoke(new FillTask(patterns, background, width, 0, height));
+		image.getRaster().setDataElements(0, 0, width, height, pixels);
+	}
+
+
+	private class SampleTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int first_row;
+		private int last_row;
+
+		SampleTask(int first_row, int last_row) {
+			this.first_row = first_row;
+			this.last_row = last_row;
+		}
+
+		protected void compute() {
+			if (last_row - first_row > ROWS_PER_TASK) {
+				int middle = (first_row + last_row) / 2;
+				invokeAll(new SampleTask(first_row, middle), new SampleTask(middle, last_row));
+				return;
+			}
+			for (int row=first_row; row<last_row; row++) {
+				if ( row >= kept_first_row && row < kept_last_row ) {
+					sample_row(row, 0, kept_first_column);
+					sample_row(row, kept_last_column, tiles_x);
+				} else {
+					sample_row(row, 0, tiles_x);
+				}
+			}
+		}
+
+		private void sample_row(int row, int first_col, int last_col) {
+			// from the row and column in the grid, so that a tile does not depend on where the view started
+			float lat = (float) (90.0 - (top_row + row) * (double) lat_step);
+			for (int col=first_col; col<last_col; col++) {
+				float lon = (float) ((left_column + col) * (double) lon_step - 180.0);
+				// the highest terrain under the tile, from coarser data at longer ranges
+				tile_max[row*tiles_x + col] = elev_repository.get_max_elevation(lat-lat_step, lon, lat, lon+lon_step)*METERS_TO_FEET;
+				tile_min[row*tiles_x + col] = elev_repository.get_min_elevation(lat-lat_step, lon, lat, lon+lon_step)*METERS_TO_FEET;
+				tile_band[row*tiles_x + col] = NO_BAND;
+			}
+		}
+
+	}
+
+
+	private class FillTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int patterns[][];
+		private int background;
+		private int width;
+		private int first_y;
+		private int last_y;
+
+		FillTask(int patterns[][], int background, int width, int first_y, int last_y) {
+			this.patterns = patterns;
+			this.background = background;
+			this.width = width;
+			this.first_y = first_y;
+			this.last_y = last_y;
+		}
+
+		protected void compute() {
+			if (last_y - first_y > ROWS_PER_TASK) {
+				int middle = (first_y + last_y) / 2;
+				invokeAll(new FillTask(patterns, background, width, first_y, middle),
+						new FillTask(patterns, background, width, middle, last_y));
+				return;
+			}
+			for (int y=first_y; y<last_y; y++) {
+				int node = (y / NODE_SPACING) * nodes_x;
+				float fy = (float)(y % NODE_SPACING) / NODE_SPACING;
+				int pattern_row = (y & (PATTERN_SIZE-1)) * PATTERN_SIZE;
+				int pixel = y * width;
+				for (int x0=0; x0<width; x0+=NODE_SPACING, node++) {
+					// the tile coordinates at the left and right node of this row, in between linearly
+					float col = node_col[node] + (node_col[node+nodes_x] - node_col[node]) * fy;
+					float row = node_row[node] + (node_row[node+nodes_x] - node_row[node]) * fy;
+					float col_right = node_col[node+1] + (node_col[node+nodes_x+1] - node_col[node+1]) * fy;
+					float row_right = node_row[node+1] + (node_row[node+nodes_x+1] - node_row[node+1]) * fy;
+					float d_col = (col_right - col) / NODE_SPACING;
+					float d_row = (row_right - row) / NODE_SPACING;
+					int x1 = Math.min(x0 + NODE_SPACING, width);
+					for (int x=x0; x<x1; x++, col+=d_col, row+=d_row) {
+						if (col >= 0.0f && row >= 0.0f && col < tiles_x && row < tiles_y) {
+							int band = tile_band[(int)row * tiles_x + (int)col];
+							pixels[pixel + x] = patterns[band][pattern_row + (x & (PATTERN_SIZE-1))];
+						} else {
+							pixels[pixel + x] = background;
+						}
+					}
+				}
+			}
+		}
+
+	}
+
+}
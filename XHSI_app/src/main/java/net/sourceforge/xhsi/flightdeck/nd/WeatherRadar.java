@@ -22,7 +22,6 @@
 
 package net.sourceforge.xhsi.flightdeck.nd;
 
-import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Component;
@@ -31,8 +30,10 @@ import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
 import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import net.sourceforge.xhsi.model.Avionics;
@@ -63,6 +64,9 @@ public class WeatherRadar extends NDSubcomponent {
     float pixels_per_deg_lat;
     float pixels_per_nm;
     
+	// shared with the other NDs, not to be changed
+	BufferedImage wxr_img_1;
+	BufferedImage wxr_img_2;
 	boolean wxr_img_1_valid;
 	boolean wxr_img_2_valid;
 	boolean wxr_on;
@@ -121,7 +125,7 @@ public class WeatherRadar extends NDSubcomponent {
         if ( nd_gc.powered && 
         		(!( nd_gc.mode_app || nd_gc.mode_vor )) && 
         		avionics.wxr_active() && 
-        		(!avionics.efis_shows_terrain()) && 
+        		(!nd_shows_terrain()) && 
         		(!nd_gc.display_inhibit()) &&
         		// No weather radar in map_zoomin or plan mode
         		(!nd_gc.map_zoomin) &&
@@ -144,31 +148,12 @@ public class WeatherRadar extends NDSubcomponent {
         	if (sweep_angle<=sweep_min) initSweep(false);   	
 
         	if ( (! wxr_img_1_valid) && (current_image==1) ) {
-        		Graphics2D g_terr = nd_gc.wxr_img_1.createGraphics();
-        		// Clear the buffered Image first
-        		g_terr.setComposite(AlphaComposite.Clear);
-        		g_terr.fillRect(0, 0, nd_gc.frame_size.width, nd_gc.frame_size.height);
-        		g_terr.setComposite(AlphaComposite.SrcOver);
-        		g_terr.setRenderingHints(nd_gc.rendering_hints);
-        		g_terr.setStroke(new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
-        		g_terr.setColor(nd_gc.background_color);
-        		// g_terr.setClip(nd_gc.wxr_clip);
-        		// too slow - better to clip out after drawWeather
-        		drawWeather(g_terr,nd_gc.max_range);  
+        		wxr_img_1 = drawWeather(nd_gc.max_range);  
         		wxr_img_1_valid=true;
         		prepareInfoBox();
         	}
         	if ( (! wxr_img_2_valid) && (current_image==2) ) {
-        		Graphics2D g_terr = nd_gc.wxr_img_2.createGraphics();
-        		// Clear the buffered Image first
-        		g_terr.setComposite(AlphaComposite.Clear);
-        		g_terr.fillRect(0, 0, nd_gc.frame_size.width, nd_gc.frame_size.height);
-        		g_terr.setComposite(AlphaComposite.SrcOver);
-        		g_terr.setRenderingHints(nd_gc.rendering_hints);
-        		g_terr.setStroke(new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
-        		g_terr.setColor(nd_gc.background_color);
-        		// g_terr.setClip(nd_gc.wxr_clip);
-        		drawWeather(g_terr,nd_gc.max_range);  
+        		wxr_img_2 = drawWeather(nd_gc.max_range);  
         		wxr_img_2_valid=true;
         		prepareInfoBox();
         	}
@@ -198,18 +183,18 @@ public class WeatherRadar extends NDSubcomponent {
 						nd_gc.wxr_radius*2, nd_gc.wxr_radius*2, 90-sweep_min, sweep_min-sweep_angle, Arc2D.PIE));
 
 				g2.setClip(wxr_clip_1);
-				g2.drawImage( nd_gc.wxr_img_1, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
+				g2.drawImage( wxr_img_1, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
 			}
 			if (wxr_img_2_valid) {
 				wxr_clip_2 = new Area(new Arc2D.Float(nd_gc.map_center_x - nd_gc.wxr_radius, nd_gc.map_center_y - nd_gc.wxr_radius,
 						nd_gc.wxr_radius*2, nd_gc.wxr_radius*2, 90-sweep_max, sweep_max-sweep_angle, Arc2D.PIE));
 				g2.setClip(wxr_clip_2);
-				g2.drawImage( nd_gc.wxr_img_2, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
+				g2.drawImage( wxr_img_2, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
 			}
 		} else {
 			g2.setClip(nd_gc.wxr_clip);
-			if (wxr_img_1_valid && current_image==1) g2.drawImage( nd_gc.wxr_img_1, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
-			if (wxr_img_2_valid && current_image==2) g2.drawImage( nd_gc.wxr_img_2, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
+			if (wxr_img_1_valid && current_image==1) g2.drawImage( wxr_img_1, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
+			if (wxr_img_2_valid && current_image==2) g2.drawImage( wxr_img_2, nd_gc.panel_rect.x, nd_gc.panel_rect.y, null);
 		}
 		g2.setClip(original_clip);
 	}
@@ -251,7 +236,7 @@ public class WeatherRadar extends NDSubcomponent {
 			 * Boeing 737
 			 */
 
-            if ( (wxr_mode>0) && this.avionics.efis_shows_wxr() && (!this.avionics.efis_shows_terrain()) ) {
+            if ( (wxr_mode>0) && this.avionics.efis_shows_wxr() && (!nd_shows_terrain()) ) {
                 label_str = "WX";
                 if (wxr_mode==2) label_str="WX+T";
                 if (wxr_mode==3) label_str="MAP";
@@ -271,7 +256,12 @@ public class WeatherRadar extends NDSubcomponent {
 		}
 	}
 	
-	private void drawWeather(Graphics2D g2, float radius_scale) {
+	/**
+	 * The image is made once for all NDs that show the same (see NDRasterCache)
+	 * 
+	 * @return the weather image, transparent where there is no weather
+	 */
+	private BufferedImage drawWeather(float radius_scale) {
 		
 		// Turbulence zones are displayed in magenta.
 		boolean turbulence_mode = this.avionics.wxr_mode()==Avionics.WXR_MODE_TURB;
@@ -313,7 +303,6 @@ public class WeatherRadar extends NDSubcomponent {
         float lon_step = (lon_max - lon_min) / nd_gc.wxr_nb_tile_x;
         
         // rotate to TRUE! aircraft heading or track, or North
-        AffineTransform original_at = g2.getTransform();
         if ( nd_gc.hdg_up ) {
             // HDG UP
             this.map_up = this.aircraft.heading() - this.aircraft.magnetic_variation();
@@ -324,17 +313,34 @@ public class WeatherRadar extends NDSubcomponent {
             // North UP
             this.map_up = 0.0f;
         }
+        
+		float gain = avionics.wxr_auto_gain() ? (avionics.wxr_mode()==2 ? 1.16f : 0.82f) : avionics.wxr_gain()*1.5f;
+		boolean fine = preferences.get_nd_wxr_resolution() == 0;
+		float storm_level;
+		
+        NDRasterCache.Key key = new NDRasterCache.Key("weather", new double[] {
+                nd_gc.panel_rect.width, nd_gc.panel_rect.height,
+                nd_gc.map_center_x, nd_gc.map_center_y, nd_gc.border_left, nd_gc.border_bottom,
+                nd_gc.pixels_per_nm, radius_scale, nd_gc.wxr_range_multiply, nd_gc.wxr_nb_tile_x, nd_gc.wxr_nb_tile_y,
+                nd_gc.wxr_tile_width, nd_gc.wxr_tile_height,
+                Math.round(this.map_up), gain, fine ? 1 : 0, turbulence_mode ? 1 : 0,
+                Arrays.hashCode(nd_gc.wxr_colors) });
+        NDRasterCache raster_cache = NDRasterCache.get_instance();
+        NDRasterCache.Raster raster = raster_cache.get_raster(key, nd_gc.current_time_millis, this.preferences.get_nd_wxr_sweep_duration()*1000L);
+        if ( raster != null ) {
+        	return raster.image;
+        }
+        
+        BufferedImage wxr_img = new BufferedImage(nd_gc.panel_rect.width, nd_gc.panel_rect.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = wxr_img.createGraphics();
+        g2.setRenderingHints(nd_gc.rendering_hints);
+        g2.setStroke(new BasicStroke(2.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
         g2.transform( AffineTransform.getRotateInstance(
                 Math.toRadians(-1.0f * this.map_up),
                 nd_gc.map_center_x,
                 nd_gc.map_center_y)
         );
-        
 		g2.setFont(nd_gc.font_xxxs);
-		
-		float gain = avionics.wxr_auto_gain() ? (avionics.wxr_mode()==2 ? 1.16f : 0.82f) : avionics.wxr_gain()*1.5f;
-		boolean fine = preferences.get_nd_wxr_resolution() == 0;
-		float storm_level;
         
         for (float lat=lat_min; lat<= lat_max; lat+=lat_step) {
             for (float lon=lon_min; lon<=lon_max; lon+=lon_step) {
@@ -350,8 +356,10 @@ public class WeatherRadar extends NDSubcomponent {
             	if (storm_level>0) g2.fillRect(x, y, nd_gc.wxr_tile_width, nd_gc.wxr_tile_height);
             }
         }
+        g2.dispose();
         
-        g2.setTransform(original_at);    
+        raster_cache.put_raster(key, nd_gc.current_time_millis, wxr_img, 0.0f, 0.0f);
+        return wxr_img;
 	}
 
 	
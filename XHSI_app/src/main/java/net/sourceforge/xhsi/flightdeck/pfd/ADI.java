@@ -34,6 +34,7 @@ import java.awt.geom.AffineTransform;
 import net.sourceforge.xhsi.XHSIStatus;
 import net.sourceforge.xhsi.XHSIPreferences.DrawYokeInputMode;
 import net.sourceforge.xhsi.model.ModelFactory;
+import net.sourceforge.xhsi.model.Avionics.EPGWSAlertLevel;
 import net.sourceforge.xhsi.util.FramedElement.FE_Color;
 import net.sourceforge.xhsi.util.FramedElement.FE_FontSize;
 
@@ -95,6 +96,7 @@ public class ADI extends PFDSubcomponent {
 				failed_ra_flag.clearText();
 				drawADI(g2);
 				drawMarker(g2);
+				drawPullUp(g2);
 	            if ( this.preferences.get_draw_pfd_turnrate() ) {
 	                drawTurnRate(g2);
 	                if ( ! this.aircraft.on_ground() ) drawBankForStdRate(g2);
@@ -586,6 +588,18 @@ public class ADI extends PFDSubcomponent {
     }
     
     
+    private void drawPullUp(Graphics2D g2) {
+
+        if ( this.aircraft.get_terrain_alert() == EPGWSAlertLevel.WARNING ) {
+            String pull_up_str = "PULL UP";
+            g2.setColor(pfd_gc.warning_color);
+            g2.setFont(pfd_gc.font_xl);
+            g2.drawString(pull_up_str, pfd_gc.adi_cx - pfd_gc.get_text_width(g2, pfd_gc.font_xl, pull_up_str)/2, pfd_gc.adi_cy + pfd_gc.adi_size_down/2 + pfd_gc.line_height_xl/2);
+        }
+
+    }
+    
+    
     private void drawTurnRate(Graphics2D g2) {
         
         int turnrate_x = pfd_gc.adi_cx;
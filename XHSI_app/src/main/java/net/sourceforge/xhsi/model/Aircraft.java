@@ -1234,6 +1234,24 @@ public interface Aircraft {
      */
     public void set_nearest_arpt(String nrst_arpt);
 
+
+    /**
+     * @return NearestAirports - Nearest airports, kept up to date by XPlaneNearestAirport
+     */
+    public NearestAirports get_nearest_arpts();
+
+
+    /**
+     * @return EPGWSAlertLevel - Terrain ahead, kept up to date by XPlaneTerrainAwareness
+     */
+    public Avionics.EPGWSAlertLevel get_terrain_alert();
+
+
+    /**
+     * @param alert - Terrain ahead
+     */
+    public void set_terrain_alert(Avionics.EPGWSAlertLevel alert);
+
     /**
      * @return boolean - Aircraft has Auxiliary Power Unit (APU)
      */
@@ -24,8 +24,10 @@
 package net.sourceforge.xhsi.model;
 
 
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
 
 
 public class ElevationArea {
@@ -62,6 +64,14 @@ public class ElevationArea {
 	
 	MappedByteBuffer elevation_data;
 
+	// The maximum and minimum elevation of square blocks of PYRAMID_FACTORS[level] cells,
+	// in rows of ( number_of_columns + factor - 1 ) / factor blocks (see ElevationPyramidBuilder)
+	public static final int PYRAMID_FACTORS[] = { 8, 16, 32, 64, 128, 256 };
+	// get_max_elevation() and get_min_elevation() read at most this many blocks or cells across
+	private static final int MAX_CELLS_ACROSS = 4;
+	private volatile ShortBuffer pyramid_max[] = null;
+	private ShortBuffer pyramid_min[] = null;
+
 	public ElevationArea (MappedByteBuffer buffer, int columns, int rows, float min_lat, float max_lat, float min_lon, float max_lon, String area_name) {
 		elevation_data = buffer;
 		elevation_data.order(this.data_byte_order);
@@ -99,6 +109,95 @@ public class ElevationArea {
 		}		
 	}
 	
+	/**
+	 * @return all cells, row by row from the north-west corner
+	 */
+	public ShortBuffer get_elevation_data() {
+		ByteBuffer data = elevation_data.duplicate();
+		data.order(this.data_byte_order);
+		data.position(0);
+		return data.asShortBuffer();
+	}
+	
+	public boolean contains( float lat, float lon ) {
+		return lat >= min_lat && lat <= max_lat && lon >= min_lon && lon <= max_lon;
+	}
+	
+	/**
+	 * The pyramid can be set while other threads read the elevation
+	 */
+	public void set_pyramid(ShortBuffer max[], ShortBuffer min[]) {
+		this.pyramid_min = min;
+		this.pyramid_max = max;
+	}
+	
+	public boolean has_pyramid() {
+		return pyramid_max != null;
+	}
+	
+	/**
+	 * @return the highest elevation in the part of the box that is in this area, using the
+	 * finest resolution that needs at most MAX_CELLS_ACROSS reads across; the whole cells
+	 * or blocks that touch the box are taken into account, so that it errs on the high side
+	 */
+	public float get_max_elevation( float lat_min, float lon_min, float lat_max, float lon_max ) {
+		return get_extreme_elevation(lat_min, lon_min, lat_max, lon_max, true);
+	}
+	
+	/**
+	 * @return the lowest elevation in the part of the box that is in this area (see get_max_elevation)
+	 */
+	public float get_min_elevation( float lat_min, float lon_min, float lat_max, float lon_max ) {
+		return get_extreme_elevation(lat_min, lon_min, lat_max, lon_max, false);
+	}
+	
+	private float get_extreme_elevation( float lat_min, float lon_min, float lat_max, float lon_max, boolean max ) {
+		int row_first = get_row(Math.min(lat_max, max_lat));
+		int row_last = get_row(Math.max(lat_min, min_lat));
+		int col_first = get_column(Math.max(lon_min, min_lon));
+		int col_last = get_column(Math.min(lon_max, max_lon));
+		int across = Math.max(row_last - row_first, col_last - col_first) + 1;
+		
+		ShortBuffer levels_max[] = pyramid_max;
+		ShortBuffer levels_min[] = pyramid_min;
+		if (across <= MAX_CELLS_ACROSS || levels_max == null) {
+			// the elevation cells themselves
+			int extreme = max ? Short.MIN_VALUE : Short.MAX_VALUE;
+			for (int row=row_first; row<=row_last; row++) {
+				for (int col=col_first; col<=col_last; col++) {
+					int elevation = elevation_data.getShort(2*(row*number_of_columns + col));
+					extreme = max ? Math.max(extreme, elevation) : Math.min(extreme, elevation);
+				}
+			}
+			return extreme;
+		}
+		
+		// the finest level that is coarse enough, or the coarsest
+		int level = 0;
+		while (level < PYRAMID_FACTORS.length-1 && across > MAX_CELLS_ACROSS * PYRAMID_FACTORS[level]) {
+			level++;
+		}
+		int factor = PYRAMID_FACTORS[level];
+		int level_columns = (number_of_columns + factor - 1) / factor;
+		ShortBuffer blocks = max ? levels_max[level] : levels_min[level];
+		int extreme = max ? Short.MIN_VALUE : Short.MAX_VALUE;
+		for (int row=row_first/factor; row<=row_last/factor; row++) {
+			for (int col=col_first/factor; col<=col_last/factor; col++) {
+				int elevation = blocks.get(row*level_columns + col);
+				extreme = max ? Math.max(extreme, elevation) : Math.min(extreme, elevation);
+			}
+		}
+		return extreme;
+	}
+	
+	private int get_row( float lat ) {
+		return Math.max(0, Math.min(number_of_rows-1, (int)((max_lat-lat) * grid_step_y)));
+	}
+	
+	private int get_column( float lon ) {
+		return Math.max(0, Math.min(number_of_columns-1, (int)((lon-min_lon) * grid_step_x)));
+	}
+	
 	public int check_bof () {
 		return elevation_data.getShort(0);
 	}
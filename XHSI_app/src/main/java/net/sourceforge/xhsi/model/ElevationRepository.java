@@ -23,7 +23,7 @@
 
 package net.sourceforge.xhsi.model;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 
@@ -33,7 +33,15 @@ public class ElevationRepository {
 
     private static ElevationRepository single_instance;
 
-    private ArrayList<ElevationArea> elevation_areas;
+    // replaced, never modified, when an area is added: the loader thread adds them while they are read
+    private volatile ElevationArea elevation_areas[];
+    
+    // the area of each whole degree square, from 90N 180W eastwards and then southwards,
+    // so that finding the area of a point does not need a search
+    private volatile ElevationArea area_grid[];
+    
+    // changes whenever the elevations that are returned can change
+    private volatile int generation = 0;
 
     public static ElevationRepository get_instance() {
         if (ElevationRepository.single_instance == null) {
@@ -47,12 +55,39 @@ public class ElevationRepository {
     }
     
     public void addElevationArea(ElevationArea area) {
-    	elevation_areas.add(area);
+    	ElevationArea areas[] = Arrays.copyOf(elevation_areas, elevation_areas.length + 1);
+    	areas[areas.length - 1] = area;
+    	elevation_areas = areas;
+    	// like the search, the last area that was added wins
+    	ElevationArea grid[] = area_grid.clone();
+    	for (int row=0; row<180; row++) {
+    		for (int col=0; col<360; col++) {
+    			if (area.contains(89.5f - row, col - 179.5f)) grid[row*360 + col] = area;
+    		}
+    	}
+    	area_grid = grid;
+    	generation++;
     	logger.fine(" First value: " + area.check_bof());
     }
     
     public void init() { 
-    	elevation_areas = new ArrayList<ElevationArea>();
+    	elevation_areas = new ElevationArea[0];
+    	area_grid = new ElevationArea[180*360];
+    	generation++;
+    }
+    
+    /**
+     * For when the areas got their elevation pyramid
+     */
+    public void data_changed() {
+    	generation++;
+    }
+    
+    /**
+     * @return a number that changes whenever the elevations can have changed, for who keeps them
+     */
+    public int get_generation() {
+    	return generation;
     }
     
     public void dumpAreas() {
@@ -70,36 +105,86 @@ public class ElevationRepository {
     	}
     }
     
-	public float get_elevation( float lat, float lon ) {
-		float elevation = 0.0f;
-		// find the aera containing the coordinates
+	/**
+	 * @return the area containing the coordinates, or null
+	 */
+	private ElevationArea find_area( float lat, float lon ) {
+		// a point on the edge of a square can also be in the area of the next square
+		if (lat != (float)Math.floor(lat) && lon != (float)Math.floor(lon)) {
+			int row = (int)(90.0f - lat);
+			int col = (int)(lon + 180.0f);
+			if (row >= 0 && row < 180 && col >= 0 && col < 360) {
+				ElevationArea area = area_grid[row*360 + col];
+				if (area != null && area.contains(lat, lon)) return area;
+			}
+		}
+		ElevationArea found = null;
 		for (ElevationArea area:elevation_areas ) {
-			if (lat >= area.min_lat && lat <= area.max_lat && lon >= area.min_lon && lon <= area.max_lon) {
-				elevation = area.get_elevation(lat, lon);
+			if (area.contains(lat, lon)) {
+				found = area;
 			}
 		}
-		return elevation;
+		return found;
 	}
     
-	public String get_area_name( float lat, float lon ) {
-		String name = "none";
-		// find the aera containing the coordinates
-		for (ElevationArea area:elevation_areas ) {
-			if (lat >= area.min_lat && lat <= area.max_lat && lon >= area.min_lon && lon <= area.max_lon) {
-				name = area.file_tile;
+	/**
+	 * @return true when there is an area with the elevation of the coordinates
+	 */
+	public boolean has_elevation( float lat, float lon ) {
+		return find_area(lat, lon) != null;
+	}
+	
+	public float get_elevation( float lat, float lon ) {
+		ElevationArea area = find_area(lat, lon);
+		return area != null ? area.get_elevation(lat, lon) : 0.0f;
+	}
+	
+	/**
+	 * @return the highest elevation in the box, in meters, on the high side at coarser resolutions (see ElevationArea)
+	 */
+	public float get_max_elevation( float lat_min, float lon_min, float lat_max, float lon_max ) {
+		return get_extreme_elevation(lat_min, lon_min, lat_max, lon_max, true);
+	}
+	
+	/**
+	 * @return the lowest elevation in the box, in meters, on the low side at coarser resolutions
+	 */
+	public float get_min_elevation( float lat_min, float lon_min, float lat_max, float lon_max ) {
+		return get_extreme_elevation(lat_min, lon_min, lat_max, lon_max, false);
+	}
+	
+	private float get_extreme_elevation( float lat_min, float lon_min, float lat_max, float lon_max, boolean max ) {
+		// usually the whole box is in one area
+		ElevationArea area = find_area(lat_max, lon_min);
+		if (area != null && area.contains(lat_min, lon_max)) {
+			return max ? area.get_max_elevation(lat_min, lon_min, lat_max, lon_max)
+					: area.get_min_elevation(lat_min, lon_min, lat_max, lon_max);
+		}
+		// a box on the ND is smaller than an area, so the areas of its corners are all the areas it is in
+		ElevationArea corners[] = {
+			find_area(lat_max, lon_min), find_area(lat_max, lon_max),
+			find_area(lat_min, lon_min), find_area(lat_min, lon_max) };
+		float extreme = 0.0f;
+		boolean found = false;
+		for (int i=0; i<4; i++) {
+			area = corners[i];
+			if (area != null && (i == 0 || area != corners[i-1]) && (i < 2 || area != corners[i-2])) {
+				float elevation = max ? area.get_max_elevation(lat_min, lon_min, lat_max, lon_max)
+						: area.get_min_elevation(lat_min, lon_min, lat_max, lon_max);
+				extreme = ! found ? elevation : (max ? Math.max(extreme, elevation) : Math.min(extreme, elevation));
+				found = true;
 			}
 		}
-		return name;
+		return extreme;
+	}
+    
+	public String get_area_name( float lat, float lon ) {
+		ElevationArea area = find_area(lat, lon);
+		return area != null ? area.file_tile : "none";
 	}
 	
 	public int get_offset( float lat, float lon ) {
-		int offset = -1;
-		// find the aera containing the coordinates
-		for (ElevationArea area:elevation_areas ) {
-			if (lat >= area.min_lat && lat <= area.max_lat && lon >= area.min_lon && lon <= area.max_lon) {
-				offset = area.get_offset(lat, lon);
-			}
-		}
-		return offset;
+		ElevationArea area = find_area(lat, lon);
+		return area != null ? area.get_offset(lat, lon) : -1;
 	}
 }
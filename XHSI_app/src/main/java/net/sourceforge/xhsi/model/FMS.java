@@ -168,6 +168,20 @@ public class FMS {
     }
 
     
+    /**
+     * @return FMSEntry - the first waypoint in the FMS
+     */
+    public FMSEntry get_first_waypoint() {
+
+        if ( this.count == 0 ) {
+            return null;
+        } else {
+            return this.entries[ 0 ];
+        }
+
+    }
+
+
     /**
      * @return FMSEntry - the last waypoint in the FMS
      */
@@ -0,0 +1,191 @@
+/**
+* FrequencyIndex.java
+*
+* Radio navigation objects by frequency. The frequencies are int keys in an
+* open addressing hash table, so a lookup does not box a Float. The stations
+* on one frequency are kept sorted by latitude, so that a search only looks
+* at those that are close enough in latitude to be in range.
+*
+* Each slot holds an immutable Bucket, which is replaced when a station is
+* added, and the slots are replaced as a whole when the table grows. A search
+* on another thread, e.g. during a reload of the navigation databases,
+* always sees complete buckets of one table.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model;
+
+
+public class FrequencyIndex {
+
+    private static final int INITIAL_SLOTS = 1024;
+
+    private static final class Bucket {
+        final int key;
+        // sorted by lat
+        final RadioNavigationObject[] stations;
+        // the longest range of the stations, nm
+        final float max_range;
+
+        Bucket(int key, RadioNavigationObject[] stations, float max_range) {
+            this.key = key;
+            this.stations = stations;
+            this.max_range = max_range;
+        }
+    }
+
+    // open addressing on the frequency key, null when empty
+    private volatile Bucket[] slots;
+    private int size;
+    private volatile int station_count;
+
+
+    public FrequencyIndex() {
+        clear();
+    }
+
+
+    public void clear() {
+        this.slots = new Bucket[INITIAL_SLOTS];
+        this.size = 0;
+        this.station_count = 0;
+    }
+
+
+    /**
+     * @return    - the number of stations, which changes whenever a station is added
+     */
+    public int get_station_count() {
+        return this.station_count;
+    }
+
+
+    /**
+     * VHF frequencies are stored in MHz and NDB frequencies in kHz; in hundredths,
+     * like in nav.dat, they are whole numbers and the two bands do not overlap
+     */
+    public static int get_key(float freq) {
+        return Math.round(freq * 100.0f);
+    }
+
+
+    private static int find_slot(Bucket[] slots, int key) {
+        int mask = slots.length - 1;
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        Bucket bucket;
+        while ( ( (bucket = slots[slot]) != null ) && (bucket.key != key) ) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+
+    public void add(RadioNavigationObject rno) {
+
+        int key = get_key(rno.frequency);
+        Bucket[] slots = this.slots;
+        int slot = find_slot(slots, key);
+        Bucket bucket = slots[slot];
+        RadioNavigationObject[] stations;
+        float max_range;
+        if ( bucket == null ) {
+            if ( (this.size + 1) * 2 > slots.length ) {
+                slots = grow();
+                slot = find_slot(slots, key);
+            }
+            this.size++;
+            stations = new RadioNavigationObject[0];
+            max_range = 0.0f;
+        } else {
+            stations = bucket.stations;
+            max_range = bucket.max_range;
+        }
+
+        // keep the bucket sorted by lat, after any station at the same lat
+        int pos = stations.length;
+        while ( (pos > 0) && (stations[pos - 1].lat > rno.lat) ) {
+            pos--;
+        }
+        RadioNavigationObject[] new_stations = new RadioNavigationObject[stations.length + 1];
+        System.arraycopy(stations, 0, new_stations, 0, pos);
+        new_stations[pos] = rno;
+        System.arraycopy(stations, pos, new_stations, pos + 1, stations.length - pos);
+        slots[slot] = new Bucket(key, new_stations, Math.max(max_range, rno.range));
+        this.station_count++;
+
+    }
+
+
+    private Bucket[] grow() {
+
+        Bucket[] old_slots = this.slots;
+        Bucket[] new_slots = new Bucket[old_slots.length * 2];
+        for (int i=0; i<old_slots.length; i++) {
+            if ( old_slots[i] != null ) {
+                new_slots[find_slot(new_slots, old_slots[i].key)] = old_slots[i];
+            }
+        }
+        this.slots = new_slots;
+        return new_slots;
+
+    }
+
+
+    /**
+     * @param nav_id    - only stations with this ident, or any station for ""
+     * @return          - the nearest station on freq that is within its range times range_multiplier, or null
+     */
+    public RadioNavigationObject find_nearest(float lat, float lon, float freq, String nav_id, float range_multiplier) {
+
+        Bucket[] slots = this.slots;
+        Bucket found = slots[find_slot(slots, get_key(freq))];
+        if ( found == null ) {
+            return null;
+        }
+        RadioNavigationObject[] bucket = found.stations;
+
+        // rough_distance is at least 60 nm per degree of latitude, and the range test truncates it
+        float lat_window = (found.max_range * range_multiplier + 1.0f) / CoordinateSystem.nm_per_deg_lat();
+        float lat_min = lat - lat_window;
+        int low = 0;
+        int high = bucket.length;
+        while ( low < high ) {
+            int mid = (low + high) >>> 1;
+            if ( bucket[mid].lat < lat_min ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        RadioNavigationObject nearest = null;
+        float nearest_distance = Float.MAX_VALUE;
+        for (int i=low; (i<bucket.length) && (bucket[i].lat <= lat + lat_window); i++) {
+            RadioNavigationObject rno = bucket[i];
+            if ( ( nav_id.length() == 0 ) || rno.ilt.equals(nav_id) ) {
+                float distance = CoordinateSystem.rough_distance(lat, lon, rno.lat, rno.lon);
+                if ( ( (int)distance < rno.range * range_multiplier ) && ( distance < nearest_distance ) ) {
+                    nearest = rno;
+                    nearest_distance = distance;
+                }
+            }
+        }
+        return nearest;
+
+    }
+
+
+}
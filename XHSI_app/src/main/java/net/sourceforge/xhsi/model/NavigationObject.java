@@ -40,22 +40,16 @@ public class NavigationObject {
 	public static int NO_TYPE_NDB = 1;
 	public static int NO_TYPE_VOR = 0;
 	
-    private DecimalFormat lat_formatter;
-    private DecimalFormat lon_formatter;
     
 	public NavigationObject(String name, float lat, float lon) {
 		this.name = name;
 		this.lat = lat;
 		this.lon = lon;
-	    lat_formatter = new DecimalFormat("00");
-	    lon_formatter = new DecimalFormat("000");
 	}
 	
 	public NavigationObject(float lat, float lon) {		
 		this.lat = lat;
 		this.lon = lon;
-	    lat_formatter = new DecimalFormat("00");
-	    lon_formatter = new DecimalFormat("000");
 	    this.name = standardName();
 	}
 	
@@ -186,6 +180,9 @@ public class NavigationObject {
      * @return : String - Waypoint 6 characters standard name N00W000 
      */
     public String standardName() {
+    	// only a few objects need this, don't make formatters for every one of them
+    	DecimalFormat lat_formatter = new DecimalFormat("00");
+    	DecimalFormat lon_formatter = new DecimalFormat("000");
     	String std_name= (this.lat >= 0 ? "N" :"S") + lat_formatter.format(Math.abs(this.lat)) +
     			(this.lon >= 0 ? "E" :"W") + lon_formatter.format(Math.abs(this.lon));
     	return std_name;    	
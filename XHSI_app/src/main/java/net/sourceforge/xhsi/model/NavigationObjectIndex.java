@@ -0,0 +1,292 @@
+/**
+* NavigationObjectIndex.java
+*
+* Spatial index for one type of navigation objects. The objects are kept in
+* cells of 1 degree lat/lon, which are grouped in blocks of BLOCK_SIZE by
+* BLOCK_SIZE cells. Blocks and cells only exist when they hold objects, so
+* oceans and deserts take no memory, and range queries skip empty blocks
+* without looking at their cells.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model;
+
+import java.util.ArrayList;
+
+
+public class NavigationObjectIndex {
+
+    public static final int LAT_CELLS = 180;
+    public static final int LON_CELLS = 360;
+
+    private static final int BLOCK_SIZE = 8;
+    private static final int LAT_BLOCKS = (LAT_CELLS + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    private static final int LON_BLOCKS = (LON_CELLS + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+    // nm, like NavigationObject.distanceTo()
+    private static final double EARTH_RADIUS = 3443.9;
+
+    // blocks[lat_block][lon_block][cell in block], null when empty
+    private ArrayList<NavigationObject>[][][] blocks;
+    private int size;
+
+
+    public NavigationObjectIndex() {
+        clear();
+    }
+
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void clear() {
+        this.blocks = new ArrayList[LAT_BLOCKS][LON_BLOCKS][];
+        this.size = 0;
+    }
+
+
+    public static int get_lat_index(float lat) {
+        int lat_index = (int)Math.floor(lat) + 90;
+        if ( lat_index < 0 ) lat_index = 0;
+        if ( lat_index >= LAT_CELLS ) lat_index = LAT_CELLS - 1;
+        return lat_index;
+    }
+
+
+    public static int get_lon_index(float lon) {
+        int lon_index = ((int)Math.floor(lon) + 180) % LON_CELLS;
+        if ( lon_index < 0 ) lon_index += LON_CELLS;
+        return lon_index;
+    }
+
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void add(NavigationObject nav_object) {
+        int lat_index = get_lat_index(nav_object.lat);
+        int lon_index = get_lon_index(nav_object.lon);
+        ArrayList<NavigationObject>[] block = this.blocks[lat_index / BLOCK_SIZE][lon_index / BLOCK_SIZE];
+        if ( block == null ) {
+            block = new ArrayList[BLOCK_SIZE * BLOCK_SIZE];
+            this.blocks[lat_index / BLOCK_SIZE][lon_index / BLOCK_SIZE] = block;
+        }
+        int cell = (lat_index % BLOCK_SIZE) * BLOCK_SIZE + (lon_index % BLOCK_SIZE);
+        if ( block[cell] == null ) {
+            block[cell] = new ArrayList<NavigationObject>();
+        }
+        block[cell].add(nav_object);
+        this.size++;
+    }
+
+
+    /**
+     * @return    - the objects in one cell, or null when there are none
+     */
+    public ArrayList<NavigationObject> get_cell(int lat_index, int lon_index) {
+        ArrayList<NavigationObject>[] block = this.blocks[lat_index / BLOCK_SIZE][lon_index / BLOCK_SIZE];
+        if ( block == null ) {
+            return null;
+        }
+        return block[(lat_index % BLOCK_SIZE) * BLOCK_SIZE + (lon_index % BLOCK_SIZE)];
+    }
+
+
+    public int size() {
+        return this.size;
+    }
+
+
+    /**
+     * Adds the objects within radius of lat/lon to result
+     *
+     * @param radius     - nm
+     * @param min_rwy    - only airports with a runway at least this long
+     */
+    public void query(float lat, float lon, float radius, float min_rwy, ArrayList<NavigationObject> result) {
+
+        if ( this.size == 0 ) return;
+
+        float delta_lat = radius * CoordinateSystem.deg_lat_per_nm();
+        float lat_max = lat + delta_lat;
+        float lat_min = lat - delta_lat;
+        int first_lat = get_lat_index(lat_min);
+        int last_lat = get_lat_index(lat_max);
+
+        // the box gets wider towards the pole
+        float widest_lat = Math.min( 89.0f, Math.max(Math.abs(lat_min), Math.abs(lat_max)) );
+        float delta_lon = radius * CoordinateSystem.deg_lon_per_nm(widest_lat);
+        if ( (lat_max >= 89.0f) || (lat_min <= -89.0f) || (delta_lon >= 180.0f) ) {
+            query_cells(first_lat, last_lat, 0, LON_CELLS - 1, lat, lon, radius, min_rwy, result);
+        } else {
+            int first_lon = get_lon_index(lon - delta_lon);
+            int last_lon = get_lon_index(lon + delta_lon);
+            if ( first_lon <= last_lon ) {
+                query_cells(first_lat, last_lat, first_lon, last_lon, lat, lon, radius, min_rwy, result);
+            } else {
+                // across the date line
+                query_cells(first_lat, last_lat, first_lon, LON_CELLS - 1, lat, lon, radius, min_rwy, result);
+                query_cells(first_lat, last_lat, 0, last_lon, lat, lon, radius, min_rwy, result);
+            }
+        }
+
+    }
+
+
+    private void query_cells(int first_lat, int last_lat, int first_lon, int last_lon,
+            float lat, float lon, float radius, float min_rwy, ArrayList<NavigationObject> result) {
+
+        // great circle distance, which is also the distance from the center on the azimuthal equidistant ND map:
+        // cos(distance) = sin(lat1).sin(lat2) + cos(lat1).cos(lat2).cos(lon2-lon1)
+        double sin_lat = Math.sin(Math.toRadians(lat));
+        double cos_lat = Math.cos(Math.toRadians(lat));
+        double min_cos_distance = Math.cos( Math.min(Math.PI, radius / EARTH_RADIUS) );
+
+        for (int lat_block=first_lat/BLOCK_SIZE; lat_block<=last_lat/BLOCK_SIZE; lat_block++) {
+            for (int lon_block=first_lon/BLOCK_SIZE; lon_block<=last_lon/BLOCK_SIZE; lon_block++) {
+
+                ArrayList<NavigationObject>[] block = this.blocks[lat_block][lon_block];
+                if ( block == null ) continue;
+
+                int lat_from = Math.max(first_lat, lat_block * BLOCK_SIZE);
+                int lat_to = Math.min(last_lat, lat_block * BLOCK_SIZE + BLOCK_SIZE - 1);
+                int lon_from = Math.max(first_lon, lon_block * BLOCK_SIZE);
+                int lon_to = Math.min(last_lon, lon_block * BLOCK_SIZE + BLOCK_SIZE - 1);
+                for (int lat_index=lat_from; lat_index<=lat_to; lat_index++) {
+                    for (int lon_index=lon_from; lon_index<=lon_to; lon_index++) {
+
+                        ArrayList<NavigationObject> cell = block[(lat_index % BLOCK_SIZE) * BLOCK_SIZE + (lon_index % BLOCK_SIZE)];
+                        if ( cell == null ) continue;
+
+                        for (int i=0; i<cell.size(); i++) {
+                            NavigationObject nav_object = cell.get(i);
+                            if ( ( min_rwy > 0.0f ) && (nav_object instanceof Airport) && (((Airport)nav_object).longest < min_rwy) ) continue;
+                            double obj_lat = Math.toRadians(nav_object.lat);
+                            double cos_distance = sin_lat * Math.sin(obj_lat)
+                                    + cos_lat * Math.cos(obj_lat) * Math.cos(Math.toRadians(nav_object.lon - lon));
+                            if ( cos_distance >= min_cos_distance ) {
+                                result.add(nav_object);
+                            }
+                        }
+
+                    }
+                }
+
+            }
+        }
+
+    }
+
+
+    /**
+     * Finds the nearest objects by searching rings of cells around lat/lon, outwards from its own cell.
+     * The search stops as soon as no cell outside the rings searched so far can hold an object
+     * that is nearer than the k-th nearest found.
+     *
+     * @param k            - how many objects to find
+     * @param min_rwy      - only airports with a runway at least this long
+     * @param result       - cleared, then filled with up to k objects, nearest first
+     * @param distances    - when not null, filled with the distance of each object in result, in nm
+     */
+    public void find_nearest(float lat, float lon, int k, float min_rwy, ArrayList<NavigationObject> result, float[] distances) {
+
+        result.clear();
+        if ( (this.size == 0) || (k <= 0) ) return;
+
+        // the best k so far, nearest first, by the cosine of their distance
+        NavigationObject[] best = new NavigationObject[k];
+        double[] best_cos = new double[k];
+        int found = 0;
+
+        double sin_lat = Math.sin(Math.toRadians(lat));
+        double cos_lat = Math.cos(Math.toRadians(lat));
+        int center_lat = get_lat_index(lat);
+        int center_lon = get_lon_index(lon);
+
+        for (int r=0; (r<LAT_CELLS) || (r<=LON_CELLS/2); r++) {
+
+            for (int lat_index=center_lat-r; lat_index<=center_lat+r; lat_index++) {
+                if ( (lat_index < 0) || (lat_index >= LAT_CELLS) ) continue;
+                if ( (lat_index == center_lat - r) || (lat_index == center_lat + r) ) {
+                    // a whole row of the ring
+                    int lon_count = Math.min(2 * r + 1, LON_CELLS);
+                    for (int i=0; i<lon_count; i++) {
+                        found = nearest_in_cell(lat_index, center_lon - r + i, lon, sin_lat, cos_lat, min_rwy, best, best_cos, found);
+                    }
+                } else if ( r <= LON_CELLS/2 ) {
+                    // the sides of the ring, which meet at the other side of the globe
+                    found = nearest_in_cell(lat_index, center_lon - r, lon, sin_lat, cos_lat, min_rwy, best, best_cos, found);
+                    if ( r < LON_CELLS/2 ) {
+                        found = nearest_in_cell(lat_index, center_lon + r, lon, sin_lat, cos_lat, min_rwy, best, best_cos, found);
+                    }
+                }
+            }
+
+            if ( found == k ) {
+                // the nearest that anything outside the rings can be, in degrees
+                double lower_bound = 180.0;
+                if ( center_lat - r > 0 ) {
+                    lower_bound = Math.min(lower_bound, lat - (center_lat - r - 90));
+                }
+                if ( center_lat + r < LAT_CELLS - 1 ) {
+                    lower_bound = Math.min(lower_bound, (center_lat + r + 1 - 90) - lat);
+                }
+                if ( 2 * r + 1 < LON_CELLS ) {
+                    // the distance to the meridian that borders the rings
+                    float lon_in_cell = lon - (float)Math.floor(lon);
+                    double delta_lon = Math.min(r + lon_in_cell, r + 1 - lon_in_cell);
+                    lower_bound = Math.min(lower_bound, Math.toDegrees(Math.asin( cos_lat * Math.sin(Math.toRadians(Math.min(90.0, delta_lon))) )));
+                }
+                if ( best_cos[k - 1] >= Math.cos(Math.toRadians(lower_bound)) ) break;
+            }
+
+        }
+
+        for (int i=0; i<found; i++) {
+            result.add(best[i]);
+            if ( distances != null ) {
+                distances[i] = (float)(Math.acos(Math.min(1.0, best_cos[i])) * EARTH_RADIUS);
+            }
+        }
+
+    }
+
+
+    private int nearest_in_cell(int lat_index, int lon_index, float lon, double sin_lat, double cos_lat, float min_rwy,
+            NavigationObject[] best, double[] best_cos, int found) {
+
+        lon_index = ((lon_index % LON_CELLS) + LON_CELLS) % LON_CELLS;
+        ArrayList<NavigationObject> cell = get_cell(lat_index, lon_index);
+        if ( cell == null ) return found;
+
+        for (int i=0; i<cell.size(); i++) {
+            NavigationObject nav_object = cell.get(i);
+            if ( ( min_rwy > 0.0f ) && (nav_object instanceof Airport) && (((Airport)nav_object).longest < min_rwy) ) continue;
+            double obj_lat = Math.toRadians(nav_object.lat);
+            double cos_distance = sin_lat * Math.sin(obj_lat)
+                    + cos_lat * Math.cos(obj_lat) * Math.cos(Math.toRadians(nav_object.lon - lon));
+            if ( (found < best.length) || (cos_distance > best_cos[found - 1]) ) {
+                // insert in order, dropping the farthest when full
+                int j = ( found < best.length ) ? found++ : found - 1;
+                while ( (j > 0) && (best_cos[j - 1] < cos_distance) ) {
+                    best[j] = best[j - 1];
+                    best_cos[j] = best_cos[j - 1];
+                    j--;
+                }
+                best[j] = nav_object;
+                best_cos[j] = cos_distance;
+            }
+        }
+        return found;
+
+    }
+
+}
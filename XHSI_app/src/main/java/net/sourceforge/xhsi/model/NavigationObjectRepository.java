@@ -34,16 +34,31 @@ public class NavigationObjectRepository {
     public static final float RANGE_MULTIPLIER = 1.25f;
     // let's hope that no other RadioNavigationObject with the same frequency is in that multiplied range
 
-    private ArrayList vors[][];
-    private ArrayList ndbs[][];
-    private ArrayList fixes[][];
-    private ArrayList arpts[][];
-    private ArrayList rwys[][];
-    private ArrayList helipads[][];
-    private ArrayList hlpts[][];
-    private HashMap frequencies;
-    private HashMap airports;
-    private HashMap heliports;
+    // for get_nav_objects(lat, lon, radius, type_mask, ...)
+    public static final int TYPE_MASK_ALL = 0x7F;
+
+    // how far get_fix(), get_navobj() and get_runway() look for an ident around lat/lon, about one lat/lon cell
+    public static final float IDENT_SEARCH_DISTANCE = 60.0f; // nm
+
+    private static final ArrayList<NavigationObject> NO_NAV_OBJECTS = new ArrayList<NavigationObject>();
+
+    private NavigationObjectIndex vors;
+    private NavigationObjectIndex ndbs;
+    private NavigationObjectIndex fixes;
+    private NavigationObjectIndex arpts;
+    private NavigationObjectIndex rwys;
+    private NavigationObjectIndex helipads;
+    private NavigationObjectIndex hlpts;
+    private NavigationObjectIndex[] indexes;
+    private FrequencyIndex frequencies;
+    private HashMap<String, NavigationObject> airports;
+    private HashMap<String, NavigationObject> heliports;
+    // upper case ident -> a NavigationObject, or an ArrayList of them when the ident is used more than once
+    private HashMap<String, Object> vor_idents;
+    private HashMap<String, Object> ndb_idents;
+    private HashMap<String, Object> fix_idents;
+    // upper case airport ICAO code -> its Runway(s)
+    private HashMap<String, Object> rwy_idents;
 
     private static final Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
@@ -65,55 +80,68 @@ public class NavigationObjectRepository {
 
     public void init() {
 
-        vors = new ArrayList[181][361];
-        ndbs = new ArrayList[181][361];
-        fixes = new ArrayList[181][361];
-        arpts = new ArrayList[181][361];
-        rwys = new ArrayList[181][361];
-        helipads = new ArrayList[181][361];
-        hlpts = new ArrayList[181][361];
-        frequencies = new HashMap();
-        airports = new HashMap();
-        heliports = new HashMap();
-
-        for (int lat=0;lat<181;lat++) {
-            for (int lon=0;lon<361;lon++) {
-                //dmes[lat][lon] = new ArrayList();
-                vors[lat][lon] = new ArrayList();
-                ndbs[lat][lon] = new ArrayList();
-                fixes[lat][lon] = new ArrayList();
-                arpts[lat][lon] = new ArrayList();
-                rwys[lat][lon] = new ArrayList();
-                helipads[lat][lon] = new ArrayList();
-                hlpts[lat][lon] = new ArrayList();
-            }
-        }
+        vors = new NavigationObjectIndex();
+        ndbs = new NavigationObjectIndex();
+        fixes = new NavigationObjectIndex();
+        arpts = new NavigationObjectIndex();
+        rwys = new NavigationObjectIndex();
+        helipads = new NavigationObjectIndex();
+        hlpts = new NavigationObjectIndex();
+        frequencies = new FrequencyIndex();
+        airports = new HashMap<String, NavigationObject>();
+        heliports = new HashMap<String, NavigationObject>();
+        vor_idents = new HashMap<String, Object>();
+        ndb_idents = new HashMap<String, Object>();
+        fix_idents = new HashMap<String, Object>();
+        rwy_idents = new HashMap<String, Object>();
+
+        // in the order of the NO_TYPE_ values
+        indexes = new NavigationObjectIndex[] { vors, ndbs, fixes, arpts, rwys, helipads, hlpts };
 
     }
 
 
-    public ArrayList get_nav_objects(int type, float lat, float lon) {
-        if (type == NavigationObject.NO_TYPE_VOR) {
-            return this.vors[get_lat_index(lat)][get_lon_index(lon)];
-        } else if (type == NavigationObject.NO_TYPE_NDB) {
-            return this.ndbs[get_lat_index(lat)][get_lon_index(lon)];
-        } else if (type == NavigationObject.NO_TYPE_FIX) {
-            return this.fixes[get_lat_index(lat)][get_lon_index(lon)];
-        } else if (type == NavigationObject.NO_TYPE_AIRPORT) {
-            return this.arpts[get_lat_index(lat)][get_lon_index(lon)];
-        } else if (type == NavigationObject.NO_TYPE_RUNWAY) {
-            return this.rwys[get_lat_index(lat)][get_lon_index(lon)];
-        } else if (type == NavigationObject.NO_TYPE_HELIPORT) {
-            return this.hlpts[get_lat_index(lat)][get_lon_index(lon)];
-        } else if (type == NavigationObject.NO_TYPE_HELIPAD) {
-            return this.helipads[get_lat_index(lat)][get_lon_index(lon)];
+    private NavigationObjectIndex get_index(int type) {
+        if ( (type >= 0) && (type < indexes.length) ) {
+            return indexes[type];
         } else {
-            return new ArrayList();
+            return null;
+        }
+    }
+
+
+    /**
+     * @return    - the objects of one type in the 1 degree lat/lon cell of lat/lon; do not modify
+     */
+    public ArrayList<NavigationObject> get_nav_objects(int type, float lat, float lon) {
+        NavigationObjectIndex index = get_index(type);
+        if ( index == null ) {
+            return NO_NAV_OBJECTS;
         }
+        ArrayList<NavigationObject> cell = index.get_cell(NavigationObjectIndex.get_lat_index(lat), NavigationObjectIndex.get_lon_index(lon));
+        return ( cell != null ) ? cell : NO_NAV_OBJECTS;
     }
 
 
-    public ArrayList get_nav_objects(int type, NavigationObject nav_object) {
+    /**
+     * Finds the navigation objects within a radius, to draw a map without looking at every cell in it
+     *
+     * @param radius       - nm
+     * @param type_mask    - a bit (1 << NavigationObject.NO_TYPE_...) for each type to find
+     * @param min_rwy      - only airports with a runway at least this long
+     * @param result       - cleared, then filled with the objects, one type after the other in the order of the NO_TYPE_ values
+     */
+    public void get_nav_objects(float lat, float lon, float radius, int type_mask, float min_rwy, ArrayList<NavigationObject> result) {
+        result.clear();
+        for (int type=0; type<indexes.length; type++) {
+            if ( (type_mask & (1 << type)) != 0 ) {
+                indexes[type].query(lat, lon, radius, min_rwy, result);
+            }
+        }
+    }
+
+
+    public ArrayList<NavigationObject> get_nav_objects(int type, NavigationObject nav_object) {
         return get_nav_objects(type, nav_object.lat, nav_object.lon);
     }
 
@@ -123,19 +151,23 @@ public class NavigationObjectRepository {
         if (nav_object instanceof RadioNavBeacon) {
             RadioNavBeacon vor = (RadioNavBeacon) nav_object;
             if (vor.type == RadioNavBeacon.TYPE_NDB) {
-                get_nav_objects(NavigationObject.NO_TYPE_NDB, nav_object).add(nav_object);
+                this.ndbs.add(nav_object);
+                add_ident(this.ndb_idents, vor.ilt, nav_object);
             } else if (vor.type == RadioNavBeacon.TYPE_VOR) {
-                get_nav_objects(NavigationObject.NO_TYPE_VOR, nav_object).add(nav_object);
+                this.vors.add(nav_object);
+                add_ident(this.vor_idents, vor.ilt, nav_object);
             } else if (vor.type == RadioNavBeacon.TYPE_STANDALONE_DME) {
-                get_nav_objects(NavigationObject.NO_TYPE_VOR, nav_object).add(nav_object);
+                this.vors.add(nav_object);
+                add_ident(this.vor_idents, vor.ilt, nav_object);
             }
         } else if (nav_object instanceof Fix) {
-            get_nav_objects(NavigationObject.NO_TYPE_FIX, nav_object).add(nav_object);
+            this.fixes.add(nav_object);
+            add_ident(this.fix_idents, nav_object.name, nav_object);
         } else if (nav_object instanceof Airport) {
             String arpt_str = ((Airport)nav_object).icao_code;
             if ( get_airport( arpt_str ) == null ) {
                 // OK, it's not a duplicate
-                get_nav_objects(NavigationObject.NO_TYPE_AIRPORT, nav_object).add(nav_object);
+                this.arpts.add(nav_object);
                 add_arpt(nav_object);
 //            } else {
 //                logger.warning("NOT storing a duplicate Airport in the ArrayList for: " + arpt_str);
@@ -144,39 +176,25 @@ public class NavigationObjectRepository {
             String arpt_str = ((Heliport)nav_object).icao_code;
             if ( get_airport( arpt_str ) == null ) {
                 // OK, it's not a duplicate
-                get_nav_objects(NavigationObject.NO_TYPE_HELIPORT, nav_object).add(nav_object);
+                this.hlpts.add(nav_object);
                 add_hlpt(nav_object);
             }
         } else if (nav_object instanceof Runway) {
-            get_nav_objects(NavigationObject.NO_TYPE_RUNWAY, nav_object).add(nav_object);
+            this.rwys.add(nav_object);
+            add_ident(this.rwy_idents, nav_object.name, nav_object);
         } else if (nav_object instanceof Helipad) {
-            get_nav_objects(NavigationObject.NO_TYPE_HELIPAD, nav_object).add(nav_object);
+            this.helipads.add(nav_object);
         }
 
         if (nav_object instanceof RadioNavigationObject) {
             RadioNavigationObject rno = (RadioNavigationObject) nav_object;
             if (rno.frequency != 0.0) {
-                add_freq(rno.frequency, rno);
+                this.frequencies.add(rno);
             }
         }
 
     }
 
-    private void add_freq(float freq, NavigationObject nav_object) {
-
-        //Float freq_key = new Float(freq);
-        ArrayList nos;
-        if (this.frequencies.containsKey(freq)) {
-            nos = (ArrayList) this.frequencies.get(freq);
-        } else {
-            nos = new ArrayList();
-        }
-        nos.add(nav_object);
-        this.frequencies.put(freq, nos);
-
-    }
-
-
     private void add_arpt(NavigationObject arpt_object) {
 
         String arpt_str = ((Airport)arpt_object).icao_code;
@@ -198,13 +216,65 @@ public class NavigationObjectRepository {
         }
     }
     
-    private ArrayList get_nav_objects_by_freq(float freq) {
+    @SuppressWarnings("unchecked")
+    private static void add_ident(HashMap<String, Object> idents, String ident, NavigationObject nav_object) {
+
+        if ( ident == null ) return;
+        String key = ident.toUpperCase();
+        Object known = idents.get(key);
+        if ( known == null ) {
+            // most idents are unique, don't spend an ArrayList on them
+            idents.put(key, nav_object);
+        } else if ( known instanceof ArrayList ) {
+            ((ArrayList<NavigationObject>) known).add(nav_object);
+        } else {
+            ArrayList<NavigationObject> same_ident = new ArrayList<NavigationObject>(2);
+            same_ident.add((NavigationObject) known);
+            same_ident.add(nav_object);
+            idents.put(key, same_ident);
+        }
+
+    }
+
+
+    /**
+     * @return    - CoordinateSystem.rough_distance, also for objects across the date line
+     */
+    private static float rough_distance(float lat1, float lon1, float lat2, float lon2) {
+        float delta_lon = lon2 - lon1;
+        if ( delta_lon > 180.0f ) {
+            delta_lon -= 360.0f;
+        } else if ( delta_lon < -180.0f ) {
+            delta_lon += 360.0f;
+        }
+        return CoordinateSystem.rough_distance(lat1, lon1, lat2, lon1 + delta_lon);
+    }
+
+
+    /**
+     * @return    - the object with this ident that is nearest to lat/lon, if it is within max_distance nm
+     */
+    private static NavigationObject get_by_ident(HashMap<String, Object> idents, String ident, float lat, float lon, float max_distance) {
 
-        Float freq_key = new Float(freq);
-        if (this.frequencies.containsKey(freq_key)) {
-            return (ArrayList) this.frequencies.get(freq_key);
+        Object known = idents.get(ident.toUpperCase());
+        if ( known == null ) {
+            return null;
+        } else if ( known instanceof ArrayList ) {
+            ArrayList<?> same_ident = (ArrayList<?>) known;
+            NavigationObject nearest = null;
+            float nearest_distance = max_distance;
+            for (int i=0; i<same_ident.size(); i++) {
+                NavigationObject nav_object = (NavigationObject) same_ident.get(i);
+                float distance = rough_distance(lat, lon, nav_object.lat, nav_object.lon);
+                if ( distance <= nearest_distance ) {
+                    nearest = nav_object;
+                    nearest_distance = distance;
+                }
+            }
+            return nearest;
         } else {
-            return new ArrayList();
+            NavigationObject nav_object = (NavigationObject) known;
+            return ( rough_distance(lat, lon, nav_object.lat, nav_object.lon) <= max_distance ) ? nav_object : null;
         }
 
     }
@@ -221,46 +291,12 @@ public class NavigationObjectRepository {
     }
 
 
+    /**
+     * @return    - the nearest navaid on freq (with ident nav_id, unless that is "") within RANGE_MULTIPLIER times its range
+     */
     public RadioNavigationObject find_tuned_nav_object(float aircraft_lat, float aircraft_lon, float freq, String nav_id) {
 
-        ArrayList nos = get_nav_objects_by_freq(freq);
-        RadioNavigationObject rno = null;
-        boolean found_rno = false;
-        int index = 0;
-        int distance;
-
-        if ( nav_id.equals("") ) {
-            // no NAV_ID received, what can we find that is within range?
-            while ((found_rno == false) && (index<nos.size())) {
-                rno = (RadioNavigationObject) nos.get(index);
-                distance = (int)CoordinateSystem.rough_distance(aircraft_lat, aircraft_lon, rno.lat, rno.lon);
-                if ( distance < (rno.range * NavigationObjectRepository.RANGE_MULTIPLIER) ) {
-                    found_rno = true;
-                } else {
-                    index += 1;
-                }
-            }
-        } else {
-            while ((found_rno == false) && (index<nos.size())) {
-                rno = (RadioNavigationObject) nos.get(index);
-                if ( rno.ilt.equals(nav_id)) {
-                    // freq and id match, do we really have to check if we are within range?
-                    distance = (int)CoordinateSystem.rough_distance(aircraft_lat, aircraft_lon, rno.lat, rno.lon);
-                    if ( distance < (rno.range * NavigationObjectRepository.RANGE_MULTIPLIER) ) {
-                        found_rno = true;
-                    } else {
-                        index += 1;
-                    }
-                } else {
-                    index += 1;
-                }
-            }
-        }
-
-        if (found_rno)
-            return rno;
-        else
-            return null;
+        return this.frequencies.find_nearest(aircraft_lat, aircraft_lon, freq, nav_id, NavigationObjectRepository.RANGE_MULTIPLIER);
 
     }
 
@@ -268,25 +304,7 @@ public class NavigationObjectRepository {
     public Fix get_fix(String ilt, float lat, float lon) {
 
         // find the fix with the supplied name that is at lat/lon
-        // TODO : a hashmap might be more efficient
-        ArrayList fix_list = get_nav_objects(NavigationObject.NO_TYPE_FIX, lat, lon);
-        Fix fix = null;
-        boolean found_fix = false;
-        int index = 0;
-
-        while ( (found_fix == false) && (index < fix_list.size()) ) {
-            fix = (Fix) fix_list.get(index);
-            if ( ilt.equalsIgnoreCase(fix.name) ) {
-                found_fix = true;
-            } else {
-                index += 1;
-            }
-        }
-
-        if (found_fix)
-            return fix;
-        else
-            return null;
+        return (Fix) get_by_ident(this.fix_idents, ilt, lat, lon, IDENT_SEARCH_DISTANCE);
 
     }
 
@@ -318,84 +336,37 @@ public class NavigationObjectRepository {
 
 
     public NavigationObject get_navobj(String ilt, float lat, float lon) {
+        return get_navobj(ilt, lat, lon, IDENT_SEARCH_DISTANCE);
+    }
 
-        // find the VOR, NDB, Waypoint or Airport with the supplied name that is close to lat/lon
-        // TODO : a hashmap might be more efficient, and avoid code duplication
-
-        ArrayList<NavigationObject> navobj_list;
-        int index;
-
-        boolean found_beacon = false;
-        RadioNavBeacon beacon = null;
 
-        boolean found_fix = false;
-        Fix waypoint = null;
+    /**
+     * Finds the VOR, NDB, Waypoint or Airport with the supplied name that is nearest to lat/lon
+     *
+     * @param max_distance    - nm
+     */
+    public NavigationObject get_navobj(String ilt, float lat, float lon, float max_distance) {
 
-        boolean found_arpt = false;
-        Airport arpt = null;
+        NavigationObject navobj = null;
 
         if ( ilt.length() == 4 ) {
             // the name has 4 characters, search for an ARPT
-            navobj_list = get_nav_objects(NavigationObject.NO_TYPE_AIRPORT, lat, lon);
-            index = 0;
-
-            while ( (found_arpt == false) && (index < navobj_list.size()) ) {
-                arpt = (Airport) navobj_list.get(index);
-                if ( ilt.equalsIgnoreCase(arpt.icao_code) ) {
-                    found_arpt = true;
-                } else {
-                    index += 1;
-                }
+            navobj = get_airport(ilt.toUpperCase());
+            if ( ( navobj != null ) && ( rough_distance(lat, lon, navobj.lat, navobj.lon) > max_distance ) ) {
+                navobj = null;
             }
         } else if ( ilt.length() < 4 ) {
             // the name has less than 4 characters, search for a VOR or NDB
-            navobj_list = get_nav_objects(NavigationObject.NO_TYPE_VOR, lat, lon);
-            index = 0;
-
-            while ( (found_beacon == false) && (index < navobj_list.size()) ) {
-                beacon = (RadioNavBeacon) navobj_list.get(index);
-                if ( ilt.equalsIgnoreCase(beacon.ilt) ) {
-                    found_beacon = true;
-                } else {
-                    index += 1;
-                }
-            }
-            if ( ! found_beacon ) {
-                navobj_list = get_nav_objects(NavigationObject.NO_TYPE_NDB, lat, lon);
-                index = 0;
-
-                while ( (found_beacon == false) && (index < navobj_list.size()) ) {
-                    beacon = (RadioNavBeacon) navobj_list.get(index);
-                    if ( ilt.equalsIgnoreCase(beacon.ilt) ) {
-                        found_beacon = true;
-                    } else {
-                        index += 1;
-                    }
-                }
+            navobj = get_by_ident(this.vor_idents, ilt, lat, lon, max_distance);
+            if ( navobj == null ) {
+                navobj = get_by_ident(this.ndb_idents, ilt, lat, lon, max_distance);
             }
         } else if ( ilt.length() == 5 ) {
             // the name has 5 characters, search for a Waypoint
-            navobj_list = get_nav_objects(NavigationObject.NO_TYPE_FIX, lat, lon);
-            index = 0;
-
-            while ( (found_fix == false) && (index < navobj_list.size()) ) {
-                waypoint = (Fix) navobj_list.get(index);
-                if ( ilt.equalsIgnoreCase(waypoint.name) ) {
-                    found_fix = true;
-                } else {
-                    index += 1;
-                }
-            }
+            navobj = get_by_ident(this.fix_idents, ilt, lat, lon, max_distance);
         }
 
-        if (found_arpt)
-            return arpt;
-        else if (found_beacon)
-            return beacon;
-        else if (found_fix)
-            return waypoint;
-        else
-            return null;
+        return navobj;
 
     }
 
@@ -403,117 +374,73 @@ public class NavigationObjectRepository {
     public Runway get_runway(String arpt, String rwy_id, float lat, float lon, boolean wide_search) {
 
         // find the runway with the supplied name that is at (or close to) lat/lon
-        // TODO : a hashmap might be more efficient
-        ArrayList rwy_list = get_nav_objects(NavigationObject.NO_TYPE_RUNWAY, lat, lon);
-        Runway rwy = null;
-        boolean found_rwy = false;
-        int index = 0;
-
-        while ( ( ! found_rwy ) && ( index < rwy_list.size() ) ) {
-            rwy = (Runway) rwy_list.get(index);
-            if ( rwy.name.equalsIgnoreCase(arpt) && ( rwy.rwy_num1.equalsIgnoreCase(rwy_id) || rwy.rwy_num2.equalsIgnoreCase(rwy_id) ) ) {
-                found_rwy = true;
-            } else {
-                index += 1;
-            }
+        Object known = this.rwy_idents.get(arpt.toUpperCase());
+        if ( known == null ) {
+            return null;
+        }
+        ArrayList<?> arpt_rwys;
+        if ( known instanceof ArrayList ) {
+            arpt_rwys = (ArrayList<?>) known;
+        } else {
+            ArrayList<Object> one_rwy = new ArrayList<Object>(1);
+            one_rwy.add(known);
+            arpt_rwys = one_rwy;
         }
 
-        if ( found_rwy )
-            return rwy;
-        else {
-            if ( wide_search ) {
-                int lat_index = get_lat_index(lat);
-                int lon_index = get_lon_index(lon);
-                boolean north = lat_index==0 ? false : true;
-                boolean west = lon_index==0 ? false : true;
-                boolean south = lat_index==180 ? false : true;
-                boolean east = lat_index==360 ? false : true;
-                if ( north ) {
-                    rwy = get_runway(arpt, rwy_id, lat - 1.0f, lon, false);
-                }
-                if ( ( rwy == null ) && west ) {
-                    rwy = get_runway(arpt, rwy_id, lat, lon - 1.0f, false);
-                }
-                if ( ( rwy == null ) && south ) {
-                    rwy = get_runway(arpt, rwy_id, lat + 1.0f, lon, false);
-                }
-                if ( ( rwy == null ) && east ) {
-                    rwy = get_runway(arpt, rwy_id, lat, lon + 1.0f, false);
-                }
-                if ( ( rwy == null ) && north && west ) {
-                    rwy = get_runway(arpt, rwy_id, lat - 1.0f, lon - 1.0f, false);
+        // the same cell, or also the cells around it
+        Runway nearest = null;
+        float nearest_distance = wide_search ? 2.0f * IDENT_SEARCH_DISTANCE : IDENT_SEARCH_DISTANCE;
+        for (int i=0; i<arpt_rwys.size(); i++) {
+            Runway rwy = (Runway) arpt_rwys.get(i);
+            if ( rwy.rwy_num1.equalsIgnoreCase(rwy_id) || rwy.rwy_num2.equalsIgnoreCase(rwy_id) ) {
+                float distance = rough_distance(lat, lon, rwy.lat, rwy.lon);
+                if ( distance <= nearest_distance ) {
+                    nearest = rwy;
+                    nearest_distance = distance;
                 }
-                if ( ( rwy == null ) && south && west ) {
-                    rwy = get_runway(arpt, rwy_id, lat + 1.0f, lon - 1.0f, false);
-                }
-                if ( ( rwy == null ) && south && east ) {
-                    rwy = get_runway(arpt, rwy_id, lat + 1.0f, lon + 1.0f, false);
-                }
-                if ( ( rwy == null ) && north && east ) {
-                    rwy = get_runway(arpt, rwy_id, lat - 1.0f, lon + 1.0f, false);
-                }
-                return rwy;
-            } else {
-                return null;
             }
         }
+        return nearest;
 
     }
 
-    public String find_nrst_arpt(float my_lat, float my_lon, float min_rwy, boolean no_hurry) {
-        
-        // TODO: handle longitudes around the international date line
-        
-        String nrst_arpt = "";
-        double nrst_dist = 99999.0d;
-        ArrayList<NavigationObject> navobj_list;
-        
-        double dist;
-        double delta_lon;
-        double cos_lat = Math.cos(Math.toRadians(my_lat));
-
-        for (int grid_lat=0; grid_lat<181; grid_lat++) {
-            for (int grid_lon=0; grid_lon<361; grid_lon++) {
-
-                navobj_list = arpts[grid_lat][grid_lon];
-                int index = 0;
-                while ( index < navobj_list.size() ) {
-                    Airport arpt = (Airport)navobj_list.get(index);
-                    if ( arpt.longest >= min_rwy ) {
-                        delta_lon = Math.abs(my_lon - arpt.lon);
-                        if ( delta_lon > 270.0 ) delta_lon = 360.0 - delta_lon; // close to the Internationale Date Line, with one point on either side
-                        dist = Math.hypot( (my_lat - arpt.lat), delta_lon * cos_lat );
-                        if ( dist < nrst_dist ) {
-                            nrst_dist = dist;
-                            nrst_arpt = arpt.icao_code;
-                        }
-                    }
-                    index += 1;
-                }
-            }
-            if ( no_hurry ) try { Thread.sleep(5l); } catch(Exception e) {}
-        }
-        
+    public String find_nrst_arpt(float my_lat, float my_lon, float min_rwy) {
+
+        ArrayList<NavigationObject> nrst = new ArrayList<NavigationObject>(1);
+        arpts.find_nearest(my_lat, my_lon, 1, min_rwy, nrst, null);
+        String nrst_arpt = nrst.isEmpty() ? "" : ((Airport)nrst.get(0)).icao_code;
+
         logger.fine("NRST ARPT = "+nrst_arpt);
-        
+
         return nrst_arpt;
-        
+
     }
 
-    private int get_lat_index(float lat) {
-        int lat_index = (int)lat + 90;
-        if ( lat_index < 1 ) lat_index += 179;
-        if ( lat_index > 179 ) lat_index -= 179;
-        return lat_index;
+
+    /**
+     * Finds the nearest airports, searching outwards from the cell of my_lat/my_lon
+     *
+     * @param result       - cleared, then filled with up to count airports, nearest first
+     * @param distances    - when not null, filled with the distance of each airport in result, in nm
+     */
+    public void find_nrst_arpts(float my_lat, float my_lon, int count, float min_rwy, ArrayList<NavigationObject> result, float[] distances) {
+        arpts.find_nearest(my_lat, my_lon, count, min_rwy, result, distances);
     }
 
 
-    private int get_lon_index(float lon) {
-        int lon_index = (int)lon + 180;
-        if ( lon_index < 1 ) lon_index += 359;
-        if ( lon_index > 359 ) lon_index -= 359;
-        return lon_index;
+    /**
+     * @return    - changes whenever airports are added
+     */
+    public int get_airport_count() {
+        return arpts.size();
     }
 
 
+    /**
+     * @return    - changes whenever radio navigation objects are added
+     */
+    public int get_radio_nav_object_count() {
+        return frequencies.get_station_count();
+    }
+
 }
@@ -82,6 +82,13 @@ public class NavigationRadio {
     // link to the radionavaid that we are tuned to
     private RadioNavigationObject rnav_object;
 
+    // when nothing was found, don't search again before we have moved this far
+    private static final float SEARCH_AGAIN_DISTANCE = 1.0f; // nm
+    private float search_lat;
+    private float search_lon;
+    // a reload of the navigation databases may bring the station that was not found
+    private int search_nav_object_count;
+
 
     // GPS -------------------------------------------------------------------
     public NavigationRadio(
@@ -295,14 +302,19 @@ public class NavigationRadio {
         if (current_freq > 10000.0f) {
             current_freq = (current_freq/100.0f);
         }
-        // if the frequency has changed, or we were not tuned to any radionavaid, or we got out of (multiplied) range; then search for a radionavaid again...
+        // if the frequency has changed, or we were not tuned to any radionavaid and have moved since the last search, or we got out of (multiplied) range,
+        // or the navigation databases have been reloaded; then search for a radionavaid again...
         if ( (this.frequency != current_freq)
                 || ( ! this.nav_id.equals(current_nav_id) )
-                || ( this.rnav_object == null )
-                || ( this.aircraft.rough_distance_to(this.rnav_object) > this.rnav_object.range * NavigationObjectRepository.RANGE_MULTIPLIER ) ) {
+                || ( this.navobj_repository.get_radio_nav_object_count() != this.search_nav_object_count )
+                || ( ( this.rnav_object == null ) && ( CoordinateSystem.rough_distance(this.aircraft.lat(), this.aircraft.lon(), this.search_lat, this.search_lon) > SEARCH_AGAIN_DISTANCE ) )
+                || ( ( this.rnav_object != null ) && ( this.aircraft.rough_distance_to(this.rnav_object) > this.rnav_object.range * NavigationObjectRepository.RANGE_MULTIPLIER ) ) ) {
             this.frequency = current_freq;
             this.nav_id = current_nav_id;
-            this.rnav_object = this.navobj_repository.find_tuned_nav_object(this.aircraft.lat(), this.aircraft.lon(), current_freq, current_nav_id);
+            this.search_lat = this.aircraft.lat();
+            this.search_lon = this.aircraft.lon();
+            this.search_nav_object_count = this.navobj_repository.get_radio_nav_object_count();
+            this.rnav_object = this.navobj_repository.find_tuned_nav_object(this.search_lat, this.search_lon, current_freq, current_nav_id);
         }
     }
 
@@ -0,0 +1,148 @@
+/**
+* NearestAirports.java
+*
+* The airports nearest to a moving position, kept up to date incrementally.
+*
+* A search from scratch keeps every airport within the distance of the
+* count-th nearest plus 2 * MARGIN as candidates. As long as the position
+* stays within MARGIN of where that search was done, the nearest airports
+* can only be among those candidates, and an update only has to sort them
+* again. The candidates are searched again after moving further, when the
+* minimum runway length changes, or when airports have been loaded.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model;
+
+import java.util.ArrayList;
+
+
+public class NearestAirports {
+
+    private static final float MARGIN = 20.0f; // nm
+
+    private NavigationObjectRepository nor;
+    private int count;
+
+    // where the candidates were searched
+    private boolean searched = false;
+    private float search_lat;
+    private float search_lon;
+    private float search_min_rwy;
+    private int search_airport_count;
+
+    private ArrayList<NavigationObject> candidates = new ArrayList<NavigationObject>();
+    private float[] candidate_distances = new float[0];
+    private int[] order = new int[0];
+    private ArrayList<NavigationObject> nearest_found = new ArrayList<NavigationObject>();
+
+    // for other threads, replaced as a whole
+    private volatile Airport[] airports = new Airport[0];
+
+
+    /**
+     * @param count    - how many airports to keep
+     */
+    public NearestAirports(int count) {
+        this.nor = NavigationObjectRepository.get_instance();
+        this.count = count;
+    }
+
+
+    /**
+     * Finds the nearest airports again; called by one thread only
+     */
+    public void update(float lat, float lon, float min_rwy) {
+
+        if ( ( ! this.searched ) || (min_rwy != this.search_min_rwy) || (this.nor.get_airport_count() != this.search_airport_count)
+                || (CoordinateSystem.distance(lat, lon, this.search_lat, this.search_lon) > MARGIN) ) {
+            search(lat, lon, min_rwy);
+        }
+
+        // sort the candidates by their distance from here, there are only a few dozen
+        int n = this.candidates.size();
+        for (int i=0; i<n; i++) {
+            float distance = distance(lat, lon, this.candidates.get(i));
+            int j = i;
+            while ( (j > 0) && (this.candidate_distances[j - 1] > distance) ) {
+                this.candidate_distances[j] = this.candidate_distances[j - 1];
+                this.order[j] = this.order[j - 1];
+                j--;
+            }
+            this.candidate_distances[j] = distance;
+            this.order[j] = i;
+        }
+
+        Airport[] nearest = new Airport[Math.min(this.count, n)];
+        for (int i=0; i<nearest.length; i++) {
+            nearest[i] = (Airport)this.candidates.get(this.order[i]);
+        }
+        this.airports = nearest;
+
+    }
+
+
+    private void search(float lat, float lon, float min_rwy) {
+
+        this.search_lat = lat;
+        this.search_lon = lon;
+        this.search_min_rwy = min_rwy;
+        this.search_airport_count = this.nor.get_airport_count();
+        this.searched = true;
+
+        float[] found_distances = new float[this.count];
+        this.nor.find_nrst_arpts(lat, lon, this.count, min_rwy, this.nearest_found, found_distances);
+        if ( this.nearest_found.size() < this.count ) {
+            // that's all of them
+            this.candidates.clear();
+            this.candidates.addAll(this.nearest_found);
+        } else {
+            this.nor.get_nav_objects(lat, lon, found_distances[this.count - 1] + 2.0f * MARGIN,
+                    1 << NavigationObject.NO_TYPE_AIRPORT, min_rwy, this.candidates);
+        }
+
+        if ( this.candidate_distances.length < this.candidates.size() ) {
+            this.candidate_distances = new float[this.candidates.size()];
+            this.order = new int[this.candidates.size()];
+        }
+
+    }
+
+
+    private static float distance(float lat, float lon, NavigationObject arpt) {
+        double lat1 = Math.toRadians(lat);
+        double lat2 = Math.toRadians(arpt.lat);
+        double cos_distance = Math.sin(lat1) * Math.sin(lat2) + Math.cos(lat1) * Math.cos(lat2) * Math.cos(Math.toRadians(arpt.lon - lon));
+        return (float)(Math.acos(Math.max(-1.0, Math.min(1.0, cos_distance))) * 3443.9);
+    }
+
+
+    /**
+     * @return    - the nearest airports, nearest first; do not modify
+     */
+    public Airport[] get_airports() {
+        return this.airports;
+    }
+
+
+    /**
+     * @return    - the ICAO code of the nearest airport, or "" when there is none
+     */
+    public String get_nearest() {
+        Airport[] nearest = this.airports;
+        return ( nearest.length > 0 ) ? nearest[0].icao_code : "";
+    }
+
+}
@@ -25,6 +25,8 @@
 */
 package net.sourceforge.xhsi.model;
 
+import java.util.BitSet;
+
 
 public interface SimDataRepository {
 
@@ -32,6 +34,13 @@ public interface SimDataRepository {
 
     public void add_observer(Observer observer);
 
+    /**
+     * Adds an observer that is only updated by tick_updates() when at least one of the given ids
+     * changed since the previous tick. String ids (10000 and up) can be used as well, other ids
+     * that the repository does not store throw an IllegalArgumentException.
+     */
+    public void add_observer(Observer observer, BitSet ids);
+
     public void store_sim_float(int id, float value);
 
 //    public void store_sim_int(int id, int value);
@@ -48,8 +57,24 @@ public interface SimDataRepository {
 
     public long get_sim_string_timestamp(int id);
     
+    /**
+     * Publishes the values stored since the previous tick as one consistent frame,
+     * then updates the observers that depend on one of the changed ids.
+     */
     public void tick_updates();
 
+    /**
+     * Makes the calling thread read the last published frame until its next call of pin_frame().
+     * Components call this at the start of paint(), so that one paint never mixes two frames.
+     * Only one thread, the AWT event dispatch thread, can have a pinned frame.
+     */
+    public void pin_frame();
+
+    /**
+     * @return    - the generation of the frame the calling thread reads, increased by every tick_updates()
+     */
+    public long get_frame_generation();
+
     public long get_nb_of_updates();
 
 }
@@ -23,6 +23,8 @@
 */
 package net.sourceforge.xhsi.model;
 
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.logging.Logger;
@@ -30,6 +32,11 @@ import java.util.logging.Logger;
 
 public class TaxiChart {
 
+    // 60 nm of 1851.851 m
+    private static final float METRES_PER_DEG_LAT = 60.0f * 1851.851f;
+    // how far a flattened bezier curve may be off, in metres
+    private static final double FLATNESS = 0.5;
+
 
     public class Segment {
         public float lat;
@@ -89,6 +96,10 @@ public class TaxiChart {
         // public String name;
         public ArrayList<Node> nodes;
         public ArrayList<Pavement> holes;
+        // made by close_chart(), in metres (see get_transform())
+        public Path2D.Float shape;
+        // the same, with straight lines between the nodes
+        public Path2D.Float polygon;
         
         public Pavement() {
             holes = new ArrayList();
@@ -122,6 +133,14 @@ public class TaxiChart {
     public Pavement border;
     public ArrayList<Segment> segments;
 
+    // the shapes are in metres around (ref_lat, ref_lon), x to the east and y to the south
+    public float ref_lat;
+    public float ref_lon;
+    // the APT810-style segments, together
+    public Path2D.Float segments_shape;
+    // the runways of the airport, in the same order
+    public ArrayList<Path2D.Float> runway_shapes;
+
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
 //    private static TaxiChart single_instance;
@@ -146,6 +165,8 @@ public class TaxiChart {
         border = null;
         pavements = new ArrayList();
         segments = new ArrayList();
+        segments_shape = new Path2D.Float();
+        runway_shapes = new ArrayList<Path2D.Float>();
         icao = "";
         ready = true;
 
@@ -346,6 +367,168 @@ logger.warning("Failed to find "+ icao);
     }
 
 
+    /**
+     * @return    - roughly how many bytes the pavements, the border and the segments take
+     */
+    public int estimated_size() {
+
+        int nodes = 0;
+        int loops = 0;
+        for (int i=0; i<this.pavements.size(); i++) {
+            Pavement taxiramp = this.pavements.get(i);
+            nodes += taxiramp.nodes.size();
+            loops++;
+            for (int k=0; k<taxiramp.holes.size(); k++) {
+                nodes += taxiramp.holes.get(k).nodes.size();
+                loops++;
+            }
+        }
+        if ( this.border != null ) {
+            nodes += this.border.nodes.size();
+            loops++;
+            for (int k=0; k<this.border.holes.size(); k++) {
+                nodes += this.border.holes.get(k).nodes.size();
+                loops++;
+            }
+        }
+        // a Node is 6 floats, 2 booleans and the reference to it, and takes another 48 bytes in the shapes
+        // a Segment is 5 floats and 4 points in segments_shape
+        return 256 + nodes * 96 + loops * 160 + this.segments.size() * 80 + this.runway_shapes.size() * 80;
+
+    }
+
+
+    /**
+     * @return    - the transformation from the metres of the shapes to pixels, when (lat, lon) is drawn
+     *              at (x, y) and a degree of latitude takes px_per_deg_lat pixels
+     */
+    public AffineTransform get_transform(float lat, float lon, float x, float y, float px_per_deg_lat) {
+
+        AffineTransform at = AffineTransform.getTranslateInstance(
+                x + ( this.ref_lon - lon ) * px_per_deg_lat * this.lon_scale,
+                y - ( this.ref_lat - lat ) * px_per_deg_lat
+            );
+        at.scale(px_per_deg_lat / METRES_PER_DEG_LAT, px_per_deg_lat / METRES_PER_DEG_LAT);
+        return at;
+
+    }
+
+
+    private float get_x(float lon) {
+        return ( lon - this.ref_lon ) * this.lon_scale * METRES_PER_DEG_LAT;
+    }
+
+
+    private float get_y(float lat) {
+        return ( this.ref_lat - lat ) * METRES_PER_DEG_LAT;
+    }
+
+
+    /**
+     * Turns the nodes into shapes once, so that the displays only have to transform them
+     */
+    private void build_shapes() {
+
+        this.ref_lat = ( this.north_lat + this.south_lat ) / 2.0f;
+        this.ref_lon = ( this.east_lon + this.west_lon ) / 2.0f;
+
+        if ( this.border != null ) {
+            build_shapes(this.border);
+        }
+        for (int i=0; i<this.pavements.size(); i++) {
+            build_shapes(this.pavements.get(i));
+        }
+
+        for (int s=0; s<this.segments.size(); s++) {
+            Segment seg0 = this.segments.get(s);
+            double orientation = Math.toRadians(seg0.orientation);
+            add_rectangle(this.segments_shape, get_x(seg0.lon), get_y(seg0.lat),
+                    (float)Math.sin(orientation), -(float)Math.cos(orientation), seg0.length / 2.0f, seg0.width / 2.0f);
+        }
+
+        if ( this.airport != null ) {
+            for (int r=0; r<this.airport.runways.size(); r++) {
+                Runway rwy0 = this.airport.runways.get(r);
+                float x1 = get_x(rwy0.lon1);
+                float y1 = get_y(rwy0.lat1);
+                float x2 = get_x(rwy0.lon2);
+                float y2 = get_y(rwy0.lat2);
+                float length = (float)Math.hypot(x2 - x1, y2 - y1);
+                Path2D.Float rwy_shape = new Path2D.Float();
+                if ( length > 0.0f ) {
+                    add_rectangle(rwy_shape, (x1 + x2) / 2.0f, (y1 + y2) / 2.0f,
+                            (x2 - x1) / length, (y2 - y1) / length, length / 2.0f, rwy0.width / 2.0f);
+                }
+                this.runway_shapes.add(rwy_shape);
+            }
+        }
+
+    }
+
+
+    private void build_shapes(Pavement loop) {
+
+        loop.polygon = new Path2D.Float();
+        Path2D.Float curves = new Path2D.Float();
+        Node last_node = null;
+        for (int h=0; h<loop.nodes.size(); h++) {
+            Node node1 = loop.nodes.get(h);
+            if ( h == 0 ) {
+                loop.polygon.moveTo(get_x(node1.lon), get_y(node1.lat));
+                curves.moveTo(get_x(node1.lon), get_y(node1.lat));
+                last_node = node1;
+            } else {
+                loop.polygon.lineTo(get_x(node1.lon), get_y(node1.lat));
+                if ( ( node1.lat != last_node.lat ) || ( node1.lon != last_node.lon ) ) {
+                    // this node is different from the previous, so we can draw ... something
+                    if ( node1.cubic_bezier ) {
+                        curves.curveTo(get_x(node1.quad_lon), get_y(node1.quad_lat),
+                                get_x(node1.cubic_lon), get_y(node1.cubic_lat),
+                                get_x(node1.lon), get_y(node1.lat));
+                    } else if ( node1.quad_bezier ) {
+                        curves.quadTo(get_x(node1.quad_lon), get_y(node1.quad_lat),
+                                get_x(node1.lon), get_y(node1.lat));
+                    } else {
+                        curves.lineTo(get_x(node1.lon), get_y(node1.lat));
+                    }
+                    last_node = node1;
+                }
+            }
+        }
+        if ( ! loop.nodes.isEmpty() ) {
+            loop.polygon.closePath();
+            curves.closePath();
+        }
+
+        // only straight lines are left to draw
+        loop.shape = new Path2D.Float();
+        loop.shape.append(curves.getPathIterator(null, FLATNESS), false);
+
+        for (int k=0; k<loop.holes.size(); k++) {
+            build_shapes(loop.holes.get(k));
+        }
+
+    }
+
+
+    /**
+     * Adds the rectangle around (x, y) that is 2 * half_length long in the direction (dx, dy), and 2 * half_width wide
+     */
+    private static void add_rectangle(Path2D.Float shape, float x, float y, float dx, float dy, float half_length, float half_width) {
+
+        float lx = dx * half_length;
+        float ly = dy * half_length;
+        float wx = -dy * half_width;
+        float wy = dx * half_width;
+        shape.moveTo(x - lx - wx, y - ly - wy);
+        shape.lineTo(x + lx - wx, y + ly - wy);
+        shape.lineTo(x + lx + wx, y + ly + wy);
+        shape.lineTo(x - lx + wx, y - ly + wy);
+        shape.closePath();
+
+    }
+
+
     public void close_chart() {
 
 //logger.warning("Closing "+ icao);
@@ -400,6 +583,8 @@ logger.warning("Failed to find "+ icao);
 //logger.warning("Chart west="+this.west_lon);
         this.lon_scale = (float)Math.cos( Math.toRadians( ( this.north_lat + this.south_lat ) / 2.0f ) );
 
+        build_shapes();
+
         this.ready = true;
 //logger.warning("Chart scale="+this.lon_scale);
 
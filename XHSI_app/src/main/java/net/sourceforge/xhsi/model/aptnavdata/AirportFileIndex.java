@@ -0,0 +1,130 @@
+/**
+* AirportFileIndex.java
+*
+* Where in the apt.dat files each airport is: the file, and the byte offset
+* and length of everything from its "1" header line up to the next airport.
+* It is filled while the navigation databases are loaded, in the same order,
+* so the first apt.dat that has an airport is the one that is remembered.
+* AptNavXP900DatTaxiChartBuilder reads a taxi chart with one positioned read
+* instead of searching through all apt.dat files.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.aptnavdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+
+public class AirportFileIndex {
+
+    public static class Entry {
+
+        public String icao;
+        public File file;
+        public long offset;
+        public int length;
+        // to notice that the file has been changed since
+        public long file_length;
+        public long file_modified;
+
+        public Entry(String icao, File file, long file_length, long file_modified, long offset, int length) {
+            this.icao = icao;
+            this.file = file;
+            this.file_length = file_length;
+            this.file_modified = file_modified;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @return    - the bytes of this airport in its apt.dat, starting with its header line
+         */
+        public ByteBuffer read() throws IOException {
+            if ( ( this.file.length() != this.file_length ) || ( this.file.lastModified() != this.file_modified ) ) {
+                throw new IOException(this.file.getPath() + " has been changed");
+            }
+            ByteBuffer buf = ByteBuffer.allocate(this.length);
+            RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                while ( buf.hasRemaining() && ( channel.read(buf, this.offset + buf.position()) > 0 ) ) {
+                    // read the rest
+                }
+            } finally {
+                raf.close();
+            }
+            buf.flip();
+            return buf;
+        }
+
+    }
+
+
+    private static AirportFileIndex single_instance;
+
+    private HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+
+    public static synchronized AirportFileIndex get_instance() {
+        if (AirportFileIndex.single_instance == null) {
+            AirportFileIndex.single_instance = new AirportFileIndex();
+        }
+        return AirportFileIndex.single_instance;
+    }
+
+
+    private AirportFileIndex() {
+    }
+
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+
+    /**
+     * Remembers where an airport is, unless it was found in another file before
+     */
+    public synchronized void add(Entry entry) {
+        String key = entry.icao.toUpperCase();
+        if ( ! this.entries.containsKey(key) ) {
+            this.entries.put(key, entry);
+        }
+    }
+
+
+    /**
+     * @return    - where the airport is, or null when the databases have not been loaded or do not have it
+     */
+    public synchronized Entry get(String icao) {
+        return this.entries.get(icao.toUpperCase());
+    }
+
+
+    /**
+     * @return    - all entries, in no particular order
+     */
+    public synchronized ArrayList<Entry> get_entries() {
+        return new ArrayList<Entry>(this.entries.values());
+    }
+
+
+}
@@ -2,7 +2,13 @@
 * AptNavXP900DatNavigationObjectBuilder.java
 *
 * Reads X-Planes earth nav data databases nav.dat, fix.dat and apt.dat and
-* stores extracted data in NavigationObjectRepository.
+* stores extracted data in NavigationObjectRepository. The apt.dat files and
+* fix.dat are parsed in parallel, each into its own batch, and the batches are
+* added to the repository in the usual order, so that the first airport with
+* a given ICAO code is still the one that is kept. Where each airport is in
+* the apt.dat files is remembered in AirportFileIndex. What was read is saved
+* in a NavigationDatabaseCache, which is used instead as long as none of the
+* files has changed.
 *
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
@@ -28,6 +34,8 @@ import java.io.File;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Logger;
 
 import net.sourceforge.xhsi.XHSIPreferences;
@@ -42,6 +50,7 @@ import net.sourceforge.xhsi.model.Fix;
 import net.sourceforge.xhsi.model.Helipad;
 import net.sourceforge.xhsi.model.Heliport;
 import net.sourceforge.xhsi.model.Localizer;
+import net.sourceforge.xhsi.model.NavigationObject;
 import net.sourceforge.xhsi.model.NavigationObjectRepository;
 import net.sourceforge.xhsi.model.RadioNavigationObject;
 import net.sourceforge.xhsi.model.RadioNavBeacon;
@@ -66,6 +75,10 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
     private ProgressObserver progressObserver;
     private Fix fix;
     private boolean load_helipads;
+
+    public static final String CACHE_FILENAME = "XHSI_navdb.cache";
+    // everything added to the repository, in that order, for the cache
+    private ArrayList<NavigationObject> added = new ArrayList<NavigationObject>();
     
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
@@ -90,10 +103,8 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
 
 //            this.nor.init();
 
-            // read the "<aptnavdir>/Custom Scenery/<pack>/Earth nav data/apt.dat" in the other specified by scenery_packs.ini
-            if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Loading Custom Scenery APT ...", 0.0f);
-            }
+            // the "<aptnavdir>/Custom Scenery/<pack>/Earth nav data/apt.dat" in the other specified by scenery_packs.ini
+            ArrayList<File> custom_apt_files = new ArrayList<File>();
             File scenery_packs_ini = new File( this.pathname_to_aptnav + "/Custom Scenery/scenery_packs.ini");
             if ( scenery_packs_ini.exists() ) {
                 // There is an ini-file that defines the load order of custom scenery
@@ -106,11 +117,8 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                     if ( (tokens.length == 2) && tokens[0].equals("SCENERY_PACK") ) {
                         File custom_apt_file = new File( this.pathname_to_aptnav + "/" + tokens[1] + "/Earth nav data/apt.dat" );
                         if ( custom_apt_file.exists() ) {
-
                             // We have a custom apt.dat
-                            logger.config("Loading Custom Scenery APT " + custom_apt_file.getPath());
-                            read_an_apt_file(custom_apt_file);
-
+                            custom_apt_files.add(custom_apt_file);
                         } // else logger.warning("No custom apt.dat found at " + custom_apt_dat.getPath());
                     }
                 }
@@ -118,37 +126,117 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                 reader.close();
             }
 
-            if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Loading Global Scenery APT ...", 10.0f);
-            }
-            // read the "<aptnavdir>/Global Scenery/<pack>/Earth nav data/apt.dat" in alphabetical other
-            scan_apt_files("Global Scenery");
-            
-            if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Loading Default Scenery APT ...", 20.0f);
-            }
+            // the "<aptnavdir>/Global Scenery/<pack>/Earth nav data/apt.dat" in alphabetical other
+            ArrayList<File> global_apt_files = new ArrayList<File>();
+            scan_apt_files("Global Scenery", global_apt_files);
+
+            ArrayList<File> default_apt_files = new ArrayList<File>();
             if ( new File( this.pathname_to_aptnav + this.APT_file ).exists() ) {
                 logger.info("Reading APT database ( " + this.pathname_to_aptnav + this.APT_file + " ) Reading from a single directory is DEPRECATED !");
-                File aptnav_apt_file = new File( this.pathname_to_aptnav + this.APT_file );
-                read_an_apt_file(aptnav_apt_file);
+                default_apt_files.add(new File( this.pathname_to_aptnav + this.APT_file ));
             }
-            // read the "<aptnavdir>/Resources/default scenery/<pack>/Earth nav data/apt.dat" in alphabetical other
-            scan_apt_files("Resources/default scenery");
+            // the "<aptnavdir>/Resources/default scenery/<pack>/Earth nav data/apt.dat" in alphabetical other
+            scan_apt_files("Resources/default scenery", default_apt_files);
+
+            File nav_file = find_nav_file();
+            File fix_file = find_fix_file();
+            File awy_file = find_awy_file();
+
+            NavigationDatabaseCache cache = new NavigationDatabaseCache(CACHE_FILENAME);
+            for (int i=0; i<custom_apt_files.size(); i++) cache.add_source(custom_apt_files.get(i));
+            for (int i=0; i<global_apt_files.size(); i++) cache.add_source(global_apt_files.get(i));
+            for (int i=0; i<default_apt_files.size(); i++) cache.add_source(default_apt_files.get(i));
+            cache.add_source(nav_file);
+            cache.add_source(fix_file);
+            cache.add_source(awy_file);
+            cache.add_option("helipads", Boolean.toString(this.load_helipads));
+            cache.set_cycle(read_nav_cycle(nav_file));
 
             if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Loading NAV ...", 40.0f);
+                this.progressObserver.set_progress("Loading databases", "Loading cached databases ...", 0.0f);
+            }
+            // the offsets must be those of the current files
+            AirportFileIndex arpt_index = AirportFileIndex.get_instance();
+            arpt_index.clear();
+            // charts read meanwhile would lack their airport
+            TaxiChartCache.get_instance().clear();
+
+            if ( cache.load(this.nor, arpt_index) ) {
+                XHSIStatus.nav_db_cycle = cache.get_cycle();
+                TaxiChartCache.get_instance().clear();
+                if (this.progressObserver != null) {
+                    this.progressObserver.set_progress("Loading databases", "Done!", 100.0f);
+                }
+                return;
             }
-            read_nav_table();
 
-            if (this.progressObserver != null) {
-                this.progressObserver.set_progress("Loading databases", "Loading FIX ...", 60.0f);
+            this.added.clear();
+
+            ArrayList<File> apt_files = new ArrayList<File>();
+            ArrayList<String> apt_kinds = new ArrayList<String>();
+            for (int i=0; i<custom_apt_files.size(); i++) {
+                apt_files.add(custom_apt_files.get(i));
+                apt_kinds.add("Custom Scenery");
+            }
+            for (int i=0; i<global_apt_files.size(); i++) {
+                apt_files.add(global_apt_files.get(i));
+                apt_kinds.add("Global Scenery");
+            }
+            for (int i=0; i<default_apt_files.size(); i++) {
+                apt_files.add(default_apt_files.get(i));
+                apt_kinds.add("Default Scenery");
             }
-            read_fix_table();
 
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            try {
+                // parse all APT files and the FIX file at once
+                ParseTask[] apt_tasks = new ParseTask[apt_files.size()];
+                for (int i=0; i<apt_tasks.length; i++) {
+                    apt_tasks[i] = new ParseTask(apt_files.get(i), false);
+                    pool.execute(apt_tasks[i]);
+                }
+                ParseTask fix_task = new ParseTask(fix_file, true);
+                pool.execute(fix_task);
+
+                // and add them in order; the progress dialog is only updated from here
+                for (int i=0; i<apt_tasks.length; i++) {
+                    if (this.progressObserver != null) {
+                        this.progressObserver.set_progress("Loading databases", "Loading " + apt_kinds.get(i) + " APT " + (i + 1) + "/" + apt_tasks.length + " ...", 40.0f * i / apt_tasks.length);
+                    }
+                    logger.config("Loading " + apt_kinds.get(i) + " APT " + apt_files.get(i).getPath());
+                    add_batch(apt_tasks[i].join());
+                    for (int e=0; e<apt_tasks[i].arpt_entries.size(); e++) {
+                        arpt_index.add(apt_tasks[i].arpt_entries.get(e));
+                    }
+                    apt_tasks[i] = null;
+                }
+
+                // NAV needs the airports and runways, and looks up its own navaids while reading
+                if (this.progressObserver != null) {
+                    this.progressObserver.set_progress("Loading databases", "Loading NAV ...", 40.0f);
+                }
+                read_nav_table(nav_file);
+
+                if (this.progressObserver != null) {
+                    this.progressObserver.set_progress("Loading databases", "Loading FIX ...", 60.0f);
+                }
+                add_batch(fix_task.join());
+            } finally {
+                pool.shutdown();
+            }
+
+            // AWY marks the fixes that are on an airway
             if (this.progressObserver != null) {
                 this.progressObserver.set_progress("Loading databases", "Loading AWY ...", 80.0f);
             }
-            read_awy_table();
+            read_awy_table(awy_file);
+
+            if (this.progressObserver != null) {
+                this.progressObserver.set_progress("Loading databases", "Saving cache ...", 90.0f);
+            }
+            cache.save(this.added, arpt_index.get_entries());
+            this.added.clear();
+            TaxiChartCache.get_instance().clear();
 
             if (this.progressObserver != null) {
                 this.progressObserver.set_progress("Loading databases", "Done!", 100.0f);
@@ -160,7 +248,7 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
     }
 
 
-    private void scan_apt_files(String basedir) throws Exception {
+    private void scan_apt_files(String basedir, ArrayList<File> apt_files) throws Exception {
 
         File scenery_dir = new File( this.pathname_to_aptnav + "/" + basedir);
         // get the list of packs in scenery_dir
@@ -174,19 +262,113 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                     File apt_file = new File( this.pathname_to_aptnav + "/" + basedir + "/" + scenery_packs[i] + "/Earth nav data/apt.dat");
                     // check if we have an apt.dat file in this pack
                     if ( apt_file.exists() ) {
-                        logger.config("Loading " + basedir + " APT " + apt_file.getPath());
-                        read_an_apt_file(apt_file);
+                        apt_files.add(apt_file);
                     }
                 }
             }
         }
 
     }
-    
-    
-    private void read_an_apt_file(File apt_file) throws Exception {
 
-        BufferedReader reader = new BufferedReader( new FileReader( apt_file ));
+
+    /**
+     * Adds to the repository, and remembers it for the cache
+     */
+    private void add(NavigationObject nav_object) {
+        this.nor.add_nav_object(nav_object);
+        this.added.add(nav_object);
+    }
+
+
+    private void add_batch(ArrayList<NavigationObject> batch) {
+        for (int i=0; i<batch.size(); i++) {
+            add(batch.get(i));
+        }
+    }
+
+
+    /**
+     * Parses an APT or FIX file into a batch of its own, without touching the repository
+     */
+    private class ParseTask extends RecursiveTask<ArrayList<NavigationObject>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private File file;
+        private boolean fix_table;
+        ArrayList<AirportFileIndex.Entry> arpt_entries = new ArrayList<AirportFileIndex.Entry>();
+
+        ParseTask(File file, boolean fix_table) {
+            this.file = file;
+            this.fix_table = fix_table;
+        }
+
+        protected ArrayList<NavigationObject> compute() {
+            ArrayList<NavigationObject> batch = new ArrayList<NavigationObject>();
+            try {
+                if ( this.fix_table ) {
+                    read_fix_table(this.file, batch);
+                } else {
+                    read_an_apt_file(this.file, batch, this.arpt_entries);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Could not read " + this.file + " (" + e.toString() + ")", e);
+            }
+            return batch;
+        }
+
+    }
+
+
+    /**
+     * The cycle number is on line 2, usually followed by a comma
+     */
+    private static String parse_cycle(String[] tokens) {
+        if ( (tokens[5].length()>2) && (tokens[5].charAt(tokens[5].length()-1)==',') ) {
+            return tokens[5].substring(0, tokens[5].length()-1);
+        } else {
+            return tokens[5];
+        }
+    }
+
+
+    /**
+     * @return    - the AIRAC cycle from the header of the NAV file, or "" when there is none
+     */
+    private String read_nav_cycle(File file) throws Exception {
+
+        String cycle = "";
+        if ( file != null ) {
+            BufferedReader reader = new BufferedReader( new FileReader( file ));
+            String line;
+            long line_number = 0;
+            while ( (line_number < 2) && ((line = reader.readLine()) != null) ) {
+                if ( line.length() > 0 ) {
+                    line_number++;
+                    line = line.trim();
+                    if ( (line_number == 2) && (line.length() >= 32) ) {
+                        String[] tokens = line.split("\\s+",8);
+                        if ( tokens.length > 5 ) {
+                            cycle = parse_cycle(tokens);
+                        }
+                    }
+                }
+            }
+            reader.close();
+        }
+        return cycle;
+
+    }
+
+
+    private void read_an_apt_file(File apt_file, ArrayList<NavigationObject> batch, ArrayList<AirportFileIndex.Entry> arpt_entries) throws Exception {
+
+        LineOffsetReader reader = new LineOffsetReader(apt_file);
+        long file_length = apt_file.length();
+        long file_modified = apt_file.lastModified();
+        // the airport that we are reading, for AirportFileIndex
+        String entry_icao = null;
+        long entry_offset = 0;
         String line;
         long line_number = 0;
         int info_type;
@@ -240,6 +422,17 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                             tokens = line.split("\\s+",6);
                             info_type = Integer.parseInt(tokens[0]);
                         }
+                        if ( (info_type == 1) || (info_type == 16) || (info_type == 17) ) {
+                            // the previous airport ends here
+                            if ( entry_icao != null ) {
+                                arpt_entries.add(new AirportFileIndex.Entry(entry_icao, apt_file, file_length, file_modified, entry_offset, (int)(reader.get_line_offset() - entry_offset)));
+                                entry_icao = null;
+                            }
+                            if ( (info_type == 1) && ! line.equals("99") ) {
+                                entry_icao = tokens[4];
+                                entry_offset = reader.get_line_offset();
+                            }
+                        }
                         if (info_type == 1 || info_type == 17) {
                         	// TODO: type 16 : Seaplane base
                         	// TODO: type 17 : heliport
@@ -272,9 +465,9 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                                     arp_lon = lon_sum / rwy_count;
                                 }
                                 if (is_heliport) {
-                                    nor.add_nav_object(new Heliport(airport_name, airport_icao_code, arp_lat, arp_lon, helipads, elev, comms));                               	
+                                    batch.add(new Heliport(airport_name, airport_icao_code, arp_lat, arp_lon, helipads, elev, comms));                               	
                                 } else {
-                                	nor.add_nav_object(new Airport(airport_name, airport_icao_code, arp_lat, arp_lon, runways, helipads, longest, elev, comms));
+                                	batch.add(new Airport(airport_name, airport_icao_code, arp_lat, arp_lon, runways, helipads, longest, elev, comms));
                                 }
                             }
                             // process the new airport header
@@ -316,7 +509,7 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                             lat = ( thr1_lat + thr2_lat ) / 2;
                             lon = ( thr1_lon + thr2_lon ) / 2;
                             Runway new_rwy = new Runway(airport_icao_code, length, width, surface, rwy_num1, thr1_lat, thr1_lon, rwy_num2, thr2_lat, thr2_lon);
-                            nor.add_nav_object(new_rwy);
+                            batch.add(new_rwy);
                             //runways.add( nor.get_runway(airport_icao_code, lat, lon) );
                             runways.add(new_rwy);
                             // find the longest runway for this airport
@@ -345,7 +538,7 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                             width = Float.parseFloat(tokens[6]);
                             surface = Integer.parseInt(tokens[7]);
                             Helipad new_helipad = new Helipad(airport_icao_code, length, width, surface, rwy_num1, lat, lon);
-                            nor.add_nav_object(new_helipad);                            
+                            batch.add(new_helipad);                            
                             helipads.add(new_helipad);                            
                         } else if (info_type == 14) {
                             // if defined in the file, the tower position can be used as the ARP
@@ -398,6 +591,11 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
 
         } // while readLine
 
+        if ( entry_icao != null ) {
+            // no "99" at the end
+            arpt_entries.add(new AirportFileIndex.Entry(entry_icao, apt_file, file_length, file_modified, entry_offset, (int)(reader.get_offset() - entry_offset)));
+        }
+
         if (reader != null) {
             reader.close();
         }
@@ -406,6 +604,11 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
 
 
     public void read_nav_table() throws Exception {
+        read_nav_table(find_nav_file());
+    }
+
+
+    private File find_nav_file() {
 
         File file = null;
         if ( new File( this.pathname_to_aptnav + this.NAV_custom ).exists() ) {
@@ -418,6 +621,13 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
             logger.info("Reading NAV database ( " + this.pathname_to_aptnav + this.NAV_file + " ) Reading from a single directory is DEPRECATED !");
             file = new File( this.pathname_to_aptnav + this.NAV_file );
         }
+        return file;
+
+    }
+
+
+    private void read_nav_table(File file) throws Exception {
+
         BufferedReader reader = new BufferedReader( new FileReader( file ));
         String line;
         int info_type;
@@ -461,12 +671,7 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                     logger.info("NAV file format : "+ tokens[0]);
                     version11 = tokens[0].equals("1100");
                     if (version11) logger.info("X-Plane 11");
-                    if ( (tokens[5].length()>2) && (tokens[5].charAt(tokens[5].length()-1)==',') ) {
-                        // usually, the cycle number is followed by a comma
-                        XHSIStatus.nav_db_cycle = tokens[5].substring(0, tokens[5].length()-1);
-                    } else {
-                        XHSIStatus.nav_db_cycle = tokens[5];
-                    }
+                    XHSIStatus.nav_db_cycle = parse_cycle(tokens);
                     
                 } else if ( (line_number > 2)  && ( ! line.equals("99") ) ) {
                     try {
@@ -483,7 +688,7 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                                 name_field = 8;
                             }
                             // 2=NDB, 3=VOR (VOR, VOR-DME, VORTAC) 13=DME (Standalone DME, TACAN)
-                            nor.add_nav_object(new RadioNavBeacon(
+                            add(new RadioNavBeacon(
                                     tokens[name_field], // name
                                     tokens[ident_field], // ident
                                     info_type,
@@ -533,7 +738,7 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                                     has_a_twin,
                                     twin_ilt
                                 );
-                            nor.add_nav_object(new_loc);
+                            add(new_loc);
                             // add this localizer to the runway
                             if (nor.get_airport(tokens[arpt_field]) == null) {
                                 logger.warning("Error NAV.dat: no AIRPORT found for ILS/LOC " + tokens[arpt_field] + " " + tokens[rwy_field] + " " + tokens[ident_field]);
@@ -633,6 +838,13 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
 
 
     public void read_fix_table() throws Exception {
+        ArrayList<NavigationObject> batch = new ArrayList<NavigationObject>();
+        read_fix_table(find_fix_file(), batch);
+        add_batch(batch);
+    }
+
+
+    private File find_fix_file() {
 
         File file = null;
         if ( new File( this.pathname_to_aptnav + this.FIX_custom ).exists() ) {
@@ -645,6 +857,13 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
             logger.info("Reading FIX database ( " + this.pathname_to_aptnav + this.FIX_file + " ) Reading from a single directory is DEPRECATED !");
             file = new File( this.pathname_to_aptnav + this.FIX_file );
         }
+        return file;
+
+    }
+
+
+    private void read_fix_table(File file, ArrayList<NavigationObject> batch) throws Exception {
+
         BufferedReader reader = new BufferedReader( new FileReader( file ));
         String line;
         String[] tokens;
@@ -668,7 +887,7 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
                 } else if ( (line_number > 2) && ( ! line.equals("99") ) ) {
                     try {
                         tokens = line.split("\\s+",5);
-                        nor.add_nav_object(new Fix(
+                        batch.add(new Fix(
                                 tokens[2],
                                 Float.parseFloat(tokens[0]),
                                 Float.parseFloat(tokens[1]),
@@ -690,6 +909,11 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
 
 
     public void read_awy_table() throws Exception {
+        read_awy_table(find_awy_file());
+    }
+
+
+    private File find_awy_file() {
 
         File file = null;
         if ( new File( this.pathname_to_aptnav + this.AWY_custom ).exists() ) {
@@ -702,6 +926,13 @@ public class AptNavXP900DatNavigationObjectBuilder implements PreferencesObserve
             logger.info("Reading AWY database ( " + this.pathname_to_aptnav + this.AWY_file + " ) Reading from a single directory is DEPRECATED !");
             file = new File( this.pathname_to_aptnav + this.AWY_file );
         }
+        return file;
+
+    }
+
+
+    private void read_awy_table(File file) throws Exception {
+
         BufferedReader reader = new BufferedReader( new FileReader( file ));
         String line;
         String[] tokens;
@@ -24,8 +24,11 @@
 package net.sourceforge.xhsi.model.aptnavdata;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 //import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.logging.Logger;
@@ -97,6 +100,22 @@ public class AptNavXP900DatTaxiChartBuilder extends Thread {
     }
 
 
+    /**
+     * Reads the chart on the calling thread, instead of starting a thread like get_chart()
+     */
+    public void build_chart(String icao) throws Exception {
+
+        if (new File(this.pathname_to_aptnav).exists()) {
+            search_arpt(icao.trim());
+        } else {
+            logger.warning("AptNav resources directory is wrong!");
+            this.taxi_chart.new_chart(icao.trim());
+            this.taxi_chart.not_found();
+        }
+
+    }
+
+
     public void run() {
 
         try {
@@ -113,7 +132,24 @@ public class AptNavXP900DatTaxiChartBuilder extends Thread {
         this.taxi_chart.new_chart(icao);
 
         boolean chart_found = false;
-        
+
+        // where the navigation databases found this airport
+        AirportFileIndex.Entry entry = AirportFileIndex.get_instance().get(icao);
+        if ( entry != null ) {
+            try {
+                ByteBuffer arpt_bytes = entry.read();
+                BufferedReader reader = new BufferedReader( new InputStreamReader( new ByteArrayInputStream( arpt_bytes.array(), 0, arpt_bytes.limit() ) ) );
+                // skip the airport header
+                reader.readLine();
+                logger.config("Found " + icao + " in " + entry.file.getPath() + " at " + entry.offset);
+                read_chart(reader, entry.file);
+                reader.close();
+                return;
+            } catch (Exception e) {
+                logger.warning("Could not read " + icao + " from " + entry.file.getPath() + " (" + e.toString() + "), searching all apt.dat files");
+            }
+        }
+
         File scenery_packs_ini = new File( this.pathname_to_aptnav + "/Custom Scenery/scenery_packs.ini");
         if ( scenery_packs_ini.exists() ) {
 //logger.warning("Found: " + scenery_packs_ini.getPath());
@@ -199,13 +235,9 @@ public class AptNavXP900DatTaxiChartBuilder extends Thread {
 
         BufferedReader reader = new BufferedReader( new FileReader( current_file ));
         String line;
-        long line_number = 0;
-
         String[] tokens;
-        int info_type;
 
         boolean arpt_hit = false;
-        boolean finish = false;
         
         while ( ! arpt_hit && ( (line = reader.readLine()) != null ) ) {
 
@@ -216,8 +248,34 @@ if (arpt_hit) logger.config("Found " + icao + " in " + current_file.getPath());
             }
 
         }
+
+        if ( arpt_hit ) {
+            read_chart(reader, current_file);
+        }
+
+        if (reader != null) {
+            reader.close();
+        }
         
-        while ( arpt_hit && ( (line = reader.readLine()) != null ) && ! finish ) {
+        return arpt_hit;
+
+    }
+
+
+    /**
+     * Reads the lines that follow the airport header into the taxi chart
+     */
+    private void read_chart(BufferedReader reader, File current_file) throws Exception {
+
+        String line;
+        long line_number = 0;
+
+        String[] tokens;
+        int info_type;
+
+        boolean finish = false;
+
+        while ( ( (line = reader.readLine()) != null ) && ! finish ) {
 
             if ( line.length() > 0 ) {
 
@@ -290,13 +348,12 @@ if (arpt_hit) logger.config("Found " + icao + " in " + current_file.getPath());
 
             } // line !isEmpty
 
-        } // while arpt_hit && readLine
+        } // while readLine
 
-        if (reader != null) {
-            reader.close();
+        if ( ! finish ) {
+            // the airport was the last one in the file, or was read from AirportFileIndex
+            this.taxi_chart.close_chart();
         }
-        
-        return arpt_hit;
 
     }
 
@@ -0,0 +1,114 @@
+/**
+* LineOffsetReader.java
+*
+* Reads a text file line by line, like BufferedReader, and also tells at
+* which byte of the file each line starts. Lines end with \n, \r\n or \r,
+* and are decoded with the platform charset, like FileReader does.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.aptnavdata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+public class LineOffsetReader {
+
+    private InputStream in;
+    private byte[] buf = new byte[1 << 16];
+    private int pos = 0;
+    private int limit = 0;
+    // file offset of buf[0]
+    private long buf_offset = 0;
+
+    private byte[] line_bytes = new byte[256];
+    private long line_offset = 0;
+
+
+    public LineOffsetReader(File file) throws IOException {
+        this.in = new FileInputStream(file);
+    }
+
+
+    /**
+     * @return    - the next line without its line terminator, or null at the end of the file
+     */
+    public String readLine() throws IOException {
+
+        this.line_offset = this.buf_offset + this.pos;
+        int length = 0;
+        boolean any = false;
+        while ( true ) {
+            if ( ( this.pos >= this.limit ) && ! fill() ) {
+                return any ? new String(this.line_bytes, 0, length) : null;
+            }
+            byte b = this.buf[this.pos++];
+            any = true;
+            if ( b == '\n' ) {
+                return new String(this.line_bytes, 0, length);
+            } else if ( b == '\r' ) {
+                if ( ( ( this.pos < this.limit ) || fill() ) && ( this.buf[this.pos] == '\n' ) ) {
+                    this.pos++;
+                }
+                return new String(this.line_bytes, 0, length);
+            }
+            if ( length == this.line_bytes.length ) {
+                byte[] longer = new byte[length * 2];
+                System.arraycopy(this.line_bytes, 0, longer, 0, length);
+                this.line_bytes = longer;
+            }
+            this.line_bytes[length++] = b;
+        }
+
+    }
+
+
+    /**
+     * @return    - the offset in the file of the first byte of the line that was read last
+     */
+    public long get_line_offset() {
+        return this.line_offset;
+    }
+
+
+    /**
+     * @return    - the offset in the file of the first byte that has not been read yet
+     */
+    public long get_offset() {
+        return this.buf_offset + this.pos;
+    }
+
+
+    private boolean fill() throws IOException {
+        this.buf_offset += this.limit;
+        this.pos = 0;
+        this.limit = 0;
+        int n = this.in.read(this.buf);
+        if ( n > 0 ) {
+            this.limit = n;
+        }
+        return n > 0;
+    }
+
+
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+
+}
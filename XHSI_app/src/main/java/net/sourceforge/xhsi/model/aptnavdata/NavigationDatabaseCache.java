@@ -0,0 +1,582 @@
+/**
+* NavigationDatabaseCache.java
+*
+* A binary snapshot of the navigation objects read from apt.dat, earth_nav.dat,
+* earth_fix.dat and earth_awy.dat, so that the next start does not have to
+* parse the text files again.
+*
+* The snapshot starts with a key made of the paths, sizes and modification
+* times of the source files, the AIRAC cycle and the load options. It is only
+* used when the key still matches. The objects are stored in the order in
+* which they were added to NavigationObjectRepository, and are added again in
+* that order, so that duplicates are skipped the same way. Airports refer to
+* their runways and helipads, and runways to their localizers, by their
+* position in that order. The AirportFileIndex is stored with them.
+*
+* The file is memory-mapped read-only and decoded into NavigationObjects once,
+* at load time. The objects are on the heap of each XHSI instance; only while
+* loading do several instances on the same computer read the same pages from
+* the OS file cache.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.aptnavdata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.logging.Logger;
+
+import net.sourceforge.xhsi.model.Airport;
+import net.sourceforge.xhsi.model.ComRadio;
+import net.sourceforge.xhsi.model.Fix;
+import net.sourceforge.xhsi.model.Helipad;
+import net.sourceforge.xhsi.model.Heliport;
+import net.sourceforge.xhsi.model.Localizer;
+import net.sourceforge.xhsi.model.NavigationObject;
+import net.sourceforge.xhsi.model.NavigationObjectRepository;
+import net.sourceforge.xhsi.model.RadioNavBeacon;
+import net.sourceforge.xhsi.model.RadioNavigationObject;
+import net.sourceforge.xhsi.model.Runway;
+
+
+public class NavigationDatabaseCache {
+
+    public static final int FILE_MAGIC = 0x584E4442; // "XNDB"
+    public static final int FORMAT_VERSION = 2;
+
+    // record types
+    private static final byte FIX = 1;
+    private static final byte BEACON = 2;
+    private static final byte LOCALIZER = 3;
+    private static final byte RUNWAY = 4;
+    private static final byte HELIPAD = 5;
+    private static final byte AIRPORT = 6;
+    private static final byte HELIPORT = 7;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private String filename;
+    private StringBuilder key = new StringBuilder();
+    private String cycle = "";
+
+    // for reading strings from the mapped file
+    private byte[] string_bytes = new byte[256];
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+
+    public NavigationDatabaseCache(String filename) {
+        this.filename = filename;
+        this.key.append(FORMAT_VERSION);
+    }
+
+
+    /**
+     * Adds a source file to the key; a file that does not exist is added too
+     */
+    public void add_source(File source) {
+        if ( source == null ) {
+            this.key.append("\n-");
+        } else {
+            this.key.append('\n').append(source.getAbsolutePath())
+                .append('|').append(source.length())
+                .append('|').append(source.lastModified());
+        }
+    }
+
+
+    /**
+     * Adds a load option to the key
+     */
+    public void add_option(String name, String value) {
+        this.key.append('\n').append(name).append('=').append(value);
+    }
+
+
+    /**
+     * @param cycle    - the AIRAC cycle of the source files, stored with the snapshot and added to the key
+     */
+    public void set_cycle(String cycle) {
+        this.cycle = cycle;
+        add_option("cycle", cycle);
+    }
+
+
+    /**
+     * Adds the objects of the snapshot to the repository, and the airport file offsets to the index
+     *
+     * @return    - false when there is no snapshot for the current key; nothing has been added then
+     */
+    public boolean load(NavigationObjectRepository nor, AirportFileIndex arpt_index) {
+
+        File file = new File(this.filename);
+        if ( ! file.exists() ) {
+            return false;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if ( ( buf.limit() < 8 ) || ( buf.getInt() != FILE_MAGIC ) || ( buf.getInt() != FORMAT_VERSION ) ) {
+                logger.info("Navigation database cache " + this.filename + " has an old format");
+                return false;
+            }
+            if ( ! this.key.toString().equals(get_string(buf)) ) {
+                logger.info("Navigation database cache " + this.filename + " is out of date");
+                return false;
+            }
+            this.cycle = get_string(buf);
+
+            // read everything before adding anything, so that a damaged file leaves the repository as it is
+            int count = buf.getInt();
+            NavigationObject[] objects = new NavigationObject[count];
+            for (int i=0; i<count; i++) {
+                objects[i] = get_object(buf, objects);
+            }
+            int links = buf.getInt();
+            for (int i=0; i<links; i++) {
+                Runway rwy = (Runway) objects[buf.getInt()];
+                rwy.localizers.add((Localizer) objects[buf.getInt()]);
+            }
+            AirportFileIndex.Entry[] arpt_entries = get_arpt_entries(buf);
+
+            for (int i=0; i<count; i++) {
+                nor.add_nav_object(objects[i]);
+            }
+            for (int i=0; i<arpt_entries.length; i++) {
+                arpt_index.add(arpt_entries[i]);
+            }
+            logger.info("Loaded " + count + " navigation objects from " + this.filename);
+            return true;
+        } catch (Exception e) {
+            logger.warning("Could not read navigation database cache " + this.filename + " (" + e.toString() + ")");
+            return false;
+        } finally {
+            if ( raf != null ) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // nothing left to do
+                }
+            }
+        }
+
+    }
+
+
+    /**
+     * @return    - the AIRAC cycle of the loaded snapshot
+     */
+    public String get_cycle() {
+        return this.cycle;
+    }
+
+
+    /**
+     * Writes a snapshot for the current key; a failure is logged, the navigation databases have been loaded anyway
+     *
+     * @param objects         - all objects that were added to the repository, in that order
+     * @param arpt_entries    - the contents of the AirportFileIndex
+     */
+    public void save(ArrayList<NavigationObject> objects, ArrayList<AirportFileIndex.Entry> arpt_entries) {
+
+        IdentityHashMap<NavigationObject, Integer> positions = new IdentityHashMap<NavigationObject, Integer>();
+        for (int i=0; i<objects.size(); i++) {
+            positions.put(objects.get(i), i);
+        }
+
+        // write next to the old snapshot and replace it when complete, other instances may be reading it
+        File tmp_file = new File(this.filename + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp_file), 1 << 16));
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            put_string(out, this.key.toString());
+            put_string(out, this.cycle);
+
+            out.writeInt(objects.size());
+            ArrayList<Integer> links = new ArrayList<Integer>();
+            for (int i=0; i<objects.size(); i++) {
+                put_object(out, objects.get(i), positions, links);
+            }
+            // runway -> localizer, the localizers are read after their runways
+            out.writeInt(links.size() / 2);
+            for (int i=0; i<links.size(); i++) {
+                out.writeInt(links.get(i));
+            }
+            put_arpt_entries(out, arpt_entries);
+            out.close();
+            out = null;
+
+            File file = new File(this.filename);
+            file.delete();
+            if ( ! tmp_file.renameTo(file) ) {
+                throw new IOException("cannot rename " + tmp_file.getPath());
+            }
+            logger.info("Saved " + objects.size() + " navigation objects to " + this.filename);
+        } catch (Exception e) {
+            logger.warning("Could not write navigation database cache " + this.filename + " (" + e.toString() + ")");
+            tmp_file.delete();
+        } finally {
+            if ( out != null ) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // nothing left to do
+                }
+                tmp_file.delete();
+            }
+        }
+
+    }
+
+
+    private void put_object(DataOutputStream out, NavigationObject nav_object, IdentityHashMap<NavigationObject, Integer> positions, ArrayList<Integer> links) throws IOException {
+
+        if ( nav_object instanceof Fix ) {
+            Fix fix = (Fix) nav_object;
+            out.writeByte(FIX);
+            put_string(out, fix.name);
+            out.writeFloat(fix.lat);
+            out.writeFloat(fix.lon);
+            out.writeBoolean(fix.on_awy);
+        } else if ( nav_object instanceof RadioNavBeacon ) {
+            RadioNavBeacon beacon = (RadioNavBeacon) nav_object;
+            out.writeByte(BEACON);
+            put_radio(out, beacon);
+            out.writeInt(beacon.type);
+            out.writeFloat(beacon.offset);
+        } else if ( nav_object instanceof Localizer ) {
+            Localizer loc = (Localizer) nav_object;
+            out.writeByte(LOCALIZER);
+            put_radio(out, loc);
+            out.writeInt(loc.type);
+            out.writeFloat(loc.bearing);
+            put_string(out, loc.airport);
+            put_string(out, loc.rwy);
+            put_string(out, loc.description);
+            out.writeBoolean(loc.has_gs);
+            out.writeBoolean(loc.has_twin);
+            put_string(out, loc.twin_ilt);
+        } else if ( nav_object instanceof Runway ) {
+            Runway rwy = (Runway) nav_object;
+            out.writeByte(RUNWAY);
+            put_string(out, rwy.name);
+            out.writeFloat(rwy.length);
+            out.writeFloat(rwy.width);
+            out.writeInt(rwy.surface);
+            put_string(out, rwy.rwy_num1);
+            out.writeFloat(rwy.lat1);
+            out.writeFloat(rwy.lon1);
+            put_string(out, rwy.rwy_num2);
+            out.writeFloat(rwy.lat2);
+            out.writeFloat(rwy.lon2);
+            for (int i=0; i<rwy.localizers.size(); i++) {
+                links.add(positions.get(rwy));
+                links.add(position(rwy.localizers.get(i), positions));
+            }
+        } else if ( nav_object instanceof Helipad ) {
+            Helipad pad = (Helipad) nav_object;
+            out.writeByte(HELIPAD);
+            put_string(out, pad.name);
+            out.writeFloat(pad.length);
+            out.writeFloat(pad.width);
+            out.writeInt(pad.surface);
+            put_string(out, pad.pad_identifier);
+            out.writeFloat(pad.lat);
+            out.writeFloat(pad.lon);
+        } else if ( nav_object instanceof Airport ) {
+            Airport arpt = (Airport) nav_object;
+            out.writeByte(AIRPORT);
+            put_string(out, arpt.name);
+            put_string(out, arpt.icao_code);
+            out.writeFloat(arpt.lat);
+            out.writeFloat(arpt.lon);
+            out.writeFloat(arpt.longest);
+            out.writeInt(arpt.elev);
+            put_positions(out, arpt.runways, positions);
+            put_positions(out, arpt.helipads, positions);
+            put_com_radios(out, arpt.com_radios);
+        } else if ( nav_object instanceof Heliport ) {
+            Heliport hlpt = (Heliport) nav_object;
+            out.writeByte(HELIPORT);
+            put_string(out, hlpt.name);
+            put_string(out, hlpt.icao_code);
+            out.writeFloat(hlpt.lat);
+            out.writeFloat(hlpt.lon);
+            out.writeInt(hlpt.elev);
+            put_positions(out, hlpt.helipads, positions);
+            put_com_radios(out, hlpt.com_radios);
+        } else {
+            throw new IOException("cannot store " + nav_object);
+        }
+
+    }
+
+
+    private NavigationObject get_object(MappedByteBuffer buf, NavigationObject[] objects) throws IOException {
+
+        byte type = buf.get();
+        if ( type == FIX ) {
+            return new Fix(get_string(buf), buf.getFloat(), buf.getFloat(), buf.get() != 0);
+        } else if ( type == BEACON ) {
+            String name = get_string(buf);
+            String ilt = get_string(buf);
+            float lat = buf.getFloat();
+            float lon = buf.getFloat();
+            int elevation = buf.getInt();
+            float frequency = buf.getFloat();
+            int range = buf.getInt();
+            boolean has_dme = buf.get() != 0;
+            float dme_lat = buf.getFloat();
+            float dme_lon = buf.getFloat();
+            RadioNavBeacon beacon = new RadioNavBeacon(name, ilt, buf.getInt(), lat, lon, elevation, frequency, range, buf.getFloat());
+            beacon.has_dme = has_dme;
+            beacon.dme_lat = dme_lat;
+            beacon.dme_lon = dme_lon;
+            return beacon;
+        } else if ( type == LOCALIZER ) {
+            String name = get_string(buf);
+            String ilt = get_string(buf);
+            float lat = buf.getFloat();
+            float lon = buf.getFloat();
+            int elevation = buf.getInt();
+            float frequency = buf.getFloat();
+            int range = buf.getInt();
+            boolean has_dme = buf.get() != 0;
+            float dme_lat = buf.getFloat();
+            float dme_lon = buf.getFloat();
+            int loc_type = buf.getInt();
+            float bearing = buf.getFloat();
+            String airport = get_string(buf);
+            String rwy = get_string(buf);
+            String description = get_string(buf);
+            boolean has_gs = buf.get() != 0;
+            boolean has_twin = buf.get() != 0;
+            Localizer loc = new Localizer(name, ilt, loc_type, lat, lon, elevation, frequency, range, bearing, airport, rwy, description, has_twin, get_string(buf));
+            loc.has_gs = has_gs;
+            loc.has_dme = has_dme;
+            loc.dme_lat = dme_lat;
+            loc.dme_lon = dme_lon;
+            return loc;
+        } else if ( type == RUNWAY ) {
+            String name = get_string(buf);
+            float length = buf.getFloat();
+            float width = buf.getFloat();
+            int surface = buf.getInt();
+            String rwy_num1 = get_string(buf);
+            float lat1 = buf.getFloat();
+            float lon1 = buf.getFloat();
+            return new Runway(name, length, width, surface, rwy_num1, lat1, lon1, get_string(buf), buf.getFloat(), buf.getFloat());
+        } else if ( type == HELIPAD ) {
+            String name = get_string(buf);
+            float length = buf.getFloat();
+            float width = buf.getFloat();
+            int surface = buf.getInt();
+            return new Helipad(name, length, width, surface, get_string(buf), buf.getFloat(), buf.getFloat());
+        } else if ( type == AIRPORT ) {
+            String name = get_string(buf);
+            String icao_code = get_string(buf);
+            float lat = buf.getFloat();
+            float lon = buf.getFloat();
+            float longest = buf.getFloat();
+            int elev = buf.getInt();
+            ArrayList<Runway> runways = new ArrayList<Runway>();
+            get_positions(buf, objects, runways);
+            ArrayList<Helipad> helipads = new ArrayList<Helipad>();
+            get_positions(buf, objects, helipads);
+            return new Airport(name, icao_code, lat, lon, runways, helipads, longest, elev, get_com_radios(buf));
+        } else if ( type == HELIPORT ) {
+            String name = get_string(buf);
+            String icao_code = get_string(buf);
+            float lat = buf.getFloat();
+            float lon = buf.getFloat();
+            int elev = buf.getInt();
+            ArrayList<Helipad> helipads = new ArrayList<Helipad>();
+            get_positions(buf, objects, helipads);
+            return new Heliport(name, icao_code, lat, lon, helipads, elev, get_com_radios(buf));
+        } else {
+            throw new IOException("unknown record type " + type);
+        }
+
+    }
+
+
+    /**
+     * The apt.dat files, then the airports with the position of their file in that list
+     */
+    private static void put_arpt_entries(DataOutputStream out, ArrayList<AirportFileIndex.Entry> arpt_entries) throws IOException {
+
+        HashMap<File, Integer> file_numbers = new HashMap<File, Integer>();
+        ArrayList<AirportFileIndex.Entry> file_entries = new ArrayList<AirportFileIndex.Entry>();
+        for (int i=0; i<arpt_entries.size(); i++) {
+            AirportFileIndex.Entry entry = arpt_entries.get(i);
+            if ( ! file_numbers.containsKey(entry.file) ) {
+                file_numbers.put(entry.file, file_entries.size());
+                file_entries.add(entry);
+            }
+        }
+        out.writeInt(file_entries.size());
+        for (int i=0; i<file_entries.size(); i++) {
+            put_string(out, file_entries.get(i).file.getPath());
+            out.writeLong(file_entries.get(i).file_length);
+            out.writeLong(file_entries.get(i).file_modified);
+        }
+
+        out.writeInt(arpt_entries.size());
+        for (int i=0; i<arpt_entries.size(); i++) {
+            AirportFileIndex.Entry entry = arpt_entries.get(i);
+            put_string(out, entry.icao);
+            out.writeInt(file_numbers.get(entry.file));
+            out.writeLong(entry.offset);
+            out.writeInt(entry.length);
+        }
+
+    }
+
+
+    private AirportFileIndex.Entry[] get_arpt_entries(MappedByteBuffer buf) {
+
+        int file_count = buf.getInt();
+        File[] files = new File[file_count];
+        long[] file_lengths = new long[file_count];
+        long[] file_modified = new long[file_count];
+        for (int i=0; i<file_count; i++) {
+            files[i] = new File(get_string(buf));
+            file_lengths[i] = buf.getLong();
+            file_modified[i] = buf.getLong();
+        }
+
+        AirportFileIndex.Entry[] arpt_entries = new AirportFileIndex.Entry[buf.getInt()];
+        for (int i=0; i<arpt_entries.length; i++) {
+            String icao = get_string(buf);
+            int f = buf.getInt();
+            arpt_entries[i] = new AirportFileIndex.Entry(icao, files[f], file_lengths[f], file_modified[f], buf.getLong(), buf.getInt());
+        }
+        return arpt_entries;
+
+    }
+
+
+    /**
+     * The fields that RadioNavBeacon and Localizer have in common
+     */
+    private static void put_radio(DataOutputStream out, RadioNavigationObject rno) throws IOException {
+        put_string(out, rno.name);
+        put_string(out, rno.ilt);
+        out.writeFloat(rno.lat);
+        out.writeFloat(rno.lon);
+        out.writeInt(rno.elevation);
+        out.writeFloat(rno.frequency);
+        out.writeInt(rno.range);
+        out.writeBoolean(rno.has_dme);
+        out.writeFloat(rno.dme_lat);
+        out.writeFloat(rno.dme_lon);
+    }
+
+
+    private static int position(NavigationObject nav_object, IdentityHashMap<NavigationObject, Integer> positions) throws IOException {
+        Integer position = positions.get(nav_object);
+        if ( position == null ) {
+            throw new IOException("not in the repository: " + nav_object);
+        }
+        return position.intValue();
+    }
+
+
+    private static void put_positions(DataOutputStream out, ArrayList<? extends NavigationObject> list, IdentityHashMap<NavigationObject, Integer> positions) throws IOException {
+        if ( list == null ) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(list.size());
+            for (int i=0; i<list.size(); i++) {
+                out.writeInt(position(list.get(i), positions));
+            }
+        }
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <T extends NavigationObject> void get_positions(MappedByteBuffer buf, NavigationObject[] objects, ArrayList<T> list) {
+        int n = buf.getInt();
+        for (int i=0; i<n; i++) {
+            list.add((T) objects[buf.getInt()]);
+        }
+    }
+
+
+    private static void put_com_radios(DataOutputStream out, ArrayList<ComRadio> com_radios) throws IOException {
+        out.writeInt(com_radios.size());
+        for (int i=0; i<com_radios.size(); i++) {
+            ComRadio com = com_radios.get(i);
+            put_string(out, com.arpt);
+            put_string(out, com.callsign);
+            out.writeFloat(com.frequency);
+        }
+    }
+
+
+    private ArrayList<ComRadio> get_com_radios(MappedByteBuffer buf) {
+        int n = buf.getInt();
+        ArrayList<ComRadio> com_radios = new ArrayList<ComRadio>(n);
+        for (int i=0; i<n; i++) {
+            com_radios.add(new ComRadio(get_string(buf), get_string(buf), buf.getFloat()));
+        }
+        return com_radios;
+    }
+
+
+    /**
+     * A length (-1 for null) followed by UTF-8 bytes
+     */
+    private static void put_string(DataOutputStream out, String value) throws IOException {
+        if ( value == null ) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+
+    private String get_string(MappedByteBuffer buf) {
+        int length = buf.getInt();
+        if ( length < 0 ) {
+            return null;
+        } else if ( length == 0 ) {
+            return "";
+        }
+        if ( length > this.string_bytes.length ) {
+            this.string_bytes = new byte[length];
+        }
+        buf.get(this.string_bytes, 0, length);
+        return new String(this.string_bytes, 0, length, UTF_8);
+    }
+
+
+}
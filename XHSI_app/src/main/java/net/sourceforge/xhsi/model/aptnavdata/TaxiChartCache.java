@@ -0,0 +1,264 @@
+/**
+* TaxiChartCache.java
+*
+* The taxi charts that have been read, shared by all displays. Charts are
+* read by one background thread; asking again for a chart that is still
+* being read does not read it twice, and a display that asks for a chart
+* goes before the charts that are only prefetched. The nearest airport and
+* the FMS origin and destination are prefetched, so that their charts are
+* usually there before anyone asks for them. When the charts take more
+* than MEMORY_BUDGET, the least recently used ones are forgotten.
+*
+* A chart in the cache is complete and is not changed anymore.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.aptnavdata;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import net.sourceforge.xhsi.model.TaxiChart;
+
+
+public class TaxiChartCache {
+
+    // roughly, in bytes
+    private static final long MEMORY_BUDGET = 32L * 1024L * 1024L;
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    private static TaxiChartCache single_instance;
+
+
+    private class Load implements Runnable, Comparable<Load> {
+
+        String key;
+        String icao;
+        int generation;
+        long sequence;
+        // only prefetched, nobody is waiting for it yet
+        boolean prefetch;
+        volatile boolean cancelled = false;
+
+        Load(String key, String icao, boolean prefetch) {
+            this.key = key;
+            this.icao = icao;
+            this.prefetch = prefetch;
+        }
+
+        public void run() {
+            if ( this.cancelled ) {
+                return;
+            }
+            TaxiChart chart = new TaxiChart();
+            try {
+                new AptNavXP900DatTaxiChartBuilder(chart).build_chart(this.icao);
+            } catch (Exception e) {
+                logger.warning("Problem loading AirportChart " + this.icao + " (" + e.toString() + ")");
+                chart.not_found();
+            }
+            loaded(this, chart);
+        }
+
+        public int compareTo(Load other) {
+            if ( this.prefetch != other.prefetch ) {
+                return this.prefetch ? 1 : -1;
+            } else {
+                return Long.compare(this.sequence, other.sequence);
+            }
+        }
+
+    }
+
+
+    // least recently used first
+    private LinkedHashMap<String, TaxiChart> charts = new LinkedHashMap<String, TaxiChart>(16, 0.75f, true);
+    private long charts_size = 0;
+
+    private HashMap<String, Load> loading = new HashMap<String, Load>();
+    private long load_sequence = 0;
+    // charts that were being read when the cache was cleared are not kept
+    private int generation = 0;
+
+    private String[] prefetched = new String[0];
+    private HashSet<String> prefetched_keys = new HashSet<String>();
+
+    private ThreadPoolExecutor loader;
+
+
+    public static synchronized TaxiChartCache get_instance() {
+        if (TaxiChartCache.single_instance == null) {
+            TaxiChartCache.single_instance = new TaxiChartCache();
+        }
+        return TaxiChartCache.single_instance;
+    }
+
+
+    private TaxiChartCache() {
+        this.loader = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TaxiChartLoader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+
+
+    private static String get_key(String icao) {
+        return icao.trim().toUpperCase();
+    }
+
+
+    /**
+     * @return    - the chart, or null while it is still being read; a chart that could not be found has no airport
+     */
+    public synchronized TaxiChart get_chart(String icao) {
+
+        String key = get_key(icao);
+        TaxiChart chart = this.charts.get(key);
+        if ( chart == null ) {
+            request(key, icao.trim(), false);
+        }
+        return chart;
+
+    }
+
+
+    /**
+     * Starts reading the charts that will probably be needed soon, and
+     * stops reading those that were prefetched before and are not needed
+     * anymore. Empty strings are ignored.
+     */
+    public synchronized void prefetch(String[] icaos) {
+
+        if ( Arrays.equals(icaos, this.prefetched) ) {
+            return;
+        }
+        this.prefetched = icaos.clone();
+        this.prefetched_keys.clear();
+        for (int i=0; i<icaos.length; i++) {
+            if ( icaos[i].trim().length() > 0 ) {
+                this.prefetched_keys.add(get_key(icaos[i]));
+            }
+        }
+
+        Iterator<Load> pending = this.loading.values().iterator();
+        while ( pending.hasNext() ) {
+            Load load = pending.next();
+            if ( load.prefetch && ! this.prefetched_keys.contains(load.key) ) {
+                cancel(load);
+                pending.remove();
+            }
+        }
+
+        for (int i=0; i<icaos.length; i++) {
+            String key = get_key(icaos[i]);
+            if ( ( key.length() > 0 ) && ! this.charts.containsKey(key) ) {
+                request(key, icaos[i].trim(), true);
+            }
+        }
+
+    }
+
+
+    /**
+     * Forgets all charts, for when the navigation databases are (re)loaded
+     */
+    public synchronized void clear() {
+
+        this.generation++;
+        this.charts.clear();
+        this.charts_size = 0;
+        Iterator<Load> pending = this.loading.values().iterator();
+        while ( pending.hasNext() ) {
+            cancel(pending.next());
+        }
+        this.loading.clear();
+        this.prefetched = new String[0];
+        this.prefetched_keys.clear();
+
+    }
+
+
+    private void request(String key, String icao, boolean prefetch) {
+
+        Load load = this.loading.get(key);
+        if ( load == null ) {
+            load = new Load(key, icao, prefetch);
+            load.generation = this.generation;
+            load.sequence = this.load_sequence++;
+            this.loading.put(key, load);
+            this.loader.execute(load);
+        } else if ( load.prefetch && ! prefetch ) {
+            // somebody is waiting for it now, let it go before the prefetches
+            if ( this.loader.remove(load) ) {
+                load.prefetch = false;
+                this.loader.execute(load);
+            } else {
+                load.prefetch = false;
+            }
+        }
+
+    }
+
+
+    private void cancel(Load load) {
+        load.cancelled = true;
+        this.loader.remove(load);
+    }
+
+
+    private synchronized void loaded(Load load, TaxiChart chart) {
+
+        if ( this.loading.get(load.key) == load ) {
+            this.loading.remove(load.key);
+        }
+        if ( load.generation != this.generation ) {
+            return;
+        }
+
+        TaxiChart old_chart = this.charts.put(load.key, chart);
+        if ( old_chart != null ) {
+            this.charts_size -= old_chart.estimated_size();
+        }
+        this.charts_size += chart.estimated_size();
+        logger.config("Taxi chart " + load.icao + " read, " + this.charts.size() + " charts in cache (" + this.charts_size / 1024 + "kB)");
+
+        // forget the least recently used charts, but not this one or the prefetched ones
+        Iterator<Map.Entry<String, TaxiChart>> lru = this.charts.entrySet().iterator();
+        while ( ( this.charts_size > MEMORY_BUDGET ) && lru.hasNext() ) {
+            Map.Entry<String, TaxiChart> entry = lru.next();
+            if ( ! entry.getKey().equals(load.key) && ! this.prefetched_keys.contains(entry.getKey()) ) {
+                this.charts_size -= entry.getValue().estimated_size();
+                lru.remove();
+            }
+        }
+
+    }
+
+
+}
@@ -0,0 +1,282 @@
+/**
+* ElevationPyramidBuilder.java
+*
+* Makes the maximum and minimum elevation of blocks of 8x8, 16x16, ... 256x256
+* cells of each GLOBE area, so that the terrain at long ranges can be drawn
+* from a few reads per tile instead of sampling single cells.
+*
+* The blocks are computed once, in the background, and kept in a file next
+* to the preferences. The file starts with a key made of the paths, sizes and
+* modification times of the GLOBE files, and is used again, memory-mapped,
+* as long as the key matches. Until the blocks are there, the areas use
+* their cells.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.elevationdata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import net.sourceforge.xhsi.model.ElevationArea;
+import net.sourceforge.xhsi.model.ElevationRepository;
+
+
+public class ElevationPyramidBuilder extends Thread {
+
+    public static final String PYRAMID_FILENAME = "XHSI_elevation.cache";
+
+    public static final int FILE_MAGIC = 0x58455059; // "XEPY"
+    public static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private String filename;
+    private ArrayList<ElevationArea> areas;
+    private ArrayList<File> files;
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+
+    /**
+     * @param areas    - the mapped areas
+     * @param files    - the GLOBE file of each area
+     */
+    public ElevationPyramidBuilder(String filename, ArrayList<ElevationArea> areas, ArrayList<File> files) {
+        super("ElevationPyramidBuilder");
+        setDaemon(true);
+        setPriority(Thread.MIN_PRIORITY);
+        this.filename = filename;
+        this.areas = areas;
+        this.files = files;
+    }
+
+
+    public void run() {
+
+        try {
+            if ( ! load() ) {
+                long start = System.currentTimeMillis();
+                save();
+                logger.info("Elevation pyramid built in " + (System.currentTimeMillis() - start) + "ms");
+                if ( ! load() ) {
+                    logger.warning("Could not use the elevation pyramid " + this.filename);
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Could not build the elevation pyramid (" + e.toString() + ")");
+        }
+
+    }
+
+
+    private String get_key() {
+
+        StringBuilder key = new StringBuilder();
+        key.append(FORMAT_VERSION);
+        for (int f=0; f<ElevationArea.PYRAMID_FACTORS.length; f++) {
+            key.append(' ').append(ElevationArea.PYRAMID_FACTORS[f]);
+        }
+        for (int i=0; i<this.areas.size(); i++) {
+            ElevationArea area = this.areas.get(i);
+            File file = this.files.get(i);
+            key.append('\n').append(file.getAbsolutePath())
+                .append('|').append(file.length())
+                .append('|').append(file.lastModified())
+                .append('|').append(area.number_of_columns)
+                .append('x').append(area.number_of_rows);
+        }
+        return key.toString();
+
+    }
+
+
+    /**
+     * Gives the areas their blocks from the file
+     *
+     * @return    - false when there is no file for the current GLOBE files
+     */
+    private boolean load() throws IOException {
+
+        File file = new File(this.filename);
+        if ( ! file.exists() ) {
+            return false;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if ( ( buf.limit() < 8 ) || ( buf.getInt() != FILE_MAGIC ) || ( buf.getInt() != FORMAT_VERSION ) ) {
+                logger.info("Elevation pyramid " + this.filename + " has an old format");
+                return false;
+            }
+            byte[] key_bytes = new byte[buf.getInt()];
+            buf.get(key_bytes);
+            if ( ! get_key().equals(new String(key_bytes, UTF_8)) ) {
+                logger.info("Elevation pyramid " + this.filename + " is out of date");
+                return false;
+            }
+
+            // check the size before handing out any block
+            ShortBuffer shorts = buf.slice().asShortBuffer();
+            int total = 0;
+            for (int i=0; i<this.areas.size(); i++) {
+                for (int f=0; f<ElevationArea.PYRAMID_FACTORS.length; f++) {
+                    total += 2 * get_block_count(this.areas.get(i), ElevationArea.PYRAMID_FACTORS[f]);
+                }
+            }
+            if ( shorts.limit() != total ) {
+                logger.warning("Elevation pyramid " + this.filename + " is damaged");
+                return false;
+            }
+
+            int position = 0;
+            for (int i=0; i<this.areas.size(); i++) {
+                ElevationArea area = this.areas.get(i);
+                ShortBuffer max[] = new ShortBuffer[ElevationArea.PYRAMID_FACTORS.length];
+                ShortBuffer min[] = new ShortBuffer[ElevationArea.PYRAMID_FACTORS.length];
+                for (int f=0; f<ElevationArea.PYRAMID_FACTORS.length; f++) {
+                    int count = get_block_count(area, ElevationArea.PYRAMID_FACTORS[f]);
+                    max[f] = get_slice(shorts, position, count);
+                    position += count;
+                    min[f] = get_slice(shorts, position, count);
+                    position += count;
+                }
+                area.set_pyramid(max, min);
+            }
+            ElevationRepository.get_instance().data_changed();
+            logger.info("Loaded elevation pyramid " + this.filename);
+            return true;
+        } finally {
+            // the mapping stays valid
+            raf.close();
+        }
+
+    }
+
+
+    private static ShortBuffer get_slice(ShortBuffer shorts, int position, int count) {
+        ShortBuffer whole = shorts.duplicate();
+        whole.position(position);
+        whole.limit(position + count);
+        return whole.slice();
+    }
+
+
+    private static int get_block_count(ElevationArea area, int factor) {
+        return ( (area.number_of_rows + factor - 1) / factor ) * ( (area.number_of_columns + factor - 1) / factor );
+    }
+
+
+    /**
+     * Computes the blocks of all areas and writes them to the file
+     */
+    private void save() throws IOException {
+
+        File file = new File(this.filename);
+        File tmp_file = new File(this.filename + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp_file), 1 << 16));
+        try {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            byte[] key_bytes = get_key().getBytes(UTF_8);
+            out.writeInt(key_bytes.length);
+            out.write(key_bytes);
+
+            for (int i=0; i<this.areas.size(); i++) {
+                ElevationArea area = this.areas.get(i);
+                logger.fine("Building elevation pyramid for " + area.file_tile);
+
+                // the first level from the cells
+                int factor = ElevationArea.PYRAMID_FACTORS[0];
+                int columns = (area.number_of_columns + factor - 1) / factor;
+                int rows = (area.number_of_rows + factor - 1) / factor;
+                short max[] = new short[rows * columns];
+                short min[] = new short[rows * columns];
+                Arrays.fill(max, Short.MIN_VALUE);
+                Arrays.fill(min, Short.MAX_VALUE);
+                ShortBuffer cells = area.get_elevation_data();
+                int cell = 0;
+                for (int row=0; row<area.number_of_rows; row++) {
+                    int block_row = (row / factor) * columns;
+                    for (int col=0; col<area.number_of_columns; col++) {
+                        short elevation = cells.get(cell++);
+                        int block = block_row + col / factor;
+                        if ( elevation > max[block] ) max[block] = elevation;
+                        if ( elevation < min[block] ) min[block] = elevation;
+                    }
+                }
+                write_shorts(out, max);
+                write_shorts(out, min);
+
+                // every next level from the previous, the factors double
+                for (int f=1; f<ElevationArea.PYRAMID_FACTORS.length; f++) {
+                    int next_columns = (columns + 1) / 2;
+                    int next_rows = (rows + 1) / 2;
+                    short next_max[] = new short[next_rows * next_columns];
+                    short next_min[] = new short[next_rows * next_columns];
+                    Arrays.fill(next_max, Short.MIN_VALUE);
+                    Arrays.fill(next_min, Short.MAX_VALUE);
+                    for (int row=0; row<rows; row++) {
+                        for (int col=0; col<columns; col++) {
+                            int block = (row / 2) * next_columns + col / 2;
+                            if ( max[row * columns + col] > next_max[block] ) next_max[block] = max[row * columns + col];
+                            if ( min[row * columns + col] < next_min[block] ) next_min[block] = min[row * columns + col];
+                        }
+                    }
+                    columns = next_columns;
+                    rows = next_rows;
+                    max = next_max;
+                    min = next_min;
+                    write_shorts(out, max);
+                    write_shorts(out, min);
+                }
+            }
+
+            out.close();
+            out = null;
+            file.delete();
+            if ( ! tmp_file.renameTo(file) ) {
+                throw new IOException("cannot rename " + tmp_file.getPath());
+            }
+        } finally {
+            if ( out != null ) {
+                out.close();
+                tmp_file.delete();
+            }
+        }
+
+    }
+
+
+    private static void write_shorts(DataOutputStream out, short values[]) throws IOException {
+        for (int i=0; i<values.length; i++) {
+            out.writeShort(values[i]);
+        }
+    }
+
+
+}
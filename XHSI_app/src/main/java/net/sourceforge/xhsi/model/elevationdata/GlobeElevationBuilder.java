@@ -132,6 +132,10 @@ public class GlobeElevationBuilder implements PreferencesObserver {
             if (this.progressObserver != null) {
                 this.progressObserver.set_progress("Loading databases", "Loading EGPWS elevation data ...", 0.0f);
             }
+            // forget the areas of a previous directory
+            elevation_repository.init();
+            ArrayList<ElevationArea> areas = new ArrayList<ElevationArea>();
+            ArrayList<File> area_files = new ArrayList<File>();
             for (int i=0; i<16; i++) {
                 if (this.progressObserver != null) {
                     this.progressObserver.set_progress("Loading databases", "Mapping set #"+i, (i+1)*100.0f/18.0f);
@@ -147,6 +151,8 @@ public class GlobeElevationBuilder implements PreferencesObserver {
                     ElevationArea area = new ElevationArea(byteBuffer, globe_columns, globe_rows[i], min_lat[i],  max_lat[i],  min_lon[i],  max_lon[i], globe_file[i]);
                     logger.fine("Add area " + globe_file[i]);
                     elevation_repository.addElevationArea(area);
+                    areas.add(area);
+                    area_files.add(file);
                 } catch (Exception e) {
                     logger.warning("Could not map GLOBE file (" + e.toString() + ")");
                 }
@@ -155,6 +161,10 @@ public class GlobeElevationBuilder implements PreferencesObserver {
                 this.progressObserver.set_progress("Loading databases", "Done!", 100.0f);
             }
             elevation_repository.dumpAreas();
+            if ( ! areas.isEmpty() ) {
+                // the max/min elevation blocks for long ranges, read or computed in the background
+                new ElevationPyramidBuilder(ElevationPyramidBuilder.PYRAMID_FILENAME, areas, area_files).start();
+            }
         } else {
             logger.warning("GLOBE resources directory is wrong!");
         }
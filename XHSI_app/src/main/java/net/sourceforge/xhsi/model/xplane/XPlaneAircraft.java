@@ -32,6 +32,7 @@ import net.sourceforge.xhsi.model.Avionics;
 import net.sourceforge.xhsi.model.CoordinateSystem;
 import net.sourceforge.xhsi.model.ModelFactory;
 import net.sourceforge.xhsi.model.NavigationObject;
+import net.sourceforge.xhsi.model.NearestAirports;
 import net.sourceforge.xhsi.model.SimCommand;
 import net.sourceforge.xhsi.model.SimDataRepository;
 import net.sourceforge.xhsi.model.Aircraft.CabinZone;
@@ -43,6 +44,9 @@ import net.sourceforge.xhsi.model.Aircraft.ValveStatus;
 
 public class XPlaneAircraft implements Aircraft {
 
+    // enough for a page of diversion airports
+    public static final int NEAREST_ARPT_COUNT = 10;
+
     private SimDataRepository sim_data;
     private Avionics avionics;
     private SimCommand sim_command;
@@ -53,6 +57,8 @@ public class XPlaneAircraft implements Aircraft {
     private float fuel_capacity;
     private float max_fuel_flow;
     private String nearest_arpt = "";
+    private NearestAirports nearest_arpts = new NearestAirports(NEAREST_ARPT_COUNT);
+    private volatile Avionics.EPGWSAlertLevel terrain_alert = Avionics.EPGWSAlertLevel.NORMAL;
 
     private static String x737_thrust_modes[] = { "---", "TO", "R-TO", "R-CLB", "CLB", "CRZ", "G/A", "CON", "MAX" };
     private static String cl30_thrust_modes[] = { "---", "CRZ", "CLB", "TO", "APR" };
@@ -1546,6 +1552,21 @@ public class XPlaneAircraft implements Aircraft {
     }
 
 
+    public NearestAirports get_nearest_arpts() {
+        return this.nearest_arpts;
+    }
+
+
+    public Avionics.EPGWSAlertLevel get_terrain_alert() {
+        return this.terrain_alert;
+    }
+
+
+    public void set_terrain_alert(Avionics.EPGWSAlertLevel alert) {
+        this.terrain_alert = alert;
+    }
+
+
     // Auxiliary Power Unit (APU)
     public boolean has_apu(){
     	return (num_generators()>1);
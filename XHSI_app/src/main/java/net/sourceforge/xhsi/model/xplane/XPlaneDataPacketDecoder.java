@@ -6,6 +6,16 @@
 * XPlaneSimDataRepository and the FMS respectively. XPlaneDataPacketDecoder
 * also calls the tick_updates method of XPlaneSimDataRepository, which in turn
 * triggers repainting of the UI.
+*
+* When the plugin supports it and the preference is set, the plugin is asked
+* to send DLT1 and KEY1 packets instead of ADCD, AVIO, ENGI, STAT and AUXS.
+* A DLT1 packet only contains the data points that changed since the previous
+* packet of the same type, a KEY1 packet contains all of them. A sequence
+* number per type is used to detect lost packets; a new keyframe is then
+* requested from the plugin until one arrives. The deltas received in the
+* meantime are still applied, they carry the latest value of what they
+* contain. Packets that arrive after a more recent one of the same type are
+* ignored, except for a KEY1, which starts a new sequence.
 * 
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009-2010  Marc Rogiers (marrog.123@gmail.com)
@@ -28,8 +38,9 @@
 */
 package net.sourceforge.xhsi.model.xplane;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.sourceforge.xhsi.XHSI;
@@ -55,6 +66,28 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
 
     public static final int RCMD_CLOSE = 1;
     public static final int RCMD_SHUTDOWN = 2;
+
+    // packet types, the first four bytes of a packet read as a big-endian int
+    public static final int ADCD_ID = packet_id("ADCD");
+    public static final int AVIO_ID = packet_id("AVIO");
+    public static final int ENGI_ID = packet_id("ENGI");
+    public static final int STAT_ID = packet_id("STAT");
+    public static final int AUXS_ID = packet_id("AUXS");
+    public static final int MPAC_ID = packet_id("MPAC");
+    public static final int XFMC_ID = packet_id("XFMC");
+    public static final int UFMC_ID = packet_id("UFMC");
+    public static final int QPAE_ID = packet_id("QPAE");
+    public static final int QPAM_ID = packet_id("QPAM");
+    public static final int RCMD_ID = packet_id("RCMD");
+    public static final int XRAD_ID = packet_id("xRAD");
+    // delta packets, protocol version 1
+    public static final int DLT1_ID = packet_id("DLT1");
+    public static final int KEY1_ID = packet_id("KEY1");
+    public static final int DELTA_PROTOCOL_VERSION = 1;
+    // FMC0..FMC9 and FMS0..FMS9 : the last byte is the packet number
+    public static final int PACKET_PREFIX_MASK = 0xFFFFFF00;
+    public static final int FMC_PREFIX = packet_id("FMC0") & PACKET_PREFIX_MASK;
+    public static final int FMS_PREFIX = packet_id("FMS0") & PACKET_PREFIX_MASK;
     
     private boolean received_adc_packet = false;
     private boolean received_fms_packet = false;
@@ -67,16 +100,17 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
     private boolean received_weather_packet = false;
     public XHSIPreferences preferences;
 
-    // list of sim data id's that need the anti-jitter filter
-    private int[] jitter_id = { XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_MAGPSI,
-        XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_HPATH,
-        XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_LATITUDE,
-        XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_LONGITUDE };
-    // ... and the same number of vars to store previous value and delta
-    private float[] last_value = { 0.0f, 0.0f, 0.0f, 0.0f };
-    private float[] last_delta = { 0.0f, 0.0f, 0.0f, 0.0f };
+    // delta packets, per ADCD, AVIO, ENGI, STAT and AUXS
+    private static final int[] DELTA_BASE_IDS = { ADCD_ID, AVIO_ID, ENGI_ID, STAT_ID, AUXS_ID };
+    private static final long DELTA_REQUEST_INTERVAL = 1000; // ms
+    private boolean[] delta_sequence_known = new boolean[DELTA_BASE_IDS.length];
+    private boolean delta_packets_requested = false;
+    private long last_delta_request = 0;
+    private volatile long delta_packets = 0;
+    private volatile long keyframes = 0;
 
     SimDataRepository xplane_data_repository = null;
+    XPlanePacketStatistics statistics = XPlanePacketStatistics.get_instance();
     WeatherRepository weather_repository = null;
     FMS fms = FMS.get_instance();
     TCAS tcas = TCAS.get_instance();
@@ -97,6 +131,19 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
     public boolean prev_discontinuity;
     
 
+    // re-used buffers, so that decoding a packet does not allocate
+    private ByteBuffer[] wrapped_packet = new ByteBuffer[2];
+    private byte[][] wrapped_array = new byte[2][];
+    private byte[] line_buffer = new byte[80];
+    private byte[] weather_slice = new byte[70];
+    private byte[] string_buffer = new byte[80];
+    private static Charset string_charset = Charset.forName(charset);
+
+    // last decoded 4-byte string per data point id, and the raw bytes it was decoded from
+    private String[] sim_string_value = new String[1900];
+    private int[] sim_string_raw = new int[1900];
+
+
     public XPlaneDataPacketDecoder(ModelFactory sim_model) {
         this.xplane_data_repository = sim_model.get_repository_instance();
         this.weather_repository = WeatherRepository.get_instance();
@@ -104,50 +151,62 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
     }
 
 
-    private float anti_jitter( int id, float value ) {
+    public synchronized void new_sim_data( ByteBuffer packet ) throws Exception {
 
-        // somewhere between the encoding in the plugin and the decoding here,
-        // the latitude, longitude and others make big jumps, causing the map to shake
-        // this function tries to filter those out
+        timed_decode(packet);
 
-        float new_value = value;
+    }
 
-        int i;
-        for ( i=0; i<this.jitter_id.length; i++ ) {
 
-            if ( id == this.jitter_id[i] ) {
-                float new_delta = Math.abs(value - this.last_value[i]);
-                if (  new_delta > this.last_delta[i] * 5.0f ) {
-                    // delta suddenly bigger; keep the old value
-                    new_value = this.last_value[i];
-                }
-                this.last_delta[i] = new_delta;
-                this.last_value[i] = value;
-            }
+    public synchronized void new_sim_data( byte[] sim_data, int length ) throws Exception {
 
+        // XPlaneUDPReceiver and XPlaneWeatherReceiver each re-use their receive buffer,
+        // so keep a wrapper for the last two arrays instead of wrapping every packet
+        ByteBuffer packet;
+        if ( sim_data == this.wrapped_array[0] ) {
+            packet = this.wrapped_packet[0];
+        } else if ( sim_data == this.wrapped_array[1] ) {
+            packet = this.wrapped_packet[1];
+        } else {
+            packet = ByteBuffer.wrap(sim_data);
+            this.wrapped_array[1] = this.wrapped_array[0];
+            this.wrapped_packet[1] = this.wrapped_packet[0];
+            this.wrapped_array[0] = sim_data;
+            this.wrapped_packet[0] = packet;
         }
+        packet.clear();
+        packet.limit(length);
+        timed_decode(packet);
+
+    }
 
-        return new_value;
+
+    private void timed_decode( ByteBuffer packet ) throws Exception {
+
+        if ( packet.limit() < 4 ) return;
+        long start = System.nanoTime();
+        decode(packet);
+        this.statistics.get(packet.getInt(0)).packet_decoded(System.nanoTime() - start);
 
     }
 
 
-    public void new_sim_data( byte[] sim_data, int length ) throws Exception {
+    /**
+     * Decodes one packet. The packet starts at position 0 of the buffer and ends at its limit.
+     * All fields are read with absolute get's; the position of the buffer is not modified.
+     */
+    private void decode( ByteBuffer packet ) throws Exception {
 
-        // these vars will be re-used several times, so define them here and not in a for-loop
-        int data_point_id;
-        // int int_data;
-        float float_data;
-        String string_data;
+        int length = packet.limit();
 
         // identify the packet type (identified by the first four bytes)
-        String packet_type = new String(sim_data, 0, 4).trim();
+        int packet_id = packet.getInt(0);
 
-        if ( packet_type.equals("ADCD")
-                || packet_type.equals("AVIO")
-                || packet_type.equals("ENGI")
-                || packet_type.equals("STAT")
-                || packet_type.equals("AUXS") ) {
+        if ( packet_id == ADCD_ID
+                || packet_id == AVIO_ID
+                || packet_id == ENGI_ID
+                || packet_id == STAT_ID
+                || packet_id == AUXS_ID ) {
 
             // Air Data Computer or Avionics or Engines or Static data packet
 
@@ -155,58 +214,43 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
                 logger.fine("Received first sim packet");
             logger.finest("Receiving sim packet");
 
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(4);    // skip the bytes containing the packet type id
-            int nb_of_data_points = data_stream.readInt();
+            int nb_of_data_points = packet.getInt(4);
+            // precaution against truncated packets
+            nb_of_data_points = Math.min(nb_of_data_points, (length - 8) / 8);
+            store_sim_data_points(packet, 8, nb_of_data_points);
+            sim_data_stored(packet_id, nb_of_data_points);
 
-            for (int i=0; i<nb_of_data_points; i++) {
-                data_point_id = data_stream.readInt();
-                if ( data_point_id >= 10000 ) {
-                    // a string of 4 bytes
-                    string_data = new String(sim_data, 8+(i*8)+4, 4).trim();
-                    data_stream.skipBytes(4);
-//logger.warning("STRING:"+data_point_id+"="+string_data);
-                    this.xplane_data_repository.store_sim_string(data_point_id, string_data);
-//                } else if ( data_point_id >= 5000 ) {
-//                    // Int
-//                    int_data = data_stream.readInt();
-//                    //logger.warning("INT:"+data_point_id+"="+int_data);
-//                    this.xplane_data_repository.store_sim_int(data_point_id, int_data);
-                } else {
-                    // Float
-                    float_data = anti_jitter(data_point_id, data_stream.readFloat());
-                    this.xplane_data_repository.store_sim_float(data_point_id, float_data);
-                    logger.finest("ID:"+data_point_id+"="+float_data);
-                }
+            if ( this.delta_packets_requested && (packet_id == ADCD_ID) ) {
+                // the plugin did not switch yet, or it was restarted and has forgotten our request
+                request_delta_packets();
             }
 
 
-            if ( (this.received_adc_packet == false) && packet_type.equals("ADCD") ) {
-                logger.warning("Receiving from XHSI_plugin version " + decode_plugin_version(this.xplane_data_repository.get_sim_float(XPlaneSimDataRepository.PLUGIN_VERSION_ID)));
-                logger.fine("... ADCD packet contains " + nb_of_data_points + " sim data values");
-                this.received_adc_packet = true;
-            }
+        } else if ( (packet_id == DLT1_ID) || (packet_id == KEY1_ID) ) {
+
+            // delta or keyframe of a sim data packet
 
-            if ( packet_type.equals("ADCD") ) {
-                logger.finest("Ticking updates");
-                this.xplane_data_repository.tick_updates();
-//                logger.finest("Updates ticked");
+            int base_packet_id = packet.getInt(4);
+            int sequence = packet.getInt(8);
+            int nb_of_data_points = packet.getInt(12);
+            nb_of_data_points = Math.min(nb_of_data_points, (length - 16) / 8);
+            if ( check_delta_sequence(base_packet_id, sequence, packet_id == KEY1_ID) ) {
+                store_sim_data_points(packet, 16, nb_of_data_points);
+                sim_data_stored(base_packet_id, nb_of_data_points);
             }
 
-            
-        } else if ( packet_type.startsWith("FMC") ) {
+
+        } else if ( (packet_id & PACKET_PREFIX_MASK) == FMC_PREFIX ) {
 
             // 1 out of 10 FMCx route data packets
             
-            int offset = Character.digit( packet_type.charAt(3), 10 ) * 50;
+            char packet_nr = (char) (packet_id & 0xFF);
+            int offset = Character.digit( packet_nr, 10 ) * 50;
 //            if ( packet_type.equals("FMSR") ) offset = 0;
 
             if (this.received_fms_packet == false)
                 logger.fine("Received first FMCx packet");
-            logger.finest("Receiving " + packet_type);
-
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(4);    // skip the bytes containing the packet type id
+            if ( logger.isLoggable(Level.FINEST) ) logger.finest("Receiving FMC" + packet_nr);
 
             if ( offset == 0 ) {
 // No, we will re-use the existing FMS instance
@@ -222,19 +266,19 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
                 prev_discontinuity = false;
             }
             
-            float ete_for_active = data_stream.readFloat(); // min
-            float groundspeed = data_stream.readFloat() * 1.9438445f; // kts
+            float ete_for_active = packet.getFloat(4); // min
+            float groundspeed = packet.getFloat(8) * 1.9438445f; // kts
 //float ete_for_active = 9.0f; // min
 //float groundspeed = 100.0f; // kts
 
-            int nb_of_entries = data_stream.readInt();
+            int nb_of_entries = packet.getInt(12);
 
             if (this.received_fms_packet == false)
                 logger.fine("... FMCx contains " + nb_of_entries + " FMS entries");
-            logger.finest("... FMC" + packet_type.charAt(3) + " contains " + nb_of_entries + " FMS entries");
+            if ( logger.isLoggable(Level.FINEST) ) logger.finest("... FMC" + packet_nr + " contains " + nb_of_entries + " FMS entries");
 
-            int displayed_entry_index = data_stream.readInt();
-            int active_entry_index = data_stream.readInt();
+            int displayed_entry_index = packet.getInt(16);
+            int active_entry_index = packet.getInt(20);
 
             int type;
             int altitude;
@@ -252,17 +296,17 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             boolean discontinuity = false;
 
             int packet_entries = ( nb_of_entries - offset > 50 ) ? 50 : nb_of_entries - offset;
-            logger.finest("... we will read " + packet_entries + " FMS entries");
+            if ( logger.isLoggable(Level.FINEST) ) logger.finest("... we will read " + packet_entries + " FMS entries");
 
             for (int i=0; i<packet_entries; i++) {
 
-                type = data_stream.readInt();
-                String id = new String(sim_data, 24+(i*24)+4, 8).trim();
-                // packet_char4 + ete_float + groundspeed_float + nb_int + displayed_int + active_int + ( i * ( type_int + id_char8 + alt_float + lat_float + lon_float) ) + type_int
-                data_stream.skipBytes(8);
-                altitude = data_stream.readInt();
-                lat = data_stream.readFloat();
-                lon = data_stream.readFloat();
+                // packet_char4 + ete_float + groundspeed_float + nb_int + displayed_int + active_int + ( i * ( type_int + id_char8 + alt_float + lat_float + lon_float) )
+                int pos = 24 + (i*24);
+                type = packet.getInt(pos);
+                String id = get_string(packet, pos+4, 8);
+                altitude = packet.getInt(pos+12);
+                lat = packet.getFloat(pos+16);
+                lon = packet.getFloat(pos+20);
                 discontinuity = (lat==0.0f) && (lon==0.0f);
                 // NEW: Empty entries are discontinuities (lat & lon == 0.0)
 
@@ -307,7 +351,7 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
                 	total_ete = 0.0f;
                 }
 
-                logger.finest("FMC [" + (offset+i) + "] : " + id + " leg=" + leg_dist);
+                if ( logger.isLoggable(Level.FINEST) ) logger.finest("FMC [" + (offset+i) + "] : " + id + " leg=" + leg_dist);
 
                 new_fms_entry.altitude = Math.round(altitude / 10)*10;
                 if (altitude % 10 == 3) new_fms_entry.overfly = true;
@@ -379,21 +423,19 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
 
             this.received_fms_packet = true;
             
-        } else if ( packet_type.startsWith("FMS") ) {
+        } else if ( (packet_id & PACKET_PREFIX_MASK) == FMS_PREFIX ) {
         	// Extended FMC packet
 
         	
             // 1 out of 10 FMSx route data packets (extended)
             
-            int offset = Character.digit( packet_type.charAt(3), 10 ) * 50;
+            char packet_nr = (char) (packet_id & 0xFF);
+            int offset = Character.digit( packet_nr, 10 ) * 50;
 
             if (this.received_efms_packet == false)
                 logger.fine("Received first Extended FMC packet [FMSx]");
-            logger.finest("Receiving " + packet_type);
+            if ( logger.isLoggable(Level.FINEST) ) logger.finest("Receiving FMS" + packet_nr);
 
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(4);    // skip the bytes containing the packet type id
-            
 
             if ( offset == 0 ) {
 // No, we will re-use the existing FMS instance
@@ -409,19 +451,19 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
                 prev_discontinuity = false;
             }
             
-            float ete_for_active = data_stream.readFloat(); // min
-            float groundspeed = data_stream.readFloat() * 1.9438445f; // kts
+            float ete_for_active = packet.getFloat(4); // min
+            float groundspeed = packet.getFloat(8) * 1.9438445f; // kts
 //float ete_for_active = 9.0f; // min
 //float groundspeed = 100.0f; // kts
 
-            int nb_of_entries = data_stream.readInt();
+            int nb_of_entries = packet.getInt(12);
 
             if (this.received_fms_packet == false)
                 logger.fine("... FMCx contains " + nb_of_entries + " FMS entries");
-            logger.finest("... FMC" + packet_type.charAt(3) + " contains " + nb_of_entries + " FMS entries");
+            if ( logger.isLoggable(Level.FINEST) ) logger.finest("... FMC" + packet_nr + " contains " + nb_of_entries + " FMS entries");
 
-            int displayed_entry_index = data_stream.readInt();
-            int active_entry_index = data_stream.readInt();
+            int displayed_entry_index = packet.getInt(16);
+            int active_entry_index = packet.getInt(20);
 
             int type;
             int altitude;
@@ -443,7 +485,7 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             boolean discontinuity = false;
 
             int packet_entries = ( nb_of_entries - offset > 50 ) ? 50 : nb_of_entries - offset;
-            logger.finest("... we will read " + packet_entries + " FMS entries");
+            if ( logger.isLoggable(Level.FINEST) ) logger.finest("... we will read " + packet_entries + " FMS entries");
 
             for (int i=0; i<packet_entries; i++) {
             	/*
@@ -462,18 +504,18 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             	*/
             	
             	
-                type = data_stream.readInt();
-                String id = new String(sim_data, 24+(i*44)+4, 8).trim();
-                // packet_char4 + ete_float + groundspeed_float + nb_int + displayed_int + active_int + ( i * ( type_int + id_char8 + alt_float + lat_float + lon_float) ) + type_int
-                data_stream.skipBytes(8);
-                altitude = data_stream.readInt();
-                speed = data_stream.readInt();
-                wind_mag = data_stream.readInt();
-                wind_speed = data_stream.readInt();               
-                hold_track = data_stream.readInt();
-                hold_dist = data_stream.readFloat();
-                lat = data_stream.readFloat();
-                lon = data_stream.readFloat();
+                // packet_char4 + ete_float + groundspeed_float + nb_int + displayed_int + active_int + ( i * sizeof(ExtendedFmsEntry) )
+                int pos = 24 + (i*44);
+                type = packet.getInt(pos);
+                String id = get_string(packet, pos+4, 8);
+                altitude = packet.getInt(pos+12);
+                speed = packet.getInt(pos+16);
+                wind_mag = packet.getInt(pos+20);
+                wind_speed = packet.getInt(pos+24);
+                hold_track = packet.getInt(pos+28);
+                hold_dist = packet.getFloat(pos+32);
+                lat = packet.getFloat(pos+36);
+                lon = packet.getFloat(pos+40);
                 
                 discontinuity = (lat==0.0f) && (lon==0.0f);
                 // NEW: Empty entries are discontinuities (lat & lon == 0.0)
@@ -505,7 +547,7 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
                 	total_ete = 0.0f;
                 }
 
-                logger.finest("FMC [" + (offset+i) + "] : " + id + " leg=" + leg_dist);
+                if ( logger.isLoggable(Level.FINEST) ) logger.finest("FMC [" + (offset+i) + "] : " + id + " leg=" + leg_dist);
 
                 //new_fms_entry = new FMSEntry(offset + i, id, type, lat, lon, altitude, leg_dist, total_ete, is_active, is_displayed);
                 // No, we will re-use the existing FMSEntry[offset + i]
@@ -589,7 +631,7 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
 
             
             this.received_efms_packet = true;
-        } else if (packet_type.equals("MPAC")) {
+        } else if (packet_id == MPAC_ID) {
 
             // multi-player aircraft data packet
 
@@ -597,13 +639,10 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
                 logger.fine("Received first MPAC packet");
             logger.finest("Receiving MPAC packet");
 
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(4);    // skip the bytes containing the packet type id
-
             // maximum number of MP planes
-            int mp_total = data_stream.readInt();
+            int mp_total = packet.getInt(4);
             // active number of MP planes
-            int mp_active = data_stream.readInt();
+            int mp_active = packet.getInt(8);
             //logger.fine("MP total / active: " + mp_total + " / " + mp_active);
             // pfff... active seems always to be equal to total
             
@@ -612,22 +651,24 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             mp_active = Math.min(mp_active, TCAS.MAX_ENTRIES);
 
             // then 4 floats with our own radar altitude, lat, lon and msl altitude
-            this.tcas.new_data_start( mp_total, mp_active, data_stream.readFloat(), data_stream.readFloat(), data_stream.readFloat(),data_stream.readFloat() );
+            this.tcas.new_data_start( mp_total, mp_active, packet.getFloat(12), packet.getFloat(16), packet.getFloat(20), packet.getFloat(24) );
 
             if ( mp_total > 1 ) {
+                int pos = 28;
                 for (int i = 1; i < mp_total; i++) {
                     this.tcas.mp_update(
                             i,
-                            data_stream.readFloat(), // lat
-                            data_stream.readFloat(), // lon
-                            data_stream.readFloat() // msl alt
+                            packet.getFloat(pos), // lat
+                            packet.getFloat(pos+4), // lon
+                            packet.getFloat(pos+8) // msl alt
                             );
+                    pos += 12;
                 }
             }
 
             this.received_tcas_packet = true;
 
-        } else if (packet_type.equals("XFMC")) {
+        } else if (packet_id == XFMC_ID) {
         	
         	int buff_max = 80;
             if (this.received_xfmc_packet == false)
@@ -635,19 +676,17 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             
             logger.fine("Receiving XFMC packet");
         	
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(4);    // skip the bytes containing the packet type id
-
-            int nb_of_lines = data_stream.readInt();
-            int status = data_stream.readInt();
-            byte[] buff = new byte[buff_max];
+            int nb_of_lines = packet.getInt(4);
+            int status = packet.getInt(8);
+            byte[] buff = this.line_buffer;
+            int pos = 12;
             
             if (nb_of_lines > 0 ) {
                 for (int i = 0; i < nb_of_lines; i++) {
 
-                	int line_no = data_stream.readInt();
-                	int line_length = data_stream.readInt();
-                	data_stream.read(buff, 0, buff_max);
+                	int line_no = packet.getInt(pos);
+                	int line_length = packet.getInt(pos+4);
+                	pos = get_bytes(packet, pos+8, buff, buff_max);
                 	boolean sm = convertCodedStrings(buff);
                 	String s = new String(buff, 0, line_length, charset);
                 	
@@ -659,7 +698,7 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             
             this.received_xfmc_packet = true;
             
-        } else if (packet_type.equals("UFMC")) {
+        } else if (packet_id == UFMC_ID) {
         	
         	int buff_max = 80;
             if (this.received_ufmc_packet == false)
@@ -667,19 +706,17 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             
             logger.fine("Receiving UFMC packet");
         	
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(4);    // skip the bytes containing the packet type id
-
-            int nb_of_lines = data_stream.readInt();
-            int status = data_stream.readInt();
-            byte[] buff = new byte[buff_max];
+            int nb_of_lines = packet.getInt(4);
+            int status = packet.getInt(8);
+            byte[] buff = this.line_buffer;
+            int pos = 12;
             
             if (nb_of_lines > 0 ) {
                 for (int i = 0; i < nb_of_lines; i++) {
 
-                	int line_no = data_stream.readInt();
-                	int line_length = data_stream.readInt();
-                	data_stream.read(buff, 0, buff_max);
+                	int line_no = packet.getInt(pos);
+                	int line_length = packet.getInt(pos+4);
+                	pos = get_bytes(packet, pos+8, buff, buff_max);
                 	boolean sm = convertCodedStrings(buff);
                 	String s = new String(buff, 0, line_length, charset);
                 	
@@ -691,25 +728,23 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             
             this.received_ufmc_packet = true;
             
-        }else if (packet_type.equals("QPAE")) {
+        }else if (packet_id == QPAE_ID) {
         	int buff_max = 80;
             if (this.received_ewd_packet == false)
                 logger.fine("Received first E/WD packet");
             logger.finest("Receiving QPAC E/WD packet");
         	
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(4);    // skip the bytes containing the packet type id
-
-            int nb_of_lines = data_stream.readInt();
-            byte[] buff = new byte[buff_max];
-            logger.finest("QPAC E/WD packet lines "+ nb_of_lines);
+            int nb_of_lines = packet.getInt(4);
+            byte[] buff = this.line_buffer;
+            int pos = 8;
+            if ( logger.isLoggable(Level.FINEST) ) logger.finest("QPAC E/WD packet lines "+ nb_of_lines);
             
             if (nb_of_lines > 0 ) {
                 for (int i = 0; i < nb_of_lines; i++) {
 
-                	int line_no = data_stream.readInt();
-                	int line_length = data_stream.readInt();
-                	data_stream.read(buff, 0, buff_max);
+                	int line_no = packet.getInt(pos);
+                	int line_length = packet.getInt(pos+4);
+                	pos = get_bytes(packet, pos+8, buff, buff_max);
                 	boolean sm = convertCodedStrings(buff);
                 	String s = new String(buff, 0, line_length, charset);
                 	logger.fine("QPAC E/WD packet line " + i + " = " + s);
@@ -720,28 +755,26 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             
             this.received_ewd_packet = true;
        	
-        } else if (packet_type.equals("QPAM")) {
+        } else if (packet_id == QPAM_ID) {
         	int buff_max = 80;
             if (this.received_cdu_packet == false)
                 logger.fine("Received first CDU packet");
         	
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(4);    // skip the bytes containing the packet type id
-
-            int nb_of_lines = data_stream.readInt();
-            int side = data_stream.readInt();
-            int status = data_stream.readInt();
+            int nb_of_lines = packet.getInt(4);
+            int side = packet.getInt(8);
+            int status = packet.getInt(12);
             qpac_mcdu.setStatus(side, status);
-            logger.finest("Receiving QPAC MCDU"+side+" packet");
+            if ( logger.isLoggable(Level.FINEST) ) logger.finest("Receiving QPAC MCDU"+side+" packet");
             
-            byte[] buff = new byte[buff_max];
+            byte[] buff = this.line_buffer;
+            int pos = 16;
             
             if (nb_of_lines > 0 ) {
                 for (int i = 0; i < nb_of_lines; i++) {
 
-                	int line_no = data_stream.readInt();
-                	int line_length = data_stream.readInt();
-                	data_stream.read(buff, 0, buff_max);
+                	int line_no = packet.getInt(pos);
+                	int line_length = packet.getInt(pos+4);
+                	pos = get_bytes(packet, pos+8, buff, buff_max);
                 	// boolean sm = convertCodedStrings(buff);
                 	String s = new String(buff, 0, line_length, charset);
                 	logger.fine("QPAC MCDU packet line " + i + " = " + s);
@@ -753,11 +786,8 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             
             this.received_cdu_packet = true;
             
-        } else if (packet_type.equals("RCMD")) {
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(4);    // skip the bytes containing the packet type id
-
-            int remote_command = data_stream.readInt();
+        } else if (packet_id == RCMD_ID) {
+            int remote_command = packet.getInt(4);
             if (remote_command == RCMD_CLOSE) {
             	System.exit(0);
             } else if (remote_command == RCMD_SHUTDOWN && this.preferences.get_shutdown_allowed()) {
@@ -765,13 +795,12 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             	System.exit(0);
             }
         	
-        } else if (packet_type.equals("xRAD")) {
+        } else if (packet_id == XRAD_ID) {
             if (this.received_weather_packet == false)
                 logger.fine("Received first Weather packet");
-            DataInputStream data_stream = new DataInputStream(new ByteArrayInputStream(sim_data));
-            data_stream.skipBytes(5);    // skip the bytes containing the packet type id + 1 byte "M"
-            byte byteBuffer[] = new byte[8]; // Largest data type is 64-bits (8 bytes)
-            byte slice[] = new byte[70]; // X-Plane weather slice
+            // skip the bytes containing the packet type id + 1 byte "M"
+            byte byteBuffer[] = this.line_buffer;
+            byte slice[] = this.weather_slice; // X-Plane weather slice
             /*
              * Weather packet structure
              * int lon_deg_wes;
@@ -784,24 +813,24 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
             /*
              * X-Plane does not send network data in network byte order
              */
-            data_stream.readFully(byteBuffer, 0, 4);
+            get_bytes(packet, 5, byteBuffer, 4);
             int lon = (byteBuffer[3]) << 24 | (byteBuffer[2] & 0xff) << 16 |
                 (byteBuffer[1] & 0xff) << 8 | (byteBuffer[0] & 0xff);
-            data_stream.readFully(byteBuffer, 0, 4);
+            get_bytes(packet, 9, byteBuffer, 4);
             int lat = (byteBuffer[3]) << 24 | (byteBuffer[2] & 0xff) << 16 |
                 (byteBuffer[1] & 0xff) << 8 | (byteBuffer[0] & 0xff);
-            data_stream.readFully(byteBuffer, 0, 4);
+            get_bytes(packet, 13, byteBuffer, 4);
             /*
              * lat_offset range : -1 to 61 = 62 rows
              */
             byte lat_offset = byteBuffer[0];
             lat_offset++;
 
-            logger.fine("Weather packet lon="+lon + " lat="+lat + " lat_offset=" + lat_offset + " length="+length+ " bytes");
+            if ( logger.isLoggable(Level.FINE) ) logger.fine("Weather packet lon="+lon + " lat="+lat + " lat_offset=" + lat_offset + " length="+length+ " bytes");
             if (length < 81 ) {
             	logger.fine("Incomplete weather packet");	
             } else {
-            	data_stream.readFully(slice, 0, 61);
+            	get_bytes(packet, 17, slice, 61);
             	this.weather_repository.updateArea(lat, lon, lat_offset, slice);
             	this.received_weather_packet = true;
             }
@@ -812,6 +841,63 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
 
     }
 
+    public static int packet_id(String packet_type) {
+        return ( (packet_type.charAt(0) & 0xFF) << 24 )
+            | ( (packet_type.charAt(1) & 0xFF) << 16 )
+            | ( (packet_type.charAt(2) & 0xFF) << 8 )
+            | ( packet_type.charAt(3) & 0xFF );
+    }
+
+
+    /**
+     * Copies up to length bytes starting at pos to buff
+     *
+     * @return    - the position after the requested length
+     */
+    private int get_bytes(ByteBuffer packet, int pos, byte[] buff, int length) {
+        int available = Math.min(length, packet.limit() - pos);
+        for (int i=0; i<available; i++) {
+            buff[i] = packet.get(pos + i);
+        }
+        return pos + length;
+    }
+
+
+    /**
+     * @return    - the trimmed string of length bytes starting at pos
+     */
+    private String get_string(ByteBuffer packet, int pos, int length) {
+        int start = pos;
+        int end = pos + length;
+        // same as String.trim()
+        while ( (start < end) && ((packet.get(start) & 0xFF) <= ' ') ) start++;
+        while ( (end > start) && ((packet.get(end - 1) & 0xFF) <= ' ') ) end--;
+        if ( start == end ) {
+            return "";
+        }
+        get_bytes(packet, start, this.string_buffer, end - start);
+        return new String(this.string_buffer, 0, end - start, string_charset);
+    }
+
+
+    /**
+     * A 4-byte sim data string, only decoded again when the bytes changed since the previous packet
+     */
+    private String get_sim_string(ByteBuffer packet, int pos, int data_point_id) {
+        int index = data_point_id % 10000;
+        int raw = packet.getInt(pos);
+        if ( (index < this.sim_string_value.length) && (this.sim_string_value[index] != null) && (this.sim_string_raw[index] == raw) ) {
+            return this.sim_string_value[index];
+        }
+        String value = get_string(packet, pos, 4);
+        if ( index < this.sim_string_value.length ) {
+            this.sim_string_value[index] = value;
+            this.sim_string_raw[index] = raw;
+        }
+        return value;
+    }
+
+
     private boolean convertCodedStrings(byte[] bts){
 
     	boolean small = false;
@@ -826,6 +912,155 @@ public class XPlaneDataPacketDecoder implements XPlaneDataPacketObserver {
     	return small;
     }    
 
+    private void store_sim_data_points(ByteBuffer packet, int pos, int nb_of_data_points) {
+
+        // these vars will be re-used several times, so define them here and not in a for-loop
+        int data_point_id;
+        // int int_data;
+        float float_data;
+        String string_data;
+
+        for (int i=0; i<nb_of_data_points; i++) {
+            data_point_id = packet.getInt(pos);
+            if ( data_point_id >= 10000 ) {
+                // a string of 4 bytes
+                string_data = get_sim_string(packet, pos + 4, data_point_id);
+//logger.warning("STRING:"+data_point_id+"="+string_data);
+                this.xplane_data_repository.store_sim_string(data_point_id, string_data);
+//            } else if ( data_point_id >= 5000 ) {
+//                // Int
+//                int_data = packet.getInt(pos + 4);
+//                //logger.warning("INT:"+data_point_id+"="+int_data);
+//                this.xplane_data_repository.store_sim_int(data_point_id, int_data);
+            } else {
+                // Float
+                float_data = packet.getFloat(pos + 4);
+                this.xplane_data_repository.store_sim_float(data_point_id, float_data);
+                if ( logger.isLoggable(Level.FINEST) ) logger.finest("ID:"+data_point_id+"="+float_data);
+            }
+            pos += 8;
+        }
+
+    }
+
+
+    /**
+     * Called after the data points of an ADCD, AVIO, ENGI, STAT or AUXS packet,
+     * or of its delta or keyframe, have been stored
+     */
+    private void sim_data_stored(int packet_id, int nb_of_data_points) {
+
+        if ( packet_id == ADCD_ID ) {
+            logger.finest("Ticking updates");
+            this.xplane_data_repository.tick_updates();
+//            logger.finest("Updates ticked");
+        }
+
+        // the plugin version can only be read once tick_updates() has published it
+        if ( (this.received_adc_packet == false) && (packet_id == ADCD_ID) ) {
+            logger.warning("Receiving from XHSI_plugin version " + decode_plugin_version(this.xplane_data_repository.get_sim_float(XPlaneSimDataRepository.PLUGIN_VERSION_ID)));
+            logger.fine("... ADCD packet contains " + nb_of_data_points + " sim data values");
+            this.received_adc_packet = true;
+            if ( this.preferences.get_delta_packets() ) {
+                if ( this.xplane_data_repository.get_sim_float(XPlaneSimDataRepository.XHSI_DELTA_PACKETS) >= DELTA_PROTOCOL_VERSION ) {
+                    this.delta_packets_requested = true;
+                    request_delta_packets();
+                } else {
+                    logger.info("This XHSI_plugin cannot send delta packets");
+                }
+            }
+        }
+
+    }
+
+
+    /**
+     * @return    - false if the packet arrived after a more recent one, and should not be applied
+     */
+    private boolean check_delta_sequence(int base_packet_id, int sequence, boolean keyframe) {
+
+        int type = -1;
+        for (int i=0; i<DELTA_BASE_IDS.length; i++) {
+            if ( DELTA_BASE_IDS[i] == base_packet_id ) type = i;
+        }
+        if ( type < 0 ) return true;
+
+        int gap = this.statistics.get(base_packet_id).sequence_received(sequence, keyframe);
+        if ( gap < 0 ) {
+            // its values would overwrite more recent ones
+            if ( logger.isLoggable(Level.FINE) ) logger.fine("Ignoring a reordered delta packet");
+            return false;
+        }
+
+        if ( keyframe ) {
+            this.keyframes++;
+            this.delta_sequence_known[type] = true;
+        } else {
+            this.delta_packets++;
+            if ( this.delta_sequence_known[type] && (gap > 0) ) {
+                if ( logger.isLoggable(Level.FINE) ) logger.fine("Lost " + gap + " delta packets, requesting a keyframe");
+                // the lost values stay wrong until the next keyframe
+                this.delta_sequence_known[type] = false;
+            }
+            if ( ! this.delta_sequence_known[type] ) {
+                // also when we missed the keyframe, e.g. when XHSI was started after another XHSI asked for delta packets
+                request_delta_packets();
+            }
+        }
+        return true;
+
+    }
+
+
+    /**
+     * @return    - true from a lost delta packet of this type until the next keyframe
+     */
+    boolean is_waiting_for_keyframe(int base_packet_id) {
+        for (int i=0; i<DELTA_BASE_IDS.length; i++) {
+            if ( DELTA_BASE_IDS[i] == base_packet_id ) return ! this.delta_sequence_known[i];
+        }
+        return false;
+    }
+
+
+    /**
+     * Forgets the sequence numbers and keyframes of the delta packets received so far,
+     * for when the next packets do not follow them, like after a seek in a recording
+     */
+    public synchronized void reset_delta_sequences() {
+        for (int i=0; i<DELTA_BASE_IDS.length; i++) {
+            this.delta_sequence_known[i] = false;
+            this.statistics.get(DELTA_BASE_IDS[i]).forget_sequence();
+        }
+    }
+
+
+    /**
+     * Asks the plugin to send delta packets, starting with keyframes
+     */
+    private void request_delta_packets() {
+
+        long now = System.currentTimeMillis();
+        if ( this.xplane_data_repository.is_replaying() || (now - this.last_delta_request < DELTA_REQUEST_INTERVAL) ) {
+            return;
+        }
+        this.last_delta_request = now;
+        logger.fine("Requesting delta packets protocol " + DELTA_PROTOCOL_VERSION);
+        XPlaneUDPSender.get_instance().sendDataPoint(XPlaneSimDataRepository.XHSI_DELTA_PACKETS, (float) DELTA_PROTOCOL_VERSION);
+
+    }
+
+
+    public long get_delta_packets() {
+        return this.delta_packets;
+    }
+
+
+    public long get_keyframes() {
+        return this.keyframes;
+    }
+
+
     private String decode_plugin_version(float plugin_version) {
 
         logger.config("Plugin version " + plugin_version);
@@ -22,8 +22,18 @@
 */
 package net.sourceforge.xhsi.model.xplane;
 
+import java.nio.ByteBuffer;
+
 public interface XPlaneDataPacketObserver {
 
     public void new_sim_data(byte[] data, int length) throws Exception;
 
+    /**
+     * Called by XPlaneUDPChannelReceiver with a pooled packet buffer.
+     * The packet is found between position 0 and the buffer limit. The buffer
+     * is recycled as soon as all observers have returned, so it must not be
+     * kept, and its position and limit must be left untouched.
+     */
+    public void new_sim_data(ByteBuffer packet) throws Exception;
+
 }
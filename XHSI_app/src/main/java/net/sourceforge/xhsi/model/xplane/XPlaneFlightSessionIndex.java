@@ -0,0 +1,425 @@
+/**
+* XPlaneFlightSessionIndex.java
+*
+* Random access to a flight session recording written by
+* XPlaneFlightSessionRecorder. The file is memory-mapped, and a table of its
+* chunks with their first packet times allows finding the chunk of any point
+* in time with a binary search.
+*
+* Every KEYFRAME_INTERVAL ms of recording, a keyframe holds everything that is
+* needed to continue replaying from there as if the recording had been
+* replayed from the start:
+*  - an ADCD packet with the last value of every sim data point so far,
+*    from ADCD, AVIO, ENGI, STAT, AUXS, DLT1 and KEY1 packets
+*  - where to find the last FMCx, FMSx, MPAC, XFMC, UFMC, QPAE and QPAM packets
+*  - where to continue with the next packet
+* Weather radar slices (xRAD) are not part of keyframes, they are refreshed
+* quickly enough by the following packets.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+public class XPlaneFlightSessionIndex {
+
+    public static final int KEYFRAME_INTERVAL = 10000; // ms
+
+    // files larger than this are mapped in several segments, each starting at a chunk
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    // sim data point ids 0-1899 and 10000-11899
+    private static final int SIM_STRING_BASE = 10000;
+    private static final int SIM_IDS = 1900;
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    private String filename;
+    private long start_time;
+
+    private MappedByteBuffer[] segments;
+    private int chunk_count = 0;
+    private int[] chunk_segment;
+    private int[] chunk_offset;
+    private long[] chunk_file_offset;
+    private int[] chunk_first_time;
+    private int[] chunk_last_time;
+    private int[] chunk_compression;
+    private int[] chunk_raw_length;
+    private int[] chunk_stored_length;
+    private long packet_count = 0;
+
+    private Keyframe[] keyframes;
+    private int[] keyframe_time;
+
+    private Inflater inflater = new Inflater();
+    private byte[] stored = new byte[XPlaneFlightSessionRecorder.CHUNK_SIZE];
+
+
+    /**
+     * The state of the replay at one point in time
+     */
+    public static class Keyframe {
+        /** ms since the start of the recording */
+        public int time;
+        /** the packets after this keyframe start here */
+        public int chunk;
+        public int offset;
+        /** an ADCD packet with the last value of every sim data point */
+        public ByteBuffer sim_data;
+        /** chunk << 32 | offset of the last packet of the other types, in the order they were recorded */
+        public long[] other_packets;
+    }
+
+
+    public XPlaneFlightSessionIndex(String filename) throws IOException {
+        this.filename = filename;
+        long start = System.currentTimeMillis();
+        FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            read_header(channel);
+            scan_chunks(channel);
+            map_segments(channel);
+        } finally {
+            // the mappings stay valid after closing the channel
+            channel.close();
+        }
+        build_keyframes();
+        logger.info("Indexed " + filename + " : " + this.packet_count + " packets in " + this.chunk_count + " chunks, "
+                + get_duration() / 1000 + "s, " + this.keyframes.length + " keyframes, in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+
+    /**
+     * @return    - true if the file was written by XPlaneFlightSessionRecorder in this format,
+     *              and not by older versions of XHSI
+     */
+    public static boolean is_indexable(String filename) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while ( magic.hasRemaining() && (channel.read(magic) >= 0) ) { }
+            return ( ! magic.hasRemaining() ) && (magic.getInt(0) == XPlaneFlightSessionRecorder.FILE_MAGIC);
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    private void read_header(FileChannel channel) throws IOException {
+        ByteBuffer file_header = ByteBuffer.allocate(XPlaneFlightSessionRecorder.FILE_HEADER_SIZE);
+        read_fully(channel, file_header, 0);
+        if ( file_header.hasRemaining() || (file_header.getInt(0) != XPlaneFlightSessionRecorder.FILE_MAGIC) ) {
+            throw new IOException(this.filename + " is not a flight session recording");
+        }
+        if ( file_header.getInt(4) > XPlaneFlightSessionRecorder.FORMAT_VERSION ) {
+            throw new IOException(this.filename + " was recorded by a newer version of XHSI");
+        }
+        this.start_time = file_header.getLong(8);
+    }
+
+
+    /**
+     * Reads the chunk headers only, up to the end of the file or to a truncated chunk
+     */
+    private void scan_chunks(FileChannel channel) throws IOException {
+        int capacity = 1024;
+        long[] offsets = new long[capacity];
+        this.chunk_first_time = new int[capacity];
+        this.chunk_last_time = new int[capacity];
+        this.chunk_compression = new int[capacity];
+        this.chunk_raw_length = new int[capacity];
+        this.chunk_stored_length = new int[capacity];
+
+        ByteBuffer header = ByteBuffer.allocate(XPlaneFlightSessionRecorder.CHUNK_HEADER_SIZE);
+        long position = XPlaneFlightSessionRecorder.FILE_HEADER_SIZE;
+        long size = channel.size();
+        while ( position + XPlaneFlightSessionRecorder.CHUNK_HEADER_SIZE <= size ) {
+            header.clear();
+            read_fully(channel, header, position);
+            int stored_length = header.getInt(24);
+            int raw_length = header.getInt(20);
+            if ( (header.getInt(0) != XPlaneFlightSessionRecorder.CHUNK_MAGIC)
+                    || (stored_length > XPlaneFlightSessionRecorder.CHUNK_SIZE) || (raw_length > XPlaneFlightSessionRecorder.CHUNK_SIZE)
+                    || (position + XPlaneFlightSessionRecorder.CHUNK_HEADER_SIZE + stored_length > size) ) {
+                logger.warning(this.filename + " is truncated after " + this.chunk_count + " chunks");
+                break;
+            }
+            if ( this.chunk_count == capacity ) {
+                capacity *= 2;
+                offsets = Arrays.copyOf(offsets, capacity);
+                this.chunk_first_time = Arrays.copyOf(this.chunk_first_time, capacity);
+                this.chunk_last_time = Arrays.copyOf(this.chunk_last_time, capacity);
+                this.chunk_compression = Arrays.copyOf(this.chunk_compression, capacity);
+                this.chunk_raw_length = Arrays.copyOf(this.chunk_raw_length, capacity);
+                this.chunk_stored_length = Arrays.copyOf(this.chunk_stored_length, capacity);
+            }
+            offsets[this.chunk_count] = position + XPlaneFlightSessionRecorder.CHUNK_HEADER_SIZE;
+            this.chunk_compression[this.chunk_count] = header.getInt(4);
+            this.packet_count += header.getInt(8);
+            this.chunk_first_time[this.chunk_count] = header.getInt(12);
+            this.chunk_last_time[this.chunk_count] = header.getInt(16);
+            this.chunk_raw_length[this.chunk_count] = raw_length;
+            this.chunk_stored_length[this.chunk_count] = stored_length;
+            this.chunk_count++;
+            position += XPlaneFlightSessionRecorder.CHUNK_HEADER_SIZE + stored_length;
+        }
+
+        // chunk offsets become relative to their segment in map_segments()
+        this.chunk_segment = new int[this.chunk_count];
+        this.chunk_offset = new int[this.chunk_count];
+        this.chunk_file_offset = offsets;
+    }
+
+
+    private void map_segments(FileChannel channel) throws IOException {
+        ArrayList<MappedByteBuffer> mapped = new ArrayList<MappedByteBuffer>();
+        int first = 0;
+        while ( first < this.chunk_count ) {
+            long start = this.chunk_file_offset[first];
+            int last = first;
+            while ( (last + 1 < this.chunk_count)
+                    && (this.chunk_file_offset[last + 1] + this.chunk_stored_length[last + 1] - start <= MAX_SEGMENT_SIZE) ) {
+                last++;
+            }
+            long end = this.chunk_file_offset[last] + this.chunk_stored_length[last];
+            mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            for (int i=first; i<=last; i++) {
+                this.chunk_segment[i] = mapped.size() - 1;
+                this.chunk_offset[i] = (int) (this.chunk_file_offset[i] - start);
+            }
+            first = last + 1;
+        }
+        this.segments = mapped.toArray(new MappedByteBuffer[mapped.size()]);
+        this.chunk_file_offset = null;
+    }
+
+
+    /**
+     * Reads every packet once, keeping the last value of every sim data point
+     */
+    private void build_keyframes() throws IOException {
+        ArrayList<Keyframe> list = new ArrayList<Keyframe>();
+        int[] sim_raw = new int[2 * SIM_IDS];
+        boolean[] sim_seen = new boolean[2 * SIM_IDS];
+        int sim_count = 0;
+        HashMap<Long, Long> other_packets = new HashMap<Long, Long>();
+        int next_keyframe = 0;
+
+        ByteBuffer raw = ByteBuffer.allocate(XPlaneFlightSessionRecorder.CHUNK_SIZE);
+        for (int c=0; c<this.chunk_count; c++) {
+            read_chunk(c, raw);
+            int pos = 0;
+            while ( pos < raw.limit() ) {
+                int time = raw.getInt(pos);
+                int length = raw.getShort(pos + 4) & 0xFFFF;
+                int packet = pos + XPlaneFlightSessionRecorder.PACKET_HEADER_SIZE;
+
+                if ( time >= next_keyframe ) {
+                    list.add(keyframe(time, c, pos, sim_raw, sim_seen, sim_count, other_packets));
+                    next_keyframe = time - (time % KEYFRAME_INTERVAL) + KEYFRAME_INTERVAL;
+                }
+
+                if ( length >= 8 ) {
+                    int packet_id = raw.getInt(packet);
+                    int first_point = -1;
+                    int nb_of_points = 0;
+                    if ( (packet_id == XPlaneDataPacketDecoder.ADCD_ID) || (packet_id == XPlaneDataPacketDecoder.AVIO_ID)
+                            || (packet_id == XPlaneDataPacketDecoder.ENGI_ID) || (packet_id == XPlaneDataPacketDecoder.STAT_ID)
+                            || (packet_id == XPlaneDataPacketDecoder.AUXS_ID) ) {
+                        first_point = packet + 8;
+                        nb_of_points = Math.min(raw.getInt(packet + 4), (length - 8) / 8);
+                    } else if ( ((packet_id == XPlaneDataPacketDecoder.DLT1_ID) || (packet_id == XPlaneDataPacketDecoder.KEY1_ID)) && (length >= 16) ) {
+                        first_point = packet + 16;
+                        nb_of_points = Math.min(raw.getInt(packet + 12), (length - 16) / 8);
+                    } else if ( is_state_packet(packet_id) ) {
+                        long key = ((long) packet_id << 32);
+                        if ( packet_id == XPlaneDataPacketDecoder.QPAM_ID ) {
+                            // one per MCDU side
+                            key |= raw.getInt(packet + 8) & 0xFFFFFFFFL;
+                        }
+                        other_packets.put(Long.valueOf(key), Long.valueOf(((long) c << 32) | pos));
+                    }
+                    for (int i=0; i<nb_of_points; i++) {
+                        int slot = sim_slot(raw.getInt(first_point + i * 8));
+                        if ( slot >= 0 ) {
+                            sim_raw[slot] = raw.getInt(first_point + i * 8 + 4);
+                            if ( ! sim_seen[slot] ) {
+                                sim_seen[slot] = true;
+                                sim_count++;
+                            }
+                        }
+                    }
+                }
+
+                pos = packet + length;
+            }
+        }
+
+        this.keyframes = list.toArray(new Keyframe[list.size()]);
+        this.keyframe_time = new int[this.keyframes.length];
+        for (int k=0; k<this.keyframes.length; k++) {
+            this.keyframe_time[k] = this.keyframes[k].time;
+        }
+    }
+
+
+    private static boolean is_state_packet(int packet_id) {
+        int prefix = packet_id & XPlaneDataPacketDecoder.PACKET_PREFIX_MASK;
+        return (prefix == XPlaneDataPacketDecoder.FMC_PREFIX) || (prefix == XPlaneDataPacketDecoder.FMS_PREFIX)
+                || (packet_id == XPlaneDataPacketDecoder.MPAC_ID) || (packet_id == XPlaneDataPacketDecoder.XFMC_ID)
+                || (packet_id == XPlaneDataPacketDecoder.UFMC_ID) || (packet_id == XPlaneDataPacketDecoder.QPAE_ID)
+                || (packet_id == XPlaneDataPacketDecoder.QPAM_ID);
+    }
+
+
+    private static int sim_slot(int id) {
+        if ( (id >= 0) && (id < SIM_IDS) ) {
+            return id;
+        } else if ( (id >= SIM_STRING_BASE) && (id < SIM_STRING_BASE + SIM_IDS) ) {
+            return SIM_IDS + id - SIM_STRING_BASE;
+        } else {
+            return -1;
+        }
+    }
+
+
+    private static Keyframe keyframe(int time, int chunk, int offset, int[] sim_raw, boolean[] sim_seen, int sim_count, HashMap<Long, Long> other_packets) {
+        Keyframe keyframe = new Keyframe();
+        keyframe.time = time;
+        keyframe.chunk = chunk;
+        keyframe.offset = offset;
+
+        keyframe.sim_data = ByteBuffer.allocate(8 + sim_count * 8);
+        keyframe.sim_data.putInt(XPlaneDataPacketDecoder.ADCD_ID);
+        keyframe.sim_data.putInt(sim_count);
+        for (int slot=0; slot<sim_raw.length; slot++) {
+            if ( sim_seen[slot] ) {
+                keyframe.sim_data.putInt( ( slot < SIM_IDS ) ? slot : SIM_STRING_BASE + slot - SIM_IDS );
+                keyframe.sim_data.putInt(sim_raw[slot]);
+            }
+        }
+        keyframe.sim_data.flip();
+
+        keyframe.other_packets = new long[other_packets.size()];
+        int i = 0;
+        for (Long position : other_packets.values()) {
+            keyframe.other_packets[i++] = position.longValue();
+        }
+        Arrays.sort(keyframe.other_packets);
+        return keyframe;
+    }
+
+
+    /**
+     * Copies or inflates a chunk into raw, from position 0 to its limit
+     */
+    public void read_chunk(int chunk, ByteBuffer raw) throws IOException {
+        ByteBuffer segment = this.segments[this.chunk_segment[chunk]].duplicate();
+        segment.position(this.chunk_offset[chunk]);
+        segment.limit(this.chunk_offset[chunk] + this.chunk_stored_length[chunk]);
+        raw.clear();
+        if ( this.chunk_compression[chunk] == XPlaneFlightSessionRecorder.COMPRESSION_DEFLATE ) {
+            segment.get(this.stored, 0, this.chunk_stored_length[chunk]);
+            try {
+                this.inflater.reset();
+                this.inflater.setInput(this.stored, 0, this.chunk_stored_length[chunk]);
+                if ( this.inflater.inflate(raw.array(), 0, this.chunk_raw_length[chunk]) != this.chunk_raw_length[chunk] ) {
+                    throw new IOException("Corrupt chunk in " + this.filename + " (inflated chunk too short)");
+                }
+            } catch (DataFormatException dfe) {
+                throw new IOException("Corrupt chunk in " + this.filename + " (" + dfe.getMessage() + ")");
+            }
+            raw.limit(this.chunk_raw_length[chunk]);
+        } else {
+            raw.put(segment);
+            raw.flip();
+        }
+    }
+
+
+    private static void read_fully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int n;
+        while ( buffer.hasRemaining() && ((n = channel.read(buffer, position)) >= 0) ) {
+            position += n;
+        }
+    }
+
+
+    public int get_chunk_count() {
+        return this.chunk_count;
+    }
+
+
+    public int get_chunk_first_time(int chunk) {
+        return this.chunk_first_time[chunk];
+    }
+
+
+    /**
+     * @return    - ms between the first and the last packet
+     */
+    public int get_duration() {
+        return ( this.chunk_count > 0 ) ? this.chunk_last_time[this.chunk_count - 1] : 0;
+    }
+
+
+    /**
+     * @return    - start of the recording, in ms since 1970
+     */
+    public long get_start_time() {
+        return this.start_time;
+    }
+
+
+    public long get_packet_count() {
+        return this.packet_count;
+    }
+
+
+    /**
+     * @return    - the last keyframe at or before time, or the first one
+     */
+    public Keyframe find_keyframe(int time) {
+        if ( this.keyframes.length == 0 ) {
+            return null;
+        }
+        int k = Arrays.binarySearch(this.keyframe_time, time);
+        if ( k < 0 ) {
+            k = Math.max(0, -k - 2);
+        }
+        return this.keyframes[k];
+    }
+
+
+    public void close() {
+        this.inflater.end();
+        this.segments = null;
+    }
+
+}
@@ -1,42 +1,74 @@
 /**
 * XPlaneFlightSessionPlayer.java
-* 
+*
 * Plays a flight session from a file recorded by XPlaneFlightSessionRecorder.
 * The read data packets are sent to XPlaneDataPacketDecoder which in turn
-* updates the UI.
-* 
+* updates the UI. Packets are replayed at the times they were recorded, at
+* a speed of MIN_SPEED to MAX_SPEED times real time, and the replay can be
+* paused and moved to any point of the recording. Moving starts from the
+* nearest keyframe of XPlaneFlightSessionIndex, so that it takes the same
+* time anywhere in a recording of several hours.
+* Older recordings without packet times are replayed from the start with a
+* fixed delay per packet, and cannot be moved in.
+*
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
-* 
+*
 * This program is free software; you can redistribute it and/or
 * modify it under the terms of the GNU General Public License
-* as published by the Free Software Foundation; either version 2 
+* as published by the Free Software Foundation; either version 2
 * of the License, or (at your option) any later version.
 *
 * This library is distributed in the hope that it will be useful,
 * but WITHOUT ANY WARRANTY; without even the implied warranty of
 * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
 * GNU General Public License for more details.
-* 
+*
 * You should have received a copy of the GNU Lesser General Public
 * License along with this library; if not, write to the Free Software
 * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
 */
 package net.sourceforge.xhsi.model.xplane;
 
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.io.EOFException;
+import java.util.concurrent.locks.LockSupport;
 
 import net.sourceforge.xhsi.StoppableThread;
 
 public class XPlaneFlightSessionPlayer extends StoppableThread {
 
+    public static final float MIN_SPEED = 0.25f;
+    public static final float MAX_SPEED = 16.0f;
+
+    // longest sleep before looking for a new speed, a pause or a seek
+    private static final long MAX_WAIT = 50; // ms
+
     String filename;
-    ObjectInputStream ois;
+    XPlaneFlightSessionReader reader;
+    // written by the player thread, read by is_seekable() on the UI thread
+    volatile XPlaneFlightSessionIndex index;
     ArrayList sim_data_observers;
     long delay_between_packets;
 
+    // set by the UI thread
+    private volatile float speed = 1.0f;
+    private volatile boolean paused = false;
+    private volatile int seek_request = -1;
+
+    // replay position, in ms since the start of the recording
+    private volatile int position = 0;
+    private volatile int duration = 0;
+
+    // the replay clock : recording time clock_time was replayed at clock_start (ns)
+    private int clock_time;
+    private long clock_start;
+    private float clock_speed;
+
+    private ByteBuffer chunk = ByteBuffer.allocate(XPlaneFlightSessionRecorder.CHUNK_SIZE);
+    private int chunk_nr = -1;
+    private int chunk_pos = 0;
+    private ByteBuffer packet = ByteBuffer.allocate(0xFFFF);
+
     public XPlaneFlightSessionPlayer(String filename, long delay_between_packets) {
         this.filename = filename;
         this.sim_data_observers = new ArrayList();
@@ -48,36 +80,247 @@ public class XPlaneFlightSessionPlayer extends StoppableThread {
         this.sim_data_observers.add(observer);
     }
 
+    /**
+     * @param speed    - replay speed, limited to MIN_SPEED .. MAX_SPEED
+     */
+    public void set_speed(float speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    public float get_speed() {
+        return this.speed;
+    }
+
+    public void set_paused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public boolean is_paused() {
+        return this.paused;
+    }
+
+    /**
+     * Moves the replay to a point of the recording; can be called before the player is started
+     *
+     * @param time    - ms since the start of the recording
+     */
+    public void seek(int time) {
+        this.seek_request = Math.max(0, time);
+    }
+
+    /**
+     * @return    - ms since the start of the recording of the last replayed packet
+     */
+    public int get_position() {
+        return this.position;
+    }
+
+    /**
+     * @return    - ms between the first and the last packet, 0 for recordings without packet times
+     */
+    public int get_duration() {
+        return this.duration;
+    }
+
+    /**
+     * @return    - false until the recording has been indexed, and for recordings without packet times
+     */
+    public boolean is_seekable() {
+        return this.index != null;
+    }
+
     public void run() {
+        try {
+            if ( XPlaneFlightSessionIndex.is_indexable(this.filename) ) {
+                this.index = new XPlaneFlightSessionIndex(this.filename);
+                this.duration = this.index.get_duration();
+                if ( this.index.get_packet_count() == 0 ) {
+                    System.out.println("flight session recording is empty. will stop now ... ");
+                    keep_running = false;
+                }
+                replay_indexed();
+            } else {
+                replay_sequential();
+            }
+        } catch (Exception e) {
+            System.out.print("could not replay flight session (" + e.toString() + "). will stop now ... ");
+            keep_running = false;
+        } finally {
+            if (this.index != null) {
+                this.index.close();
+            }
+        }
+        System.out.println("Flight Session player stopped");
+    }
+
+    /**
+     * Replays the recording through its index, looping from the start at the end
+     */
+    private void replay_indexed() throws Exception {
+        if ( this.seek_request < 0 ) {
+            this.seek_request = 0;
+        }
+        while (this.keep_running) {
+            int request = this.seek_request;
+            if ( request >= 0 ) {
+                this.seek_request = -1;
+                move_to(request);
+                continue;
+            }
+            if ( this.chunk_pos >= this.chunk.limit() ) {
+                if ( this.chunk_nr + 1 >= this.index.get_chunk_count() ) {
+                    // reached end of recording, start again
+                    this.seek_request = 0;
+                } else {
+                    load_chunk(this.chunk_nr + 1);
+                    this.chunk_pos = 0;
+                }
+                continue;
+            }
+            int time = this.chunk.getInt(this.chunk_pos);
+            if ( wait_for(time) ) {
+                send_packet(this.chunk_pos);
+                this.position = time;
+                this.chunk_pos += XPlaneFlightSessionRecorder.PACKET_HEADER_SIZE + (this.chunk.getShort(this.chunk_pos + 4) & 0xFFFF);
+            }
+        }
+    }
+
+    /**
+     * Restores the state at the nearest keyframe, and sends the packets up to time without pacing
+     */
+    private void move_to(int time) throws Exception {
+        time = Math.min(time, this.duration);
+        XPlaneFlightSessionIndex.Keyframe keyframe = this.index.find_keyframe(time);
+        if ( keyframe == null ) {
+            return;
+        }
+        // the DLT1 sequence numbers start again from here, they are neither lost nor reordered
+        for (int i=0;i<this.sim_data_observers.size();i++) {
+            if ( this.sim_data_observers.get(i) instanceof XPlaneDataPacketDecoder ) {
+                ((XPlaneDataPacketDecoder)this.sim_data_observers.get(i)).reset_delta_sequences();
+            }
+        }
+        keyframe.sim_data.position(0);
+        send(keyframe.sim_data);
+        for (int i=0; i<keyframe.other_packets.length; i++) {
+            load_chunk((int) (keyframe.other_packets[i] >>> 32));
+            send_packet((int) keyframe.other_packets[i]);
+        }
+        load_chunk(keyframe.chunk);
+        this.chunk_pos = keyframe.offset;
+        while ( this.keep_running && (this.chunk_pos < this.chunk.limit()) && (this.chunk.getInt(this.chunk_pos) < time) ) {
+            send_packet(this.chunk_pos);
+            this.chunk_pos += XPlaneFlightSessionRecorder.PACKET_HEADER_SIZE + (this.chunk.getShort(this.chunk_pos + 4) & 0xFFFF);
+            if ( (this.chunk_pos >= this.chunk.limit()) && (this.chunk_nr + 1 < this.index.get_chunk_count())
+                    && (this.index.get_chunk_first_time(this.chunk_nr + 1) < time) ) {
+                load_chunk(this.chunk_nr + 1);
+                this.chunk_pos = 0;
+            }
+        }
+        this.position = time;
+        set_clock(time);
+    }
+
+    private void set_clock(int time) {
+        this.clock_time = time;
+        this.clock_start = System.nanoTime();
+        this.clock_speed = this.speed;
+    }
+
+    /**
+     * @return    - the recording time that should be replayed now
+     */
+    private int clock() {
+        return this.clock_time + (int) ((System.nanoTime() - this.clock_start) * this.clock_speed / 1000000.0f);
+    }
+
+    /**
+     * Waits until the packet recorded at time is due
+     *
+     * @return    - false when a seek was requested or the player was stopped while waiting
+     */
+    private boolean wait_for(int time) {
+        while (this.keep_running && (this.seek_request < 0)) {
+            if ( this.paused ) {
+                // the clock stands still, and restarts at the current speed
+                set_clock(this.position);
+                this.clock_speed = 0.0f;
+                LockSupport.parkNanos(MAX_WAIT * 1000000L);
+            } else {
+                if ( this.speed != this.clock_speed ) {
+                    set_clock(clock());
+                }
+                int early = time - clock();
+                if ( early <= 0 ) {
+                    return true;
+                }
+                LockSupport.parkNanos(Math.min(MAX_WAIT, (long) (early / this.clock_speed) + 1) * 1000000L);
+            }
+        }
+        return false;
+    }
+
+    private void load_chunk(int chunk_nr) throws Exception {
+        if ( chunk_nr != this.chunk_nr ) {
+            this.index.read_chunk(chunk_nr, this.chunk);
+            this.chunk_nr = chunk_nr;
+        }
+    }
+
+    /**
+     * Sends the packet at offset in the current chunk
+     */
+    private void send_packet(int offset) throws Exception {
+        int length = this.chunk.getShort(offset + 4) & 0xFFFF;
+        int start = offset + XPlaneFlightSessionRecorder.PACKET_HEADER_SIZE;
+        int chunk_limit = this.chunk.limit();
+        this.chunk.limit(start + length).position(start);
+        this.packet.clear();
+        this.packet.put(this.chunk);
+        this.packet.flip();
+        this.chunk.limit(chunk_limit);
+        send(this.packet);
+    }
+
+    private void send(ByteBuffer sim_data) throws Exception {
+        for (int i=0;i<this.sim_data_observers.size();i++) {
+            sim_data.position(0);
+            ((XPlaneDataPacketObserver)this.sim_data_observers.get(i)).new_sim_data(sim_data);
+        }
+    }
+
+    /**
+     * Replays recordings that cannot be indexed, from the start, looping at the end
+     */
+    private void replay_sequential() throws Exception {
         while (this.keep_running) {
             try {
-                this.ois = new ObjectInputStream(new FileInputStream(this.filename));
-
-                try {
-                    while (this.keep_running) {
-                        byte[] sim_data = (byte[])ois.readObject();
-                        for (int i=0;i<this.sim_data_observers.size();i++) {
-                            ((XPlaneDataPacketObserver)this.sim_data_observers.get(i)).new_sim_data(sim_data, sim_data.length);
-                        }
-                        Thread.sleep(this.delay_between_packets);
-                        //System.out.print(".");
+                this.reader = new XPlaneFlightSessionReader(this.filename);
+                long packets = 0;
+
+                while (this.keep_running && this.reader.next_packet()) {
+                    packets++;
+                    send(this.reader.get_packet());
+                    while ( this.paused && this.keep_running ) {
+                        Thread.sleep(MAX_WAIT);
                     }
-                } catch (EOFException e) {
-                    // reached end of recording. ignore
+                    Thread.sleep((long) (this.delay_between_packets / this.speed));
                 }
-            } catch (Exception e) {
-                System.out.print("could not replay flight session (" + e.toString() + "). will stop now ... ");
-                keep_running = false;
+                if (packets == 0) {
+                    System.out.println("flight session recording is empty. will stop now ... ");
+                    keep_running = false;
+                }
+                // reached end of recording, start again
             } finally {
-                if (this.ois != null) {
+                if (this.reader != null) {
                     try {
-                        this.ois.close();
+                        this.reader.close();
                     } catch (Exception e) {
                         System.out.println("could not close flight session file (" + e.toString() + "). will stop now ... ");
                     }
                 }
             }
         }
-        System.out.println("Flight Session player stopped");
     }
 }
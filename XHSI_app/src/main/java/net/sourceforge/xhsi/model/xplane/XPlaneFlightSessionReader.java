@@ -0,0 +1,202 @@
+/**
+* XPlaneFlightSessionReader.java
+*
+* Reads the packets of a flight session recording one by one, in the format
+* written by XPlaneFlightSessionRecorder, or in the older format of one
+* serialized byte[] per packet, without timestamps.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+public class XPlaneFlightSessionReader {
+
+    // java.io.ObjectStreamConstants.STREAM_MAGIC
+    private static final short SERIALIZED_MAGIC = (short) 0xACED;
+
+    private String filename;
+    private FileChannel channel = null;
+    private ObjectInputStream ois = null;
+    private long start_time = 0;
+
+    private ByteBuffer chunk_header = ByteBuffer.allocate(XPlaneFlightSessionRecorder.CHUNK_HEADER_SIZE);
+    private byte[] stored = new byte[XPlaneFlightSessionRecorder.CHUNK_SIZE];
+    private ByteBuffer chunk = ByteBuffer.allocate(XPlaneFlightSessionRecorder.CHUNK_SIZE);
+    private Inflater inflater = new Inflater();
+
+    // the current packet, from position 0 to its limit
+    private ByteBuffer packet = ByteBuffer.allocate(0xFFFF);
+    private int timestamp = 0;
+
+
+    public XPlaneFlightSessionReader(String filename) throws IOException {
+        this.filename = filename;
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        ByteBuffer file_header = ByteBuffer.allocate(XPlaneFlightSessionRecorder.FILE_HEADER_SIZE);
+        read_fully(file_header);
+        file_header.flip();
+        if ( (file_header.remaining() >= 2) && (file_header.getShort(0) == SERIALIZED_MAGIC) ) {
+            this.channel.close();
+            this.channel = null;
+            this.ois = new ObjectInputStream(new FileInputStream(filename));
+        } else if ( (file_header.remaining() < XPlaneFlightSessionRecorder.FILE_HEADER_SIZE)
+                || (file_header.getInt(0) != XPlaneFlightSessionRecorder.FILE_MAGIC) ) {
+            this.channel.close();
+            throw new IOException(filename + " is not a flight session recording");
+        } else if ( file_header.getInt(4) > XPlaneFlightSessionRecorder.FORMAT_VERSION ) {
+            this.channel.close();
+            throw new IOException(filename + " was recorded by a newer version of XHSI");
+        } else {
+            this.start_time = file_header.getLong(8);
+        }
+        this.chunk.limit(0);
+    }
+
+
+    /**
+     * @return    - false for recordings in the older format, which has no packet times
+     */
+    public boolean has_timestamps() {
+        return this.ois == null;
+    }
+
+
+    /**
+     * @return    - start of the recording, in ms since 1970
+     */
+    public long get_start_time() {
+        return this.start_time;
+    }
+
+
+    /**
+     * Moves to the next packet
+     *
+     * @return    - false at the end of the recording
+     */
+    public boolean next_packet() throws IOException {
+        if ( this.ois != null ) {
+            return next_serialized_packet();
+        }
+        if ( ! this.chunk.hasRemaining() && ! next_chunk() ) {
+            return false;
+        }
+        this.timestamp = this.chunk.getInt();
+        int length = this.chunk.getShort() & 0xFFFF;
+        int chunk_limit = this.chunk.limit();
+        this.chunk.limit(this.chunk.position() + length);
+        this.packet.clear();
+        this.packet.put(this.chunk);
+        this.packet.flip();
+        this.chunk.limit(chunk_limit);
+        return true;
+    }
+
+
+    private boolean next_serialized_packet() throws IOException {
+        try {
+            byte[] sim_data = (byte[]) this.ois.readObject();
+            this.packet = ByteBuffer.wrap(sim_data);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } catch (ClassNotFoundException e) {
+            throw new IOException(this.filename + " is not a flight session recording");
+        }
+    }
+
+
+    private boolean next_chunk() throws IOException {
+        // skip empty chunks, stop at the end of the file or at a truncated chunk
+        do {
+            this.chunk_header.clear();
+            read_fully(this.chunk_header);
+            if ( this.chunk_header.hasRemaining() || (this.chunk_header.getInt(0) != XPlaneFlightSessionRecorder.CHUNK_MAGIC) ) {
+                return false;
+            }
+            int compression = this.chunk_header.getInt(4);
+            int raw_length = this.chunk_header.getInt(20);
+            int stored_length = this.chunk_header.getInt(24);
+            if ( (raw_length > this.chunk.capacity()) || (stored_length > this.stored.length) ) {
+                throw new IOException("Corrupt chunk in " + this.filename);
+            }
+            ByteBuffer stored_bytes = ByteBuffer.wrap(this.stored, 0, stored_length);
+            read_fully(stored_bytes);
+            if ( stored_bytes.hasRemaining() ) {
+                return false;
+            }
+            this.chunk.clear();
+            if ( compression == XPlaneFlightSessionRecorder.COMPRESSION_DEFLATE ) {
+                try {
+                    this.inflater.reset();
+                    this.inflater.setInput(this.stored, 0, stored_length);
+                    if ( this.inflater.inflate(this.chunk.array(), 0, raw_length) != raw_length ) {
+                        throw new IOException("Corrupt chunk in " + this.filename + " (inflated chunk too short)");
+                    }
+                } catch (DataFormatException dfe) {
+                    throw new IOException("Corrupt chunk in " + this.filename + " (" + dfe.getMessage() + ")");
+                }
+            } else {
+                if ( raw_length != stored_length ) {
+                    throw new IOException("Corrupt chunk in " + this.filename);
+                }
+                System.arraycopy(this.stored, 0, this.chunk.array(), 0, raw_length);
+            }
+            this.chunk.limit(raw_length);
+        } while ( ! this.chunk.hasRemaining() );
+        return true;
+    }
+
+
+    private void read_fully(ByteBuffer buffer) throws IOException {
+        while ( buffer.hasRemaining() && (this.channel.read(buffer) >= 0) ) { }
+    }
+
+
+    /**
+     * @return    - the current packet, from position 0 to its limit; only valid until the next call to next_packet()
+     */
+    public ByteBuffer get_packet() {
+        return this.packet;
+    }
+
+
+    /**
+     * @return    - time of the current packet, in ms since the start of the recording
+     */
+    public int get_timestamp() {
+        return this.timestamp;
+    }
+
+
+    public void close() throws IOException {
+        if ( this.channel != null ) this.channel.close();
+        if ( this.ois != null ) this.ois.close();
+        this.inflater.end();
+    }
+
+}
@@ -1,87 +1,303 @@
 /**
 * XPlaneFlightSessionRecorder.java
-* 
+*
 * Records the data packets received by XPlaneUDPReceiver and writes them to
-* a file. The data in the file can then be replayed with 
+* a file. The data in the file can then be replayed with
 * XPlaneFlightSessionPlayer.
-* 
+*
+* The packets are collected in chunks of up to CHUNK_SIZE bytes, or of one
+* second, which are compressed and written by the recorder's own thread, so
+* that recording never holds up the reception of packets. When the writer
+* cannot keep up, packets are dropped rather than queued without limit.
+*
+* File format, all numbers big-endian :
+*   file header   : "XFSR", format version, start of the recording (ms since 1970, long)
+*   then chunks   : "CHNK", compression, number of packets, time of the first and of the
+*                   last packet (ms since the start), raw length, stored length,
+*                   followed by the stored (raw or deflated) bytes
+*   raw chunk     : per packet its time (ms since the start), its length (unsigned short)
+*                   and the packet itself
+*
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
-* 
+*
 * This program is free software; you can redistribute it and/or
 * modify it under the terms of the GNU General Public License
-* as published by the Free Software Foundation; either version 2 
+* as published by the Free Software Foundation; either version 2
 * of the License, or (at your option) any later version.
 *
 * This library is distributed in the hope that it will be useful,
 * but WITHOUT ANY WARRANTY; without even the implied warranty of
 * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
 * GNU General Public License for more details.
-* 
+*
 * You should have received a copy of the GNU Lesser General Public
 * License along with this library; if not, write to the Free Software
 * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
 */
 package net.sourceforge.xhsi.model.xplane;
 
-import java.io.FileOutputStream;
-import java.io.ObjectOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import net.sourceforge.xhsi.StoppableThread;
+
 
+public class XPlaneFlightSessionRecorder extends StoppableThread implements XPlaneDataPacketObserver {
 
-public class XPlaneFlightSessionRecorder implements XPlaneDataPacketObserver {
+    public static final int FILE_MAGIC = XPlaneDataPacketDecoder.packet_id("XFSR");
+    public static final int FORMAT_VERSION = 1;
+    public static final int FILE_HEADER_SIZE = 16;
+    public static final int CHUNK_MAGIC = XPlaneDataPacketDecoder.packet_id("CHNK");
+    public static final int CHUNK_HEADER_SIZE = 28;
+    public static final int PACKET_HEADER_SIZE = 6;
+    public static final int COMPRESSION_NONE = 0;
+    public static final int COMPRESSION_DEFLATE = 1;
+
+    public static final int CHUNK_SIZE = 65536;
+    private static final int CHUNK_BUFFERS = 4;
+    private static final long CHUNK_INTERVAL = 1000; // ms
 
     String filename;
     int recording_rate;
+    boolean compressed;
     int data_frame_counter;
     long time_at_begin_of_recording;
-    ObjectOutputStream oos;
-    boolean recording = false;
+    volatile boolean recording = false;
+
+    // chunks being filled by the receiver, and written by the recorder thread
+    private ArrayBlockingQueue<ByteBuffer> free_chunks = new ArrayBlockingQueue<ByteBuffer>(CHUNK_BUFFERS);
+    private ArrayBlockingQueue<ByteBuffer> full_chunks = new ArrayBlockingQueue<ByteBuffer>(CHUNK_BUFFERS);
+    private ByteBuffer current_chunk = null;
+    private long current_chunk_start;
+
+    // the last byte[] that was wrapped by new_sim_data(byte[], int)
+    private byte[] wrapped_array;
+    private ByteBuffer wrapped_packet;
+
+    // recorder thread
+    private FileChannel channel;
+    private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] deflated = new byte[CHUNK_SIZE + CHUNK_SIZE / 8];
+    private ByteBuffer chunk_header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+    private ByteBuffer[] chunk_parts = new ByteBuffer[2];
 
+    private volatile long recorded_packets = 0;
+    private volatile long dropped_packets = 0;
+    private volatile long raw_bytes = 0;
+    private volatile long written_bytes = 0;
 
-    public XPlaneFlightSessionRecorder(String filename, int recording_rate) {
+
+    public XPlaneFlightSessionRecorder(String filename, int recording_rate, boolean compressed) {
+        super();
         this.filename = filename;
         this.recording_rate = recording_rate;
+        this.compressed = compressed;
+        for (int i=0; i<CHUNK_BUFFERS; i++) {
+            this.free_chunks.add(ByteBuffer.allocate(CHUNK_SIZE));
+        }
+        this.keep_running = true;
+        this.setName("XHSI flight session recorder");
     }
 
 
+    // receiver thread
+
     public void new_sim_data(byte[] data, int length) throws Exception {
+        if ( data != this.wrapped_array ) {
+            this.wrapped_array = data;
+            this.wrapped_packet = ByteBuffer.wrap(data);
+        }
+        this.wrapped_packet.clear();
+        this.wrapped_packet.limit(length);
+        new_sim_data(this.wrapped_packet);
+    }
+
+
+    public void new_sim_data(ByteBuffer packet) throws Exception {
         if (recording) {
-        	// TODO: We could adjust length to reduce the file size
             this.data_frame_counter -= 1;
             if (this.data_frame_counter <= 0) {
-                System.out.print(".");
-                byte[] data_clone = new byte[data.length];
-                System.arraycopy(data,0,data_clone,0,data.length);
-                this.oos.writeObject(data_clone);
+                record(packet);
                 this.data_frame_counter = this.recording_rate;
             }
         }
     }
 
 
-    public void start() {
-        time_at_begin_of_recording = System.currentTimeMillis();
+    private synchronized void record(ByteBuffer packet) {
+        long now = System.currentTimeMillis();
+        int length = packet.remaining();
+        if ( length > 0xFFFF ) {
+            return;
+        }
+        if ( (this.current_chunk != null)
+                && ( (this.current_chunk.remaining() < PACKET_HEADER_SIZE + length) || (now - this.current_chunk_start >= CHUNK_INTERVAL) ) ) {
+            hand_off_chunk();
+        }
+        if ( this.current_chunk == null ) {
+            this.current_chunk = this.free_chunks.poll();
+            if ( this.current_chunk == null ) {
+                // the writer is behind; drop rather than hold up the receiver
+                this.dropped_packets++;
+                return;
+            }
+            this.current_chunk.clear();
+            this.current_chunk_start = now;
+        }
+        int position = packet.position();
+        this.current_chunk.putInt((int) (now - this.time_at_begin_of_recording));
+        this.current_chunk.putShort((short) length);
+        this.current_chunk.put(packet);
+        packet.position(position);
+        this.recorded_packets++;
+    }
+
+
+    /**
+     * Queues the current chunk for writing
+     */
+    private synchronized void hand_off_chunk() {
+        if ( this.current_chunk != null ) {
+            this.current_chunk.flip();
+            if ( this.current_chunk.hasRemaining() ) {
+                this.full_chunks.add(this.current_chunk);
+            } else {
+                this.free_chunks.add(this.current_chunk);
+            }
+            this.current_chunk = null;
+        }
+    }
+
+
+    private synchronized void hand_off_old_chunk() {
+        if ( (this.current_chunk != null) && (System.currentTimeMillis() - this.current_chunk_start >= CHUNK_INTERVAL) ) {
+            hand_off_chunk();
+        }
+    }
+
+
+    // recorder thread
+
+    public void run() {
         try {
+            this.channel = FileChannel.open(Paths.get(this.filename), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.time_at_begin_of_recording = System.currentTimeMillis();
+            ByteBuffer file_header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            file_header.putInt(FILE_MAGIC);
+            file_header.putInt(FORMAT_VERSION);
+            file_header.putLong(this.time_at_begin_of_recording);
+            file_header.flip();
+            write_fully(file_header, null);
             this.data_frame_counter = this.recording_rate;
-            this.oos = new ObjectOutputStream(new FileOutputStream(this.filename));
             this.recording = true;
             System.out.println("Recording started");
         } catch (Exception e) {
             System.out.println("Could not start recording! (" + e.toString() + ")");
+            return;
+        }
+
+        try {
+            while (this.keep_running) {
+                ByteBuffer chunk = this.full_chunks.poll(250, TimeUnit.MILLISECONDS);
+                if ( chunk != null ) {
+                    write_chunk(chunk);
+                    this.free_chunks.add(chunk);
+                } else {
+                    // write at least once per second, so that a crash does not lose much
+                    hand_off_old_chunk();
+                }
+            }
+            this.recording = false;
+            hand_off_chunk();
+            ByteBuffer chunk;
+            while ( (chunk = this.full_chunks.poll()) != null ) {
+                write_chunk(chunk);
+                this.free_chunks.add(chunk);
+            }
+            this.channel.close();
+            System.out.println("Recording stopped after " + (System.currentTimeMillis() - time_at_begin_of_recording)/1000 + "s, "
+                    + this.recorded_packets + " packets, " + this.raw_bytes / 1024 + "kB written as " + this.written_bytes / 1024 + "kB"
+                    + ( this.dropped_packets > 0 ? ", " + this.dropped_packets + " packets dropped" : "" ));
+        } catch (Exception e) {
+            this.recording = false;
+            System.out.println("Could not stop recording cleanly! (" + e.toString() + ")");
         }
+        System.out.println("Flight session recorder stopped");
     }
 
 
-    public void stop() {
-        if (recording) {
-            try {
-                this.oos.close();
-                System.out.println("\nRecording stopped after " + (System.currentTimeMillis() - time_at_begin_of_recording)/1000 + "s");
-            } catch (Exception e) {
-                System.out.println("Could not stop recording cleanly! (" + e.toString() + ")");
+    private void write_chunk(ByteBuffer chunk) throws IOException {
+
+        int raw_length = chunk.remaining();
+
+        // count the packets, and find the time of the first and of the last one
+        int nb_of_packets = 0;
+        int first_time = chunk.getInt(0);
+        int last_time = first_time;
+        int pos = 0;
+        while ( pos < raw_length ) {
+            last_time = chunk.getInt(pos);
+            pos += PACKET_HEADER_SIZE + (chunk.getShort(pos + 4) & 0xFFFF);
+            nb_of_packets++;
+        }
+
+        ByteBuffer stored = chunk;
+        int compression = COMPRESSION_NONE;
+        if ( this.compressed ) {
+            this.deflater.reset();
+            this.deflater.setInput(chunk.array(), 0, raw_length);
+            this.deflater.finish();
+            int deflated_length = 0;
+            while ( ! this.deflater.finished() && (deflated_length < raw_length) ) {
+                deflated_length += this.deflater.deflate(this.deflated, deflated_length, this.deflated.length - deflated_length);
+            }
+            if ( this.deflater.finished() && (deflated_length < raw_length) ) {
+                stored = ByteBuffer.wrap(this.deflated, 0, deflated_length);
+                compression = COMPRESSION_DEFLATE;
             }
-            recording = false;
         }
-        System.out.println("Flight session recorder stopped");
+
+        this.chunk_header.clear();
+        this.chunk_header.putInt(CHUNK_MAGIC);
+        this.chunk_header.putInt(compression);
+        this.chunk_header.putInt(nb_of_packets);
+        this.chunk_header.putInt(first_time);
+        this.chunk_header.putInt(last_time);
+        this.chunk_header.putInt(raw_length);
+        this.chunk_header.putInt(stored.remaining());
+        this.chunk_header.flip();
+        write_fully(this.chunk_header, stored);
+
+        this.raw_bytes += raw_length;
+
+    }
+
+
+    private void write_fully(ByteBuffer header, ByteBuffer data) throws IOException {
+        this.chunk_parts[0] = header;
+        this.chunk_parts[1] = ( data != null ) ? data : ByteBuffer.allocate(0);
+        while ( header.hasRemaining() || this.chunk_parts[1].hasRemaining() ) {
+            this.written_bytes += this.channel.write(this.chunk_parts);
+        }
+    }
+
+
+    public long get_recorded_packets() {
+        return this.recorded_packets;
+    }
+
+
+    /**
+     * @return    - packets that were not recorded because the writer could not keep up
+     */
+    public long get_dropped_packets() {
+        return this.dropped_packets;
     }
 
 }
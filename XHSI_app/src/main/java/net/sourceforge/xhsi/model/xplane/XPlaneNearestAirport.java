@@ -2,6 +2,8 @@
 * XPlaneNearestAirport.java
 * 
 * Continuously find the nearest airport in the background
+* (see NearestAirports), and have the taxi charts of the nearest airport
+* and of the FMS origin and destination read before they are displayed
 * 
 * Copyright (C) 2014  Marc Rogiers (marrog.123@gmail.com)
 * 
@@ -26,7 +28,10 @@ import java.util.logging.Logger;
 import net.sourceforge.xhsi.StoppableThread;
 import net.sourceforge.xhsi.XHSIPreferences;
 import net.sourceforge.xhsi.model.Aircraft;
-import net.sourceforge.xhsi.model.NavigationObjectRepository;
+import net.sourceforge.xhsi.model.FMS;
+import net.sourceforge.xhsi.model.FMSEntry;
+import net.sourceforge.xhsi.model.NearestAirports;
+import net.sourceforge.xhsi.model.aptnavdata.TaxiChartCache;
 
 
 public class XPlaneNearestAirport extends StoppableThread {
@@ -34,7 +39,6 @@ public class XPlaneNearestAirport extends StoppableThread {
     private static final Logger logger = Logger.getLogger("net.sourceforge.xhsi");
     
     private Aircraft aircraft;
-    private NavigationObjectRepository nor;
     private XHSIPreferences preferences;
 
 
@@ -42,7 +46,6 @@ public class XPlaneNearestAirport extends StoppableThread {
         super();
         
         this.aircraft = my_acf;
-        this.nor = NavigationObjectRepository.get_instance();
         this.preferences = XHSIPreferences.get_instance();
         
         this.keep_running = true;
@@ -54,9 +57,14 @@ public class XPlaneNearestAirport extends StoppableThread {
         while (this.keep_running) {
             
             if ( (this.aircraft.lat() != 0.0f) || (this.aircraft.lon() != 0.0f) ) {
-                this.aircraft.set_nearest_arpt(
-                    nor.find_nrst_arpt(this.aircraft.lat(), this.aircraft.lon(), this.aircraft.get_min_rwy_length(), true)
-                );
+                // usually only sorts the few airports around us again
+                NearestAirports nearest_arpts = this.aircraft.get_nearest_arpts();
+                nearest_arpts.update(this.aircraft.lat(), this.aircraft.lon(), this.aircraft.get_min_rwy_length());
+                this.aircraft.set_nearest_arpt( nearest_arpts.get_nearest() );
+
+                FMS fms = this.aircraft.get_avionics().get_fms();
+                String[] charts = { nearest_arpts.get_nearest(), get_arpt_name(fms.get_first_waypoint()), get_arpt_name(fms.get_last_waypoint()) };
+                TaxiChartCache.get_instance().prefetch(charts);
             }
 
             try { Thread.sleep(100l); } catch(Exception e) {}
@@ -67,4 +75,9 @@ public class XPlaneNearestAirport extends StoppableThread {
         
     }
 
+
+    private static String get_arpt_name(FMSEntry entry) {
+        return ( ( entry != null ) && ( entry.type == FMSEntry.ARPT ) ) ? entry.name : "";
+    }
+
 }
\ No newline at end of file
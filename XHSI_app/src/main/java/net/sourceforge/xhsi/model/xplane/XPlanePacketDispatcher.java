@@ -0,0 +1,297 @@
+/**
+* XPlanePacketDispatcher.java
+*
+* Decouples UDP reception from decoding. The dispatcher is registered as the
+* only XPlaneDataPacketObserver of a receiver, copies every packet into an
+* XPlanePacketRing and returns immediately. Its own thread then hands the
+* queued packets to the real observers (XPlaneDataPacketDecoder,
+* XPlaneFlightSessionRecorder).
+*
+* When the decoder falls behind, only sim data snapshots (ADCD, AVIO, ENGI,
+* STAT, AUXS) may be dropped, as each of them is superseded by the next one
+* of the same type. The plugin sends two different AVIO packets, the regular
+* one and the custom one for third party aircraft; they are told apart by
+* their first data point and never supersede each other. FMS, TCAS, CDU and
+* command packets are never dropped.
+* The ring is single-producer/single-consumer, so the receiver cannot take
+* back a slot that is already queued: when the ring is full, it is always
+* the incoming snapshot that is dropped.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import net.sourceforge.xhsi.StoppableThread;
+
+
+public class XPlanePacketDispatcher extends StoppableThread implements XPlaneDataPacketObserver {
+
+    public enum DropPolicy {
+        /** skip a queued sim data snapshot when a newer one of the same type is queued behind it,
+         *  and, like NEWEST, drop incoming snapshots when the ring is full */
+        COALESCE,
+        /** only drop incoming snapshots when the ring is full */
+        NEWEST,
+        /** never drop, the receiver waits for a free slot */
+        NONE
+    }
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    // the regular AVIO, then the custom AVIO
+    private static final int[] SNAPSHOT_IDS = {
+        XPlaneDataPacketDecoder.ADCD_ID,
+        XPlaneDataPacketDecoder.AVIO_ID,
+        XPlaneDataPacketDecoder.AVIO_ID,
+        XPlaneDataPacketDecoder.ENGI_ID,
+        XPlaneDataPacketDecoder.STAT_ID,
+        XPlaneDataPacketDecoder.AUXS_ID };
+
+    private XPlanePacketRing ring;
+    private DropPolicy drop_policy;
+    private ArrayList<XPlaneDataPacketObserver> packet_observers;
+
+    // number of queued packets per snapshot type
+    private AtomicIntegerArray queued_snapshots = new AtomicIntegerArray(SNAPSHOT_IDS.length);
+    private volatile boolean consumer_waiting = false;
+    private boolean overflowing = false;
+
+    // the last byte[] that was wrapped by new_sim_data(byte[], int)
+    private byte[] wrapped_array;
+    private ByteBuffer wrapped_packet;
+
+    // written by the receiver thread only
+    private volatile long queued_packets = 0;
+    private volatile long overflow_drops = 0;
+    private volatile long producer_waits = 0;
+    private volatile int high_water = 0;
+    // written by the dispatcher thread only
+    private volatile long dispatched_packets = 0;
+    private volatile long coalesced_packets = 0;
+
+
+    public XPlanePacketDispatcher(int queue_size, int packet_size, DropPolicy drop_policy) {
+        super();
+        this.ring = new XPlanePacketRing(queue_size, packet_size);
+        this.drop_policy = drop_policy;
+        this.packet_observers = new ArrayList<XPlaneDataPacketObserver>();
+        this.keep_running = true;
+        this.setName("XHSI packet dispatcher");
+    }
+
+
+    public void add_packet_observer(XPlaneDataPacketObserver observer) {
+        this.packet_observers.add(observer);
+    }
+
+
+    private static final int REGULAR_AVIO_SNAPSHOT = 1;
+    private static final int CUSTOM_AVIO_SNAPSHOT = 2;
+
+
+    /**
+     * @return    - the snapshot type of the packet of the given length, or -1 if it must not be dropped
+     */
+    private static int snapshot_index(ByteBuffer packet, int length) {
+        int packet_id = packet.getInt(0);
+        if ( packet_id == XPlaneDataPacketDecoder.AVIO_ID ) {
+            // the regular AVIO always starts with AVIONICS_ON
+            if ( (length >= 12) && (packet.getInt(8) == XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_AVIONICS_ON) ) {
+                return REGULAR_AVIO_SNAPSHOT;
+            } else {
+                return CUSTOM_AVIO_SNAPSHOT;
+            }
+        }
+        for (int i=0; i<SNAPSHOT_IDS.length; i++) {
+            if ( SNAPSHOT_IDS[i] == packet_id ) return i;
+        }
+        return -1;
+    }
+
+
+    // receiver thread
+
+    public void new_sim_data(ByteBuffer packet) throws Exception {
+        int snapshot = snapshot_index(packet, packet.limit());
+        ByteBuffer slot = claim_slot(snapshot);
+        if ( slot != null ) {
+            int position = packet.position();
+            slot.put(packet);
+            packet.position(position);
+            publish_slot(slot, packet.getInt(0), snapshot);
+        }
+    }
+
+
+    public void new_sim_data(byte[] data, int length) throws Exception {
+        if ( data != this.wrapped_array ) {
+            this.wrapped_array = data;
+            this.wrapped_packet = ByteBuffer.wrap(data);
+        }
+        int snapshot = snapshot_index(this.wrapped_packet, length);
+        ByteBuffer slot = claim_slot(snapshot);
+        if ( slot != null ) {
+            slot.put(data, 0, length);
+            publish_slot(slot, this.wrapped_packet.getInt(0), snapshot);
+        }
+    }
+
+
+    /**
+     * @return    - a free slot, or null if the packet has to be dropped
+     */
+    private ByteBuffer claim_slot(int snapshot) {
+        ByteBuffer slot = this.ring.claim();
+        if ( slot == null ) {
+            if ( (snapshot >= 0) && (this.drop_policy != DropPolicy.NONE) ) {
+                this.overflow_drops++;
+                if ( ! this.overflowing ) {
+                    this.overflowing = true;
+                    logger.warning("Packet queue full, dropping sim data packets");
+                }
+                return null;
+            }
+            // wait for the dispatcher to free a slot
+            this.producer_waits++;
+            while ( (slot == null) && this.keep_running ) {
+                LockSupport.unpark(this);
+                LockSupport.parkNanos(50000L);
+                slot = this.ring.claim();
+            }
+        } else if ( this.overflowing ) {
+            this.overflowing = false;
+            logger.info("Packet queue no longer full");
+        }
+        return slot;
+    }
+
+
+    private void publish_slot(ByteBuffer slot, int packet_id, int snapshot) {
+        slot.flip();
+        if ( snapshot >= 0 ) {
+            this.queued_snapshots.incrementAndGet(snapshot);
+        }
+        this.ring.publish(packet_id);
+        this.queued_packets++;
+        int backlog = this.ring.size();
+        if ( backlog > this.high_water ) {
+            this.high_water = backlog;
+        }
+        if ( this.consumer_waiting ) {
+            LockSupport.unpark(this);
+        }
+    }
+
+
+    // dispatcher thread
+
+    public void run() {
+        logger.fine("Packet dispatcher started with " + this.ring.capacity() + " slots, drop policy " + this.drop_policy);
+        ByteBuffer slot;
+        while (this.keep_running) {
+            slot = this.ring.peek();
+            if ( slot == null ) {
+                this.consumer_waiting = true;
+                // check again, the receiver may have published just before we raised the flag
+                if ( this.ring.peek() == null ) {
+                    LockSupport.parkNanos(this, 1000000L);
+                }
+                this.consumer_waiting = false;
+                continue;
+            }
+
+            int snapshot = snapshot_index(slot, slot.limit());
+            boolean superseded = false;
+            if ( snapshot >= 0 ) {
+                superseded = (this.drop_policy == DropPolicy.COALESCE) && (this.queued_snapshots.get(snapshot) > 1);
+                this.queued_snapshots.decrementAndGet(snapshot);
+            }
+
+            if ( superseded ) {
+                this.coalesced_packets++;
+            } else {
+                for (int i=0; i<this.packet_observers.size(); i++) {
+                    try {
+                        slot.position(0);
+                        this.packet_observers.get(i).new_sim_data(slot);
+                    } catch (Exception e) {
+                        logger.warning("Caught error while dispatching a packet! (" + e.toString() + " / " + e.getMessage() + ")");
+                    }
+                }
+                this.dispatched_packets++;
+            }
+            this.ring.release();
+        }
+        logger.fine("Packet dispatcher stopped");
+    }
+
+
+    // counters
+
+    public long get_queued_packets() {
+        return this.queued_packets;
+    }
+
+
+    public long get_dispatched_packets() {
+        return this.dispatched_packets;
+    }
+
+
+    /**
+     * @return    - sim data packets that were skipped because a newer packet of the same type was queued
+     */
+    public long get_coalesced_packets() {
+        return this.coalesced_packets;
+    }
+
+
+    /**
+     * @return    - sim data packets that were dropped because the queue was full
+     */
+    public long get_overflow_drops() {
+        return this.overflow_drops;
+    }
+
+
+    /**
+     * @return    - how often the receiver had to wait for a free slot
+     */
+    public long get_producer_waits() {
+        return this.producer_waits;
+    }
+
+
+    public int get_backlog() {
+        return this.ring.size();
+    }
+
+
+    public int get_high_water() {
+        return this.high_water;
+    }
+
+
+    public int get_capacity() {
+        return this.ring.capacity();
+    }
+
+}
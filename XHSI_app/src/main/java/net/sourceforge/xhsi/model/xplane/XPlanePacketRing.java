@@ -0,0 +1,129 @@
+/**
+* XPlanePacketRing.java
+*
+* Lock-free single-producer/single-consumer ring of preallocated packet
+* slots. The UDP receiver thread is the only producer, XPlanePacketDispatcher
+* is the only consumer.
+*
+* Producer: claim() a slot, fill it, publish() it.
+* Consumer: peek() the oldest slot, use it, release() it.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class XPlanePacketRing {
+
+    private ByteBuffer[] slots;
+    private int[] slot_packet_id;
+    private int mask;
+
+    // next slot to be read, only advanced by the consumer
+    private AtomicLong head = new AtomicLong(0);
+    // next slot to be written, only advanced by the producer
+    private AtomicLong tail = new AtomicLong(0);
+
+
+    /**
+     * @param size         - number of slots, rounded up to a power of 2
+     * @param slot_size    - maximum packet length
+     */
+    public XPlanePacketRing(int size, int slot_size) {
+        int capacity = 1;
+        while ( capacity < size ) capacity <<= 1;
+        this.slots = new ByteBuffer[capacity];
+        this.slot_packet_id = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i=0; i<capacity; i++) {
+            this.slots[i] = ByteBuffer.allocateDirect(slot_size);
+        }
+    }
+
+
+    public int capacity() {
+        return this.slots.length;
+    }
+
+
+    /**
+     * @return    - the number of published slots that have not been released yet
+     */
+    public int size() {
+        return (int) (this.tail.get() - this.head.get());
+    }
+
+
+    // producer side
+
+    /**
+     * @return    - a cleared slot buffer to be filled, or null when the ring is full
+     */
+    public ByteBuffer claim() {
+        long t = this.tail.get();
+        if ( t - this.head.get() >= this.slots.length ) {
+            return null;
+        }
+        ByteBuffer slot = this.slots[(int) (t & this.mask)];
+        slot.clear();
+        return slot;
+    }
+
+
+    /**
+     * Makes the slot returned by the last claim() visible to the consumer.
+     * The slot buffer must have been flipped (position 0, limit = packet length).
+     */
+    public void publish(int packet_id) {
+        long t = this.tail.get();
+        this.slot_packet_id[(int) (t & this.mask)] = packet_id;
+        // the ordered write also publishes the slot contents
+        this.tail.lazySet(t + 1);
+    }
+
+
+    // consumer side
+
+    /**
+     * @return    - the oldest published slot, or null when the ring is empty
+     */
+    public ByteBuffer peek() {
+        long h = this.head.get();
+        if ( h >= this.tail.get() ) {
+            return null;
+        }
+        return this.slots[(int) (h & this.mask)];
+    }
+
+
+    /**
+     * @return    - the packet id of the slot returned by peek()
+     */
+    public int peek_packet_id() {
+        return this.slot_packet_id[(int) (this.head.get() & this.mask)];
+    }
+
+
+    /**
+     * Hands the slot returned by peek() back to the producer
+     */
+    public void release() {
+        this.head.lazySet(this.head.get() + 1);
+    }
+
+}
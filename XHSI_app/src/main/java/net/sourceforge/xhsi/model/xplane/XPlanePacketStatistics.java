@@ -0,0 +1,254 @@
+/**
+* XPlanePacketStatistics.java
+*
+* Registry of the XPlanePacketTypeStatistics of every packet type that was
+* received or decoded. The receivers, the decoder and the packet dispatcher
+* report to it; the StatusBar of the control window reads it, and it is
+* published to JMX as net.sourceforge.xhsi:type=PacketStatistics, with one
+* net.sourceforge.xhsi:type=PacketStatistics,packet=<type> per packet type.
+*
+* Looking up the counters of a packet type does not lock or allocate, so it
+* can be done for every packet.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+public class XPlanePacketStatistics implements XPlanePacketStatisticsMBean {
+
+    public static final String JMX_NAME = "net.sourceforge.xhsi:type=PacketStatistics";
+
+    // open addressing on the packet id; garbage packets beyond MAX_TYPES are all counted as "____"
+    private static final int TABLE_SIZE = 128;
+    private static final int MAX_TYPES = 64;
+    private static final int UNKNOWN_ID = XPlaneDataPacketDecoder.packet_id("____");
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    private AtomicReferenceArray<XPlanePacketTypeStatistics> table = new AtomicReferenceArray<XPlanePacketTypeStatistics>(TABLE_SIZE);
+    private volatile XPlanePacketTypeStatistics[] types = new XPlanePacketTypeStatistics[0];
+    private XPlanePacketDispatcher dispatcher = null;
+    private MBeanServer mbean_server = null;
+
+
+    private static XPlanePacketStatistics single_instance = new XPlanePacketStatistics();
+
+
+    public static XPlanePacketStatistics get_instance() {
+        return XPlanePacketStatistics.single_instance;
+    }
+
+
+    private XPlanePacketStatistics() {
+        try {
+            this.mbean_server = ManagementFactory.getPlatformMBeanServer();
+            this.mbean_server.registerMBean(this, new ObjectName(JMX_NAME));
+        } catch (Exception e) {
+            logger.warning("Could not publish the packet statistics to JMX (" + e.toString() + ")");
+            this.mbean_server = null;
+        }
+    }
+
+
+    /**
+     * @return    - the four characters of a packet id, other characters replaced by '_'
+     */
+    public static String packet_type(int packet_id) {
+        char[] type = new char[4];
+        for (int i=0; i<4; i++) {
+            int c = (packet_id >>> (24 - i * 8)) & 0xFF;
+            type[i] = ( Character.isLetterOrDigit(c) ) ? (char) c : '_';
+        }
+        return new String(type);
+    }
+
+
+    /**
+     * @return    - the counters of a packet type, created on first use
+     */
+    public XPlanePacketTypeStatistics get(int packet_id) {
+        int slot = (packet_id * 0x9E3779B1) >>> 25;
+        for (int i=0; i<TABLE_SIZE; i++) {
+            XPlanePacketTypeStatistics entry = this.table.get((slot + i) & (TABLE_SIZE - 1));
+            if ( entry == null ) {
+                return add(packet_id);
+            } else if ( entry.get_packet_id() == packet_id ) {
+                return entry;
+            }
+        }
+        return add(packet_id);
+    }
+
+
+    /**
+     * Counts a packet that was just received, from the receiver thread
+     */
+    public void packet_received(byte[] data, int length) {
+        if ( length >= 4 ) {
+            int packet_id = ( (data[0] & 0xFF) << 24 ) | ( (data[1] & 0xFF) << 16 ) | ( (data[2] & 0xFF) << 8 ) | ( data[3] & 0xFF );
+            get(packet_id).packet_received(length, System.nanoTime());
+        }
+    }
+
+
+    /**
+     * Counts a packet that was just received, from position 0 to the limit of the buffer
+     */
+    public void packet_received(ByteBuffer packet) {
+        if ( packet.limit() >= 4 ) {
+            get(packet.getInt(0)).packet_received(packet.limit(), System.nanoTime());
+        }
+    }
+
+
+    private synchronized XPlanePacketTypeStatistics add(int packet_id) {
+        if ( (this.types.length >= MAX_TYPES) && (packet_id != UNKNOWN_ID) ) {
+            return get(UNKNOWN_ID);
+        }
+        int slot = (packet_id * 0x9E3779B1) >>> 25;
+        for (int i=0; i<TABLE_SIZE; i++) {
+            int index = (slot + i) & (TABLE_SIZE - 1);
+            XPlanePacketTypeStatistics entry = this.table.get(index);
+            if ( entry == null ) {
+                entry = new XPlanePacketTypeStatistics(packet_id);
+                XPlanePacketTypeStatistics[] new_types = new XPlanePacketTypeStatistics[this.types.length + 1];
+                System.arraycopy(this.types, 0, new_types, 0, this.types.length);
+                new_types[this.types.length] = entry;
+                this.types = new_types;
+                this.table.set(index, entry);
+                register(entry);
+                return entry;
+            } else if ( entry.get_packet_id() == packet_id ) {
+                // added by another thread in the meantime
+                return entry;
+            }
+        }
+        return null;
+    }
+
+
+    private void register(XPlanePacketTypeStatistics entry) {
+        if ( this.mbean_server != null ) {
+            try {
+                this.mbean_server.registerMBean(entry, new ObjectName(JMX_NAME + ",packet=" + entry.getPacketType()));
+            } catch (Exception e) {
+                logger.fine("Could not publish the statistics of " + entry.getPacketType() + " packets to JMX (" + e.toString() + ")");
+            }
+        }
+    }
+
+
+    /**
+     * @return    - the counters of all packet types seen so far, in order of arrival
+     */
+    public XPlanePacketTypeStatistics[] get_packet_types() {
+        return this.types;
+    }
+
+
+    public void set_dispatcher(XPlanePacketDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+
+    // MBean
+
+    public String[] getPacketTypes() {
+        XPlanePacketTypeStatistics[] current = this.types;
+        String[] names = new String[current.length];
+        for (int i=0; i<current.length; i++) {
+            names[i] = current[i].getPacketType();
+        }
+        return names;
+    }
+
+
+    public long getReceivedPackets() {
+        long total = 0;
+        XPlanePacketTypeStatistics[] current = this.types;
+        for (int i=0; i<current.length; i++) {
+            total += current[i].getReceivedPackets();
+        }
+        return total;
+    }
+
+
+    public long getReceivedBytes() {
+        long total = 0;
+        XPlanePacketTypeStatistics[] current = this.types;
+        for (int i=0; i<current.length; i++) {
+            total += current[i].getReceivedBytes();
+        }
+        return total;
+    }
+
+
+    public long getLostPackets() {
+        long total = 0;
+        XPlanePacketTypeStatistics[] current = this.types;
+        for (int i=0; i<current.length; i++) {
+            total += current[i].getLostPackets();
+        }
+        return total;
+    }
+
+
+    public long getReorderedPackets() {
+        long total = 0;
+        XPlanePacketTypeStatistics[] current = this.types;
+        for (int i=0; i<current.length; i++) {
+            total += current[i].getReorderedPackets();
+        }
+        return total;
+    }
+
+
+    public long getQueueOverflowDrops() {
+        return ( this.dispatcher != null ) ? this.dispatcher.get_overflow_drops() : 0;
+    }
+
+
+    public long getQueueCoalescedPackets() {
+        return ( this.dispatcher != null ) ? this.dispatcher.get_coalesced_packets() : 0;
+    }
+
+
+    public int getQueueBacklog() {
+        return ( this.dispatcher != null ) ? this.dispatcher.get_backlog() : 0;
+    }
+
+
+    public int getQueueHighWater() {
+        return ( this.dispatcher != null ) ? this.dispatcher.get_high_water() : 0;
+    }
+
+
+    public void reset() {
+        XPlanePacketTypeStatistics[] current = this.types;
+        for (int i=0; i<current.length; i++) {
+            current[i].reset();
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+/**
+* XPlanePacketTypeStatistics.java
+*
+* Reception counters of one packet type : packets and bytes received,
+* decode time, lost and reordered packets (for packets with a sequence
+* number), and the inter-arrival jitter.
+*
+* Each counter has a single writer: arrivals are counted by the UDP receiver
+* thread, decode time and sequence numbers by the thread that runs the
+* XPlaneDataPacketDecoder. The getters may be called from any thread.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+public class XPlanePacketTypeStatistics implements XPlanePacketTypeStatisticsMBean {
+
+    // upper bounds of the jitter histogram buckets in ms, the last bucket has no upper bound
+    public static final int[] JITTER_BUCKETS = { 1, 2, 5, 10, 20, 50, 100 };
+
+    // a packet that is older than this is taken for a restart of the sender
+    public static final int REORDER_WINDOW = 64;
+
+    private int packet_id;
+    private String packet_type;
+
+    // receiver thread
+    private volatile long received_packets = 0;
+    private volatile long received_bytes = 0;
+    private volatile long last_arrival = 0; // ns
+    private volatile long total_interval = 0; // ns
+    private long last_interval = -1; // ns
+    private volatile double jitter = 0.0; // ns
+    private AtomicLongArray jitter_histogram = new AtomicLongArray(JITTER_BUCKETS.length + 1);
+
+    // decoder thread
+    private volatile long decoded_packets = 0;
+    private volatile long total_decode_time = 0; // ns
+    private volatile long max_decode_time = 0; // ns
+    private volatile long sequenced_packets = 0;
+    private volatile long lost_packets = 0;
+    private volatile long reordered_packets = 0;
+    private int next_sequence = 0;
+    private boolean sequence_known = false;
+
+
+    public XPlanePacketTypeStatistics(int packet_id) {
+        this.packet_id = packet_id;
+        this.packet_type = XPlanePacketStatistics.packet_type(packet_id);
+    }
+
+
+    public int get_packet_id() {
+        return this.packet_id;
+    }
+
+
+    // receiver thread
+
+    public void packet_received(int length, long now) {
+        if ( this.received_packets > 0 ) {
+            long interval = now - this.last_arrival;
+            this.total_interval += interval;
+            if ( this.last_interval >= 0 ) {
+                // RFC 3550 interarrival jitter
+                long deviation = Math.abs(interval - this.last_interval);
+                this.jitter += (deviation - this.jitter) / 16.0;
+                this.jitter_histogram.incrementAndGet(jitter_bucket(deviation));
+            }
+            this.last_interval = interval;
+        }
+        this.last_arrival = now;
+        this.received_bytes += length;
+        this.received_packets++;
+    }
+
+
+    private static int jitter_bucket(long deviation) {
+        long millis = deviation / 1000000L;
+        int i = 0;
+        while ( (i < JITTER_BUCKETS.length) && (millis >= JITTER_BUCKETS[i]) ) i++;
+        return i;
+    }
+
+
+    // decoder thread
+
+    public void packet_decoded(long decode_time) {
+        this.total_decode_time += decode_time;
+        if ( decode_time > this.max_decode_time ) {
+            this.max_decode_time = decode_time;
+        }
+        this.decoded_packets++;
+    }
+
+
+    /**
+     * @param keyframe    - a keyframe is never taken for a reordered packet: the sender sends one
+     *                      after a restart, and its sequence may then be just below the old one
+     * @return    - the number of packets missing before this one, 0 if it was the expected one,
+     *              or a negative number if it arrived after a more recent packet
+     */
+    public int sequence_received(int sequence, boolean keyframe) {
+        this.sequenced_packets++;
+        if ( ! this.sequence_known ) {
+            this.sequence_known = true;
+            this.next_sequence = sequence + 1;
+            return 0;
+        }
+        int gap = sequence - this.next_sequence;
+        if ( (gap < -REORDER_WINDOW) || (keyframe && (gap < 0)) ) {
+            // the sender was restarted
+            this.next_sequence = sequence + 1;
+            return 0;
+        } else if ( gap >= 0 ) {
+            this.lost_packets += gap;
+            this.next_sequence = sequence + 1;
+        } else {
+            // it was counted as lost when the next one arrived
+            this.reordered_packets++;
+            if ( this.lost_packets > 0 ) this.lost_packets--;
+        }
+        return gap;
+    }
+
+
+    /**
+     * Takes the next sequence number as the first one, without counting lost or reordered packets
+     */
+    public void forget_sequence() {
+        this.sequence_known = false;
+    }
+
+
+    // MBean
+
+    public String getPacketType() {
+        return this.packet_type;
+    }
+
+
+    public long getReceivedPackets() {
+        return this.received_packets;
+    }
+
+
+    public long getReceivedBytes() {
+        return this.received_bytes;
+    }
+
+
+    public long getDecodedPackets() {
+        return this.decoded_packets;
+    }
+
+
+    public double getAverageDecodeMicros() {
+        long decoded = this.decoded_packets;
+        return ( decoded > 0 ) ? this.total_decode_time / 1000.0 / decoded : 0.0;
+    }
+
+
+    public double getMaxDecodeMicros() {
+        return this.max_decode_time / 1000.0;
+    }
+
+
+    /**
+     * @return    - packets that carried a sequence number
+     */
+    public long getSequencedPackets() {
+        return this.sequenced_packets;
+    }
+
+
+    public long getLostPackets() {
+        return this.lost_packets;
+    }
+
+
+    public long getReorderedPackets() {
+        return this.reordered_packets;
+    }
+
+
+    public double getLossPercent() {
+        long lost = this.lost_packets;
+        long expected = this.sequenced_packets + lost;
+        return ( expected > 0 ) ? 100.0 * lost / expected : 0.0;
+    }
+
+
+    public double getAverageIntervalMillis() {
+        long received = this.received_packets;
+        return ( received > 1 ) ? this.total_interval / 1000000.0 / (received - 1) : 0.0;
+    }
+
+
+    public double getJitterMillis() {
+        return this.jitter / 1000000.0;
+    }
+
+
+    public long[] getJitterHistogram() {
+        long[] histogram = new long[this.jitter_histogram.length()];
+        for (int i=0; i<histogram.length; i++) {
+            histogram[i] = this.jitter_histogram.get(i);
+        }
+        return histogram;
+    }
+
+
+    /**
+     * @return    - ms since the last packet of this type arrived, -1 if none arrived yet
+     */
+    public long getMillisSinceLastPacket() {
+        if ( this.received_packets == 0 ) return -1;
+        return (System.nanoTime() - this.last_arrival) / 1000000L;
+    }
+
+
+    /**
+     * Clears the counters; a packet that is being counted at the same time may be lost
+     */
+    public void reset() {
+        this.received_packets = 0;
+        this.received_bytes = 0;
+        this.total_interval = 0;
+        this.last_interval = -1;
+        this.jitter = 0.0;
+        for (int i=0; i<this.jitter_histogram.length(); i++) {
+            this.jitter_histogram.set(i, 0);
+        }
+        this.decoded_packets = 0;
+        this.total_decode_time = 0;
+        this.max_decode_time = 0;
+        this.sequenced_packets = 0;
+        this.lost_packets = 0;
+        this.reordered_packets = 0;
+    }
+
+}
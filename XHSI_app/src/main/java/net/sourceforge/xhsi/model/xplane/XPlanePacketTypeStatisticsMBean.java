@@ -0,0 +1,55 @@
+/**
+* XPlanePacketTypeStatisticsMBean.java
+*
+* JMX view of the reception counters of one packet type.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+
+public interface XPlanePacketTypeStatisticsMBean {
+
+    public String getPacketType();
+
+    public long getReceivedPackets();
+
+    public long getReceivedBytes();
+
+    public long getDecodedPackets();
+
+    public double getAverageDecodeMicros();
+
+    public double getMaxDecodeMicros();
+
+    public long getSequencedPackets();
+
+    public long getLostPackets();
+
+    public long getReorderedPackets();
+
+    public double getLossPercent();
+
+    public double getAverageIntervalMillis();
+
+    public double getJitterMillis();
+
+    public long[] getJitterHistogram();
+
+    public long getMillisSinceLastPacket();
+
+    public void reset();
+
+}
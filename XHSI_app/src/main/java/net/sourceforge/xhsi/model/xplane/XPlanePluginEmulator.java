@@ -0,0 +1,294 @@
+/**
+* XPlanePluginEmulator.java
+*
+* Sends ADCD packets like XHSI_plugin does, with a made-up aircraft flying
+* circles, so that the UDP reception and the delta packets can be tried
+* without X-Plane. Like the plugin, it switches to DLT1/KEY1 packets when
+* XHSI sends it an XHSI_DELTA_PACKETS data point, and sends a keyframe every
+* KEYFRAME_INTERVAL packets or when XHSI asks for one.
+*
+* Usage: java -cp XHSI.jar net.sourceforge.xhsi.model.xplane.XPlanePluginEmulator
+*             [destination host] [destination port] [packets per second] [loss %]
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import net.sourceforge.xhsi.StoppableThread;
+
+
+public class XPlanePluginEmulator extends StoppableThread {
+
+    // same as the plugin's globals.h
+    public static final int PLUGIN_VERSION_NUMBER = 20012;
+    public static final int DELTA_PROTOCOL_VERSION = 1;
+    public static final int KEYFRAME_INTERVAL = 32;
+    public static final int DEFAULT_DEST_PORT = 49020;
+    public static final int DEFAULT_RECV_PORT = 49019;
+
+    // largest datagram the plugin sends, 8 + MAX_DATAPOINTS * 8
+    private static final int MAX_PACKET_SIZE = 1472;
+    // last sent values, floats at slot id, strings at slot 2000 + id - 10000
+    private static final int DELTA_SLOTS = 4000;
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    private DatagramChannel channel;
+    private InetSocketAddress destination;
+    private long packet_interval;
+    private int loss_percent;
+    private Random random = new Random();
+
+    private ByteBuffer sim_packet = ByteBuffer.allocate(MAX_PACKET_SIZE);
+    private ByteBuffer delta_packet = ByteBuffer.allocate(MAX_PACKET_SIZE);
+    private ByteBuffer incoming = ByteBuffer.allocate(MAX_PACKET_SIZE);
+
+    private volatile int delta_protocol = 0;
+    private volatile boolean keyframe_requested = false;
+    private int sequence = 0;
+    private int[] last_value = new int[DELTA_SLOTS];
+    private boolean[] last_sent = new boolean[DELTA_SLOTS];
+
+    private long cycle = 0;
+    private volatile long packets_sent = 0;
+    private volatile long bytes_sent = 0;
+
+
+    public XPlanePluginEmulator(InetAddress destination, int dest_port, int recv_port, int packets_per_second, int loss_percent) throws IOException {
+        super();
+        this.destination = new InetSocketAddress(destination, dest_port);
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(recv_port));
+        this.channel.configureBlocking(false);
+        this.packet_interval = 1000000000L / Math.max(1, packets_per_second);
+        this.loss_percent = loss_percent;
+        this.keep_running = true;
+        this.setName("XHSI plugin emulator");
+    }
+
+
+    public void run() {
+        logger.info("Plugin emulator sending to " + this.destination);
+        long next_packet = System.nanoTime();
+        while (this.keep_running) {
+            try {
+                receive_incoming();
+                create_adc_packet();
+                ByteBuffer packet = ( this.delta_protocol > 0 ) ? create_delta_packet() : this.sim_packet;
+                if ( this.random.nextInt(100) >= this.loss_percent ) {
+                    this.bytes_sent += this.channel.send(packet, this.destination);
+                    this.packets_sent++;
+                }
+            } catch (IOException ioe) {
+                logger.warning("Caught I/O error while emulating the plugin! (" + ioe.toString() + ")");
+            }
+            this.cycle++;
+            next_packet += this.packet_interval;
+            long wait = next_packet - System.nanoTime();
+            if ( wait > 0 ) {
+                try {
+                    Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                } catch (InterruptedException ie) {
+                    this.keep_running = false;
+                }
+            }
+        }
+        try {
+            this.channel.close();
+        } catch (IOException ioe) {
+            logger.warning("Could not close the emulator's channel (" + ioe.toString() + ")");
+        }
+    }
+
+
+    /**
+     * Data points sent by XHSI, with the same layout as the plugin's IncomingPacket
+     */
+    private void receive_incoming() throws IOException {
+        this.incoming.clear();
+        while ( this.channel.receive(this.incoming) != null ) {
+            this.incoming.flip();
+            int nb = ( this.incoming.remaining() >= 4 ) ? this.incoming.getInt(0) : 0;
+            nb = Math.min(nb, (this.incoming.limit() - 4) / 8);
+            for (int i=0; i<nb; i++) {
+                int id = this.incoming.getInt(4 + i * 8);
+                float value = this.incoming.getFloat(8 + i * 8);
+                if ( id == XPlaneSimDataRepository.XHSI_DELTA_PACKETS ) {
+                    int protocol = Math.min((int) value, DELTA_PROTOCOL_VERSION);
+                    if ( protocol != this.delta_protocol ) {
+                        logger.info("Delta packets protocol " + protocol);
+                    }
+                    this.delta_protocol = protocol;
+                    this.keyframe_requested = true;
+                }
+            }
+            this.incoming.clear();
+        }
+    }
+
+
+    private void put_point(int id, float value) {
+        this.sim_packet.putInt(id);
+        this.sim_packet.putFloat(value);
+    }
+
+
+    private void put_point(int id, String value) {
+        this.sim_packet.putInt(id);
+        for (int i=0; i<4; i++) {
+            this.sim_packet.put( (byte) ((i < value.length()) ? value.charAt(i) : 0) );
+        }
+    }
+
+
+    /**
+     * An aircraft flying a 3 minutes circle at 250 kts and FL100, with a few dozen
+     * data points that do not change, like most of a real ADCD packet
+     */
+    private void create_adc_packet() {
+        double t = this.cycle * this.packet_interval / 1.0e9;
+        double heading = (t * 2.0) % 360.0;
+        double rad = Math.toRadians(heading);
+
+        this.sim_packet.clear();
+        this.sim_packet.put(new byte[] { 'A', 'D', 'C', 'D' });
+        this.sim_packet.putInt(0);
+
+        put_point(XPlaneSimDataRepository.PLUGIN_VERSION_ID, (float) PLUGIN_VERSION_NUMBER);
+        put_point(XPlaneSimDataRepository.XHSI_DELTA_PACKETS, (float) DELTA_PROTOCOL_VERSION);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_GROUNDSPEED, 128.6f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_TRUE_AIRSPEED, 128.6f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_MAGPSI, (float) heading);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_HPATH, (float) heading);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_LATITUDE, (float) (50.9 + 0.06 * Math.sin(rad)));
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_LONGITUDE, (float) (4.48 - 0.095 * Math.cos(rad)));
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_PHI, 25.0f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_R, 2.0f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_MAGVAR, 0.0f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_ELEVATION, 3048.0f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_Y_AGL, 2990.0f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_THETA, 2.5f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_VPATH, 0.0f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_ALPHA, 2.5f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_POSITION_BETA, 0.0f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_FAILURES_ONGROUND_ANY, 0.0f);
+        put_point(XPlaneSimDataRepository.SIM_FLIGHTMODEL_FORCES_G_LOAD, 1.1f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_INDICATORS_AIRSPEED_KTS_PILOT, 215.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_INDICATORS_AIRSPEED_KTS_COPILOT, 215.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_INDICATORS_ALTITUDE_FT_PILOT, 10000.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_INDICATORS_ALTITUDE_FT_COPILOT, 10000.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_INDICATORS_VVI_FPM_PILOT, 0.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_INDICATORS_VVI_FPM_COPILOT, 0.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_ACTUATORS_BAROMETER_SETTING_IN_HG_PILOT, 29.92f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_GAUGES_ACTUATORS_BAROMETER_SETTING_IN_HG_COPILOT, 29.92f);
+        put_point(XPlaneSimDataRepository.SIM_GAUGES_FAILURES_PILOT, 0.0f);
+        put_point(XPlaneSimDataRepository.SIM_GAUGES_FAILURES_COPILOT, 0.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_AVIONICS_ON, 1.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_BATTERY_ON, 1.0f);
+        put_point(XPlaneSimDataRepository.SIM_TIME_ZULU_TIME_SEC, (float) (43200.0 + Math.floor(t)));
+        put_point(XPlaneSimDataRepository.SIM_TIME_LOCAL_TIME_SEC, (float) (46800.0 + Math.floor(t)));
+        put_point(XPlaneSimDataRepository.SIM_WEATHER_WIND_SPEED_KT, 15.0f);
+        put_point(XPlaneSimDataRepository.SIM_WEATHER_WIND_DIRECTION_DEGT, 270.0f);
+        put_point(XPlaneSimDataRepository.SIM_WEATHER_TEMPERATURE_AMBIENT_C, -5.0f);
+        put_point(XPlaneSimDataRepository.SIM_WEATHER_SPEED_SOUND_MS, 330.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_ALTITUDE, 10000.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_AIRSPEED, 250.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT_AUTOPILOT_HEADING_MAG, (float) heading);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_NAV1_FREQ_HZ, 11430.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_NAV2_FREQ_HZ, 11430.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_NAV1_OBS_DEGM, 250.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT_RADIOS_NAV2_OBS_DEGM, 70.0f);
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_RADIOS_INDICATORS_NAV1_NAV_ID, "BUB");
+        put_point(XPlaneSimDataRepository.SIM_COCKPIT2_RADIOS_INDICATORS_NAV2_NAV_ID, "BUB");
+        for (int i=XPlaneSimDataRepository.XHSI_DU_BRIGHT_PFD_CPT; i<=XPlaneSimDataRepository.XHSI_DU_BRIGHT_TABLET; i++) {
+            put_point(i, 1.0f);
+        }
+
+        this.sim_packet.putInt(4, (this.sim_packet.position() - 8) / 8);
+        this.sim_packet.flip();
+    }
+
+
+    /**
+     * Same as createDeltaPacket() in the plugin's packets.c
+     */
+    private ByteBuffer create_delta_packet() {
+        boolean keyframe = this.keyframe_requested || ( (this.sequence % KEYFRAME_INTERVAL) == 0 );
+        this.keyframe_requested = false;
+
+        this.delta_packet.clear();
+        this.delta_packet.put(keyframe ? new byte[] { 'K', 'E', 'Y', '1' } : new byte[] { 'D', 'L', 'T', '1' });
+        this.delta_packet.putInt(this.sim_packet.getInt(0));
+        this.delta_packet.putInt(this.sequence++);
+        this.delta_packet.putInt(0);
+
+        int nb = this.sim_packet.getInt(4);
+        int n = 0;
+        for (int i=0; i<nb; i++) {
+            int id = this.sim_packet.getInt(8 + i * 8);
+            int raw = this.sim_packet.getInt(12 + i * 8);
+            int slot = ( id >= 10000 ) ? 2000 + id - 10000 : id;
+            if ( keyframe || ! this.last_sent[slot] || (this.last_value[slot] != raw) ) {
+                this.delta_packet.putInt(id);
+                this.delta_packet.putInt(raw);
+                this.last_value[slot] = raw;
+                this.last_sent[slot] = true;
+                n++;
+            }
+        }
+        this.delta_packet.putInt(12, n);
+        this.delta_packet.flip();
+        return this.delta_packet;
+    }
+
+
+    public long get_packets_sent() {
+        return this.packets_sent;
+    }
+
+
+    public long get_bytes_sent() {
+        return this.bytes_sent;
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        String host = ( args.length > 0 ) ? args[0] : "127.0.0.1";
+        int port = ( args.length > 1 ) ? Integer.parseInt(args[1]) : DEFAULT_DEST_PORT;
+        int rate = ( args.length > 2 ) ? Integer.parseInt(args[2]) : 20;
+        int loss = ( args.length > 3 ) ? Integer.parseInt(args[3]) : 0;
+
+        XPlanePluginEmulator emulator = new XPlanePluginEmulator(InetAddress.getByName(host), port, DEFAULT_RECV_PORT, rate, loss);
+        emulator.start();
+        long packets = 0;
+        long bytes = 0;
+        while ( emulator.isAlive() ) {
+            Thread.sleep(10000);
+            logger.info("Sent " + (emulator.get_packets_sent() - packets) / 10 + " packets/s, "
+                    + (emulator.get_bytes_sent() - bytes) / 10 + " bytes/s");
+            packets = emulator.get_packets_sent();
+            bytes = emulator.get_bytes_sent();
+        }
+    }
+
+}
@@ -5,6 +5,15 @@
 * is updated by XPlaneDataPacketDecoder. Observers can subscribe to changes
 * in this repository. All observers are updated by calling the tick_updates
 * method of this repository.
+*
+* Values are stored in a working copy by the decoder thread. tick_updates
+* copies them into a frame and publishes it; readers only ever see published
+* frames. Three frames are rotated, so that the one being written is never
+* the published one nor the one pinned by the painting thread.
+*
+* The ids that changed since the previous tick are collected in a bitset.
+* Observers that were added with a set of ids are only updated when at least
+* one of these ids changed.
 * 
 * Copyright (C) 2007  Georg Gruetter (gruetter@gmail.com)
 * Copyright (C) 2009  Marc Rogiers (marrog.123@gmail.com)
@@ -26,6 +35,7 @@
 package net.sourceforge.xhsi.model.xplane;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.logging.Logger;
 
 import net.sourceforge.xhsi.model.Observer;
@@ -980,6 +990,9 @@ public class XPlaneSimDataRepository implements SimDataRepository {
     public static final int Z737_KEY_PRESS = 1801;
     public static final int Z737_ID_END = 1899;
     
+    // Delta packets protocol version supported by the plugin
+    public static final int XHSI_DELTA_PACKETS = 998;
+
     // Plugin Version
     public static final int PLUGIN_VERSION_ID = 999;
 
@@ -987,14 +1000,28 @@ public class XPlaneSimDataRepository implements SimDataRepository {
     // array with sim data for all sim data points defined above
     float[] sim_values_float = new float[1900];
     String[] sim_values_string = new String[1900];
-    // updated status and timestamp for all sim data
-    boolean[] sim_updated_float = new boolean[1900];
+    // timestamp for all sim data
     long[] sim_timestamp_float = new long[1900];
-    boolean[] sim_updated_string = new boolean[1900];
     long[] sim_timestamp_string = new long[1900];
+    // ids changed since the last tick; floats use bit id, strings bit STRING_BITS + id % 10000
+    private static final int STRING_BITS = 1900;
+    BitSet changed_ids = new BitSet(2 * STRING_BITS);
 
     long updates = 0;
     ArrayList<Observer> observers;
+    // the ids each observer depends on, null for all ids
+    ArrayList<BitSet> observer_ids;
+
+    private static class SimDataFrame {
+        float[] values_float = new float[1900];
+        String[] values_string = new String[1900];
+        long generation = 0;
+    }
+
+    SimDataFrame[] frames = { new SimDataFrame(), new SimDataFrame(), new SimDataFrame() };
+    volatile SimDataFrame published_frame;
+    volatile SimDataFrame pinned_frame;
+    volatile Thread pinning_thread;
     public static boolean replaying = false;
   
 //    private static XPlaneSimDataRepository single_instance;
@@ -1008,12 +1035,11 @@ public class XPlaneSimDataRepository implements SimDataRepository {
 
     public XPlaneSimDataRepository() {
         observers = new ArrayList<Observer>();
+        observer_ids = new ArrayList<BitSet>();
         for (int i=0; i<1800; i++) {
             sim_values_string[i] = "";
             sim_timestamp_string[i] = 0;
             sim_timestamp_float[i] = 0;
-            sim_updated_string[i] = false;
-            sim_updated_float[i] = false;
         }
         // Some data should be initialized with values different from 0
 
@@ -1046,6 +1072,13 @@ public class XPlaneSimDataRepository implements SimDataRepository {
         sim_values_float[SIM_COCKPIT2_SWITCHES_AUTO_BRAKE_LEVEL] = 1; // Auto-brake OFF
         sim_values_float[SIM_GAUGES_FAILURES_PILOT] = 0x36DB6;    // start with all instruments failed
         sim_values_float[SIM_GAUGES_FAILURES_COPILOT] = 0x36DB6;  // start with all instruments failed
+
+        // the first tick updates every observer
+        changed_ids.set(0, 2 * STRING_BITS);
+
+        copy_to_frame(frames[0]);
+        published_frame = frames[0];
+        pinned_frame = frames[0];
     }
 
     public boolean is_replaying() {
@@ -1054,22 +1087,46 @@ public class XPlaneSimDataRepository implements SimDataRepository {
 
     public void add_observer(Observer observer) {
         this.observers.add(observer);
+        this.observer_ids.add(null);
+    }
+
+    public void add_observer(Observer observer, BitSet ids) {
+        BitSet bits = new BitSet(2 * STRING_BITS);
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            bits.set(changed_bit(id));
+        }
+        this.observers.add(observer);
+        this.observer_ids.add(bits);
+    }
+
+    private static int changed_bit(int id) {
+        if ( ( id >= 0 ) && ( id < STRING_BITS ) ) {
+            return id;
+        } else if ( ( id >= 10000 ) && ( id < 10000 + STRING_BITS ) ) {
+            return STRING_BITS + (id - 10000);
+        } else {
+            // would land on the bit of another id
+            throw new IllegalArgumentException("No sim data with id " + id);
+        }
     }
 
     public void store_sim_float(int id, float value) {    	
     	if (sim_values_float[id] != value) {
     		sim_values_float[id] = value;
-    		sim_updated_float[id] = true;
+    		changed_ids.set(id);
     		sim_timestamp_float[id] = System.currentTimeMillis();
     	}      
     }
 
     public void store_sim_string(int id, String value) {
-        sim_values_string[id % 10000] = value;
+        if ( ! value.equals(sim_values_string[id % 10000]) ) {
+            sim_values_string[id % 10000] = value;
+            changed_ids.set(STRING_BITS + (id % 10000));
+        }
     }
 
     public float get_sim_float(int id) {
-        return sim_values_float[id];
+        return current_frame().values_float[id];
     }
 
     public long get_sim_float_timestamp(int id) {
@@ -1077,19 +1134,61 @@ public class XPlaneSimDataRepository implements SimDataRepository {
     }    
     
     public String get_sim_string(int id) {
-        return sim_values_string[id % 10000];
+        return current_frame().values_string[id % 10000];
     }
     
     public long get_sim_string_timestamp(int id) {
     	return sim_timestamp_string[id];
     }
 
+    private SimDataFrame current_frame() {
+        if ( Thread.currentThread() == this.pinning_thread ) {
+            return this.pinned_frame;
+        } else {
+            return this.published_frame;
+        }
+    }
+
+    private void copy_to_frame(SimDataFrame frame) {
+        System.arraycopy(sim_values_float, 0, frame.values_float, 0, sim_values_float.length);
+        System.arraycopy(sim_values_string, 0, frame.values_string, 0, sim_values_string.length);
+    }
+
+    public void pin_frame() {
+        this.pinning_thread = Thread.currentThread();
+        SimDataFrame frame;
+        do {
+            frame = this.published_frame;
+            this.pinned_frame = frame;
+            // tick_updates() may have started to re-use this frame before it saw our pin; try again
+        } while ( frame != this.published_frame );
+    }
+
+    public long get_frame_generation() {
+        return current_frame().generation;
+    }
+
     public void tick_updates() {
+        // write into the frame that is neither published nor pinned
+        SimDataFrame published = this.published_frame;
+        SimDataFrame pinned = this.pinned_frame;
+        SimDataFrame next = null;
+        for (int i=0; next==null; i++) {
+            if ( (frames[i] != published) && (frames[i] != pinned) ) next = frames[i];
+        }
+        copy_to_frame(next);
+        next.generation = published.generation + 1;
+        this.published_frame = next;
+
         this.updates += 1;
         for (int i=0; i<this.observers.size(); i++) {
-            logger.finest("Updating observer "+i);
-            ((Observer) this.observers.get(i)).update();
+            BitSet ids = this.observer_ids.get(i);
+            if ( (ids == null) || ids.intersects(this.changed_ids) ) {
+                logger.finest("Updating observer "+i);
+                ((Observer) this.observers.get(i)).update();
+            }
         }
+        this.changed_ids.clear();
     }
 
     public long get_nb_of_updates() {
@@ -0,0 +1,199 @@
+/**
+* XPlaneTerrainAwareness.java
+*
+* Looks ahead along the track for terrain in the background, a few times
+* per second, and gives the aircraft a terrain caution or warning
+* (see Aircraft.get_terrain_alert()) for the displays to show.
+*
+* The aircraft is moved ahead with its ground speed and vertical speed, and
+* at every step the highest terrain in a corridor around the predicted
+* position is read from the ElevationRepository. When the predicted
+* clearance gets below the minimum clearance, and is not more than the
+* clearance now, there is a CAUTION within CAUTION_TIME and a WARNING
+* within WARNING_TIME. The minimum clearance is lower with the gear down,
+* and there is no alert on the ground, below 1000ft with the gear down,
+* or where there is no elevation data.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.util.logging.Logger;
+
+import net.sourceforge.xhsi.StoppableThread;
+import net.sourceforge.xhsi.model.Aircraft;
+import net.sourceforge.xhsi.model.ElevationRepository;
+import net.sourceforge.xhsi.model.Avionics.EPGWSAlertLevel;
+
+
+public class XPlaneTerrainAwareness extends StoppableThread {
+
+    private static final Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+    // in ms
+    private static final long UPDATE_INTERVAL = 500;
+    // an alert stays at least this long, so that it does not flicker
+    private static final long ALERT_HOLD_TIME = 2000;
+
+    // in seconds
+    private static final float CAUTION_TIME = 60.0f;
+    private static final float WARNING_TIME = 30.0f;
+    private static final float STEP_TIME = 2.0f;
+
+    // in feet
+    private static final float CAUTION_CLEARANCE = 500.0f;
+    private static final float WARNING_CLEARANCE = 300.0f;
+    private static final float CAUTION_CLEARANCE_GEAR_DOWN = 300.0f;
+    private static final float WARNING_CLEARANCE_GEAR_DOWN = 150.0f;
+    private static final float LANDING_INHIBIT_HEIGHT = 1000.0f;
+
+    // half the width of the corridor, in nm, growing with the distance for the track changes
+    private static final float CORRIDOR_HALF_WIDTH = 0.25f;
+    private static final float CORRIDOR_SPREAD = 0.05f;
+
+    private static final float MIN_GROUND_SPEED = 30.0f;
+    private static final float FEET_PER_METER = 3.28084f;
+
+    private Aircraft aircraft;
+    private ElevationRepository elevation_repository;
+
+    private EPGWSAlertLevel alert = EPGWSAlertLevel.NORMAL;
+    private long alert_time = 0;
+
+
+    public XPlaneTerrainAwareness(Aircraft my_acf) throws Exception {
+        super();
+
+        this.aircraft = my_acf;
+        this.elevation_repository = ElevationRepository.get_instance();
+
+        this.keep_running = true;
+    }
+
+
+    public void run() {
+
+        while (this.keep_running) {
+
+            long now = System.currentTimeMillis();
+            EPGWSAlertLevel level;
+            try {
+                level = look_ahead();
+            } catch (Exception e) {
+                logger.warning("Terrain awareness: " + e.toString());
+                level = EPGWSAlertLevel.NORMAL;
+            }
+
+            if ( level.ordinal() >= this.alert.ordinal() || ( now - this.alert_time ) >= ALERT_HOLD_TIME ) {
+                if ( level != this.alert ) {
+                    logger.fine("Terrain alert " + level);
+                }
+                if ( level != EPGWSAlertLevel.NORMAL ) {
+                    this.alert_time = now;
+                }
+                this.alert = level;
+                this.aircraft.set_terrain_alert(level);
+            }
+
+            try { Thread.sleep(UPDATE_INTERVAL); } catch(Exception e) {}
+
+        }
+
+        this.aircraft.set_terrain_alert(EPGWSAlertLevel.NORMAL);
+        logger.fine("XPlaneTerrainAwareness stopped");
+
+    }
+
+
+    /**
+     * @return the alert for the terrain ahead
+     */
+    EPGWSAlertLevel look_ahead() {
+
+        float lat = this.aircraft.lat();
+        float lon = this.aircraft.lon();
+        float ground_speed = this.aircraft.ground_speed();
+        if ( ( ( lat == 0.0f ) && ( lon == 0.0f ) ) || this.aircraft.on_ground() || ( ground_speed < MIN_GROUND_SPEED )
+                || ! this.elevation_repository.has_elevation(lat, lon) ) {
+            return EPGWSAlertLevel.NORMAL;
+        }
+
+        boolean gear_down = this.aircraft.gear_is_down();
+        if ( gear_down && ( this.aircraft.agl_m() * FEET_PER_METER < LANDING_INHIBIT_HEIGHT ) ) {
+            // landing
+            return EPGWSAlertLevel.NORMAL;
+        }
+        float caution_clearance = gear_down ? CAUTION_CLEARANCE_GEAR_DOWN : CAUTION_CLEARANCE;
+        float warning_clearance = gear_down ? WARNING_CLEARANCE_GEAR_DOWN : WARNING_CLEARANCE;
+
+        float altitude = this.aircraft.msl_m() * FEET_PER_METER;
+        float vvi = this.aircraft.vvi();
+        double track = Math.toRadians( this.aircraft.track() - this.aircraft.magnetic_variation() );
+        double north = Math.cos(track);
+        double east = Math.sin(track);
+        double lon_scale = 1.0 / Math.max(0.01, Math.cos(Math.toRadians(lat)));
+
+        float clearance_now = altitude - get_max_terrain(lat, lon, CORRIDOR_HALF_WIDTH, lon_scale);
+
+        EPGWSAlertLevel level = EPGWSAlertLevel.NORMAL;
+        for (float time = STEP_TIME; time <= CAUTION_TIME; time += STEP_TIME) {
+            double distance = ground_speed * time / 3600.0;
+            float predicted_lat = (float) ( lat + distance * north / 60.0 );
+            float predicted_lon = (float) ( lon + distance * east * lon_scale / 60.0 );
+            // across the date line
+            if ( predicted_lon >= 180.0f ) {
+                predicted_lon -= 360.0f;
+            } else if ( predicted_lon < -180.0f ) {
+                predicted_lon += 360.0f;
+            }
+            float half_width = (float) ( CORRIDOR_HALF_WIDTH + distance * CORRIDOR_SPREAD );
+            float clearance = altitude + vvi * time / 60.0f - get_max_terrain(predicted_lat, predicted_lon, half_width, lon_scale);
+            if ( clearance <= clearance_now ) {
+                if ( ( time <= WARNING_TIME ) && ( clearance < warning_clearance ) ) {
+                    return EPGWSAlertLevel.WARNING;
+                }
+                if ( clearance < caution_clearance ) {
+                    level = EPGWSAlertLevel.CAUTION;
+                    if ( time > WARNING_TIME ) {
+                        // nothing can make it a warning anymore
+                        break;
+                    }
+                }
+            }
+        }
+        return level;
+
+    }
+
+
+    /**
+     * @return the highest terrain in feet around the position
+     */
+    private float get_max_terrain(float lat, float lon, float half_width, double lon_scale) {
+
+        float lat_delta = half_width / 60.0f;
+        float lon_delta = (float) ( half_width * lon_scale / 60.0 );
+        float max_elevation = this.elevation_repository.get_max_elevation(lat - lat_delta, lon - lon_delta, lat + lat_delta, lon + lon_delta);
+        // and the part of the corridor across the date line
+        if ( lon - lon_delta < -180.0f ) {
+            max_elevation = Math.max(max_elevation, this.elevation_repository.get_max_elevation(lat - lat_delta, lon - lon_delta + 360.0f, lat + lat_delta, 180.0f));
+        } else if ( lon + lon_delta >= 180.0f ) {
+            max_elevation = Math.max(max_elevation, this.elevation_repository.get_max_elevation(lat - lat_delta, -180.0f, lat + lat_delta, lon + lon_delta - 360.0f));
+        }
+        return max_elevation * FEET_PER_METER;
+
+    }
+
+}
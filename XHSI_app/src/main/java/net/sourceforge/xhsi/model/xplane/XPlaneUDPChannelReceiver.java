@@ -0,0 +1,222 @@
+/**
+* XPlaneUDPChannelReceiver.java
+*
+* Alternative to XPlaneUDPReceiver based on a java.nio DatagramChannel.
+* Datagrams are received into one direct ByteBuffer, so that receiving
+* a packet does not allocate anything on the heap. The observers are called
+* on this thread and the buffer is used again for the next datagram as soon
+* as they return, so an observer that keeps the data copies it (as the
+* XPlanePacketDispatcher does, to hand it to the decoder thread).
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sourceforge.xhsi.StoppableThread;
+import net.sourceforge.xhsi.XHSIStatus;
+
+
+public class XPlaneUDPChannelReceiver extends StoppableThread {
+
+    // same as the receive_buffer of XPlaneUDPReceiver
+    public static final int PACKET_BUFFER_SIZE = 5000;
+
+    DatagramChannel datagram_channel;
+    Selector selector;
+    ByteBuffer packet_buffer;
+    ArrayList<XPlaneDataPacketObserver> reception_observers;
+    boolean has_reception;
+    boolean sender_known;
+    boolean multicast_recv;
+    XPlanePacketStatistics statistics = XPlanePacketStatistics.get_instance();
+
+    private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
+
+
+    public XPlaneUDPChannelReceiver(int listen_port, boolean multicast, String group_str) throws Exception {
+        super();
+        this.packet_buffer = ByteBuffer.allocateDirect(PACKET_BUFFER_SIZE);
+        this.datagram_channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        this.datagram_channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        this.datagram_channel.bind(new InetSocketAddress(listen_port));
+        this.datagram_channel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.datagram_channel.register(this.selector, SelectionKey.OP_READ);
+        this.reception_observers = new ArrayList<XPlaneDataPacketObserver>();
+        this.keep_running = true;
+        this.has_reception = true;
+        this.sender_known = false;
+        this.multicast_recv = multicast;
+        if ( multicast ) {
+            logger.config("Joining multicast group " + group_str);
+            join_group(InetAddress.getByName(group_str));
+        }
+    }
+
+
+    private void join_group(InetAddress group) throws IOException {
+        // a MulticastSocket joins on the default interface only;
+        // join on every interface that is up and can do multicast instead
+        int joined = 0;
+        ArrayList<NetworkInterface> loopbacks = new ArrayList<NetworkInterface>();
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while ( (interfaces != null) && interfaces.hasMoreElements() ) {
+            NetworkInterface net_if = interfaces.nextElement();
+            try {
+                if ( net_if.isUp() && net_if.supportsMulticast() ) {
+                    if ( net_if.isLoopback() ) {
+                        loopbacks.add(net_if);
+                    } else if ( join_group(group, net_if) ) {
+                        joined++;
+                    }
+                }
+            } catch (IOException ioe) {
+                logger.warning("Could not query network interface " + net_if.getName() + " (" + ioe.toString() + ")");
+            }
+        }
+        if ( joined == 0 ) {
+            // X-Plane on the same machine and no network: the default interface, or else the loopback
+            try {
+                NetworkInterface default_if = NetworkInterface.getByInetAddress(InetAddress.getLocalHost());
+                if ( (default_if != null) && join_group(group, default_if) ) {
+                    joined++;
+                }
+            } catch (IOException ioe) {
+                logger.warning("Could not find the default network interface (" + ioe.toString() + ")");
+            }
+            for (int i=0; (joined == 0) && (i < loopbacks.size()); i++) {
+                if ( join_group(group, loopbacks.get(i)) ) {
+                    joined++;
+                }
+            }
+        }
+        if ( joined == 0 ) {
+            throw new IOException("No network interface available to join multicast group " + group.getHostAddress());
+        }
+    }
+
+
+    private boolean join_group(InetAddress group, NetworkInterface net_if) {
+        try {
+            this.datagram_channel.join(group, net_if);
+            logger.config("Joined multicast group on " + net_if.getName());
+            return true;
+        } catch (IOException ioe) {
+            logger.warning("Could not join multicast group on " + net_if.getName() + " (" + ioe.toString() + ")");
+            return false;
+        }
+    }
+
+
+    public void add_reception_observer(XPlaneDataPacketObserver observer) {
+        this.reception_observers.add(observer);
+    }
+
+
+    /**
+     * Receives one datagram into the given buffer
+     *
+     * @return    - false if no packet was received within one second
+     */
+    public boolean receiveXPlanePacket(ByteBuffer buffer) throws IOException {
+        long deadline = System.currentTimeMillis() + 1000;
+        SocketAddress sender = null;
+        while ( sender == null ) {
+            long wait = deadline - System.currentTimeMillis();
+            if ( wait <= 0 ) {
+                return false;
+            }
+            if ( this.selector.select(wait) > 0 ) {
+                this.selector.selectedKeys().clear();
+                // null after a spurious wakeup: keep waiting for the rest of the second
+                sender = this.datagram_channel.receive(buffer);
+            }
+        }
+        buffer.flip();
+        if ( logger.isLoggable(Level.FINEST) ) {
+            logger.finest("Receiving from " + sender.toString());
+        }
+        if ( ! sender_known ) {
+            // intercept the sender's (X-Plane's) address and port
+            InetSocketAddress orig = (InetSocketAddress) sender;
+            XPlaneUDPSender.get_instance().setDestination(this.datagram_channel, orig.getAddress(), orig.getPort());
+            sender_known = true;
+        }
+        return true;
+    }
+
+
+    public void run() {
+        logger.fine("X-Plane NIO receiver listening on port " + datagram_channel.socket().getLocalPort());
+        ByteBuffer buffer = this.packet_buffer;
+        while (this.keep_running) {
+            buffer.clear();
+            try {
+                // wait for packet or time-out
+                if ( receiveXPlanePacket(buffer) ) {
+
+                    XHSIStatus.receiving = true;
+                    this.statistics.packet_received(buffer);
+
+                    if  (this.has_reception == false) {
+                        this.has_reception = true;
+                        logger.info("UDP reception re-established");
+                    }
+
+                    for (int i=0; i<this.reception_observers.size(); i++) {
+                        buffer.position(0);
+                        this.reception_observers.get(i).new_sim_data(buffer);
+                    }
+
+                } else {
+                    XHSIStatus.receiving = false;
+
+                    if (this.has_reception == true) {
+                        logger.warning("No UDP reception");
+                        this.has_reception = false;
+                    }
+                }
+            } catch(IOException ioe) {
+                logger.warning("Caught I/O error while waiting for UDP packets! (" + ioe.toString() + ")");
+            } catch(Exception e) {
+                logger.warning("Caught error while waiting for UDP packets! (" + e.toString() + " / " + e.getMessage() + ")");
+            }
+        }
+        try {
+            this.selector.close();
+            this.datagram_channel.close();
+        } catch (IOException ioe) {
+            logger.warning("Could not close UDP channel (" + ioe.toString() + ")");
+        }
+        logger.fine("X-Plane NIO receiver stopped");
+    }
+
+}
@@ -43,6 +43,7 @@ public class XPlaneUDPReceiver extends StoppableThread {
     boolean has_reception;
     boolean sender_known;
     boolean multicast_recv;
+    XPlanePacketStatistics statistics = XPlanePacketStatistics.get_instance();
     //XPlaneUDPSender udp_sender = null;
 
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
@@ -96,6 +97,7 @@ public class XPlaneUDPReceiver extends StoppableThread {
                 packet = receiveXPlanePacket();
 
                 XHSIStatus.receiving = true;
+                this.statistics.packet_received(packet.getData(), packet.getLength());
                 
                 if  (this.has_reception == false) {
                     this.has_reception = true;
@@ -24,6 +24,8 @@
 package net.sourceforge.xhsi.model.xplane;
 
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.logging.Logger;
 import java.io.*;
 
@@ -31,6 +33,7 @@ import java.io.*;
 public class XPlaneUDPSender {
 
     /*DatagramSocket*/ MulticastSocket datagram_socket = null;
+    DatagramChannel datagram_channel = null;
     byte[] send_buffer;
     boolean destination_known;
     InetAddress destination_address;
@@ -69,6 +72,19 @@ public class XPlaneUDPSender {
     }
 
 
+    public void setDestination(DatagramChannel channel, InetAddress address, int port) {
+
+        // same as above, for XPlaneUDPChannelReceiver
+        // the channel is non-blocking, so we cannot use its socket adaptor to send
+        this.destination_known = true;
+        this.datagram_channel = channel;
+        this.destination_address = address;
+        this.destination_port = port;
+        logger.config("Received first packet from " + address.getHostAddress() + ":" + port);
+
+    }
+
+
     public void sendDataPoint(int id, float value) {
 
         if ( this.destination_known ) {
@@ -84,9 +100,13 @@ public class XPlaneUDPSender {
                 logger.finest("byte_array_stream.size = " + byte_array_stream.size());
                 logger.finest("byte_array.length = " + byte_array.length);
                 //DatagramPacket packet = new DatagramPacket(byte_array, byte_array_stream.size(), InetAddress.getLocalHost(), 49019);
-                DatagramPacket packet = new DatagramPacket(byte_array, byte_array_stream.size(), this.destination_address, this.destination_port);
-                // this.datagram_socket = new DatagramSocket(); no, we already have an open socket...
-                this.datagram_socket.send(packet);
+                if ( this.datagram_channel != null ) {
+                    this.datagram_channel.send(ByteBuffer.wrap(byte_array), new InetSocketAddress(this.destination_address, this.destination_port));
+                } else {
+                    DatagramPacket packet = new DatagramPacket(byte_array, byte_array_stream.size(), this.destination_address, this.destination_port);
+                    // this.datagram_socket = new DatagramSocket(); no, we already have an open socket...
+                    this.datagram_socket.send(packet);
+                }
                 logger.fine("Datapoint packet sent: ID=" + id + "  Value=" + value);
             } catch (IOException ioe) {
                 logger.warning("Caught error while sending a datapoint packet! (" + ioe.toString() + ")");
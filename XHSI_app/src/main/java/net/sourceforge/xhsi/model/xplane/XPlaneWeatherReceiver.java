@@ -41,6 +41,7 @@ public class XPlaneWeatherReceiver extends StoppableThread {
     boolean has_reception;
     boolean sender_known;
     boolean multicast_recv;
+    XPlanePacketStatistics statistics = XPlanePacketStatistics.get_instance();
 
     private static Logger logger = Logger.getLogger("net.sourceforge.xhsi");
 
@@ -92,6 +93,7 @@ public class XPlaneWeatherReceiver extends StoppableThread {
                 packet = receiveXPlanePacket();
 
                 XHSIStatus.weather_receiving = true;
+                this.statistics.packet_received(packet.getData(), packet.getLength());
                 
                 if  (this.has_reception == false) {
                     this.has_reception = true;
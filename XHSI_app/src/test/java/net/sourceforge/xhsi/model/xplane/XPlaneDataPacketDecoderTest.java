@@ -0,0 +1,337 @@
+/**
+* XPlaneDataPacketDecoderTest.java
+*
+* Checks that decoding sim data packets from a ByteBuffer does not allocate
+* on the heap once the decoder has seen every packet type and data point,
+* that float and 4-byte string data points are stored correctly, and how
+* DLT1 and KEY1 packets are applied, lost or reordered.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.xhsi.model.Aircraft;
+import net.sourceforge.xhsi.model.ModelFactory;
+import net.sourceforge.xhsi.model.Observer;
+import net.sourceforge.xhsi.model.SimDataRepository;
+
+
+public class XPlaneDataPacketDecoderTest extends TestCase {
+
+    private static final int SIM_DATA_POINTS = 170;
+    private static final int VARIANTS = 16;
+    private static final int NAV1_NAV_ID = XPlaneSimDataRepository.SIM_COCKPIT2_RADIOS_INDICATORS_NAV1_NAV_ID;
+    private static final int TAILNUM_0_3 = XPlaneSimDataRepository.SIM_AIRCRAFT_VIEW_ACF_TAILNUM_0_3;
+    private static final int WARMUP_PACKETS = 20000;
+    private static final int MEASURED_PACKETS = 20000;
+
+    // less than one small object for the whole batch
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+
+    private XPlaneSimDataRepository repository;
+    private XPlaneDataPacketDecoder decoder;
+
+
+    protected void setUp() throws Exception {
+        // the decoder logs every packet type it sees for the first time
+        Logger.getLogger("net.sourceforge.xhsi").setLevel(Level.WARNING);
+
+        this.repository = new XPlaneSimDataRepository();
+        ModelFactory model_factory = new ModelFactory() {
+            public Aircraft get_aircraft_instance() {
+                return null;
+            }
+            public SimDataRepository get_repository_instance() {
+                return XPlaneDataPacketDecoderTest.this.repository;
+            }
+        };
+        this.decoder = new XPlaneDataPacketDecoder(model_factory);
+
+        // the statistics keep the sequence numbers, and are shared by every decoder
+        XPlanePacketStatistics statistics = XPlanePacketStatistics.get_instance();
+        statistics.reset();
+        statistics.get(XPlaneDataPacketDecoder.AVIO_ID).forget_sequence();
+    }
+
+
+    public void testDecodingDoesNotAllocate() throws Exception {
+
+        com.sun.management.ThreadMXBean thread_bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if ( ! thread_bean.isThreadAllocatedMemorySupported() ) {
+            return;
+        }
+        thread_bean.setThreadAllocatedMemoryEnabled(true);
+
+        ByteBuffer packets[] = new ByteBuffer[VARIANTS * 5];
+        for (int v=0; v<VARIANTS; v++) {
+            packets[v*5] = sim_data_packet("ADCD", 0, v);
+            packets[v*5 + 1] = sim_data_packet("AVIO", 200, v);
+            packets[v*5 + 2] = sim_data_packet("ENGI", 400, v);
+            // the strings do not change, so their String can be re-used
+            packets[v*5 + 3] = sim_data_packet("STAT", 600, v, NAV1_NAV_ID, "IAB ");
+            packets[v*5 + 4] = sim_data_packet("AUXS", 800, v, TAILNUM_0_3, "N172");
+        }
+
+        // lets the JIT compile the decoder, and the decoder meet every type
+        decode(packets, WARMUP_PACKETS);
+
+        long thread_id = Thread.currentThread().getId();
+        long before = thread_bean.getThreadAllocatedBytes(thread_id);
+        decode(packets, MEASURED_PACKETS);
+        long allocated = thread_bean.getThreadAllocatedBytes(thread_id) - before;
+
+        assertTrue("decoding " + MEASURED_PACKETS + " packets allocated " + allocated + " bytes", allocated <= MAX_ALLOCATED_BYTES);
+
+    }
+
+
+    public void testStringDataPoint() throws Exception {
+
+        // the first tick notifies every observer
+        this.repository.tick_updates();
+        final int updates[] = new int[1];
+        BitSet ids = new BitSet();
+        ids.set(NAV1_NAV_ID);
+        this.repository.add_observer(new Observer() {
+            public void update() {
+                updates[0]++;
+            }
+        }, ids);
+
+        decode_and_tick(sim_data_packet("STAT", 600, 0, NAV1_NAV_ID, "IAB "));
+        String first = this.repository.get_sim_string(NAV1_NAV_ID);
+        assertEquals("IAB", first);
+        assertEquals(1, updates[0]);
+
+        // the same bytes again: the same String, and nothing changed
+        decode_and_tick(sim_data_packet("STAT", 600, 0, NAV1_NAV_ID, "IAB "));
+        assertSame(first, this.repository.get_sim_string(NAV1_NAV_ID));
+        assertEquals(1, updates[0]);
+
+        decode_and_tick(sim_data_packet("STAT", 600, 0, NAV1_NAV_ID, "ILKS"));
+        assertEquals("ILKS", this.repository.get_sim_string(NAV1_NAV_ID));
+        assertEquals(2, updates[0]);
+
+        decode_and_tick(sim_data_packet("STAT", 600, 0, NAV1_NAV_ID, "    "));
+        assertEquals("", this.repository.get_sim_string(NAV1_NAV_ID));
+        assertEquals(3, updates[0]);
+
+    }
+
+
+    public void testStatAndAuxsPackets() throws Exception {
+
+        this.decoder.new_sim_data(sim_data_packet("STAT", 600, 1, NAV1_NAV_ID, "IAB "));
+        this.decoder.new_sim_data(sim_data_packet("AUXS", 800, 2, TAILNUM_0_3, "N172"));
+        // STAT and AUXS do not tick: their values are published with the next ADCD
+        assertEquals(0.0f, this.repository.get_sim_float(600));
+        assertEquals("", this.repository.get_sim_string(TAILNUM_0_3));
+        this.decoder.new_sim_data(sim_data_packet("ADCD", 0, 0));
+
+        assertEquals(0.1f, this.repository.get_sim_float(600), 0.0001f);
+        assertEquals(1.0f, this.repository.get_sim_float(601));
+        assertEquals(4.1f, this.repository.get_sim_float(604), 0.0001f);
+        assertEquals(0.2f, this.repository.get_sim_float(800), 0.0001f);
+        assertEquals((float) SIM_DATA_POINTS - 1, this.repository.get_sim_float(800 + SIM_DATA_POINTS - 1));
+        assertEquals("IAB", this.repository.get_sim_string(NAV1_NAV_ID));
+        assertEquals("N172", this.repository.get_sim_string(TAILNUM_0_3));
+
+    }
+
+
+    public void testKeyframeIsApplied() throws Exception {
+
+        decode_and_tick(delta_packet("KEY1", "AVIO", 10, new float[] { 1.0f, 2.0f }));
+
+        assertEquals(1.0f, this.repository.get_sim_float(200));
+        assertEquals(2.0f, this.repository.get_sim_float(201));
+        assertFalse(this.decoder.is_waiting_for_keyframe(XPlaneDataPacketDecoder.AVIO_ID));
+        assertEquals(1, this.decoder.get_keyframes());
+
+    }
+
+
+    public void testDeltaIsApplied() throws Exception {
+
+        decode_and_tick(delta_packet("KEY1", "AVIO", 10, new float[] { 1.0f, 2.0f }));
+        // only 200 changed
+        decode_and_tick(delta_packet("DLT1", "AVIO", 11, new float[] { 3.0f }));
+
+        assertEquals(3.0f, this.repository.get_sim_float(200));
+        assertEquals(2.0f, this.repository.get_sim_float(201));
+        assertFalse(this.decoder.is_waiting_for_keyframe(XPlaneDataPacketDecoder.AVIO_ID));
+        assertEquals(1, this.decoder.get_delta_packets());
+        assertEquals(0, avio_statistics().getLostPackets());
+
+    }
+
+
+    public void testLostDeltaWaitsForKeyframe() throws Exception {
+
+        decode_and_tick(delta_packet("KEY1", "AVIO", 10, new float[] { 1.0f, 2.0f }));
+        // 11 is lost
+        decode_and_tick(delta_packet("DLT1", "AVIO", 12, new float[] { 3.0f }));
+        assertEquals(1, avio_statistics().getLostPackets());
+        assertTrue(this.decoder.is_waiting_for_keyframe(XPlaneDataPacketDecoder.AVIO_ID));
+        // still applied, 200 is up to date
+        assertEquals(3.0f, this.repository.get_sim_float(200));
+
+        decode_and_tick(delta_packet("DLT1", "AVIO", 13, new float[] { 4.0f }));
+        assertTrue(this.decoder.is_waiting_for_keyframe(XPlaneDataPacketDecoder.AVIO_ID));
+
+        decode_and_tick(delta_packet("KEY1", "AVIO", 14, new float[] { 5.0f, 6.0f }));
+        assertFalse(this.decoder.is_waiting_for_keyframe(XPlaneDataPacketDecoder.AVIO_ID));
+        assertEquals(5.0f, this.repository.get_sim_float(200));
+        assertEquals(6.0f, this.repository.get_sim_float(201));
+
+    }
+
+
+    public void testReorderedDeltaIsDropped() throws Exception {
+
+        decode_and_tick(delta_packet("KEY1", "AVIO", 10, new float[] { 1.0f, 2.0f }));
+        decode_and_tick(delta_packet("DLT1", "AVIO", 12, new float[] { 3.0f }));
+        // arrives after 12, its value is older
+        decode_and_tick(delta_packet("DLT1", "AVIO", 11, new float[] { 2.5f }));
+
+        assertEquals(3.0f, this.repository.get_sim_float(200));
+        assertEquals(1, avio_statistics().getReorderedPackets());
+        assertEquals(0, avio_statistics().getLostPackets());
+
+    }
+
+
+    public void testKeyframeRestartsTheSequence() throws Exception {
+
+        decode_and_tick(delta_packet("KEY1", "AVIO", 100, new float[] { 1.0f, 2.0f }));
+        decode_and_tick(delta_packet("DLT1", "AVIO", 101, new float[] { 3.0f }));
+        // the plugin was restarted, with a sequence just below the old one
+        decode_and_tick(delta_packet("KEY1", "AVIO", 60, new float[] { 7.0f, 8.0f }));
+        assertEquals(7.0f, this.repository.get_sim_float(200));
+        decode_and_tick(delta_packet("DLT1", "AVIO", 61, new float[] { 9.0f }));
+
+        assertEquals(9.0f, this.repository.get_sim_float(200));
+        assertEquals(8.0f, this.repository.get_sim_float(201));
+        assertEquals(0, avio_statistics().getReorderedPackets());
+        assertFalse(this.decoder.is_waiting_for_keyframe(XPlaneDataPacketDecoder.AVIO_ID));
+
+    }
+
+
+    public void testResetDeltaSequences() throws Exception {
+
+        decode_and_tick(delta_packet("KEY1", "AVIO", 10, new float[] { 1.0f, 2.0f }));
+        decode_and_tick(delta_packet("DLT1", "AVIO", 40, new float[] { 3.0f }));
+        long lost = avio_statistics().getLostPackets();
+        // a replay moved back a little
+        this.decoder.reset_delta_sequences();
+        decode_and_tick(delta_packet("DLT1", "AVIO", 20, new float[] { 4.0f }));
+        // and forward again
+        this.decoder.reset_delta_sequences();
+        decode_and_tick(delta_packet("DLT1", "AVIO", 90, new float[] { 5.0f }));
+
+        assertEquals(5.0f, this.repository.get_sim_float(200));
+        assertEquals(0, avio_statistics().getReorderedPackets());
+        assertEquals(lost, avio_statistics().getLostPackets());
+
+    }
+
+
+    private static XPlanePacketTypeStatistics avio_statistics() {
+        return XPlanePacketStatistics.get_instance().get(XPlaneDataPacketDecoder.AVIO_ID);
+    }
+
+
+    private void decode_and_tick(ByteBuffer packet) throws Exception {
+        this.decoder.new_sim_data(packet);
+        this.repository.tick_updates();
+    }
+
+
+    private void decode(ByteBuffer packets[], int count) throws Exception {
+        for (int i=0; i<count; i++) {
+            ByteBuffer packet = packets[i % packets.length];
+            packet.position(0);
+            this.decoder.new_sim_data(packet);
+        }
+    }
+
+
+    /**
+     * A sim data packet like the plugin sends, one value in four changing from one variant to the next
+     */
+    private static ByteBuffer sim_data_packet(String type, int first_id, int variant) {
+        return sim_data_packet(type, first_id, variant, -1, null);
+    }
+
+
+    /**
+     * The same, followed by one 4-byte string data point when string_id is not -1
+     */
+    private static ByteBuffer sim_data_packet(String type, int first_id, int variant, int string_id, String string_value) {
+        int nb_of_data_points = SIM_DATA_POINTS + ( (string_id != -1) ? 2 : 1 );
+        ByteBuffer packet = ByteBuffer.allocateDirect(8 + nb_of_data_points * 8);
+        put_chars(packet, type);
+        packet.putInt(nb_of_data_points);
+        // the first ADCD is checked for the plugin version
+        packet.putInt(XPlaneSimDataRepository.PLUGIN_VERSION_ID);
+        packet.putFloat(XPlanePluginEmulator.PLUGIN_VERSION_NUMBER);
+        for (int i=0; i<SIM_DATA_POINTS; i++) {
+            packet.putInt(first_id + i);
+            packet.putFloat( ( (i % 4) == 0 ) ? i + variant * 0.1f : i );
+        }
+        if ( string_id != -1 ) {
+            packet.putInt(string_id);
+            put_chars(packet, string_value);
+        }
+        packet.flip();
+        return packet;
+    }
+
+
+    /**
+     * A DLT1 or KEY1 packet with the given values for data points 200, 201, ...
+     */
+    private static ByteBuffer delta_packet(String type, String base_type, int sequence, float values[]) {
+        ByteBuffer packet = ByteBuffer.allocateDirect(16 + values.length * 8);
+        put_chars(packet, type);
+        put_chars(packet, base_type);
+        packet.putInt(sequence);
+        packet.putInt(values.length);
+        for (int i=0; i<values.length; i++) {
+            packet.putInt(200 + i);
+            packet.putFloat(values[i]);
+        }
+        packet.flip();
+        return packet;
+    }
+
+
+    private static void put_chars(ByteBuffer packet, String chars) {
+        for (int i=0; i<4; i++) {
+            packet.put((byte) chars.charAt(i));
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+* XPlanePacketDispatcherTest.java
+*
+* Checks which queued sim data packets the COALESCE drop policy skips.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+
+public class XPlanePacketDispatcherTest extends TestCase {
+
+    // any data point that the regular AVIO does not start with
+    private static final int CUSTOM_FIRST_ID = 1000;
+
+
+    private XPlanePacketDispatcher dispatcher;
+    // the first data point id of every packet handed to the observer
+    private ArrayList<Integer> dispatched;
+
+
+    protected void setUp() throws Exception {
+        this.dispatcher = new XPlanePacketDispatcher(16, 1472, XPlanePacketDispatcher.DropPolicy.COALESCE);
+        this.dispatched = new ArrayList<Integer>();
+        this.dispatcher.add_packet_observer(new XPlaneDataPacketObserver() {
+            public void new_sim_data(ByteBuffer packet) {
+                XPlanePacketDispatcherTest.this.dispatched.add(Integer.valueOf(packet.getInt(8)));
+            }
+            public void new_sim_data(byte[] data, int length) {
+            }
+        });
+    }
+
+
+    public void testRegularAndCustomAvioAreBothDispatched() throws Exception {
+
+        this.dispatcher.new_sim_data(sim_data_packet("AVIO", XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_AVIONICS_ON));
+        this.dispatcher.new_sim_data(sim_data_packet("AVIO", CUSTOM_FIRST_ID));
+        dispatch_queue();
+
+        assertEquals(0, this.dispatcher.get_coalesced_packets());
+        assertEquals(2, this.dispatched.size());
+        assertEquals(XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_AVIONICS_ON, this.dispatched.get(0).intValue());
+        assertEquals(CUSTOM_FIRST_ID, this.dispatched.get(1).intValue());
+
+    }
+
+
+    public void testNewerSnapshotOfTheSameTypeSupersedes() throws Exception {
+
+        this.dispatcher.new_sim_data(sim_data_packet("AVIO", XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_AVIONICS_ON));
+        this.dispatcher.new_sim_data(sim_data_packet("AVIO", CUSTOM_FIRST_ID));
+        this.dispatcher.new_sim_data(sim_data_packet("AVIO", XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_AVIONICS_ON));
+        this.dispatcher.new_sim_data(sim_data_packet("AVIO", CUSTOM_FIRST_ID));
+        // not a snapshot, never skipped
+        this.dispatcher.new_sim_data(sim_data_packet("FMC0", 0));
+        this.dispatcher.new_sim_data(sim_data_packet("FMC0", 0));
+        dispatch_queue();
+
+        assertEquals(2, this.dispatcher.get_coalesced_packets());
+        assertEquals(4, this.dispatched.size());
+        assertEquals(XPlaneSimDataRepository.SIM_COCKPIT_ELECTRICAL_AVIONICS_ON, this.dispatched.get(0).intValue());
+        assertEquals(CUSTOM_FIRST_ID, this.dispatched.get(1).intValue());
+
+    }
+
+
+    /**
+     * Runs the dispatcher thread until every queued packet has been dispatched or skipped
+     */
+    private void dispatch_queue() throws Exception {
+        this.dispatcher.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( (this.dispatcher.get_backlog() > 0) && (System.currentTimeMillis() < deadline) ) {
+            Thread.sleep(1);
+        }
+        this.dispatcher.signal_stop();
+        this.dispatcher.join(5000);
+        assertEquals(0, this.dispatcher.get_backlog());
+    }
+
+
+    private static ByteBuffer sim_data_packet(String type, int first_id) {
+        ByteBuffer packet = ByteBuffer.allocate(8 + 2 * 8);
+        for (int i=0; i<4; i++) {
+            packet.put((byte) type.charAt(i));
+        }
+        packet.putInt(2);
+        packet.putInt(first_id);
+        packet.putFloat(1.0f);
+        packet.putInt(first_id + 1);
+        packet.putFloat(2.0f);
+        packet.flip();
+        return packet;
+    }
+
+}
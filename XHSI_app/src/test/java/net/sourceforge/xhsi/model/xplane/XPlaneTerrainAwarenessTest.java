@@ -0,0 +1,197 @@
+/**
+* XPlaneTerrainAwarenessTest.java
+*
+* Checks the alerts of XPlaneTerrainAwareness.look_ahead() for an aircraft
+* flying towards a ridge of synthetic terrain.
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation; either version 2
+* of the License, or (at your option) any later version.
+*
+* This library is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this library; if not, write to the Free Software
+* Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+package net.sourceforge.xhsi.model.xplane;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import net.sourceforge.xhsi.model.Aircraft;
+import net.sourceforge.xhsi.model.ElevationArea;
+import net.sourceforge.xhsi.model.ElevationRepository;
+import net.sourceforge.xhsi.model.Avionics.EPGWSAlertLevel;
+
+
+public class XPlaneTerrainAwarenessTest extends TestCase {
+
+    // cells per degree of the synthetic terrain
+    private static final int CELLS_PER_DEGREE = 100;
+    // a ridge of 1000m (3281ft) from 1.0E to 1.05E, flat at sea level elsewhere
+    private static final float RIDGE_ELEVATION = 1000.0f;
+    private static final float FEET_PER_METER = 3.28084f;
+
+    // what the stub aircraft returns, by method name
+    private HashMap<String, Object> aircraft_values;
+    private XPlaneTerrainAwareness terrain_awareness;
+
+
+    protected void setUp() throws Exception {
+        ElevationRepository elevation_repository = ElevationRepository.get_instance();
+        elevation_repository.init();
+        elevation_repository.addElevationArea(area(0.0f, 2.0f, 0.0f, 2.0f, 1.0f, 1.05f));
+        // on both sides of the date line, with a ridge from 179.97W to 179.92W
+        elevation_repository.addElevationArea(area(0.0f, 2.0f, 179.0f, 180.0f, 0.0f, 0.0f));
+        elevation_repository.addElevationArea(area(0.0f, 2.0f, -180.0f, -179.0f, -179.97f, -179.92f));
+
+        this.aircraft_values = new HashMap<String, Object>();
+        // level at 3000ft, heading east at 360kt (6nm per minute) on the 1N parallel
+        set("lat", 1.0f);
+        set("lon", 0.93f);
+        set("msl_m", 3000.0f / FEET_PER_METER);
+        set("agl_m", 3000.0f / FEET_PER_METER);
+        set("ground_speed", 360.0f);
+        set("track", 90.0f);
+        set("vvi", 0.0f);
+        this.terrain_awareness = new XPlaneTerrainAwareness(stub_aircraft());
+    }
+
+
+    protected void tearDown() throws Exception {
+        ElevationRepository.get_instance().init();
+    }
+
+
+    public void testLevelTowardsRidge() throws Exception {
+
+        // 4.2nm, 42s away
+        assertEquals(EPGWSAlertLevel.CAUTION, this.terrain_awareness.look_ahead());
+        // 2.4nm, 24s away
+        set("lon", 0.96f);
+        assertEquals(EPGWSAlertLevel.WARNING, this.terrain_awareness.look_ahead());
+        // 9nm, 90s away
+        set("lon", 0.85f);
+        assertEquals(EPGWSAlertLevel.NORMAL, this.terrain_awareness.look_ahead());
+
+    }
+
+
+    public void testClimbingOverRidge() throws Exception {
+
+        set("vvi", 3000.0f);
+        assertEquals(EPGWSAlertLevel.NORMAL, this.terrain_awareness.look_ahead());
+
+    }
+
+
+    public void testOnGround() throws Exception {
+
+        set("lon", 0.96f);
+        set("on_ground", Boolean.TRUE);
+        assertEquals(EPGWSAlertLevel.NORMAL, this.terrain_awareness.look_ahead());
+
+    }
+
+
+    public void testLandingInhibit() throws Exception {
+
+        set("lon", 0.96f);
+        set("gear_is_down", Boolean.TRUE);
+        set("agl_m", 800.0f / FEET_PER_METER);
+        assertEquals(EPGWSAlertLevel.NORMAL, this.terrain_awareness.look_ahead());
+        // still an alert above 1000ft
+        set("agl_m", 1200.0f / FEET_PER_METER);
+        assertEquals(EPGWSAlertLevel.WARNING, this.terrain_awareness.look_ahead());
+
+    }
+
+
+    public void testNoElevationData() throws Exception {
+
+        set("lat", 10.0f);
+        assertEquals(EPGWSAlertLevel.NORMAL, this.terrain_awareness.look_ahead());
+
+    }
+
+
+    public void testAcrossDateLine() throws Exception {
+
+        // 0.08 degrees, 4.8nm from the ridge on the other side
+        set("lon", 179.95f);
+        assertEquals(EPGWSAlertLevel.CAUTION, this.terrain_awareness.look_ahead());
+
+    }
+
+
+    private void set(String method, Object value) {
+        this.aircraft_values.put(method, value);
+    }
+
+
+    /**
+     * An Aircraft that returns the aircraft_values, and 0 or false for everything else
+     */
+    private Aircraft stub_aircraft() {
+        return (Aircraft) Proxy.newProxyInstance(Aircraft.class.getClassLoader(), new Class<?>[] { Aircraft.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                Object value = XPlaneTerrainAwarenessTest.this.aircraft_values.get(method.getName());
+                if ( value != null ) {
+                    return value;
+                }
+                Class<?> type = method.getReturnType();
+                if ( type == float.class ) return Float.valueOf(0.0f);
+                if ( type == boolean.class ) return Boolean.FALSE;
+                if ( type == int.class ) return Integer.valueOf(0);
+                if ( type == double.class ) return Double.valueOf(0.0);
+                if ( type == long.class ) return Long.valueOf(0);
+                return null;
+            }
+        });
+    }
+
+
+    /**
+     * A GLOBE-like area at sea level, with the ridge from ridge_min_lon to ridge_max_lon
+     */
+    private static ElevationArea area(float min_lat, float max_lat, float min_lon, float max_lon, float ridge_min_lon, float ridge_max_lon) throws Exception {
+        int rows = Math.round((max_lat - min_lat) * CELLS_PER_DEGREE);
+        int columns = Math.round((max_lon - min_lon) * CELLS_PER_DEGREE);
+        ByteBuffer cells = ByteBuffer.allocate(rows * columns * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int row=0; row<rows; row++) {
+            for (int col=0; col<columns; col++) {
+                float lon = min_lon + (col + 0.5f) / CELLS_PER_DEGREE;
+                cells.putShort( (short) ( ( (lon >= ridge_min_lon) && (lon <= ridge_max_lon) ) ? RIDGE_ELEVATION : 0.0f ) );
+            }
+        }
+        cells.flip();
+
+        File file = File.createTempFile("xhsi_terrain", ".bin");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            channel.write(cells);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, cells.limit());
+            return new ElevationArea(buffer, columns, rows, min_lat, max_lat, min_lon, max_lon, file.getName());
+        } finally {
+            raf.close();
+        }
+    }
+
+}
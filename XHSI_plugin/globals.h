@@ -7,6 +7,10 @@
 #define PLUGIN_VERSION_TEXT "XHSI Plugin 2.0 Beta 12 Alpha 9"
 #define PLUGIN_VERSION_NUMBER 20012
 
+// delta packets: highest supported protocol version, and a full keyframe every n packets of a type
+#define DELTA_PROTOCOL_VERSION 1
+#define DELTA_KEYFRAME_INTERVAL 32
+
 
 // max number of IP/UDP destinations
 #define NUM_DEST 4
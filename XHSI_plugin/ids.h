@@ -942,6 +942,10 @@
 #define Z737_ID_END 1899
 
 
+// Delta packets : sent by the plugin in ADCD with the highest protocol version it supports,
+// sent by XHSI to switch to delta packets or to request keyframes
+#define XHSI_DELTA_PACKETS 998
+
 // Plugin Version
 #define PLUGIN_VERSION_ID 999
 
@@ -44,6 +44,7 @@
 #include "globals.h"
 #include "ids.h"
 #include "structs.h"
+#include "packets.h"
 #include "settings.h"
 #include "datarefs.h"
 #include "datarefs_ufmc.h"
@@ -88,6 +89,7 @@
 // Define global vars
 // The data packets =========================================
 struct SimDataPacket	   sim_packet;
+struct SimDataDeltaPacket  delta_packet;
 struct FmsDataPacket	   fms_packet[10];
 struct TcasDataPacket	   tcas_packet;
 struct IncomingPacket      efis_packet;
@@ -102,6 +104,23 @@ int max_stat_size = 0;
 
 char msg[200];
 
+// Delta packets ============================================
+// 0 until XHSI asks for delta packets
+int delta_protocol = 0;
+// one delta type per packet builder, see DELTA_ADCD... in packets.h : the regular and the
+// custom AVIO packets have the same packet id, but each has its own data points and keyframes
+const char *delta_types[NUM_DELTA_TYPES] = { "ADCD", "AVIO", "AVIO", "ENGI", "STAT", "AUXS" };
+// the sequence is counted per packet id, as XHSI does, in the first delta type with that id
+int delta_sequence[NUM_DELTA_TYPES];
+// packets of this delta type since the last periodic keyframe
+int delta_count[NUM_DELTA_TYPES];
+int delta_keyframe_requested[NUM_DELTA_TYPES];
+// last value sent per data point, as raw network order bits
+// floats use slot id, strings (id >= 10000) slot 2000 + id - 10000
+#define DELTA_SLOTS 4000
+int delta_last_value[NUM_DELTA_TYPES][DELTA_SLOTS];
+char delta_last_sent[NUM_DELTA_TYPES][DELTA_SLOTS];
+
 // Used to calculate IAS relative speeds
 float ias=0.0f;
 
@@ -157,7 +176,9 @@ void decodeIncomingPacket(void) {
         	sprintf(info_string, "XHSI: received setting : ID=%d  VALUE=%f\n", id, float_value);
         	XPLMDebugString(info_string);
         }
-        if ((id > QPAC_STATUS) && (id <=QPAC_ID_END)) {
+        if (id == XHSI_DELTA_PACKETS) {
+            requestDeltaPackets((int) float_value);
+        } else if ((id > QPAC_STATUS) && (id <=QPAC_ID_END)) {
             writeQpacDataRef(id, float_value);
         } else 	if ((id >= JAR_A320NEO_STATUS) && (id <= JAR_A320NEO_ID_END)) {
         	writeJarA320neoDataRef(id, float_value);
@@ -176,6 +197,94 @@ void decodeIncomingPacket(void) {
 }
 
 
+/*
+ * XHSI asks for delta packets, or for new keyframes after it lost a packet
+ */
+void requestDeltaPackets(int protocol) {
+
+    int t;
+
+    if ( protocol > DELTA_PROTOCOL_VERSION ) protocol = DELTA_PROTOCOL_VERSION;
+    if ( protocol != delta_protocol ) {
+        sprintf(msg, "XHSI: delta packets protocol %d\n", protocol);
+        XPLMDebugString(msg);
+    }
+    delta_protocol = protocol;
+    for (t=0; t<NUM_DELTA_TYPES; t++) {
+        delta_keyframe_requested[t] = 1;
+    }
+
+}
+
+
+/*
+ * Copies the data points of sim_packet that changed since the last packet of the same delta type
+ * into delta_packet. Every DELTA_KEYFRAME_INTERVAL packets, or when requested, all data points
+ * are copied into a keyframe.
+ */
+int createDeltaPacket(int t) {
+
+    int s;
+    int i;
+    int n = 0;
+    int id;
+    int slot;
+    int raw;
+    int keyframe;
+    int nb = custom_ntohi(sim_packet.nb_of_sim_data_points);
+
+    for (s=0; s<t; s++) {
+        if ( strncmp(delta_types[s], delta_types[t], 4) == 0 ) break;
+    }
+
+    keyframe = delta_keyframe_requested[t] || ( (delta_count[t] % DELTA_KEYFRAME_INTERVAL) == 0 );
+
+    strncpy(delta_packet.packet_id, keyframe ? "KEY1" : "DLT1", 4);
+    strncpy(delta_packet.base_packet_id, sim_packet.packet_id, 4);
+    delta_packet.sequence = custom_htoni(delta_sequence[s]);
+
+    for (i=0; i<nb; i++) {
+        id = custom_ntohi(sim_packet.sim_data_points[i].id);
+        slot = ( id >= 10000 ) ? 2000 + id - 10000 : id;
+        memcpy(&raw, &sim_packet.sim_data_points[i].value, sizeof(int));
+        if ( (slot < 0) || (slot >= DELTA_SLOTS) ) {
+            // no room to remember it, always send it
+            delta_packet.sim_data_points[n++] = sim_packet.sim_data_points[i];
+        } else if ( keyframe || ! delta_last_sent[t][slot] || (delta_last_value[t][slot] != raw) ) {
+            delta_packet.sim_data_points[n++] = sim_packet.sim_data_points[i];
+            delta_last_value[t][slot] = raw;
+            delta_last_sent[t][slot] = 1;
+        }
+    }
+    delta_packet.nb_of_sim_data_points = custom_htoni(n);
+
+    delta_sequence[s]++;
+    delta_count[t]++;
+    delta_keyframe_requested[t] = 0;
+
+    // packet size : char[4] + char[4] + int + int + ( # * ( int + float) )
+    return 16 + n * 8;
+
+}
+
+
+/*
+ * Called with the sim_packet that has just been created and the DELTA_... type of its builder,
+ * returns the packet to send : sim_packet itself or its delta_packet
+ */
+const char *prepareSimDataPacket(int delta_type, int *packet_size) {
+
+    if ( (delta_protocol > 0) && (delta_type >= 0) && (delta_type < NUM_DELTA_TYPES)
+            && (strncmp(sim_packet.packet_id, delta_types[delta_type], 4) == 0) ) {
+        *packet_size = createDeltaPacket(delta_type);
+        return (const char*)&delta_packet;
+    } else {
+        return (const char*)&sim_packet;
+    }
+
+}
+
+
 int createADCPacket(void) {
 
 	int i = 0;
@@ -197,6 +306,9 @@ int createADCPacket(void) {
     sim_packet.sim_data_points[i].id = custom_htoni(PLUGIN_VERSION_ID);
     sim_packet.sim_data_points[i].value = custom_htonf((float) PLUGIN_VERSION_NUMBER);
     i++;
+    sim_packet.sim_data_points[i].id = custom_htoni(XHSI_DELTA_PACKETS);
+    sim_packet.sim_data_points[i].value = custom_htonf((float) DELTA_PROTOCOL_VERSION);
+    i++;
 
 
     sim_packet.sim_data_points[i].id = custom_htoni(SIM_FLIGHTMODEL_POSITION_GROUNDSPEED);
@@ -9,12 +9,24 @@ int createStaticPacket(void);
 int createFmsPackets(void);
 int createTcasPacket(void);
 int createRemoteCommandPacket(int command);
+const char *prepareSimDataPacket(int delta_type, int *packet_size);
+
+// delta types, per packet builder
+#define DELTA_ADCD 0
+#define DELTA_AVIO 1
+#define DELTA_CUSTOM_AVIO 2
+#define DELTA_ENGI 3
+#define DELTA_STAT 4
+#define DELTA_AUXS 5
+#define NUM_DELTA_TYPES 6
 
 // command packet decode function
 void decodeIncomingPacket(void);
 
 // The data packets
 extern struct SimDataPacket       sim_packet;
+extern struct SimDataDeltaPacket  delta_packet;
+extern int                        delta_protocol;
 extern struct FmsDataPacket       fms_packet[10];
 extern struct TcasDataPacket      tcas_packet;
 extern struct IncomingPacket      efis_packet;
@@ -52,6 +52,7 @@ float sendADCCallback(
 
 	int i;
 	int packet_size;
+	const char *packet;
 	int res;
 	int send_error = 0;
 #if IBM
@@ -61,10 +62,11 @@ float sendADCCallback(
 	if (xhsi_plugin_enabled && xhsi_send_enabled && xhsi_socket_open) {
 
 		packet_size = createADCPacket();
+		packet = prepareSimDataPacket(DELTA_ADCD, &packet_size);
 
 		for (i=0; i<NUM_DEST; i++) {
 			if (dest_enable[i]) {
-				res = sendto(sockfd, (const char*)&sim_packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
+				res = sendto(sockfd, packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
 #if IBM
 				if ( res == SOCKET_ERROR ) {
 					send_error = 1;
@@ -104,6 +106,7 @@ float sendAuxiliarySystemsCallback(
 
 	int i;
 	int packet_size;
+	const char *packet;
 	int res;
 	int send_error = 0;
 #if IBM
@@ -113,10 +116,11 @@ float sendAuxiliarySystemsCallback(
 	if (xhsi_plugin_enabled && xhsi_send_enabled && xhsi_socket_open) {
 
 		packet_size = createAuxiliarySystemsPacket();
+		packet = prepareSimDataPacket(DELTA_AUXS, &packet_size);
 
 		for (i=0; i<NUM_DEST; i++) {
 			if (dest_enable[i]) {
-				res = sendto(sockfd, (const char*)&sim_packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
+				res = sendto(sockfd, packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
 #if IBM
 				if ( res == SOCKET_ERROR ) {
 					send_error = 1;
@@ -171,6 +175,7 @@ float sendAvionicsCallback(
 
 	int i;
 	int packet_size;
+	const char *packet;
 	int res;
 	int send_error = 0;
 #if IBM
@@ -285,10 +290,11 @@ float sendAvionicsCallback(
 	if (xhsi_plugin_enabled && xhsi_send_enabled && xhsi_socket_open) {
 
 		packet_size = createAvionicsPacket();
+		packet = prepareSimDataPacket(DELTA_AVIO, &packet_size);
 
 		for (i=0; i<NUM_DEST; i++) {
 			if (dest_enable[i]) {
-				res = sendto(sockfd, (const char*)&sim_packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
+				res = sendto(sockfd, packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
 #if IBM
 				if ( res == SOCKET_ERROR ) {
 					send_error = 1;
@@ -309,10 +315,11 @@ float sendAvionicsCallback(
 		}
 
 		packet_size = createCustomAvionicsPacket();
+		packet = prepareSimDataPacket(DELTA_CUSTOM_AVIO, &packet_size);
 
 		for (i=0; i<NUM_DEST; i++) {
 			if (dest_enable[i]) {
-				res = sendto(sockfd, (const char*)&sim_packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
+				res = sendto(sockfd, packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
 #if IBM
 				if ( res == SOCKET_ERROR ) {
 					send_error = 1;
@@ -352,6 +359,7 @@ float sendEnginesCallback(
 
 	int i;
 	int packet_size;
+	const char *packet;
 	int res;
 	int send_error = 0;
 #if IBM
@@ -425,10 +433,11 @@ float sendEnginesCallback(
 	if (xhsi_plugin_enabled && xhsi_send_enabled && xhsi_socket_open) {
 
 		packet_size = createEnginesPacket();
+		packet = prepareSimDataPacket(DELTA_ENGI, &packet_size);
 
 		for (i=0; i<NUM_DEST; i++) {
 			if (dest_enable[i]) {
-				res = sendto(sockfd, (const char*)&sim_packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
+				res = sendto(sockfd, packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
 #if IBM
 				if ( res == SOCKET_ERROR ) {
 					send_error = 1;
@@ -468,6 +477,7 @@ float sendStaticCallback(
 
 	int i;
 	int packet_size;
+	const char *packet;
 	int res;
 	int send_error = 0;
 #if IBM
@@ -477,10 +487,11 @@ float sendStaticCallback(
 	if (xhsi_plugin_enabled && xhsi_send_enabled && xhsi_socket_open) {
 
 		packet_size = createStaticPacket();
+		packet = prepareSimDataPacket(DELTA_STAT, &packet_size);
 
 		for (i=0; i<NUM_DEST; i++) {
 			if (dest_enable[i]) {
-				res = sendto(sockfd, (const char*)&sim_packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
+				res = sendto(sockfd, packet, packet_size, 0, (struct sockaddr *)&dest_sockaddr[i], sizeof(struct sockaddr));
 #if IBM
 				if ( res == SOCKET_ERROR ) {
 					send_error = 1;
@@ -22,6 +22,18 @@ struct SimDataPacket {
 	struct SimDataPoint     sim_data_points[222]; // only 182 should be used, but by reserving more, we can avoid some inadvertent buffer overflows
 };
 
+// Same data points as a SimDataPacket, but a "DLT1" packet only carries the data points
+// that changed since the previous packet of the same base type, a "KEY1" packet carries all of them.
+// The header is 8 bytes longer than a SimDataPacket's, so that it still fits in 1472 bytes
+// with MAX_DATAPOINTS data points.
+struct SimDataDeltaPacket {
+	char			packet_id[4];
+	char			base_packet_id[4];
+	int			sequence;
+	int			nb_of_sim_data_points;
+	struct SimDataPoint     sim_data_points[222];
+};
+
 struct FmsEntry {
 	int     type;
 	char	id[8];